@@ -0,0 +1,127 @@
+package gui;
+
+import net.miginfocom.swing.MigLayout;
+import rslib.cs.protocol.events.admin.MetricsEvent;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * Represents a live dashboard of server metrics (counters with rates, gauges and histograms)
+ */
+public class MetricsDashboard extends JFrame {
+
+    /** Model of counters table */
+    private final DefaultTableModel valuesModel;
+
+    /** Model of histograms table */
+    private final DefaultTableModel histogramsModel;
+
+    /** Time label */
+    private final JLabel timeLabel;
+
+    /** Previous values (for rates) */
+    private Map<String, Long> previousValues;
+
+    /** Time of previous values */
+    private long previousTime;
+
+    /***
+     * Constructor
+     */
+    public MetricsDashboard() {
+        setTitle("Server metrics");
+        setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+        setLayout(new MigLayout("", "[grow, fill]", "[][grow, fill][grow, fill]"));
+
+        timeLabel = new JLabel("No metrics received yet");
+        add(timeLabel, "wrap");
+
+        valuesModel = createModel(new String[] {"Metric", "Value", "Per second"});
+        JScrollPane valuesPane = new JScrollPane(new JTable(valuesModel));
+        valuesPane.setPreferredSize(new Dimension(520, 260));
+        add(valuesPane, "wrap");
+
+        histogramsModel = createModel(new String[] {"Histogram", "Count", "Mean", "Median", "90%", "99%", "Max"});
+        JScrollPane histogramsPane = new JScrollPane(new JTable(histogramsModel));
+        histogramsPane.setPreferredSize(new Dimension(520, 200));
+        add(histogramsPane);
+
+        previousValues = new HashMap<>();
+        pack();
+    }
+
+    /***
+     * Creates not editable table model
+     * @param columns column names
+     * @return table model
+     */
+    private static DefaultTableModel createModel(String[] columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    /***
+     * Shows metrics (may be called by any thread)
+     * @param event metrics snapshot
+     */
+    public void update(final MetricsEvent event) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                showMetrics(event);
+            }
+        });
+    }
+
+    /***
+     * Shows metrics (called by the event dispatch thread)
+     * @param event metrics snapshot
+     */
+    private void showMetrics(MetricsEvent event) {
+        DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+        timeLabel.setText("Server time: " + dateFormat.format(new Date(event.getTime())));
+        double seconds = (event.getTime() - previousTime) / 1000.0;
+        valuesModel.setRowCount(0);
+        for (Map.Entry<String, Long> entry : event.getValues().entrySet()) {
+            Long previous = previousValues.get(entry.getKey());
+            String rate = previous != null && seconds > 0 ?
+                    String.format("%.1f", (entry.getValue() - previous) / seconds) : "";
+            valuesModel.addRow(new Object[] {entry.getKey(), entry.getValue(), rate});
+        }
+        previousValues = event.getValues();
+        previousTime = event.getTime();
+        histogramsModel.setRowCount(0);
+        for (Map.Entry<String, long[]> entry : event.getHistograms().entrySet()) {
+            String name = entry.getKey();
+            long[] summary = entry.getValue();
+            histogramsModel.addRow(new Object[] {name, summary[MetricsEvent.COUNT],
+                    format(name, summary[MetricsEvent.MEAN]), format(name, summary[MetricsEvent.P50]),
+                    format(name, summary[MetricsEvent.P90]), format(name, summary[MetricsEvent.P99]),
+                    format(name, summary[MetricsEvent.MAX])});
+        }
+    }
+
+    /***
+     * Formats histogram value (times are shown in microseconds)
+     * @param name histogram name
+     * @param value value
+     * @return formatted value
+     */
+    private static String format(String name, long value) {
+        if (name.endsWith(".nanos")) {
+            return String.format("%.1f us", value / 1000.0);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -6,6 +6,7 @@ import rslib.cs.server.admin.AdminLobby;
 import rslib.cs.protocol.events.admin.AdminEvent;
 import rslib.cs.protocol.events.admin.LogFileEvent;
 import rslib.cs.protocol.events.admin.LogSizeEvent;
+import rslib.cs.protocol.events.admin.MetricsEvent;
 import rslib.cs.protocol.events.admin.ServerLogEvent;
 import rslib.cs.protocol.events.message.ShowMessageEvent;
 import rslib.cs.protocol.requests.to_lobby.admin.InternalRequest;
@@ -24,6 +25,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
  * Represents server's GUI as a frame
@@ -51,6 +53,9 @@ public class ServerGUI extends JFrame implements AdminListener, MessageListener,
     /** Host label */
     private JLabel hostLabel;
 
+    /** Metrics dashboard (null if it was not opened) */
+    private MetricsDashboard dashboard;
+
     /***
      * Constructor
      */
@@ -196,6 +201,17 @@ public class ServerGUI extends JFrame implements AdminListener, MessageListener,
 
         menuBar.add(menuSettings);
 
+        final JMenu menuMetrics = new JMenu("Metrics");
+        final JMenuItem menuItemDashboard = new JMenuItem("Show dashboard");
+        menuItemDashboard.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showDashboard();
+            }
+        });
+        menuMetrics.add(menuItemDashboard);
+        menuBar.add(menuMetrics);
+
         JLabel buttonAbout = new JLabel("About");
         buttonAbout.setOpaque(false);
         buttonAbout.addMouseListener(new MouseAdapter() {
@@ -229,6 +245,30 @@ public class ServerGUI extends JFrame implements AdminListener, MessageListener,
         }
     }
 
+    /***
+     * Shows metrics dashboard and asks server to send metrics every second
+     */
+    private void showDashboard() {
+        if (client == null) {
+            textArea.append("You are not connected to server!" + "\n");
+            return;
+        }
+        if (dashboard == null) {
+            dashboard = new MetricsDashboard();
+            dashboard.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    if (client != null) {
+                        client.addAdminCommand(new InternalRequest("-unwatchmetrics"));
+                    }
+                }
+            });
+        }
+        dashboard.setLocationRelativeTo(this);
+        dashboard.setVisible(true);
+        client.addAdminCommand(new InternalRequest("-watchmetrics"));
+    }
+
     /***
      * Connecting to server API
      */
@@ -280,9 +320,12 @@ public class ServerGUI extends JFrame implements AdminListener, MessageListener,
             case LOG_FILE_E: {
                 try {
                     String filename = "server_logs.txt";
-                    ArrayList<String> logs = ((LogFileEvent) event).getContent();
+                    LogFileEvent logFileEvent = (LogFileEvent) event;
+                    ArrayList<String> logs = logFileEvent.getContent();
                     inflateToFile(logs, filename);
-                    textArea.append("Successfully received " + logs.size() + " logs to " + filename);
+                    textArea.append("Successfully received " + logs.size() + " logs (lines " +
+                            logFileEvent.getFirstLine() + "-" + (logFileEvent.getFirstLine() + logs.size()) +
+                            " of " + logFileEvent.getLineCount() + ") to " + filename + "\n");
                 }
                 catch (IOException e) {
                     textArea.append("Problems creating text file!");
@@ -293,6 +336,23 @@ public class ServerGUI extends JFrame implements AdminListener, MessageListener,
                 textArea.append("Log file size: " + ((LogSizeEvent) event).getLength() + " bytes");
                 break;
             }
+            case METRICS_E: {
+                MetricsEvent metricsEvent = (MetricsEvent) event;
+                if (dashboard != null && dashboard.isVisible()) {
+                    dashboard.update(metricsEvent);
+                    break;
+                }
+                for (Map.Entry<String, Long> entry : metricsEvent.getValues().entrySet()) {
+                    textArea.append(entry.getKey() + ": " + entry.getValue() + "\n");
+                }
+                for (Map.Entry<String, long[]> entry : metricsEvent.getHistograms().entrySet()) {
+                    long[] summary = entry.getValue();
+                    textArea.append(entry.getKey() + ": count " + summary[MetricsEvent.COUNT] + ", mean " +
+                            summary[MetricsEvent.MEAN] + ", 99% " + summary[MetricsEvent.P99] + ", max " +
+                            summary[MetricsEvent.MAX] + "\n");
+                }
+                break;
+            }
         }
     }
 
@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.gui.board.BoardFile;
+import rslib.gui.board.ExternalizableBoard;
+
+/***
+ * Measures saving and opening of the mixed board in the indexed format
+ * (SerializedBoardBenchmark measures the format of the files saved before)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoardFileBenchmark {
+
+    /** Board */
+    private ExternalizableBoard board;
+
+    /** Saved board */
+    private File saved;
+
+    /** File that is written by the benchmark */
+    private File written;
+
+    /***
+     * Creates board and saves it
+     * @throws IOException if something went wrong
+     */
+    @Setup
+    public void setUp() throws IOException {
+        board = Boards.createMixedBoard();
+        saved = File.createTempFile("saved", ".brd");
+        written = File.createTempFile("written", ".brd");
+        BoardFile.write(board, saved);
+        System.out.println("\nfile length " + saved.length() + " bytes");
+    }
+
+    /***
+     * Deletes files
+     */
+    @TearDown
+    public void tearDown() {
+        saved.delete();
+        written.delete();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        BoardFile.write(board, written);
+    }
+
+    /***
+     * Reads board with all blobs
+     */
+    @Benchmark
+    public ExternalizableBoard read() throws IOException, ClassNotFoundException {
+        return BoardFile.read(saved);
+    }
+
+    /***
+     * Reads only the skeleton and the container index
+     */
+    @Benchmark
+    public BoardFile open() throws IOException, ClassNotFoundException {
+        return BoardFile.open(saved);
+    }
+}
@@ -0,0 +1,187 @@
+package benchmark;
+
+import gui.board.BoardPanel;
+import gui.board_frame.control.CommandFacade;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.cs.client.user.UserClient;
+import rslib.gui.board.ExternalizableBoard;
+
+/***
+ * Measures scrolling of a 10000x10000 board with 1k and 5k file containers
+ * (the steps go along the diagonal of the board) at full size and zoomed out.
+ * The board panel is headless: it is shown in a 900x500 viewport that is painted
+ * to an image. File containers are used because text containers need the system
+ * clipboard. The board panel is taken from the plugin classes, build the plugin first
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardScrollBenchmark {
+
+    /** Viewport width */
+    private static final int VIEWPORT_WIDTH = 900;
+
+    /** Viewport height */
+    private static final int VIEWPORT_HEIGHT = 500;
+
+    /** Number of scroll steps along the diagonal */
+    private static final int STEPS = 100;
+
+    /** Number of containers */
+    @Param({"1000", "5000"})
+    public int size;
+
+    /** Zoom level (0 is full size) */
+    @Param({"0", "1", "3"})
+    public int zoom;
+
+    /** Viewport */
+    private JViewport viewport;
+
+    /** Board panel */
+    private BoardPanel board;
+
+    /** Image the viewport is painted to */
+    private BufferedImage image;
+
+    /** Current scroll step */
+    private int step;
+
+    /***
+     * Client that is never connected (the board panel only needs it for commands)
+     */
+    private static class OfflineClient extends UserClient {
+
+        /***
+         * Constructor
+         */
+        OfflineClient() {
+            super("localhost");
+        }
+    }
+
+    /***
+     * Opens board in the viewport, zooms it and scrolls it once along the
+     * diagonal (the thumbnails of the zoomed out board are cached by the first pass)
+     * @throws Exception if something went wrong
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final ExternalizableBoard eb = Boards.createFileBoard(size);
+        final CommandFacade facade = new CommandFacade(new OfflineClient());
+        image = new BufferedImage(VIEWPORT_WIDTH, VIEWPORT_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        edt(new Runnable() {
+            @Override
+            public void run() {
+                viewport = new JViewport();
+                viewport.setSize(VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+                board = new BoardPanel(facade, eb, viewport);
+                board.setBounds(0, 0, Boards.BOARD_SIZE, Boards.BOARD_SIZE);
+                viewport.setView(board);
+                if (zoom > 0) { // full size boards are also measured on the trees without zooming
+                    board.setZoomLevel(zoom, new Point(0, 0));
+                }
+                viewport.setViewPosition(new Point(0, 0));
+            }
+        });
+        drain();
+        for (int i = 0; i < STEPS; ++ i) {
+            scroll();
+            drain();
+        }
+    }
+
+    /***
+     * Stops animation thread of the board (the forked JVM does not exit while it works)
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException, InvocationTargetException {
+        edt(new Runnable() {
+            @Override
+            public void run() {
+                board.getAnimationManager().stop();
+            }
+        });
+    }
+
+    /***
+     * Scrolls to the next step and paints the viewport
+     */
+    @Benchmark
+    public void scroll() throws InterruptedException, InvocationTargetException {
+        step = (step + 1) % STEPS;
+        edt(new Runnable() {
+            @Override
+            public void run() {
+                viewport.setViewPosition(new Point(
+                        step * (board.getWidth() - VIEWPORT_WIDTH) / STEPS,
+                        step * (board.getHeight() - VIEWPORT_HEIGHT) / STEPS));
+                paint();
+            }
+        });
+    }
+
+    /***
+     * Paints the viewport without scrolling
+     */
+    @Benchmark
+    public void repaint() throws InterruptedException, InvocationTargetException {
+        edt(new Runnable() {
+            @Override
+            public void run() {
+                paint();
+            }
+        });
+    }
+
+    /***
+     * Paints the viewport to the image. Called by the event dispatch thread
+     */
+    private void paint() {
+        Graphics2D g2d = image.createGraphics();
+        viewport.paint(g2d);
+        g2d.dispose();
+    }
+
+    /***
+     * Runs task by the event dispatch thread and waits for it
+     * @param task task
+     */
+    private static void edt(Runnable task) throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(task);
+    }
+
+    /***
+     * Waits until the tasks that are scheduled by the board panel are done
+     */
+    private static void drain() throws InterruptedException, InvocationTargetException {
+        for (int i = 0; i < 400; ++ i) {
+            edt(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+    }
+}
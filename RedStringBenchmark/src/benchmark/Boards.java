@@ -0,0 +1,151 @@
+package benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import rslib.cs.common.Status;
+import rslib.gui.board.ExternalizableBoard;
+import rslib.gui.container.BoardContainer;
+import rslib.gui.container.ExternalizableContainer;
+import rslib.gui.container.file.ExternalizableFileContainer;
+import rslib.gui.container.file.FileModel;
+import rslib.gui.container.image.ExternalizableImageContainer;
+import rslib.gui.container.image.ImageModel;
+import rslib.gui.container.text.ExternalizableTextContainer;
+import rslib.gui.style.ColorModel;
+import rslib.gui.style.FontModel;
+
+/***
+ * Creates boards for benchmarks (only with the public API, so the benchmarks
+ * also run on older trees)
+ */
+class Boards {
+
+    /** Number of text containers (and of image containers) */
+    private static final int CONTAINERS = 200;
+
+    /** Board size */
+    static final int BOARD_SIZE = 10000;
+
+    /** Number of distinct images */
+    private static final int IMAGES = 10;
+
+    /** Image side */
+    private static final int IMAGE_SIDE = 150;
+
+    /** Side of the containers of the file board */
+    private static final int FILE_SIDE = 100;
+
+    /** File length */
+    private static final int FILE_LENGTH = 256 * 1024;
+
+    private Boards() {
+    }
+
+    /***
+     * Creates board with text containers on layers 1..size
+     * @param size number of containers
+     * @return board
+     */
+    static ExternalizableBoard createTextBoard(int size) {
+        CopyOnWriteArrayList<ExternalizableContainer> containers = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= size; ++ i) {
+            containers.add(createTextContainer(i, i));
+        }
+        return createBoard(containers);
+    }
+
+    /***
+     * Creates text container
+     * @param id container id
+     * @param layer container layer
+     * @return container
+     */
+    static ExternalizableTextContainer createTextContainer(int id, int layer) {
+        return new ExternalizableTextContainer("owner", Status.COMMON, (id % 100) * 100, (id / 100) * 100,
+                90, 90, 10, 10, 1000, 1000, "container" + id, id,
+                new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                layer, BoardContainer.ContainerType.TEXT_CONTAINER, false, null, "text" + id);
+    }
+
+    /***
+     * Creates board with file containers on a grid that covers the whole board
+     * @param size number of containers
+     * @return board
+     */
+    static ExternalizableBoard createFileBoard(int size) {
+        int columns = (int) Math.ceil(Math.sqrt(size));
+        int cell = (BOARD_SIZE - FILE_SIDE) / columns;
+        CopyOnWriteArrayList<ExternalizableContainer> containers = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < size; ++ i) {
+            int id = i + 1;
+            containers.add(new ExternalizableFileContainer("owner", Status.COMMON,
+                    50 + (i % columns) * cell, 50 + (i / columns) * cell, FILE_SIDE, FILE_SIDE,
+                    10, 10, 1000, 1000, "file" + id, id,
+                    new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                    id, BoardContainer.ContainerType.FILE_CONTAINER, false, null,
+                    new FileModel("file" + id + ".txt", new byte[] {1, 2, 3})));
+        }
+        return createBoard(containers);
+    }
+
+    /***
+     * Creates board with 200 text containers, 200 image containers (10 distinct images,
+     * every container has its own model as pasted images do) and 2 files
+     * @return board
+     * @throws UnsupportedEncodingException never
+     */
+    static ExternalizableBoard createMixedBoard() throws UnsupportedEncodingException {
+        Random random = new Random(1);
+        int[][] images = new int[IMAGES][];
+        for (int i = 0; i < IMAGES; ++ i) {
+            int[] pixels = new int[IMAGE_SIDE * IMAGE_SIDE];
+            for (int j = 0; j < pixels.length; ++ j) { // gradient with noise
+                pixels[j] = 0xff000000 | (j % IMAGE_SIDE) << 16 | (j / IMAGE_SIDE) << 8 | random.nextInt(64);
+            }
+            images[i] = pixels;
+        }
+        CopyOnWriteArrayList<ExternalizableContainer> containers = new CopyOnWriteArrayList<>();
+        int id = 0;
+        for (int i = 0; i < CONTAINERS; ++ i) {
+            ++ id;
+            containers.add(new ExternalizableTextContainer("owner", Status.COMMON, i * 50, 0, 200, 100,
+                    10, 10, 1000, 1000, "text" + id, id,
+                    new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                    id, BoardContainer.ContainerType.TEXT_CONTAINER, false, null, "Text of container " + id));
+            ++ id;
+            containers.add(new ExternalizableImageContainer("owner", Status.COMMON, i * 50, 200,
+                    IMAGE_SIDE, IMAGE_SIDE, 10, 10, 1000, 1000, "image" + id, id,
+                    new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                    id, BoardContainer.ContainerType.IMAGE_CONTAINER, false, null,
+                    new ImageModel(IMAGE_SIDE, IMAGE_SIDE, images[i % IMAGES].clone(), 100, 0, 0)));
+        }
+        for (int i = 0; i < 2; ++ i) {
+            ++ id;
+            StringBuilder text = new StringBuilder();
+            while (text.length() < FILE_LENGTH) {
+                text.append("line ").append(random.nextInt(1000)).append('\n');
+            }
+            containers.add(new ExternalizableFileContainer("owner", Status.COMMON, i * 200, 400, 150, 100,
+                    10, 10, 1000, 1000, "file" + id, id,
+                    new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                    id, BoardContainer.ContainerType.FILE_CONTAINER, false, null,
+                    new FileModel("file" + id + ".txt", text.toString().getBytes("UTF-8"))));
+        }
+        return createBoard(containers);
+    }
+
+    /***
+     * Creates board
+     * @param containers containers
+     * @return board
+     */
+    private static ExternalizableBoard createBoard(CopyOnWriteArrayList<ExternalizableContainer> containers) {
+        return new ExternalizableBoard("owner", Status.LOBBY_ROOT, 0, 0, BOARD_SIZE, BOARD_SIZE,
+                100, 100, BOARD_SIZE, BOARD_SIZE, "board", -1,
+                new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                false, null, containers,
+                new FontModel("Arial", 0, 12), true, new ColorModel(0xff000000), new ColorModel(0xffffffff),
+                false);
+    }
+}
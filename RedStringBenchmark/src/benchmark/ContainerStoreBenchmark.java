@@ -0,0 +1,114 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.gui.board.ExternalizableBoard;
+import rslib.gui.container.BoardContainer;
+import rslib.gui.container.text.ExternalizableTextContainer;
+
+/***
+ * Measures container lookup and layer changes of a board with 10, 1k and 10k containers.
+ * Only the public board API is used, so the benchmark also runs on the trees
+ * before the container store (to compare the numbers)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerStoreBenchmark {
+
+    /** Number of containers */
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    /** Board */
+    private ExternalizableBoard board;
+
+    /** Random ids of existing containers */
+    private int[] ids;
+
+    /** Position in the random ids */
+    private int next;
+
+    /** Id of the container below the top one */
+    private int belowTop;
+
+    /** Id of the top container */
+    private int top;
+
+    /** Id of the next added container */
+    private int added;
+
+    /***
+     * Creates board with text containers on layers 1..size
+     */
+    @Setup
+    public void setUp() {
+        board = Boards.createTextBoard(size);
+        Random random = new Random(1);
+        ids = new int[1 << 12];
+        for (int i = 0; i < ids.length; ++ i) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+        belowTop = size - 1;
+        top = size;
+        added = size + 1;
+    }
+
+    /***
+     * Returns next random container id
+     * @return container id
+     */
+    private int nextId() {
+        next = (next + 1) & (ids.length - 1);
+        return ids[next];
+    }
+
+    @Benchmark
+    public BoardContainer find() {
+        return board.findContainer(nextId());
+    }
+
+    /***
+     * Swaps two top containers (the container below the top one is moved on the top layer)
+     */
+    @Benchmark
+    public void swapNearTop() {
+        board.setLayerPosition(board.findContainer(belowTop), size);
+        int id = belowTop;
+        belowTop = top;
+        top = id;
+    }
+
+    /***
+     * Adds container in front of all and deletes it
+     */
+    @Benchmark
+    public void addDeleteFront() {
+        ExternalizableTextContainer container = Boards.createTextContainer(added, BoardContainer.TO_FRONT);
+        board.addContainer(container);
+        board.deleteContainer(added);
+        ++ added;
+    }
+
+    /***
+     * Moves random container in front of all
+     */
+    @Benchmark
+    public void randomToFront() {
+        board.setLayerPosition(board.findContainer(nextId()), BoardContainer.TO_FRONT);
+    }
+}
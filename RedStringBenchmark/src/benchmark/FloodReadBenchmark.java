@@ -0,0 +1,156 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.cs.common.BufferPool;
+import rslib.cs.common.CommandInfo;
+import rslib.cs.common.FrameDecoder;
+import rslib.cs.protocol.ProtocolConstants;
+import rslib.cs.protocol.events.chat.MessageEvent;
+import rslib.util.DataManagement;
+
+/***
+ * Measures the read path of a connection flooded by chat spam: frames are decoded from
+ * an in-memory channel (it gives at most a socket buffer per read) and released after
+ * processing, like the server does. Without the pool the buffers are left to GC, like
+ * a new buffer per frame. Run it with the GC profiler (-prof gc): gc.alloc.rate.norm
+ * is the number of heap bytes allocated per frame, the direct buffers are counted
+ * by the pool (its counters are printed at tear down)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloodReadBenchmark {
+
+    /** Number of frames in the flood */
+    private static final int FRAMES = 1000;
+
+    /** Maximum number of bytes given by one read (socket receive buffer) */
+    private static final int READ_SIZE = 64 * 1024;
+
+    /** If buffers are returned to the pool */
+    @Param({"pooled", "unpooled"})
+    public String pool;
+
+    /** Pool of buffers */
+    private BufferPool bufferPool;
+
+    /** Frame decoder */
+    private FrameDecoder decoder;
+
+    /** Channel with the flood */
+    private FloodChannel channel;
+
+    /***
+     * Channel that gives the same bytes again after rewinding
+     */
+    private static class FloodChannel implements ReadableByteChannel {
+
+        /** Bytes of the channel */
+        private final ByteBuffer data;
+
+        /***
+         * Constructor
+         * @param data bytes of the channel
+         */
+        FloodChannel(byte[] data) {
+            this.data = ByteBuffer.wrap(data);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (! data.hasRemaining()) {
+                return 0; // nothing came yet
+            }
+            int length = Math.min(Math.min(dst.remaining(), data.remaining()), READ_SIZE);
+            ByteBuffer part = data.duplicate();
+            part.limit(part.position() + length);
+            dst.put(part);
+            data.position(data.position() + length);
+            return length;
+        }
+
+        /***
+         * Gives the bytes from the beginning
+         */
+        void rewind() {
+            data.rewind();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /***
+     * Writes flood of chat frames
+     * @throws IOException if something went wrong
+     */
+    @Setup
+    public void setUp() throws IOException {
+        byte[] serialized = DataManagement.serialize(new MessageEvent("spammer",
+                "Spam, spam, spam, spam, lovely spam, wonderful spam!"));
+        ByteBuffer flood = ByteBuffer.allocate(FRAMES * (ProtocolConstants.COMMAND_LENGTH +
+                ProtocolConstants.INFO_INDEX_LENGTH + serialized.length));
+        for (int i = 0; i < FRAMES; ++ i) {
+            flood.putInt(serialized.length);
+            flood.put(ProtocolConstants.CHAT_INDEX);
+            flood.put(serialized);
+        }
+        bufferPool = new BufferPool();
+        decoder = new FrameDecoder(bufferPool);
+        channel = new FloodChannel(flood.array());
+        System.out.println("\n" + FRAMES + " frames of " + serialized.length + " bytes");
+    }
+
+    /***
+     * Prints counters of the pool
+     */
+    @TearDown
+    public void tearDown() {
+        System.out.println("\n" + bufferPool);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int read() throws IOException {
+        channel.rewind();
+        boolean release = pool.equals("pooled");
+        int bytes = 0;
+        for (int i = 0; i < FRAMES; ) {
+            CommandInfo command = decoder.read(channel);
+            if (command == null) {
+                continue;
+            }
+            bytes += command.getCommand().remaining();
+            if (release) {
+                command.release(); // returning the buffer to the pool
+            }
+            ++ i;
+        }
+        return bytes;
+    }
+}
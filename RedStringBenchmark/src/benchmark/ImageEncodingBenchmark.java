@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.gui.container.image.ImageEncoding;
+
+/***
+ * Measures encoding and decoding of 1024x1024 images (4 MB of pixels): sketches (strokes
+ * on a white background, encoded by run-length encoding) and photos (smooth gradients
+ * with noise, deflated pixel differences). The encoded size and the compression ratio
+ * are printed at setup, images per second are measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodingBenchmark {
+
+    /** Image width and height */
+    private static final int IMAGE_SIZE = 1024;
+
+    /** Image kind */
+    @Param({"sketch", "photo"})
+    public String image;
+
+    /** Image pixels */
+    private int[] pixels;
+
+    /** Encoded pixels */
+    private byte[] encoded;
+
+    /***
+     * Draws image and encodes it
+     */
+    @Setup
+    public void setUp() {
+        pixels = image.equals("sketch") ? createSketch(300) : createPhoto();
+        encoded = ImageEncoding.encode(pixels);
+        System.out.println("\n" + image + " " + pixels.length * 4 + " bytes, encoded " + encoded.length +
+                " bytes (format " + encoded[0] + "), ratio " + String.format("%.1f", pixels.length * 4.0 / encoded.length));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return ImageEncoding.encode(pixels);
+    }
+
+    @Benchmark
+    public int[] decode() {
+        return ImageEncoding.decode(encoded, pixels.length);
+    }
+
+    /***
+     * Draws random strokes of random colors on a white background
+     * @param strokes number of strokes
+     * @return pixels
+     */
+    private static int[] createSketch(int strokes) {
+        Random random = new Random(1);
+        int[] pixels = new int[IMAGE_SIZE * IMAGE_SIZE];
+        Arrays.fill(pixels, 0xffffffff);
+        for (int s = 0; s < strokes; ++ s) {
+            int x = random.nextInt(IMAGE_SIZE);
+            int y = random.nextInt(IMAGE_SIZE);
+            int color = 0xff000000 | random.nextInt(0xffffff);
+            for (int k = 0; k < 300; ++ k) { // a stroke is 3 pixels wide
+                x = Math.max(0, Math.min(IMAGE_SIZE - 3, x + random.nextInt(5) - 2));
+                y = Math.max(0, Math.min(IMAGE_SIZE - 3, y + random.nextInt(5) - 2));
+                for (int dy = 0; dy < 3; ++ dy) {
+                    Arrays.fill(pixels, (y + dy) * IMAGE_SIZE + x, (y + dy) * IMAGE_SIZE + x + 3, color);
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /***
+     * Draws smooth gradients with noise (like a photo)
+     * @return pixels
+     */
+    private static int[] createPhoto() {
+        Random random = new Random(2);
+        int[] pixels = new int[IMAGE_SIZE * IMAGE_SIZE];
+        for (int y = 0; y < IMAGE_SIZE; ++ y) {
+            for (int x = 0; x < IMAGE_SIZE; ++ x) {
+                int v = (int) (128 + 60 * Math.sin(x / 37.0) + 50 * Math.cos(y / 23.0) + random.nextInt(16));
+                v = Math.max(0, Math.min(255, v));
+                pixels[y * IMAGE_SIZE + x] = 0xff000000 | v << 16 | (v * 7 / 8) << 8 | (255 - v);
+            }
+        }
+        return pixels;
+    }
+}
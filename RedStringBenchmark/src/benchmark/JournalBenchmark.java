@@ -0,0 +1,278 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.codec.WireCodec;
+import rslib.cs.protocol.events.board.common.MoveEvent;
+import rslib.cs.server.user.JournalWriter;
+import rslib.cs.server.user.LobbyJournal;
+import rslib.gui.board.ExternalizableBoard;
+import rslib.listeners.JournalListener;
+import rslib.util.DataManagement;
+
+/***
+ * Measures lobby journals: appending a record (the cost for the lobby), committing
+ * records of 1000 lobbies by the writer and recovering 1000 lobbies (reading the
+ * snapshot of a board with 20 containers and replaying the move records)
+ */
+@Fork(1)
+public class JournalBenchmark {
+
+    /** Number of lobbies */
+    private static final int LOBBIES = 1000;
+
+    /** Records appended by every lobby before a commit */
+    private static final int COMMITTED_RECORDS = 100;
+
+    /** Containers of a recovered board */
+    private static final int CONTAINERS = 20;
+
+    /** Records appended before the journal is replaced by a snapshot (it does not grow endlessly) */
+    private static final int SNAPSHOT_RECORDS = 100000;
+
+    /***
+     * Journal appended by the benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Appending {
+
+        /** Journal directory */
+        private File directory;
+
+        /** Writer */
+        private JournalWriter writer;
+
+        /** Journal */
+        private LobbyJournal journal;
+
+        /** Record */
+        private byte[] record;
+
+        /** Board state for snapshots */
+        private byte[] state;
+
+        /** Records appended after the last snapshot */
+        private int count;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journal").toFile();
+            writer = new JournalWriter();
+            writer.start();
+            journal = new LobbyJournal(directory, writer);
+            record = encode(new MoveEvent(0, 1, 100, 100, false));
+            state = serialize(Boards.createTextBoard(CONTAINERS));
+        }
+
+        @TearDown
+        public void tearDown() {
+            writer.shutdown();
+            delete(directory);
+        }
+    }
+
+    /***
+     * Lobbies whose records are committed by one writer
+     */
+    @State(Scope.Thread)
+    public static class Committing {
+
+        /** Journals directory */
+        private File directory;
+
+        /** Writer */
+        private JournalWriter writer;
+
+        /** Journals */
+        private List<LobbyJournal> journals;
+
+        /** Record */
+        private byte[] record;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journals").toFile();
+            writer = new JournalWriter();
+            writer.start();
+            journals = new ArrayList<>();
+            for (int i = 0; i < LOBBIES; ++ i) {
+                journals.add(new LobbyJournal(new File(directory, String.valueOf(i)), writer));
+            }
+            record = encode(new MoveEvent(0, 1, 100, 100, false));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            writer.shutdown();
+            delete(directory);
+        }
+    }
+
+    /***
+     * Journals of lobbies that are recovered
+     */
+    @State(Scope.Benchmark)
+    public static class Recovering {
+
+        /** Move records after the snapshot of every lobby */
+        @Param({"0", "500"})
+        public int records;
+
+        /** Journals directory */
+        private File directory;
+
+        /** Writer (not started, the recovered journals are only read) */
+        private JournalWriter writer;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journals").toFile();
+            writer = new JournalWriter();
+            JournalWriter initial = new JournalWriter();
+            initial.start();
+            byte[] state = serialize(Boards.createTextBoard(CONTAINERS));
+            for (int i = 0; i < LOBBIES; ++ i) {
+                LobbyJournal journal = new LobbyJournal(new File(directory, String.valueOf(i)), initial);
+                journal.snapshot(state);
+                for (int j = 0; j < records; ++ j) {
+                    journal.append(LobbyJournal.EVENT_RECORD,
+                            encode(new MoveEvent(0, 1 + j % CONTAINERS, j, j, false)));
+                }
+                journal.close();
+            }
+            initial.shutdown();
+        }
+
+        @TearDown
+        public void tearDown() {
+            delete(directory);
+        }
+    }
+
+    /***
+     * Appends record (replaced by a snapshot every SNAPSHOT_RECORDS records)
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void append(Appending appending) {
+        appending.journal.append(LobbyJournal.EVENT_RECORD, appending.record);
+        if (++ appending.count == SNAPSHOT_RECORDS) {
+            appending.journal.snapshot(appending.state);
+            appending.count = 0;
+        }
+    }
+
+    /***
+     * Appends records to 1000 lobbies and waits until the writer commits them
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void commit(Committing committing) {
+        for (int i = 0; i < COMMITTED_RECORDS; ++ i) {
+            for (LobbyJournal journal : committing.journals) {
+                journal.append(LobbyJournal.EVENT_RECORD, committing.record);
+            }
+        }
+        committing.writer.shutdown(); // commits the appended records
+    }
+
+    /***
+     * Recovers 1000 lobbies one by one: reads the snapshot, inflates the board
+     * and applies the replayed moves
+     * @return number of replayed records
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public int recover(Recovering recovering) throws IOException, ClassNotFoundException {
+        int count = 0;
+        for (int i = 0; i < LOBBIES; ++ i) {
+            LobbyJournal journal = new LobbyJournal(new File(recovering.directory, String.valueOf(i)),
+                    recovering.writer);
+            final ExternalizableBoard board;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(journal.readSnapshot()))) {
+                board = (ExternalizableBoard) in.readObject();
+            }
+            count += journal.replay(new JournalListener() {
+                @Override
+                public void hearRecord(byte type, ByteBuffer payload) throws IOException, ClassNotFoundException {
+                    MoveEvent event = (MoveEvent) DataManagement.inflate(payload);
+                    board.findContainer(event.getId()).moveComponent(event.getLeft(), event.getTop());
+                }
+            });
+        }
+        return count;
+    }
+
+    /***
+     * Encodes event as the lobby journals it
+     * @param info event
+     * @return record payload
+     * @throws IOException if something went wrong
+     */
+    private static byte[] encode(RedStringInfo info) throws IOException {
+        if (WireCodec.hasCodec(info)) {
+            return WireCodec.encode(info).array();
+        }
+        return DataManagement.serialize(info);
+    }
+
+    /***
+     * Serializes board
+     * @param board board
+     * @return serialized board
+     * @throws IOException if something went wrong
+     */
+    private static byte[] serialize(ExternalizableBoard board) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(data)) {
+            out.writeObject(board);
+        }
+        return data.toByteArray();
+    }
+
+    /***
+     * Deletes directory with its files
+     * @param file directory or file
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,269 @@
+package benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import rslib.cs.common.BufferPool;
+import rslib.cs.common.CommandInfo;
+import rslib.cs.common.ConnectConfiguration;
+import rslib.cs.common.FrameDecoder;
+import rslib.cs.common.LobbyInfo;
+import rslib.cs.protocol.ProtocolConstants;
+import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.events.AnswerCommand;
+import rslib.cs.protocol.events.chat.MessageEvent;
+import rslib.cs.protocol.requests.to_server.user.CreateLobbyRequest;
+import rslib.cs.protocol.requests.to_server.user.LoginRequest;
+import rslib.cs.server.admin.AdminServer;
+import rslib.util.DataManagement;
+
+/***
+ * Load harness of the server: starts it in the benchmark JVM with 10, 100 and 1000 lobbies
+ * of two users each and measures the latency of a chat broadcast (from sending the message
+ * by the first user of a lobby to reading it by the second one) while several lobbies
+ * broadcast at once. The percentiles (p0.99 among them) are reported by the sample mode,
+ * the number of threads started by the server is printed at setup.
+ * The server writes its logs, journals and blobs to the working directory and listens
+ * on the usual ports, run it from a scratch directory with no other server working.
+ * Every lobby takes four sockets, the limit of open files has to allow it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LobbyLoadBenchmark {
+
+    /** Number of lobbies */
+    @Param({"10", "100", "1000"})
+    public int lobbies;
+
+    /** Server */
+    private LoadServer server;
+
+    /** Lobby names */
+    private String[] names;
+
+    /** Users that send messages (by lobby) */
+    private SocketChannel[] senders;
+
+    /** Users that receive messages (by lobby) */
+    private SocketChannel[] receivers;
+
+    /** Frame decoders of the receivers (by lobby) */
+    private FrameDecoder[] decoders;
+
+    /** Message frame (the same for all lobbies, the server relays chat frames as they are) */
+    private ByteBuffer message;
+
+    /***
+     * Server that can close lobbies for good (their journals are deleted)
+     */
+    private static class LoadServer extends AdminServer {
+
+        /***
+         * Constructor
+         * @throws IOException if something went wrong
+         */
+        LoadServer() throws IOException {
+            super();
+        }
+
+        /***
+         * Closes lobby and deletes its journal
+         * @param lobbyName lobby name
+         */
+        void shutdownLobby(String lobbyName) {
+            userServer.shutdownLobbyCommand(lobbyName);
+        }
+    }
+
+    /***
+     * Lobbies of one benchmark thread (each lobby is used by one thread only)
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /** First lobby of the thread */
+        private int first;
+
+        /** Step between the lobbies of the thread */
+        private int step;
+
+        /** Current lobby */
+        private int lobby;
+
+        /***
+         * Takes lobbies of the thread
+         * @param params thread parameters
+         */
+        @Setup
+        public void setUp(ThreadParams params) {
+            first = params.getThreadIndex();
+            step = params.getThreadCount();
+            lobby = first;
+        }
+
+        /***
+         * Goes to the next lobby of the thread
+         * @param lobbies number of lobbies
+         * @return lobby index
+         */
+        private int next(int lobbies) {
+            int current = lobby;
+            lobby += step;
+            if (lobby >= lobbies) {
+                lobby = first;
+            }
+            return current;
+        }
+    }
+
+    /***
+     * Starts server, creates lobbies and logs users in
+     * @throws Exception if something went wrong
+     */
+    @Setup
+    public void setUp() throws Exception {
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        server = new LoadServer();
+        server.start();
+        String prefix = "load" + System.currentTimeMillis() % 1000 + "_"; // lobby names are 12 symbols at most
+        names = new String[lobbies];
+        senders = new SocketChannel[lobbies];
+        receivers = new SocketChannel[lobbies];
+        decoders = new FrameDecoder[lobbies];
+        try {
+            for (int i = 0; i < lobbies; ++ i) {
+                names[i] = prefix + i;
+                LobbyInfo lobbyInfo = new LobbyInfo(names[i], false, null);
+                senders[i] = connect(new CreateLobbyRequest("sender", lobbyInfo));
+                receivers[i] = connect(new LoginRequest("receiver", lobbyInfo));
+                decoders[i] = new FrameDecoder(BufferPool.getDefault());
+            }
+        }
+        catch (Exception e) {
+            tearDown(); // the tear down is not called if the setup failed
+            throw e;
+        }
+        byte[] serialized = DataManagement.serialize(new MessageEvent("sender", "Hello, lobby!"));
+        message = ByteBuffer.allocate(ProtocolConstants.COMMAND_LENGTH + ProtocolConstants.INFO_INDEX_LENGTH +
+                serialized.length);
+        message.putInt(serialized.length);
+        message.put(ProtocolConstants.CHAT_INDEX);
+        message.put(serialized);
+        message.flip();
+        for (int i = 0; i < lobbies; ++ i) { // the receivers skip what came on login
+            broadcast(i);
+        }
+        System.out.println("\n" + lobbies + " lobbies: " +
+                (ManagementFactory.getThreadMXBean().getThreadCount() - threads) + " server threads");
+    }
+
+    /***
+     * Closes users and lobbies and shuts the server down
+     * @throws IOException if something went wrong
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (int i = 0; i < lobbies && names[i] != null; ++ i) {
+            if (senders[i] != null) {
+                senders[i].close();
+            }
+            if (receivers[i] != null) {
+                receivers[i].close();
+            }
+            server.shutdownLobby(names[i]);
+        }
+        server.shutdown();
+    }
+
+    @Benchmark
+    public void broadcast(Cursor cursor) throws IOException, ClassNotFoundException {
+        broadcast(cursor.next(lobbies));
+    }
+
+    /***
+     * Sends message by the first user of the lobby and waits until the second one reads it
+     * @param lobby lobby index
+     * @throws IOException if something went wrong
+     * @throws ClassNotFoundException if data is wrong
+     */
+    private void broadcast(int lobby) throws IOException, ClassNotFoundException {
+        ByteBuffer frame = message.duplicate();
+        while (frame.hasRemaining()) {
+            senders[lobby].write(frame);
+        }
+        while (true) {
+            CommandInfo command = decoders[lobby].read(receivers[lobby]);
+            if (command == null) {
+                continue;
+            }
+            try {
+                if (command.getCommandType() == ProtocolConstants.CHAT_INDEX &&
+                        DataManagement.inflate(command.getCommand()) instanceof MessageEvent) {
+                    return;
+                }
+            }
+            finally {
+                command.release(); // returning the buffer to the pool
+            }
+        }
+    }
+
+    /***
+     * Connects user to the server
+     * @param request login or lobby creation request
+     * @return connected channel (blocking)
+     * @throws IOException if server refused the user or something went wrong
+     * @throws ClassNotFoundException if data is wrong
+     */
+    private static SocketChannel connect(RedStringInfo request) throws IOException, ClassNotFoundException {
+        SocketChannel socketChannel = SocketChannel.open(
+                new InetSocketAddress("localhost", ConnectConfiguration.USER_PORT));
+        byte[] serialized = DataManagement.serialize(request);
+        ByteBuffer frame = ByteBuffer.allocate(ProtocolConstants.COMMAND_LENGTH + ProtocolConstants.INFO_INDEX_LENGTH +
+                serialized.length);
+        frame.putInt(serialized.length);
+        frame.put(ProtocolConstants.CONNECT_INDEX);
+        frame.put(serialized);
+        frame.flip();
+        while (frame.hasRemaining()) {
+            socketChannel.write(frame);
+        }
+        FrameDecoder decoder = new FrameDecoder(BufferPool.getDefault());
+        CommandInfo command;
+        while ((command = decoder.read(socketChannel)) == null) {
+        }
+        try {
+            AnswerCommand answer = (AnswerCommand) DataManagement.inflate(command.getCommand());
+            if (answer.getAnswer() != ProtocolConstants.ANSWER_OK) {
+                socketChannel.close();
+                throw new IOException("Server refused the user: " + answer.getMessage());
+            }
+        }
+        finally {
+            command.release(); // returning the buffer to the pool
+        }
+        return socketChannel;
+    }
+}
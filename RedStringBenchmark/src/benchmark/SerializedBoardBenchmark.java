@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.gui.board.ExternalizableBoard;
+
+/***
+ * Measures saving and opening of the mixed board as one serialized object, the way
+ * boards were saved before the indexed format (it does not need BoardFile, so it also
+ * runs on the trees before it)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializedBoardBenchmark {
+
+    /** Board */
+    private ExternalizableBoard board;
+
+    /** Saved board */
+    private File saved;
+
+    /** File that is written by the benchmark */
+    private File written;
+
+    /***
+     * Creates board and saves it
+     * @throws IOException if something went wrong
+     */
+    @Setup
+    public void setUp() throws IOException {
+        board = Boards.createMixedBoard();
+        saved = File.createTempFile("saved", ".brd");
+        written = File.createTempFile("written", ".brd");
+        write(board, saved);
+        System.out.println("\nfile length " + saved.length() + " bytes");
+    }
+
+    /***
+     * Deletes files
+     */
+    @TearDown
+    public void tearDown() {
+        saved.delete();
+        written.delete();
+    }
+
+    /***
+     * Writes board as one serialized object
+     * @param board board
+     * @param file file
+     * @throws IOException if something went wrong
+     */
+    private static void write(ExternalizableBoard board, File file) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            oos.writeObject(board);
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        write(board, written);
+    }
+
+    @Benchmark
+    public ExternalizableBoard read() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(saved)))) {
+            return (ExternalizableBoard) ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.codec.WireCodec;
+import rslib.cs.protocol.events.board.PointEvent;
+import rslib.cs.protocol.events.board.common.ChangeColorEvent;
+import rslib.cs.protocol.events.board.common.MoveEvent;
+import rslib.cs.protocol.events.board.common.ResizeEvent;
+import rslib.gui.style.ColorModel;
+import rslib.util.DataManagement;
+
+/***
+ * Measures encoding and decoding of the frequent board events by the binary wire codec
+ * and by java serialization (the serialized format of older clients).
+ * Bytes per event are printed at setup, nanoseconds per event are measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireCodecBenchmark {
+
+    /** Event type */
+    @Param({"move", "resize", "point", "color"})
+    public String event;
+
+    /** Wire format */
+    @Param({"binary", "serialized"})
+    public String format;
+
+    /** Event */
+    private RedStringInfo info;
+
+    /** Encoded event */
+    private ByteBuffer encoded;
+
+    /***
+     * Creates event and encodes it
+     * @throws IOException if something went wrong
+     */
+    @Setup
+    public void setUp() throws IOException {
+        switch (event) {
+            case "move": {
+                info = new MoveEvent(123456789, 4242, 1500, 2700, false);
+                break;
+            }
+            case "resize": {
+                info = new ResizeEvent(123456789, 4242, 1500, 2700, 320, 240, false);
+                break;
+            }
+            case "point": {
+                info = new PointEvent(123456789, 1500, 2700, "username");
+                break;
+            }
+            default: {
+                info = new ChangeColorEvent(123456789, 4242, new ColorModel(Color.BLACK.getRGB()),
+                        new ColorModel(Color.ORANGE.getRGB()));
+                break;
+            }
+        }
+        encoded = encode();
+        System.out.println("\n" + event + " event " + encoded.remaining() + " bytes (" + format + ")");
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws IOException {
+        if (format.equals("binary")) {
+            return WireCodec.encode(info);
+        }
+        return ByteBuffer.wrap(DataManagement.serialize(info));
+    }
+
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        return DataManagement.inflate(encoded);
+    }
+}
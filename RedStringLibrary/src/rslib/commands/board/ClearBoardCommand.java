@@ -24,7 +24,7 @@ public class ClearBoardCommand extends Command {
      */
     public ClearBoardCommand(InteractiveBoard board) {
         super(board);
-        serializableContainers = board.toExternalizable().getContainers();
+        serializableContainers = new CopyOnWriteArrayList<>(board.toExternalizable().getContainers());
     }
 
     @Override
@@ -34,9 +34,24 @@ public class MoveCommand extends ComponentCommand {
      * @param unblock if is need to unblock
      */
     public MoveCommand(InteractiveBoard board, BasicComponent component, int newLeft, int newTop, boolean unblock) {
+        this(board, component, component.getComponentLeft(), component.getComponentTop(), newLeft, newTop, unblock);
+    }
+
+    /***
+     * Constructor (for the component that was moved while dragging already)
+     * @param board link to board
+     * @param component target component
+     * @param oldLeft left coordinate before dragging
+     * @param oldTop top coordinate before dragging
+     * @param newLeft new left coordinate
+     * @param newTop new top coordinate
+     * @param unblock if is need to unblock
+     */
+    public MoveCommand(InteractiveBoard board, BasicComponent component, int oldLeft, int oldTop,
+                       int newLeft, int newTop, boolean unblock) {
         super(board, component);
-        oldLeft = component.getComponentLeft();
-        oldTop = component.getComponentTop();
+        this.oldLeft = oldLeft;
+        this.oldTop = oldTop;
         this.newLeft = newLeft;
         this.newTop = newTop;
         this.unblock = unblock;
@@ -49,11 +49,33 @@ public class ResizeCommand extends ComponentCommand {
      */
     public ResizeCommand(InteractiveBoard board, BasicComponent component, int newLeft, int newTop,
                          int newWidth, int newHeight, boolean unblock) {
+        this(board, component, component.getComponentLeft(), component.getComponentTop(),
+                component.getComponentWidth(), component.getComponentHeight(),
+                newLeft, newTop, newWidth, newHeight, unblock);
+    }
+
+    /***
+     * Constructor (for the component that was resized while dragging already)
+     * @param board link to board
+     * @param component target component
+     * @param oldLeft left before dragging
+     * @param oldTop top before dragging
+     * @param oldWidth width before dragging
+     * @param oldHeight height before dragging
+     * @param newLeft new left
+     * @param newTop new top
+     * @param newWidth new width
+     * @param newHeight new height
+     * @param unblock if is need to unblock the component
+     */
+    public ResizeCommand(InteractiveBoard board, BasicComponent component, int oldLeft, int oldTop,
+                         int oldWidth, int oldHeight, int newLeft, int newTop,
+                         int newWidth, int newHeight, boolean unblock) {
         super(board, component);
-        oldLeft = component.getComponentLeft();
-        oldTop = component.getComponentTop();
-        oldWidth = component.getComponentWidth();
-        oldHeight = component.getComponentHeight();
+        this.oldLeft = oldLeft;
+        this.oldTop = oldTop;
+        this.oldWidth = oldWidth;
+        this.oldHeight = oldHeight;
         this.newLeft = newLeft;
         this.newTop = newTop;
         newWidth = Math.max(newWidth, component.getComponentMinimumWidth());
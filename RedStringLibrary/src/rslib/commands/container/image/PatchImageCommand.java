@@ -0,0 +1,68 @@
+package rslib.commands.container.image;
+
+import rslib.cs.client.user.UserClient;
+import rslib.cs.protocol.events.board.container.image.PatchImageEvent;
+import rslib.gui.board.InteractiveBoard;
+import rslib.gui.container.image.ImageContainer;
+import rslib.gui.container.image.ImageModel;
+import rslib.gui.container.image.ImagePatch;
+
+/***
+ * Represents a patch image command (drawing on the image, only changed pixels are sent)
+ */
+public class PatchImageCommand extends ImageContainerCommand {
+
+    /** Patch that makes the new image */
+    private ImagePatch patch;
+
+    /** Patch that returns the old image */
+    private ImagePatch undoPatch;
+
+    /***
+     * Constructor
+     * @param board link to board
+     * @param imageContainer image container
+     * @param oldImage image before drawing
+     * @param newImage image after drawing (of the same size)
+     * @throws IllegalArgumentException if images can not be patched (different sizes or the same pixels)
+     */
+    public PatchImageCommand(InteractiveBoard board, ImageContainer imageContainer,
+                             ImageModel oldImage, ImageModel newImage) throws IllegalArgumentException {
+        super(board, imageContainer);
+        patch = ImagePatch.diff(oldImage, newImage);
+        undoPatch = ImagePatch.diff(newImage, oldImage);
+        if (patch == null || undoPatch == null) {
+            throw new IllegalArgumentException("PatchImageCommand: images can not be patched!");
+        }
+    }
+
+    @Override
+    public void execute(UserClient userClient) throws IllegalStateException {
+        super.execute(userClient);
+        send(userClient, patch);
+    }
+
+    @Override
+    public void undo(UserClient userClient) throws IllegalStateException {
+        super.undo(userClient);
+        send(userClient, undoPatch);
+    }
+
+    /***
+     * Sends patch
+     * @param userClient user client
+     * @param imagePatch patch
+     * @throws IllegalStateException if user has no rights
+     */
+    private void send(UserClient userClient, ImagePatch imagePatch) throws IllegalStateException {
+        ImageContainer imageContainer = getImageContainer();
+        if (userClient.checkBoardRights(imageContainer.getComponentStatus(), imageContainer.getComponentOwner())) {
+            checkBlocked(userClient, imageContainer);
+            int hash = getBoard().hashCode();
+            userClient.addBoardEvent(new PatchImageEvent(hash, id, imagePatch));
+        }
+        else {
+            throw new IllegalStateException("You have no rights to draw on this container!");
+        }
+    }
+}
@@ -16,6 +16,9 @@ public class ChangeTextCommand extends TextContainerCommand {
     /** New text */
     protected String newText;
 
+    /** If the new text is already sent (by edit text commands), the first execution sends nothing */
+    private boolean sent;
+
     /***
      * Constructor
      * @param board link to board
@@ -28,9 +31,28 @@ public class ChangeTextCommand extends TextContainerCommand {
         this.newText = newText;
     }
 
+    /***
+     * Constructor (for text that was edited and sent already, so the edit can be undone and redone)
+     * @param board link to board
+     * @param textContainer text container
+     * @param oldText text before the edit
+     * @param newText text after the edit
+     */
+    public ChangeTextCommand(InteractiveBoard board, TextContainer textContainer, String oldText,
+                             String newText) {
+        super(board, textContainer);
+        this.oldText = oldText;
+        this.newText = newText;
+        sent = true;
+    }
+
     @Override
     public void execute(UserClient userClient) throws IllegalStateException {
         super.execute(userClient);
+        if (sent) {
+            sent = false;
+            return;
+        }
         TextContainer textContainer = getTextContainer();
         if (userClient.checkBoardRights(textContainer.getComponentStatus(), textContainer.getComponentOwner())) {
             checkBlocked(userClient, textContainer);
@@ -0,0 +1,60 @@
+package rslib.commands.container.text;
+
+import rslib.cs.client.user.UserClient;
+import rslib.cs.protocol.events.board.container.text.EditTextEvent;
+import rslib.gui.board.InteractiveBoard;
+import rslib.gui.container.text.TextContainer;
+import rslib.gui.container.text.TextOperation;
+
+/***
+ * Represents edit text command (sends one operation of the text being edited, it can not be undone itself,
+ * the whole edit is undone by change text command)
+ */
+public class EditTextCommand extends TextContainerCommand {
+
+    /** Text revision the operation is based on */
+    private int revision;
+
+    /** Text operation */
+    private TextOperation operation;
+
+    /***
+     * Constructor
+     * @param board link to board
+     * @param textContainer text container
+     * @param revision text revision the operation is based on
+     * @param operation text operation
+     */
+    public EditTextCommand(InteractiveBoard board, TextContainer textContainer, int revision,
+                           TextOperation operation) {
+        super(board, textContainer);
+        if (operation == null) {
+            throw new NullPointerException("EditTextCommand: operation is null!");
+        }
+        this.revision = revision;
+        this.operation = operation;
+    }
+
+    @Override
+    public void execute(UserClient userClient) throws IllegalStateException {
+        super.execute(userClient);
+        TextContainer textContainer = getTextContainer();
+        if (userClient.checkBoardRights(textContainer.getComponentStatus(), textContainer.getComponentOwner())) {
+            checkBlocked(userClient, textContainer);
+            if (operation.getTargetLength() > TextContainer.TEXT_MAXIMUM_SIZE) {
+                throw new IllegalStateException("Too much text! Not more than " +
+                        "100,000 symbols allowed!");
+            }
+            int hash = getBoard().hashCode();
+            userClient.addBoardEvent(new EditTextEvent(hash, id, revision, operation, userClient.getUsername()));
+        }
+        else {
+            throw new IllegalStateException("You have no rights to change text of this container!");
+        }
+    }
+
+    @Override
+    public void undo(UserClient userClient) throws IllegalStateException {
+        throw new IllegalStateException("EditTextCommand: command can not be undone!");
+    }
+}
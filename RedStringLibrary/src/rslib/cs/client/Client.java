@@ -1,8 +1,11 @@
 package rslib.cs.client;
 
+import rslib.cs.common.BufferPool;
+import rslib.cs.common.CommandExecutor;
 import rslib.cs.common.CommandInfo;
 import rslib.cs.common.UserConnection;
 import rslib.cs.common.ConnectConfiguration;
+import rslib.cs.common.FrameDecoder;
 import rslib.cs.protocol.RedStringInfo;
 import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.events.message.ShowMessageEvent;
@@ -17,10 +20,8 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.util.AbstractQueue;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /***
@@ -50,7 +51,7 @@ public abstract class Client implements Runnable {
     private boolean connected;
 
     /** Command executor */
-    protected Executor executor;
+    protected CommandExecutor executor;
 
     /** Disconnect listeners */
     private List<DisconnectListener> disconnectListeners;
@@ -73,7 +74,7 @@ public abstract class Client implements Runnable {
         disconnectListeners = new CopyOnWriteArrayList<>(); // concurrency
         logListeners = new CopyOnWriteArrayList<>(); // concurrency
         messageListeners = new CopyOnWriteArrayList<>(); // concurrency
-        executor = new Executor();
+        executor = new CommandExecutor(ConnectConfiguration.CLIENT_QUEUE_CAPACITY);
     }
 
     /***
@@ -208,9 +209,12 @@ public abstract class Client implements Runnable {
             ClassNotFoundException, ClassCastException, IllegalStateException {
         //TODO: norm timeout
         RedStringInfo info;
+        // meta data and content can come in several parts
+        FrameDecoder decoder = new FrameDecoder(BufferPool.getDefault());
         long time = System.currentTimeMillis();
-        while ((info = readInfoFromServer(socketChannel)) == null) {
+        while ((info = readInfoFromServer(socketChannel, decoder)) == null) {
             if (System.currentTimeMillis() - time > timeout) {
+                decoder.clear();
                 throw new ConnectException();
             }
         }
@@ -220,39 +224,29 @@ public abstract class Client implements Runnable {
     /***
      * Reads short command from server (connected with the connection)
      * @param socketChannel socket channel
-     * @return command
+     * @param decoder frame decoder (keeps partially read data)
+     * @return command, null if it was not read completely
      * @throws IOException if something went wrong
      * @throws ClassNotFoundException if data is wrong
      * @throws ClassCastException if data is wrong
      * @throws IllegalStateException if data is wrong
      */
-    protected RedStringInfo readInfoFromServer(SocketChannel socketChannel) throws IOException,
+    protected RedStringInfo readInfoFromServer(SocketChannel socketChannel, FrameDecoder decoder) throws IOException,
             ClassNotFoundException, ClassCastException,
             IllegalStateException {
-        int metaDataLength = ProtocolConstants.COMMAND_LENGTH + ProtocolConstants.INFO_INDEX_LENGTH;
-        ByteBuffer metaDataBuffer = ByteBuffer.allocate(metaDataLength);
-        int read = socketChannel.read(metaDataBuffer);
-        if (read != metaDataLength) {
+        CommandInfo command = decoder.read(socketChannel);
+        if (command == null) {
             return null;
         }
-        metaDataBuffer.flip();
-        int length = metaDataBuffer.getInt();
-        byte index = metaDataBuffer.get();
-        if (index != ProtocolConstants.CONNECT_INDEX) {
-            throw new IllegalStateException("Wrong command index");
-        }
-        ByteBuffer buffer;
         try {
-            buffer = ByteBuffer.allocate(length);
-        }
-        catch (OutOfMemoryError error) {
-            throw new IllegalStateException("Too big message");
+            if (command.getCommandType() != ProtocolConstants.CONNECT_INDEX) {
+                throw new IllegalStateException("Wrong command index");
+            }
+            return (RedStringInfo) DataManagement.inflate(command.getCommand());
         }
-        while(buffer.hasRemaining()) {
-            socketChannel.read(buffer);
+        finally {
+            command.release(); // returning the buffer to the pool
         }
-        buffer.flip();
-        return (RedStringInfo) DataManagement.inflate(buffer);
     }
 
     /***
@@ -299,6 +293,7 @@ public abstract class Client implements Runnable {
      */
     protected synchronized void disconnect(String message) {
         connected = false;
+        executor.shutdown();
         try {
             if (selector != null) {
                 if (connection != null) {
@@ -338,8 +333,19 @@ public abstract class Client implements Runnable {
      * @param commandIndex command index
      */
     protected void addCommandToSend(RedStringInfo command, byte commandIndex) {
+        addCommandToSend(command, commandIndex, null);
+    }
+
+    /***
+     * Adds client command to send
+     * @param command command to send
+     * @param commandIndex command index
+     * @param blobReferences ids of blobs that are sent as references (null to send all blobs)
+     */
+    protected void addCommandToSend(RedStringInfo command, byte commandIndex, Set<String> blobReferences) {
         try {
-            connection.addCommandToWrite(new CommandInfo(command, commandIndex));
+            // the command is linked by the selector thread, so writes never overlap
+            connection.queueCommandToWrite(new CommandInfo(command, commandIndex, blobReferences));
             selector.wakeup();
         }
         catch (IOException e) {
@@ -387,13 +393,24 @@ public abstract class Client implements Runnable {
         try {
             // try to read incoming command
             CommandInfo command = connection.readCommand();
-            if (command != null) { // if message was read completely4
-                executor.addCommand(command);
+            if (command != null && command.getCommandType() == ProtocolConstants.EPHEMERAL_INDEX) {
+                processIncomingCommand(command); // it changes nothing, so it does not wait behind other commands
+            }
+            else if (command != null) { // if message was read completely
+                final CommandInfo incoming = command;
+                // waits while the executor is busy, so the server stops sending (backpressure)
+                // (fails only if the client is already disconnected)
+                executor.put(new Runnable() {
+                    @Override
+                    public void run() {
+                        processIncomingCommand(incoming);
+                    }
+                });
             }
             return;
         }
         catch (IllegalStateException e) {
-            log("Received unexpected command (unexpected meta data)!");
+            log("Received unexpected command (" + e.getMessage() + ")!");
         } catch (IOException e3) {
             log("Error while reading command: " + e3.getMessage() + "!");
         }
@@ -407,10 +424,8 @@ public abstract class Client implements Runnable {
     private void processWritableKey(UserConnection connection) {
         try {
             if (connection.writeCommand()) {
-                log(connection.getWriteCommandClass() + " was written (" +
-                        connection.getWriteCommandLength() +" bytes)!");
-                connection.clearWriteData();
-                connection.checkWriteCommands(); // checking for remaining commands
+                log(connection.getWrittenCount() + " command(s) (last " + connection.getWriteCommandClass() +
+                        ") were written (" + connection.getWrittenBytes() + " bytes)!");
             }
         }
         catch (IOException e) {
@@ -457,67 +472,26 @@ public abstract class Client implements Runnable {
 
 
     /***
-     * For processing incoming commands
+     * Processes incoming command (called by the executor thread)
+     * @param command command
      */
-    class Executor implements Runnable {
-
-        /** Command queue */
-        private final AbstractQueue<CommandInfo> commands;
-
-        /***
-         * Constructor
-         */
-        Executor() {
-            commands = new ConcurrentLinkedQueue<>();
-        }
-
-        @Override
-        public void run() {
-            while (selector.isOpen()) {
-                if (commands.isEmpty()) {
-                    try {
-                        synchronized (commands) {
-                            commands.wait(1000);
-                        }
-                    }
-                    catch (InterruptedException | IllegalMonitorStateException e) {
-                        // can not be
-                        log("Fatal error in executor thread: " + e.getMessage() + "!");
-                        disconnect(null);
-                    }
-                }
-                else {
-                    while (! commands.isEmpty()) {
-                        CommandInfo command = commands.poll();
-                        try {
-                            processReadCommand(command);
-                            continue;
-                        }
-                        catch (IllegalStateException e) {
-                            log("Received unexpected command (unexpected index)!");
-                        } catch (ClassNotFoundException | ClassCastException e1) {
-                            log("Received unexpected command: " + e1.getMessage() + "!");
-                        } catch (IOException e3) {
-                            log("Error while processing command: " + e3.getMessage() + "!");
-                        }
-                        disconnect(null);
-                    }
-                }
-            }
+    private void processIncomingCommand(CommandInfo command) {
+        try {
+            processReadCommand(command);
+            return;
         }
-
-        public void addCommand(CommandInfo command) {
-            commands.add(command);
-            try {
-                synchronized (commands) {
-                    commands.notify();
-                }
-            }
-            catch (IllegalMonitorStateException e) {
-                // can not be
-                log("Fatal error while adding command to execute: " + e.getMessage() + "!");
-                disconnect(null);
-            }
+        catch (IllegalStateException e) {
+            log("Received unexpected command (unexpected index)!");
+        } catch (ClassNotFoundException | ClassCastException e1) {
+            log("Received unexpected command: " + e1.getMessage() + "!");
+        } catch (IOException e3) {
+            log("Error while processing command: " + e3.getMessage() + "!");
+        } catch (RuntimeException e4) { // ephemeral commands are processed by the selector thread
+            log("Error while processing command: " + e4 + "!");
         }
+        finally {
+            command.release(); // returning the buffer to the pool
+        }
+        disconnect(null);
     }
 }
@@ -12,6 +12,9 @@ import rslib.cs.protocol.events.board.BoardEvent;
 import rslib.cs.protocol.events.chat.ChatEvent;
 import rslib.cs.protocol.events.main_client.*;
 import rslib.cs.protocol.events.message.ShowMessageEvent;
+import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.events.setup.BlobEvent;
+import rslib.cs.protocol.events.setup.BlobRequest;
 import rslib.cs.protocol.events.setup.DeleteBoardEvent;
 import rslib.cs.protocol.events.setup.SetupEvent;
 import rslib.cs.protocol.requests.to_lobby.user.*;
@@ -27,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SocketChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /***
@@ -58,6 +62,21 @@ public class UserClient extends Client {
     /** Board message listeners */
     private List<BoardMessageListener> boardMessageListeners;
 
+    /** Local cache of blobs (content of images and files) */
+    private BlobStore blobStore;
+
+    /** Ids of blobs that the server has (they are sent as references) */
+    private Set<String> serverBlobs;
+
+    /** Received board and setup events waiting for blobs (in receiving order) */
+    private Queue<ClientEvent> pendingEvents;
+
+    /** Ids of requested blobs that have not come yet */
+    private Set<String> requestedBlobs;
+
+    /** Ids of blobs the server could not send */
+    private Set<String> failedBlobs;
+
     /**
      * Constructor (protected because of factory pattern)
      * @param host server host
@@ -70,6 +89,12 @@ public class UserClient extends Client {
         boardListeners = new CopyOnWriteArrayList<>(); // concurrency
         setupListeners = new CopyOnWriteArrayList<>(); // concurrency
         boardMessageListeners = new CopyOnWriteArrayList<>(); // concurrency
+        blobStore = new BlobStore(new File(ConnectConfiguration.CLIENT_BLOB_DIRECTORY),
+                ConnectConfiguration.CLIENT_BLOB_CACHE_SIZE);
+        serverBlobs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()); // concurrency
+        pendingEvents = new ArrayDeque<>();
+        requestedBlobs = new HashSet<>();
+        failedBlobs = new HashSet<>();
         users = new HashMap<>();
         banned = new HashMap<>();
     }
@@ -250,11 +275,18 @@ public class UserClient extends Client {
         try {
             AnswerCommand answer = (AnswerCommand) userClient.getAnswerFromServer(socketChannel, TIMEOUT);
             byte answerValue = answer.getAnswer();
+            if (answerValue == ProtocolConstants.ANSWER_OK &&
+                    answer.getDigestVersion() != ProtocolConstants.CONTAINERS_DIGEST) { // board can not be synchronized
+                userClient.disconnect(socketChannel, "Server is too old for this client, please update it!");
+                return null;
+            }
             if (answerValue == ProtocolConstants.ANSWER_OK) {
                 userClient.lobbyInfo = lobbyInfo;
                 userClient.log("Logged in to lobby: " + lobbyInfo.getLobbyName() + "!");
-                userClient.start(new UserConnection(new User(username, Status.COMMON),
-                        socketChannel), socketChannel);
+                UserConnection userConnection = new UserConnection(new User(username, Status.COMMON),
+                        socketChannel);
+                userConnection.setWireFormat(answer.getWireFormat());
+                userClient.start(userConnection, socketChannel);
                 return userClient;
             } else if (answerValue == ProtocolConstants.ANSWER_CANCEL) {
                 userClient.disconnect(socketChannel, answer.getMessage());
@@ -329,13 +361,20 @@ public class UserClient extends Client {
         try {
             AnswerCommand answer = (AnswerCommand) userClient.getAnswerFromServer(socketChannel, TIMEOUT);
             byte answerValue = answer.getAnswer();
+            if (answerValue == ProtocolConstants.ANSWER_OK &&
+                    answer.getDigestVersion() != ProtocolConstants.CONTAINERS_DIGEST) { // board can not be synchronized
+                userClient.disconnect(socketChannel, "Server is too old for this client, please update it!");
+                return null;
+            }
             if (answerValue == ProtocolConstants.ANSWER_OK) {
                 String newName = answer.getMessage();
                 lobbyInfo.setLobbyName(newName);
                 userClient.log("Created lobby: " + newName + "!");
                 userClient.lobbyInfo = lobbyInfo;
-                userClient.start(new UserConnection(new User(username, Status.LOBBY_ROOT),
-                        socketChannel), socketChannel);
+                UserConnection userConnection = new UserConnection(new User(username, Status.LOBBY_ROOT),
+                        socketChannel);
+                userConnection.setWireFormat(answer.getWireFormat());
+                userClient.start(userConnection, socketChannel);
                 return userClient;
             } else if (answerValue == ProtocolConstants.ANSWER_CANCEL) {
                 userClient.disconnect(socketChannel, answer.getMessage());
@@ -386,6 +425,7 @@ public class UserClient extends Client {
         boardListeners.clear();
         setupListeners.clear();
         boardMessageListeners.clear();
+        serverBlobs.clear();
     }
 
     @Override
@@ -395,6 +435,32 @@ public class UserClient extends Client {
         byte commandType = command.getCommandType();
         ClientEvent clientEvent = (ClientEvent) DataManagement.inflate(buffer);
         log("Received " + clientEvent.getClass().getSimpleName() + "!");
+        if (commandType == ProtocolConstants.EPHEMERAL_INDEX) { // called by the selector thread
+            dispatch(clientEvent, ProtocolConstants.BOARD_INDEX);
+            return;
+        }
+        if (clientEvent instanceof BlobEvent) {
+            hearBlob((BlobEvent) clientEvent);
+            return;
+        }
+        if (clientEvent instanceof BoardEvent || clientEvent instanceof SetupEvent) {
+            // events are delivered in order, so the next ones wait for blobs too
+            if (! pendingEvents.isEmpty() || ! resolveBlobs(clientEvent, new HashSet<String>())) {
+                pendingEvents.add(clientEvent);
+                requestBlobs();
+                return;
+            }
+        }
+        dispatch(clientEvent, commandType);
+    }
+
+    /***
+     * Delivers received event to listeners
+     * @param clientEvent event
+     * @param commandType command index
+     * @throws IllegalStateException if command index is unexpected
+     */
+    private void dispatch(ClientEvent clientEvent, byte commandType) throws IllegalStateException {
         switch (commandType) {
             case ProtocolConstants.CLIENT_INDEX: {
                 MainClientEvent mce = (MainClientEvent) clientEvent;
@@ -443,6 +509,116 @@ public class UserClient extends Client {
         throw new IllegalStateException();
     }
 
+    /***
+     * Resolves blobs of the event from the local cache, stores received blobs there
+     * @param info event
+     * @param missing set to add ids of missing blobs to
+     * @return true if all blobs are resolved, false otherwise
+     */
+    private boolean resolveBlobs(RedStringInfo info, Set<String> missing) {
+        for (BlobHolder blob : DataManagement.collectBlobs(info)) {
+            String id = blob.getBlobId();
+            serverBlobs.add(id); // it came from the server
+            try {
+                if (blob.isResolved()) {
+                    blobStore.put(id, blob.getBlob());
+                }
+                else {
+                    byte[] data = BlobStore.isValidId(id) ? blobStore.get(id) : null;
+                    if (data == null) {
+                        missing.add(id);
+                    }
+                    else {
+                        blob.resolve(data);
+                    }
+                }
+            }
+            catch (IOException e) {
+                log("Unable to work with blob " + id + ": " + e.getMessage());
+                missing.add(id);
+            }
+        }
+        return missing.isEmpty();
+    }
+
+    /***
+     * Requests missing blobs of pending events (several at once, they are big)
+     */
+    private void requestBlobs() {
+        List<String> ids = new ArrayList<>();
+        for (ClientEvent event : pendingEvents) {
+            Set<String> missing = new HashSet<>();
+            resolveBlobs(event, missing);
+            for (String id : missing) {
+                if (requestedBlobs.size() >= ConnectConfiguration.BLOB_REQUEST_SIZE) {
+                    break;
+                }
+                if (! failedBlobs.contains(id) && requestedBlobs.add(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        if (! ids.isEmpty()) {
+            addCommandToSend(new BlobRequest(ids), ProtocolConstants.SETUP_INDEX);
+        }
+    }
+
+    /***
+     * Handles received blob, delivers pending events that are resolved now
+     * @param blobEvent blob event
+     */
+    private void hearBlob(BlobEvent blobEvent) {
+        String id = blobEvent.getId();
+        requestedBlobs.remove(id);
+        byte[] blob = blobEvent.getBlob();
+        BlobHolder holder = findPendingBlob(id);
+        if (blob != null && holder != null && holder.isContent(blob)) {
+            try {
+                blobStore.put(id, blob);
+            }
+            catch (IOException e) {
+                log("Unable to cache blob " + id + ": " + e.getMessage());
+            }
+        }
+        else {
+            log("Server could not send blob " + id + "!");
+            failedBlobs.add(id);
+        }
+        while (! pendingEvents.isEmpty()) {
+            ClientEvent event = pendingEvents.peek();
+            Set<String> missing = new HashSet<>();
+            if (! resolveBlobs(event, missing)) {
+                missing.retainAll(failedBlobs);
+                if (missing.isEmpty()) {
+                    break; // still waiting
+                }
+                log("Dropped " + event.getClass().getSimpleName() + " without blobs!");
+            }
+            else {
+                dispatch(event, event instanceof BoardEvent ? ProtocolConstants.BOARD_INDEX :
+                        ProtocolConstants.SETUP_INDEX);
+            }
+            pendingEvents.poll();
+        }
+        requestBlobs();
+    }
+
+
+    /***
+     * Finds blob holder of pending events
+     * @param id blob id
+     * @return blob holder, null if no pending event waits for the blob
+     */
+    private BlobHolder findPendingBlob(String id) {
+        for (ClientEvent event : pendingEvents) {
+            for (BlobHolder blob : DataManagement.collectBlobs(event)) {
+                if (id.equals(blob.getBlobId())) {
+                    return blob;
+                }
+            }
+        }
+        return null;
+    }
 
     @Override
     protected void log(String message) {
@@ -496,7 +672,7 @@ public class UserClient extends Client {
      * @param command command to send
      */
     public void addSetupEvent(SetupEvent command) {
-        addCommandToSend(command, ProtocolConstants.SETUP_INDEX);
+        addBlobCommandToSend(command, ProtocolConstants.SETUP_INDEX);
     }
 
     /***
@@ -504,7 +680,33 @@ public class UserClient extends Client {
      * @param command command to send
      */
     public void addBoardEvent(BoardEvent command) {
-        addCommandToSend(command, ProtocolConstants.BOARD_INDEX);
+        addBlobCommandToSend(command, ProtocolConstants.BOARD_INDEX);
+    }
+
+    /***
+     * Adds ephemeral board command to send (it changes nothing, like point, so it goes
+     * before other queued commands and is not checked by the board hash)
+     * @param command command to send
+     */
+    public void addEphemeralEvent(BoardEvent command) {
+        addCommandToSend(command, ProtocolConstants.EPHEMERAL_INDEX);
+    }
+
+    /***
+     * Adds command with blobs to send. Blobs the server has are sent as references
+     * @param command command to send
+     * @param commandIndex command index
+     */
+    private void addBlobCommandToSend(RedStringInfo command, byte commandIndex) {
+        List<BlobHolder> blobs = DataManagement.collectBlobs(command);
+        if (blobs.isEmpty()) {
+            addCommandToSend(command, commandIndex);
+            return;
+        }
+        addCommandToSend(command, commandIndex, serverBlobs);
+        for (BlobHolder blob : blobs) {
+            serverBlobs.add(blob.getBlobId()); // it is sent with the command
+        }
     }
 
     /***
@@ -0,0 +1,44 @@
+package rslib.cs.common;
+
+/***
+ * Represents a model with big content that is stored as a blob (addressed by its content hash).
+ * The content can be released, then only the blob id is kept and transferred
+ */
+public interface BlobHolder {
+
+    /***
+     * Returns blob id (SHA-256 of the content)
+     * @return blob id
+     */
+    public String getBlobId();
+
+    /***
+     * Checks that the blob is the content of this holder (its id is equal to the blob id)
+     * @param blob content
+     * @return true if the blob is the content
+     */
+    public boolean isContent(byte[] blob);
+
+    /***
+     * Defines if the content is available
+     * @return true if the content is available, false if only the blob id is known
+     */
+    public boolean isResolved();
+
+    /***
+     * Returns the content as bytes
+     * @return content, null if it is not resolved
+     */
+    public byte[] getBlob();
+
+    /***
+     * Sets the content
+     * @param blob content (its id must be equal to the blob id)
+     */
+    public void resolve(byte[] blob);
+
+    /***
+     * Drops the content, only the blob id is kept
+     */
+    public void release();
+}
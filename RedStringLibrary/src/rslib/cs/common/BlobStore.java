@@ -0,0 +1,155 @@
+package rslib.cs.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * Content-addressed blob store. Blobs are kept on disk (file name is the blob id),
+ * recently used blobs are cached in memory
+ */
+public class BlobStore {
+
+    /** Directory with blobs */
+    private final File directory;
+
+    /** Maximum size of cached blobs (in bytes) */
+    private final long cacheCapacity;
+
+    /** Cached blobs (in access order, the eldest is evicted first) */
+    private final LinkedHashMap<String, byte[]> cache;
+
+    /** Size of cached blobs (in bytes) */
+    private long cacheSize;
+
+    /***
+     * Constructor
+     * @param directory directory with blobs (created if it does not exist)
+     * @param cacheCapacity maximum size of cached blobs (in bytes)
+     */
+    public BlobStore(File directory, long cacheCapacity) {
+        if (directory == null) {
+            throw new NullPointerException("BlobStore: directory is null!");
+        }
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("BlobStore: cacheCapacity is negative!");
+        }
+        this.directory = directory;
+        this.cacheCapacity = cacheCapacity;
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        directory.mkdirs();
+    }
+
+    /***
+     * Stores blob (nothing happens if it is already stored)
+     * @param id blob id
+     * @param blob blob content
+     * @throws IOException if blob could not be written
+     */
+    public void put(String id, byte[] blob) throws IOException {
+        File file = getFile(id);
+        if (! file.exists()) {
+            // writing to a temporary file first, so a half-written blob is never read
+            File temp = File.createTempFile(id, ".tmp", directory);
+            try {
+                Files.write(temp.toPath(), blob);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        cache(id, blob);
+    }
+
+    /***
+     * Returns blob
+     * @param id blob id
+     * @return blob content, null if there is no such blob
+     * @throws IOException if blob could not be read
+     */
+    public byte[] get(String id) throws IOException {
+        synchronized (this) {
+            byte[] blob = cache.get(id);
+            if (blob != null) {
+                return blob;
+            }
+        }
+        File file = getFile(id);
+        if (! file.exists()) {
+            return null;
+        }
+        byte[] blob = Files.readAllBytes(file.toPath());
+        cache(id, blob);
+        return blob;
+    }
+
+    /***
+     * Defines if blob is stored
+     * @param id blob id
+     * @return true if blob is stored, false otherwise
+     */
+    public boolean contains(String id) {
+        synchronized (this) {
+            if (cache.containsKey(id)) {
+                return true;
+            }
+        }
+        return getFile(id).exists();
+    }
+
+    /***
+     * Puts blob into the memory cache, evicts the least recently used ones
+     * @param id blob id
+     * @param blob blob content
+     */
+    private synchronized void cache(String id, byte[] blob) {
+        if (blob.length > cacheCapacity) {
+            return;
+        }
+        byte[] old = cache.put(id, blob);
+        if (old != null) {
+            cacheSize -= old.length;
+        }
+        cacheSize += blob.length;
+        Iterator<Map.Entry<String, byte[]>> iterator = cache.entrySet().iterator();
+        while (cacheSize > cacheCapacity && iterator.hasNext()) {
+            cacheSize -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /***
+     * Returns blob file
+     * @param id blob id
+     * @return blob file
+     */
+    private File getFile(String id) {
+        if (! isValidId(id)) { // the id comes from the network, it must not be a path
+            throw new IllegalArgumentException("BlobStore: wrong blob id!");
+        }
+        return new File(directory, id);
+    }
+
+    /***
+     * Checks blob id (64 lowercase hex digits)
+     * @param id blob id
+     * @return true if id is valid, false otherwise
+     */
+    public static boolean isValidId(String id) {
+        if (id == null || id.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); ++ i) {
+            char c = id.charAt(i);
+            if (! ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+package rslib.cs.common;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Represents a pool of direct buffers with size classes (for reading commands)
+ * Buffers that are not returned to the pool are simply collected by GC
+ */
+public class BufferPool {
+
+    /** Buffer sizes of classes (small ones for events, large ones for images and files) */
+    private static final int[] CLASS_SIZES = {512, 8 * 1024, 128 * 1024, 1024 * 1024};
+
+    /** Maximum free buffers kept for each class */
+    private static final int[] CLASS_LIMITS = {1024, 256, 32, 8};
+
+    /** Pool used by connections */
+    private static final BufferPool defaultPool = new BufferPool();
+
+    /** Free buffers of each class */
+    private final List<AbstractQueue<ByteBuffer>> free;
+
+    /** Free buffers count of each class (size of ConcurrentLinkedQueue is not constant time) */
+    private final AtomicInteger[] freeCount;
+
+    /** Number of acquired buffers */
+    private final AtomicLong acquiredCount;
+
+    /** Number of acquired buffers that were taken from the pool */
+    private final AtomicLong reusedCount;
+
+    /** Number of allocated buffers */
+    private final AtomicLong allocatedCount;
+
+    /** Number of allocated bytes */
+    private final AtomicLong allocatedBytes;
+
+    /** Number of buffers returned to the pool */
+    private final AtomicLong releasedCount;
+
+    /***
+     * Constructor
+     */
+    public BufferPool() {
+        free = new ArrayList<>(CLASS_SIZES.length);
+        freeCount = new AtomicInteger[CLASS_SIZES.length];
+        for (int i = 0; i < CLASS_SIZES.length; ++ i) {
+            free.add(new ConcurrentLinkedQueue<ByteBuffer>()); // concurrency
+            freeCount[i] = new AtomicInteger();
+        }
+        acquiredCount = new AtomicLong();
+        reusedCount = new AtomicLong();
+        allocatedCount = new AtomicLong();
+        allocatedBytes = new AtomicLong();
+        releasedCount = new AtomicLong();
+    }
+
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /***
+     * Takes buffer for data of the specified length
+     * @param length data length
+     * @return cleared buffer with limit set to the length (heap buffer if length is bigger than all classes)
+     * @throws OutOfMemoryError if there is no memory
+     */
+    public ByteBuffer acquire(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("BufferPool: length is negative!");
+        }
+        acquiredCount.incrementAndGet();
+        int index = classIndex(length);
+        ByteBuffer buffer;
+        if (index == -1) { // too big to keep it in the pool
+            buffer = ByteBuffer.allocate(length);
+            allocatedCount.incrementAndGet();
+            allocatedBytes.addAndGet(length);
+            return buffer;
+        }
+        buffer = free.get(index).poll();
+        if (buffer != null) {
+            freeCount[index].decrementAndGet();
+            reusedCount.incrementAndGet();
+        }
+        else {
+            buffer = ByteBuffer.allocateDirect(CLASS_SIZES[index]);
+            allocatedCount.incrementAndGet();
+            allocatedBytes.addAndGet(CLASS_SIZES[index]);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /***
+     * Returns buffer to the pool (the buffer must not be used after that)
+     * @param buffer buffer taken by acquire
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || ! buffer.isDirect()) {
+            return;
+        }
+        for (int i = 0; i < CLASS_SIZES.length; ++ i) {
+            if (buffer.capacity() == CLASS_SIZES[i]) {
+                if (freeCount[i].incrementAndGet() > CLASS_LIMITS[i]) {
+                    freeCount[i].decrementAndGet(); // enough free buffers, leave it to GC
+                    return;
+                }
+                free.get(i).add(buffer);
+                releasedCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /***
+     * Finds the smallest class for the length
+     * @param length data length
+     * @return class index, -1 if the length is too big
+     */
+    private static int classIndex(int length) {
+        for (int i = 0; i < CLASS_SIZES.length; ++ i) {
+            if (length <= CLASS_SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    public long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        String s = "Buffers: acquired " + getAcquiredCount() + ", reused " + getReusedCount() +
+                ", allocated " + getAllocatedCount() + " (" + getAllocatedBytes() + " bytes), released " +
+                getReleasedCount() + "\nFree buffers:";
+        for (int i = 0; i < CLASS_SIZES.length; ++ i) {
+            s += " " + CLASS_SIZES[i] + " bytes - " + freeCount[i].get() + ";";
+        }
+        return s;
+    }
+}
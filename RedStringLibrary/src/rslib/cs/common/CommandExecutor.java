@@ -0,0 +1,177 @@
+package rslib.cs.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Runs incoming commands on a dedicated thread
+ * Commands are taken from a bounded blocking queue in batches
+ */
+public class CommandExecutor implements Runnable {
+
+    /** Maximum commands taken from the queue at once */
+    private static final int BATCH_SIZE = 64;
+
+    /** Time to wait for free space before checking if executor still works (ms) */
+    private static final long PUT_TIMEOUT = 100;
+
+    /** Command queue */
+    private final BlockingQueue<Runnable> tasks;
+
+    /** Queue capacity */
+    private final int capacity;
+
+    /** Current batch (used by executor thread only) */
+    private final List<Runnable> batch;
+
+    /** Maximum observed queue depth */
+    private final AtomicInteger maxQueueDepth;
+
+    /** Number of executed commands */
+    private final AtomicLong executedCount;
+
+    /** Number of rejected commands */
+    private final AtomicLong rejectedCount;
+
+    /** If executor is working */
+    private volatile boolean working;
+
+    /** Executor thread */
+    private volatile Thread thread;
+
+    /***
+     * Constructor
+     * @param capacity queue capacity
+     */
+    public CommandExecutor(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("CommandExecutor: capacity must be positive!");
+        }
+        this.capacity = capacity;
+        tasks = new ArrayBlockingQueue<>(capacity); // concurrency
+        batch = new ArrayList<>(BATCH_SIZE);
+        maxQueueDepth = new AtomicInteger();
+        executedCount = new AtomicLong();
+        rejectedCount = new AtomicLong();
+        working = true;
+    }
+
+    /***
+     * Adds command if there is free space in the queue
+     * @param task command
+     * @return true if added, false if the queue is full or executor is stopped
+     */
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("CommandExecutor: task is null!");
+        }
+        if (! working || ! tasks.offer(task)) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        updateMaxQueueDepth();
+        return true;
+    }
+
+    /***
+     * Adds command waiting for free space in the queue (blocks the caller while the queue is full)
+     * @param task command
+     * @return true if added, false if executor was stopped or caller was interrupted
+     */
+    public boolean put(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("CommandExecutor: task is null!");
+        }
+        try {
+            while (working) {
+                if (tasks.offer(task, PUT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    updateMaxQueueDepth();
+                    return true;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (working) {
+            try {
+                batch.add(tasks.take());
+            }
+            catch (InterruptedException e) {
+                // executor was stopped
+                break;
+            }
+            tasks.drainTo(batch, BATCH_SIZE - 1);
+            for (Runnable task : batch) {
+                if (! working) {
+                    break;
+                }
+                task.run();
+            }
+            executedCount.addAndGet(batch.size());
+            batch.clear();
+        }
+        thread = null;
+    }
+
+    /***
+     * Stops executor, waiting commands are discarded
+     */
+    public void shutdown() {
+        working = false;
+        tasks.clear();
+        Thread current = thread;
+        if (current != null && current != Thread.currentThread()) {
+            current.interrupt();
+        }
+    }
+
+    /***
+     * Updates maximum observed queue depth
+     */
+    private void updateMaxQueueDepth() {
+        int depth = tasks.size();
+        int max;
+        while (depth > (max = maxQueueDepth.get())) {
+            if (maxQueueDepth.compareAndSet(max, depth)) {
+                break;
+            }
+        }
+    }
+
+    public boolean isWorking() {
+        return working;
+    }
+
+    public int getQueueDepth() {
+        return tasks.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -2,25 +2,65 @@ package rslib.cs.common;
 
 import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.codec.WireCodec;
+import rslib.cs.protocol.events.board.PointEvent;
+import rslib.cs.protocol.events.board.common.MoveEvent;
+import rslib.cs.protocol.events.board.common.ResizeEvent;
+import rslib.cs.protocol.events.setup.BlobEvent;
 import rslib.util.DataManagement;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /***
  * Holds info about command to write to node
+ * Command can be held in serialized and binary format (each one is made on demand)
+ * The encoded command is shared by all receivers, each of them writes its own read-only view
  */
 public class CommandInfo {
 
-    /** Command itself */
+    /** Commands of this size and bigger are kept in direct memory (written without copying) */
+    private static final int DIRECT_THRESHOLD = 8 * 1024;
+
+    /** Write priorities (commands of lower priority values are written first) */
+    public static final int EPHEMERAL_PRIORITY = 0; // points
+    public static final int INTERACTIVE_PRIORITY = 1; // chat and messages
+    public static final int ORDERED_PRIORITY = 2; // board, setup and requests, they are written in order
+    public static final int BULK_PRIORITY = 3; // blobs, the receiver waits for them by ids, not by order
+    public static final int PRIORITIES = 4;
+
+    /** Command itself (serialized) */
     private ByteBuffer command;
 
+    /** Command itself (binary) */
+    private ByteBuffer binaryCommand;
+
+    /** Command source (to encode it on demand, may be null) */
+    private RedStringInfo info;
+
     /** Command type */
     private byte commandType;
 
     /** Command class */
     private String commandClass;
 
+    /** Key of commands this command supersedes (null if the command supersedes nothing) */
+    private String supersedeKey;
+
+    /** If the command can be dropped when a command with the same key comes (it is only an intermediate state) */
+    private boolean droppable;
+
+    /** Pool of the received command buffer (null if the buffer is not pooled) */
+    private final BufferPool pool;
+
+    /** Pooled buffer (returned to the pool when nobody uses the command) */
+    private final ByteBuffer pooledBuffer;
+
+    /** Number of the pooled buffer users (shared by relayed commands) */
+    private final AtomicInteger references;
+
     /***
      * Constructor
      * @param command command itself
@@ -36,6 +76,58 @@ public class CommandInfo {
         this.command = command;
         this.commandType = commandType;
         this.commandClass = commandClass;
+        pool = null;
+        pooledBuffer = null;
+        references = null;
+    }
+
+    /***
+     * Constructor (for received command in pooled buffer)
+     * The command has one reference, it must be released after processing
+     * @param command command itself
+     * @param commandType command type
+     * @param pool buffer pool
+     */
+    public CommandInfo(ByteBuffer command, byte commandType, BufferPool pool) {
+        if (command == null) {
+            throw new NullPointerException("CommandInfo: command is null!");
+        }
+        if (pool == null) {
+            throw new NullPointerException("CommandInfo: pool is null!");
+        }
+        if (! (commandType >= ProtocolConstants.MIN_INDEX && commandType <= ProtocolConstants.MAX_INDEX)) {
+            throw new IllegalArgumentException("CommandInfo: wrong commandType!");
+        }
+        this.command = command;
+        this.commandType = commandType;
+        this.pool = pool;
+        pooledBuffer = command;
+        references = new AtomicInteger(1);
+    }
+
+    /***
+     * Constructor (for relaying received command, shares the pooled buffer and retains it)
+     * @param source received command
+     * @param commandType command type
+     * @param commandClass command class
+     * @param info decoded command (may be null)
+     */
+    private CommandInfo(CommandInfo source, byte commandType, String commandClass, RedStringInfo info) {
+        ByteBuffer buffer = source.getCommand();
+        if (WireCodec.isBinary(buffer)) {
+            this.binaryCommand = buffer;
+        }
+        else {
+            this.command = buffer;
+        }
+        this.commandType = commandType;
+        this.commandClass = commandClass;
+        this.info = info;
+        setSupersedeKey(info);
+        pool = source.pool;
+        pooledBuffer = source.pooledBuffer;
+        references = source.references;
+        retain();
     }
 
     /***
@@ -45,13 +137,81 @@ public class CommandInfo {
      * @throws IOException if something went wrong
      */
     public CommandInfo(RedStringInfo command, byte commandType) throws IOException {
+        this(command, commandType, null);
+    }
+
+    /***
+     * Constructor
+     * @param command command
+     * @param commandType command type
+     * @param blobReferences ids of blobs that are known to the receiver, they are sent
+     *                       as references (null to send all blobs)
+     * @throws IOException if something went wrong
+     */
+    public CommandInfo(RedStringInfo command, byte commandType, Set<String> blobReferences)
+            throws IOException {
         if (command == null) {
             throw new NullPointerException("CommandInfo: command is null!");
         }
         if (!(commandType >= ProtocolConstants.MIN_INDEX && commandType <= ProtocolConstants.MAX_INDEX)) {
             throw new IllegalArgumentException("CommandInfo: wrong commandType!");
         }
-        byte[] serialized = DataManagement.serialize(command);
+        this.info = command;
+        this.commandType = commandType;
+        this.commandClass = command.getClass().getSimpleName();
+        setSupersedeKey(command);
+        pool = null;
+        pooledBuffer = null;
+        references = null;
+        if (WireCodec.hasCodec(command)) {
+            binaryCommand = WireCodec.encode(command);
+        }
+        else {
+            this.command = serialize(command, blobReferences);
+        }
+    }
+
+    /***
+     * Defines which queued commands are superseded by this one
+     * (moves and resizes of the same component, points of the same user)
+     * @param info command (may be null)
+     */
+    private void setSupersedeKey(RedStringInfo info) {
+        if (info instanceof MoveEvent) {
+            MoveEvent event = (MoveEvent) info;
+            supersedeKey = "move " + event.getId();
+            droppable = ! event.isUnblock();
+        }
+        else if (info instanceof ResizeEvent) {
+            ResizeEvent event = (ResizeEvent) info;
+            supersedeKey = "resize " + event.getId();
+            droppable = ! event.isUnblock();
+        }
+        else if (info instanceof PointEvent) {
+            supersedeKey = "point " + ((PointEvent) info).getUsername();
+            droppable = true;
+        }
+    }
+
+    /***
+     * Defines if this command is superseded by another one (it can be dropped without losing the state)
+     * @param other newer command
+     * @return true if this command can be dropped, false otherwise
+     */
+    public boolean isSupersededBy(CommandInfo other) {
+        return droppable && supersedeKey != null && supersedeKey.equals(other.supersedeKey);
+    }
+
+    /***
+     * Serializes command to buffer
+     * @param info command
+     * @param blobReferences ids of blobs that are sent as references (may be null)
+     * @return buffer
+     * @throws IOException if something went wrong
+     */
+    private static ByteBuffer serialize(RedStringInfo info, Set<String> blobReferences) throws IOException {
+        byte[] serialized = blobReferences == null ? DataManagement.serialize(info) :
+                DataManagement.serialize(info, blobReferences);
         int length = serialized.length;
         ByteBuffer buffer;
         try {
@@ -62,13 +222,119 @@ public class CommandInfo {
         }
         buffer.put(serialized);
         buffer.flip();
-        this.command = buffer;
-        this.commandType = commandType;
-        this.commandClass = command.getClass().getSimpleName();
+        return buffer;
     }
 
+    /***
+     * Returns command in the specified wire format to write it
+     * Falls back to serialized format if binary one is not available
+     * @param wireFormat wire format
+     * @return new read-only view of the command (the shared data is not copied)
+     * @throws IOException if command can not be encoded
+     */
+    public synchronized ByteBuffer getCommand(byte wireFormat) throws IOException {
+        if (wireFormat >= ProtocolConstants.BINARY_FORMAT) {
+            if (binaryCommand == null && WireCodec.hasCodec(info)) {
+                binaryCommand = WireCodec.encode(info);
+            }
+            if (binaryCommand != null) {
+                binaryCommand = toDirect(binaryCommand);
+                return view(binaryCommand);
+            }
+        }
+        if (command == null) {
+            if (info == null) {
+                throw new IOException("Unable to convert " + commandClass + " to serialized format!");
+            }
+            command = serialize(info, null);
+        }
+        command = toDirect(command);
+        return view(command);
+    }
+
+    /***
+     * Copies big command to direct memory (once), so it is written to all receivers without copying
+     * @param buffer command
+     * @return direct buffer for big command, the same buffer otherwise
+     * @throws IOException if there is no memory
+     */
+    private static ByteBuffer toDirect(ByteBuffer buffer) throws IOException {
+        if (buffer.isDirect() || buffer.limit() < DIRECT_THRESHOLD) {
+            return buffer;
+        }
+        ByteBuffer direct;
+        try {
+            direct = ByteBuffer.allocateDirect(buffer.limit());
+        }
+        catch (OutOfMemoryError e) {
+            throw new IOException(e.getMessage());
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.rewind();
+        direct.put(data);
+        direct.flip();
+        return direct;
+    }
+
+    /***
+     * Creates read-only view of the whole command
+     * @param buffer command
+     * @return view with own position
+     */
+    private static ByteBuffer view(ByteBuffer buffer) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.rewind();
+        return view;
+    }
+
+    /***
+     * Creates command for relaying this received command (the buffer is shared, not copied)
+     * The new command has its own reference, it must be released too
+     * @param commandType command type
+     * @param commandClass command class
+     * @param info decoded command (may be null)
+     * @return command to relay
+     */
+    public CommandInfo relay(byte commandType, String commandClass, RedStringInfo info) {
+        if (! (commandType >= ProtocolConstants.MIN_INDEX && commandType <= ProtocolConstants.MAX_INDEX)) {
+            throw new IllegalArgumentException("CommandInfo: wrong commandType!");
+        }
+        return new CommandInfo(this, commandType, commandClass, info);
+    }
+
+    /***
+     * Adds reference to the pooled buffer (nothing happens if the buffer is not pooled)
+     */
+    public void retain() {
+        if (references != null) {
+            references.incrementAndGet();
+        }
+    }
+
+    /***
+     * Removes reference to the pooled buffer, the last one returns the buffer to the pool
+     * (nothing happens if the buffer is not pooled)
+     */
+    public void release() {
+        if (references != null && references.decrementAndGet() == 0) {
+            pool.release(pooledBuffer);
+        }
+    }
+
+    /***
+     * Returns command in the format it was created (or received)
+     * @return command
+     */
     public ByteBuffer getCommand() {
-        return command;
+        return command != null ? command : binaryCommand;
+    }
+
+    /***
+     * Returns command source
+     * @return decoded command, null if it is not known (received command that was not decoded)
+     */
+    public RedStringInfo getInfo() {
+        return info;
     }
 
     public byte getCommandType() {
@@ -78,4 +344,26 @@ public class CommandInfo {
     public String getCommandClass() {
         return commandClass;
     }
+
+    public String getSupersedeKey() {
+        return supersedeKey;
+    }
+
+    /***
+     * Returns write priority of the command
+     * @return priority (commands of lower values are written first)
+     */
+    public int getPriority() {
+        switch (commandType) {
+            case ProtocolConstants.EPHEMERAL_INDEX:
+                return EPHEMERAL_PRIORITY;
+            case ProtocolConstants.CONNECT_INDEX:
+            case ProtocolConstants.CHAT_INDEX:
+            case ProtocolConstants.MESSAGE_INDEX:
+            case ProtocolConstants.BOARD_MESSAGE_INDEX:
+                return INTERACTIVE_PRIORITY;
+            default:
+                return info instanceof BlobEvent ? BULK_PRIORITY : ORDERED_PRIORITY;
+        }
+    }
 }
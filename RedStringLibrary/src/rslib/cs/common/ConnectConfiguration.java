@@ -1,5 +1,9 @@
 package rslib.cs.common;
 
+import rslib.cs.protocol.ProtocolConstants;
+
+import java.io.File;
+
 /***
  * Holds info about connect configs
  */
@@ -14,6 +18,98 @@ public class ConnectConfiguration {
     public static final int USER_PORT = 8080;
     public static final int ADMIN_PORT = 8081;
 
+    /** Capacities of incoming command queues */
+    public static final int LOBBY_QUEUE_CAPACITY = 256;
+    public static final int SERVER_QUEUE_CAPACITY = 256;
+    public static final int CLIENT_QUEUE_CAPACITY = 1024;
+
+    /** Outbound bytes of one connection after which the receiver is disconnected as too slow */
+    public static final int OUTBOUND_LIMIT = 32 * 1024 * 1024;
+
+    /** Data size of one chunk of a big command (small commands go between chunks) */
+    public static final int CHUNK_DATA_SIZE = 16 * 1024;
+
+    /** Maximum number of commands one connection sends in chunks at the same time */
+    public static final int MAX_CHUNK_STREAMS = 16;
+
+    /** Ephemeral commands (points) queued for one connection after which the new ones are dropped */
+    public static final int EPHEMERAL_QUEUE_CAPACITY = 64;
+
+    /** Rate of moves and resizes sent while a component is dragged (per second) */
+    public static final int DRAG_STREAM_RATE = 30;
+
+    /** Number of recent board changes the lobby keeps to send only changed containers to a stale client */
+    public static final int BOARD_LOG_CAPACITY = 4096;
+
+    /** Number of recent operations the lobby keeps for every edited text to transform late concurrent edits */
+    public static final int TEXT_HISTORY_CAPACITY = 256;
+
+    /** Blob stores (content of images and files): directories and sizes of memory caches */
+    public static final String SERVER_BLOB_DIRECTORY = "blobs";
+    public static final String CLIENT_BLOB_DIRECTORY = System.getProperty("user.home") + File.separator +
+            ".redstring" + File.separator + "blobs";
+    public static final long SERVER_BLOB_CACHE_SIZE = 256 * 1024 * 1024;
+    public static final long CLIENT_BLOB_CACHE_SIZE = 64 * 1024 * 1024;
+
+    /** Lobby journals: directory, interval of group commits (milliseconds), number and size of records
+     * after which the lobby state is snapshotted and the older records are deleted */
+    public static final String SERVER_JOURNAL_DIRECTORY = "journal";
+    public static final int JOURNAL_COMMIT_INTERVAL = 10;
+    public static final int JOURNAL_SNAPSHOT_RECORDS = 10000;
+    public static final long JOURNAL_SNAPSHOT_SIZE = 16 * 1024 * 1024;
+
+    /** Logs: messages queued for the writer thread after which the new ones are dropped,
+     * interval the writer waits for new messages (milliseconds), log file size after which it is rotated,
+     * number of rotated files kept, maximum size of log batch sent to administrators in one event */
+    public static final int LOG_QUEUE_CAPACITY = 8192;
+    public static final int LOG_FLUSH_INTERVAL = 100;
+    public static final long LOG_FILE_SIZE = 8 * 1024 * 1024;
+    public static final int LOG_FILE_COUNT = 3;
+    public static final int LOG_BATCH_SIZE = 16 * 1024;
+
+    /** Maximum number of lines and size of one page of log file sent to administrators */
+    public static final int LOG_PAGE_LINES = 500;
+    public static final int LOG_PAGE_SIZE = 256 * 1024;
+
+    /** Interval of sending metrics to administrators that watch them (milliseconds) */
+    public static final int METRICS_PUSH_INTERVAL = 1000;
+
+    /** Maximum number of blobs the client waits for at once (they are big, the server queue is limited) */
+    public static final int BLOB_REQUEST_SIZE = 4;
+
+    /** Maximum frame sizes (chat and messages are small, board events can hold files,
+     * admin commands can hold the log file, setup holds the whole board) */
+    public static final int SMALL_FRAME_SIZE = 64 * 1024;
+    public static final int REQUEST_FRAME_SIZE = 1024 * 1024;
+    public static final int LARGE_FRAME_SIZE = 16 * 1024 * 1024;
+    public static final int SETUP_FRAME_SIZE = 128 * 1024 * 1024;
+
+    /***
+     * Returns default maximum frame size for the command index
+     * @param type command index
+     * @return maximum frame size, 0 for unknown index
+     */
+    public static int getMaxFrameSize(byte type) {
+        switch (type) {
+            case ProtocolConstants.CONNECT_INDEX:
+            case ProtocolConstants.CHAT_INDEX:
+            case ProtocolConstants.MESSAGE_INDEX:
+            case ProtocolConstants.BOARD_MESSAGE_INDEX:
+            case ProtocolConstants.EPHEMERAL_INDEX:
+            case ProtocolConstants.CHUNK_INDEX:
+                return SMALL_FRAME_SIZE;
+            case ProtocolConstants.CLIENT_INDEX:
+                return REQUEST_FRAME_SIZE;
+            case ProtocolConstants.ADMIN_INDEX:
+            case ProtocolConstants.BOARD_INDEX:
+                return LARGE_FRAME_SIZE;
+            case ProtocolConstants.SETUP_INDEX:
+                return SETUP_FRAME_SIZE;
+            default:
+                return 0;
+        }
+    }
+
     /** Admin password (encoded) */
     public static String ADMIN_PASSWORD = "-85-86-61-88-46-76-3810-616-78-7567-60116-3-7741-845";
 }
@@ -0,0 +1,314 @@
+package rslib.cs.common;
+
+import rslib.cs.protocol.ProtocolConstants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Decodes frames ([length][command index][content]) from a channel
+ * Partially read meta data is kept between reads, declared length is checked against
+ * the maximum frame size of the command index, big frames are read in chunks,
+ * so memory is taken only for the bytes that really came
+ * Big commands can also come as chunk frames of several streams at once,
+ * they are reassembled by stream id
+ */
+public class FrameDecoder {
+
+    /** Chunk size for big frames (one of the pool classes) */
+    public static final int CHUNK_SIZE = 128 * 1024;
+
+    /** Buffer to read meta data (accumulates it between reads) */
+    private final ByteBuffer metaData;
+
+    /** Pool of buffers */
+    private final BufferPool pool;
+
+    /** Maximum frame sizes (by command index - MIN_INDEX) */
+    private final int[] maxFrameSizes;
+
+    /** Read chunks of the current frame (all of them are full except the last one) */
+    private final List<ByteBuffer> chunks;
+
+    /** Chunk that is being read */
+    private ByteBuffer chunk;
+
+    /** Current frame length (-1 if meta data is being read) */
+    private int frameLength;
+
+    /** Current frame command index */
+    private byte frameType;
+
+    /** Bytes of the current frame content that are left to read */
+    private int frameRemaining;
+
+    /** Commands that come in chunk frames (by stream id) */
+    private final Map<Integer, Stream> streams;
+
+    /***
+     * Represents a command that comes in chunk frames
+     */
+    private static class Stream {
+
+        /** Command index */
+        private final byte type;
+
+        /** Received chunks (positioned at chunk data) */
+        private final List<ByteBuffer> parts;
+
+        /** Received data length */
+        private int length;
+
+        /***
+         * Constructor
+         * @param type command index
+         */
+        private Stream(byte type) {
+            this.type = type;
+            parts = new ArrayList<>();
+        }
+    }
+
+    /***
+     * Constructor (maximum frame sizes are taken from the configuration)
+     * @param pool pool of buffers
+     */
+    public FrameDecoder(BufferPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("FrameDecoder: pool is null!");
+        }
+        this.pool = pool;
+        metaData = ByteBuffer.allocate(ProtocolConstants.COMMAND_LENGTH + ProtocolConstants.INFO_INDEX_LENGTH);
+        maxFrameSizes = new int[ProtocolConstants.MAX_INDEX - ProtocolConstants.MIN_INDEX + 1];
+        for (byte type = ProtocolConstants.MIN_INDEX; type <= ProtocolConstants.MAX_INDEX; ++ type) {
+            maxFrameSizes[type - ProtocolConstants.MIN_INDEX] = ConnectConfiguration.getMaxFrameSize(type);
+        }
+        chunks = new ArrayList<>();
+        streams = new HashMap<>();
+        frameLength = -1;
+        frameType = -1;
+    }
+
+    /***
+     * Sets maximum frame size for the command index
+     * @param type command index
+     * @param maxFrameSize maximum frame size
+     */
+    public void setMaxFrameSize(byte type, int maxFrameSize) {
+        if (! isValidType(type)) {
+            throw new IllegalArgumentException("FrameDecoder: wrong command index!");
+        }
+        if (maxFrameSize < 0) {
+            throw new IllegalArgumentException("FrameDecoder: maxFrameSize is negative!");
+        }
+        maxFrameSizes[type - ProtocolConstants.MIN_INDEX] = maxFrameSize;
+    }
+
+    /***
+     * Returns maximum frame size for the command index
+     * @param type command index
+     * @return maximum frame size
+     */
+    public int getMaxFrameSize(byte type) {
+        if (! isValidType(type)) {
+            throw new IllegalArgumentException("FrameDecoder: wrong command index!");
+        }
+        return maxFrameSizes[type - ProtocolConstants.MIN_INDEX];
+    }
+
+    /***
+     * Tries to read frame. Can be not completed for several times
+     * @param channel channel to read from
+     * @return completely read command (chunk frames give the command after the last chunk), null otherwise
+     * @throws IOException if channel was closed or something went wrong
+     * @throws IllegalStateException if received meta data is wrong
+     */
+    public CommandInfo read(ReadableByteChannel channel) throws IOException, IllegalStateException {
+        if (frameLength == -1) {
+            // meta data can come in several parts
+            if (channel.read(metaData) == -1) {
+                clear();
+                throw new IOException("Could not read meta data!");
+            }
+            if (metaData.hasRemaining()) {
+                return null;
+            }
+            metaData.flip();
+            int length = metaData.getInt();
+            byte type = metaData.get();
+            metaData.clear();
+            if (! isValidType(type)) { // data validation
+                clear();
+                throw new IllegalStateException("unexpected command index " + type);
+            }
+            if (length < 0 || length > maxFrameSizes[type - ProtocolConstants.MIN_INDEX]) {
+                clear();
+                throw new IllegalStateException("wrong frame length " + length + " for command index " + type);
+            }
+            frameLength = length;
+            frameType = type;
+            frameRemaining = length;
+            if (length <= CHUNK_SIZE) { // the whole frame is read in one buffer
+                chunk = pool.acquire(length);
+            }
+        }
+        if (frameRemaining > 0) {
+            if (chunk == null || ! chunk.hasRemaining()) {
+                nextChunk();
+            }
+            int read = channel.read(chunk);
+            if (read == -1) {
+                clear();
+                throw new IOException("Could not read command content!");
+            }
+            frameRemaining -= read;
+        }
+        if (frameRemaining == 0) {
+            byte type = frameType;
+            frameLength = -1;
+            frameType = -1;
+            if (type == ProtocolConstants.CHUNK_INDEX) {
+                return readChunk(assemble());
+            }
+            return new CommandInfo(assemble(), type, pool);
+        }
+        return null;
+    }
+
+    /***
+     * Adds chunk frame to its stream
+     * @param frame chunk frame content
+     * @return command if it was the last chunk of the stream, null otherwise
+     * @throws IllegalStateException if chunk is wrong
+     */
+    private CommandInfo readChunk(ByteBuffer frame) throws IllegalStateException {
+        if (frame.remaining() < ProtocolConstants.CHUNK_HEADER_LENGTH) {
+            pool.release(frame);
+            clear();
+            throw new IllegalStateException("wrong chunk length " + frame.remaining());
+        }
+        int id = frame.getInt();
+        byte type = frame.get();
+        boolean last = frame.get() != 0;
+        Stream stream = streams.get(id);
+        if (stream == null) {
+            if (! isValidType(type) || type == ProtocolConstants.CHUNK_INDEX ||
+                    streams.size() >= ConnectConfiguration.MAX_CHUNK_STREAMS) {
+                pool.release(frame);
+                clear();
+                throw new IllegalStateException("unexpected chunk stream of command index " + type);
+            }
+            stream = new Stream(type);
+            streams.put(id, stream);
+        }
+        if (stream.type != type ||
+                stream.length + frame.remaining() > maxFrameSizes[type - ProtocolConstants.MIN_INDEX]) {
+            pool.release(frame);
+            clear();
+            throw new IllegalStateException("wrong chunk of command index " + type);
+        }
+        stream.parts.add(frame);
+        stream.length += frame.remaining();
+        if (! last) {
+            return null;
+        }
+        streams.remove(id);
+        ByteBuffer result = pool.acquire(stream.length);
+        for (ByteBuffer part : stream.parts) {
+            result.put(part);
+            pool.release(part);
+        }
+        result.flip();
+        return new CommandInfo(result, type, pool);
+    }
+
+    /***
+     * Takes the next chunk of a big frame
+     */
+    private void nextChunk() {
+        if (chunk != null) {
+            chunk.flip();
+            chunks.add(chunk);
+        }
+        chunk = pool.acquire(Math.min(frameRemaining, CHUNK_SIZE));
+    }
+
+    /***
+     * Assembles read chunks into one buffer
+     * @return frame content ready to read
+     */
+    private ByteBuffer assemble() {
+        ByteBuffer result;
+        if (chunks.isEmpty()) {
+            result = chunk;
+        }
+        else {
+            result = pool.acquire(frameLength);
+            for (ByteBuffer part : chunks) {
+                result.put(part);
+                pool.release(part);
+            }
+            chunks.clear();
+            chunk.flip();
+            result.put(chunk);
+            pool.release(chunk);
+        }
+        chunk = null; // now it belongs to the command
+        result.flip();
+        return result;
+    }
+
+    /***
+     * Clears current frame data and returns buffers to the pool
+     */
+    public void clear() {
+        for (ByteBuffer part : chunks) {
+            pool.release(part);
+        }
+        chunks.clear();
+        if (chunk != null) {
+            pool.release(chunk);
+        }
+        chunk = null;
+        for (Stream stream : streams.values()) {
+            for (ByteBuffer part : stream.parts) {
+                pool.release(part);
+            }
+        }
+        streams.clear();
+        metaData.clear();
+        frameLength = -1;
+        frameType = -1;
+        frameRemaining = 0;
+    }
+
+    /***
+     * Defines if frame (or its meta data) is being read
+     * @return true if some bytes of a frame were read, false otherwise
+     */
+    public boolean isReading() {
+        return frameLength != -1 || metaData.position() > 0;
+    }
+
+    /***
+     * Returns the length of the frame being read
+     * @return frame length, -1 if meta data is being read
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /***
+     * Checks command index
+     * @param type command index
+     * @return true if index is known, false otherwise
+     */
+    private static boolean isValidType(byte type) {
+        return type >= ProtocolConstants.MIN_INDEX && type <= ProtocolConstants.MAX_INDEX;
+    }
+}
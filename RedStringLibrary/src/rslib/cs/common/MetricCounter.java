@@ -0,0 +1,54 @@
+package rslib.cs.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * Represents a counter that many threads add to without contention:
+ * every thread adds to its own cell (cells are padded, so they are not in one cache line), the sum is read rarely
+ */
+public class MetricCounter {
+
+    /** Number of cells (power of two) */
+    private static final int CELLS = 16;
+
+    /** Distance between cells (8 longs are a cache line) */
+    private static final int PADDING = 8;
+
+    /** Cells */
+    private final AtomicLongArray cells;
+
+    /***
+     * Constructor
+     */
+    public MetricCounter() {
+        cells = new AtomicLongArray(CELLS * PADDING);
+    }
+
+    /***
+     * Adds value
+     * @param value value
+     */
+    public void add(long value) {
+        int cell = (int) Thread.currentThread().getId() & (CELLS - 1);
+        cells.getAndAdd(cell * PADDING, value);
+    }
+
+    /***
+     * Adds one
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /***
+     * Returns sum of all added values (not a snapshot: values added meanwhile may be not counted)
+     * @return sum
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; ++ i) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
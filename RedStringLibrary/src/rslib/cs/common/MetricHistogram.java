@@ -0,0 +1,141 @@
+package rslib.cs.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * Represents a histogram of not negative values (latencies in nanoseconds, sizes) with fixed relative precision:
+ * every power of two is split into SUB_BUCKETS buckets, so a value is known with 1/SUB_BUCKETS error
+ * (like HDR histogram). Recording is one atomic increment, no memory is allocated
+ */
+public class MetricHistogram {
+
+    /** Bits of sub-bucket index */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Number of buckets in every power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Number of buckets (values up to Long.MAX_VALUE) */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** Counts of values in buckets */
+    private final AtomicLongArray buckets;
+
+    /** Number of values */
+    private final MetricCounter count;
+
+    /** Sum of values */
+    private final MetricCounter sum;
+
+    /** Maximum value */
+    private final AtomicLong max;
+
+    /***
+     * Constructor
+     */
+    public MetricHistogram() {
+        buckets = new AtomicLongArray(BUCKETS);
+        count = new MetricCounter();
+        sum = new MetricCounter();
+        max = new AtomicLong();
+    }
+
+    /***
+     * Records value
+     * @param value value (negative values are recorded as zero)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long oldMax;
+        while (value > (oldMax = max.get())) {
+            if (max.compareAndSet(oldMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /***
+     * Records time passed since the start
+     * @param startNanos start (System.nanoTime())
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /***
+     * Calculates index of bucket
+     * @param value value (not negative)
+     * @return bucket index
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /***
+     * Calculates the lowest value of bucket
+     * @param index bucket index
+     * @return the lowest value
+     */
+    private static long bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /***
+     * Calculates value below which the part of values is
+     * @param part part of values (0.5 for median)
+     * @return value (with the histogram precision), 0 if there are no values
+     */
+    public long getPercentile(double part) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++ i) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(part * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++ i) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(bucketValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /***
+     * Calculates mean value
+     * @return mean value, 0 if there are no values
+     */
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+}
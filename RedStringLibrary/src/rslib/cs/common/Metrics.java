@@ -0,0 +1,97 @@
+package rslib.cs.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Represents a registry of named counters and histograms
+ * Hot paths keep links to their metrics, names are looked up only once
+ */
+public class Metrics {
+
+    /** Registry used by server and connections */
+    private static final Metrics defaultMetrics = new Metrics();
+
+    /** Counters */
+    private final Map<String, MetricCounter> counters;
+
+    /** Histograms */
+    private final Map<String, MetricHistogram> histograms;
+
+    /***
+     * Constructor
+     */
+    public Metrics() {
+        counters = new ConcurrentHashMap<>(); // concurrency
+        histograms = new ConcurrentHashMap<>(); // concurrency
+    }
+
+    public static Metrics getDefault() {
+        return defaultMetrics;
+    }
+
+    /***
+     * Returns counter, creates it if there is no counter with the name
+     * @param name counter name
+     * @return counter
+     */
+    public synchronized MetricCounter counter(String name) {
+        if (name == null) {
+            throw new NullPointerException("Metrics: name is null!");
+        }
+        MetricCounter counter = counters.get(name);
+        if (counter == null) {
+            counter = new MetricCounter();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /***
+     * Returns histogram, creates it if there is no histogram with the name
+     * @param name histogram name
+     * @return histogram
+     */
+    public synchronized MetricHistogram histogram(String name) {
+        if (name == null) {
+            throw new NullPointerException("Metrics: name is null!");
+        }
+        MetricHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new MetricHistogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /***
+     * Returns values of all counters
+     * @return values sorted by name
+     */
+    public Map<String, Long> getCounterValues() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, MetricCounter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    /***
+     * Returns summaries of all histograms that have values
+     * @return summaries sorted by name (count, mean, median, 90th, 99th percentiles and maximum)
+     */
+    public Map<String, long[]> getHistogramSummaries() {
+        Map<String, long[]> summaries = new TreeMap<>();
+        for (Map.Entry<String, MetricHistogram> entry : histograms.entrySet()) {
+            MetricHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            summaries.put(entry.getKey(), new long[] {histogram.getCount(), histogram.getMean(),
+                    histogram.getPercentile(0.5), histogram.getPercentile(0.9), histogram.getPercentile(0.99),
+                    histogram.getMax()});
+        }
+        return summaries;
+    }
+}
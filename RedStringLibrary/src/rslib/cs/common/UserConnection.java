@@ -4,17 +4,41 @@ import rslib.cs.protocol.ProtocolConstants;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /***
  * Represents a user connection the client or server
  */
 public class UserConnection {
 
+    /** Metrics of all connections */
+    private static final MetricCounter FRAMES_READ = Metrics.getDefault().counter("connection.frames.read");
+    private static final MetricCounter BYTES_READ = Metrics.getDefault().counter("connection.bytes.read");
+    private static final MetricCounter FRAMES_WRITTEN = Metrics.getDefault().counter("connection.frames.written");
+    private static final MetricCounter BYTES_WRITTEN = Metrics.getDefault().counter("connection.bytes.written");
+
+    /** Maximum commands written by one gathering write */
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    /** Bytes after which no more commands are added to the batch (so urgent ones do not wait long) */
+    private static final int WRITE_BATCH_BYTES = 64 * 1024;
+
+    /** Meta data length of chunk frame */
+    private static final int CHUNK_META_DATA_LENGTH = ProtocolConstants.COMMAND_LENGTH +
+            ProtocolConstants.INFO_INDEX_LENGTH + ProtocolConstants.CHUNK_HEADER_LENGTH;
+
     /** Associated user */
     private final User user;
 
@@ -24,39 +48,76 @@ public class UserConnection {
     /** Associated key in selector */
     private SelectionKey key;
 
-    /** Commands to write */
-    private final AbstractQueue<CommandInfo> writeCommands;
+    /** Commands to write (by priority, queues of lower priority values are written first) */
+    private final List<AbstractQueue<CommandInfo>> writeQueues;
+
+    /** Big commands that are being written in chunks (by priority, null if there is no such command) */
+    private final CommandInfo[] streamCommands;
+
+    /** Data of the big commands that is left to write in chunks (by priority) */
+    private final ByteBuffer[] streamData;
+
+    /** Stream ids of the big commands (by priority) */
+    private final int[] streamIds;
 
-    /** Read command type */
-    private byte readCommandType;
+    /** Id of the next stream */
+    private int nextStreamId;
 
-    /** Write command type */
-    private byte writeCommandType;
+    /** Bytes of commands that are queued or being written */
+    private final AtomicLong queuedBytes;
 
-    /** Write command class */
+    /** Number of commands dropped because newer ones superseded them */
+    private final AtomicLong droppedCount;
+
+    /** The last queued command for every supersede key (used by the selector thread) */
+    private final Map<String, CommandInfo> pendingCommands;
+
+    /** Queued commands that are superseded, they are skipped instead of being written */
+    private final Set<CommandInfo> supersededCommands;
+
+    /** Class of the last written command */
     private String writeCommandClass;
 
-    /** Read command length */
-    private int readCommandLength;
+    /** Commands that are being written (the first ones may be partially written),
+     * a big command is in the batch once for each of its chunks */
+    private final CommandInfo[] writeBatch;
+
+    /** If the batch entry ends its command (false for all chunks except the last one) */
+    private final boolean[] writeBatchEnds;
 
-    /** Read command length */
-    private int writeCommandLength;
+    /** Number of commands that are being written */
+    private int writeBatchSize;
 
-    /** Counter for already read bytes */
-    private int bytesRead;
+    /** Meta data and data buffers of the batch for gathering write (meta data buffers are reused) */
+    private final ByteBuffer[] writeBuffers;
 
-    /** Counter for already read bytes */
-    private int bytesWritten;
+    /** Number of commands written since writing started */
+    private int writtenCount;
 
-    /** Buffer to read the data */
-    private ByteBuffer readBuffer;
+    /** Number of bytes written since writing started */
+    private long writtenBytes;
 
-    /** Buffer to write the data */
-    private ByteBuffer writeBuffer;
+    /** If the connection is waiting for the channel to be writable */
+    private boolean writing;
+
+    /** Decoder of incoming frames */
+    private final FrameDecoder frameDecoder;
 
     /** Unique id */
     private int id;
 
+    /** Wire format to write commands (negotiated at login) */
+    private byte wireFormat;
+
+    /** Protocol version of the client (set at login) */
+    private byte protocolVersion;
+
+    /** Board digest formula of the client (negotiated at login) */
+    private byte digestVersion;
+
+    /** If reading is suspended (the receiver can not process more commands now) */
+    private boolean readSuspended;
+
     /***
      * Constructor
      * @param user associated user (can be null if connection is not still registered)
@@ -64,15 +125,29 @@ public class UserConnection {
      */
     public UserConnection(User user, SocketChannel socketChannel) {
         id = -1;
+        wireFormat = ProtocolConstants.SERIALIZED_FORMAT;
+        protocolVersion = ProtocolConstants.PROTOCOL_VERSION;
+        digestVersion = ProtocolConstants.CONTAINERS_DIGEST;
         this.user = user;
         this.socketChannel = socketChannel;
-        writeCommands = new ConcurrentLinkedQueue<>(); // concurrency
-        readCommandLength = -1;
-        writeCommandLength = -1;
-        bytesRead = 0;
-        bytesWritten = 0;
-        readCommandType = -1;
-        writeCommandType = -1;
+        writeQueues = new ArrayList<>();
+        for (int i = 0; i < CommandInfo.PRIORITIES; ++ i) {
+            writeQueues.add(new ConcurrentLinkedQueue<CommandInfo>()); // concurrency
+        }
+        streamCommands = new CommandInfo[CommandInfo.PRIORITIES];
+        streamData = new ByteBuffer[CommandInfo.PRIORITIES];
+        streamIds = new int[CommandInfo.PRIORITIES];
+        frameDecoder = new FrameDecoder(BufferPool.getDefault());
+        queuedBytes = new AtomicLong();
+        droppedCount = new AtomicLong();
+        pendingCommands = new HashMap<>();
+        supersededCommands = new HashSet<>();
+        writeBatch = new CommandInfo[WRITE_BATCH_SIZE];
+        writeBatchEnds = new boolean[WRITE_BATCH_SIZE];
+        writeBuffers = new ByteBuffer[2 * WRITE_BATCH_SIZE];
+        for (int i = 0; i < WRITE_BATCH_SIZE; ++ i) {
+            writeBuffers[2 * i] = ByteBuffer.allocate(CHUNK_META_DATA_LENGTH);
+        }
     }
 
     /***
@@ -80,7 +155,7 @@ public class UserConnection {
      * @return true if channel id free to write and read info, false otherwise
      */
     public boolean isFree() {
-        return writeCommandLength == -1 && readCommandLength == -1;
+        return ! writing && frameDecoder.getFrameLength() == -1;
     }
 
     /***
@@ -91,111 +166,241 @@ public class UserConnection {
      */
     public CommandInfo readCommand() throws IOException,
             IllegalStateException {
-        if (readCommandLength == -1) {
-            // if message is being processed first time, read and set meta data
-            int metaDataLength = ProtocolConstants.COMMAND_LENGTH + ProtocolConstants.INFO_INDEX_LENGTH;
-            ByteBuffer metaDataBuffer = ByteBuffer.allocate(metaDataLength);
-            int read = socketChannel.read(metaDataBuffer);
-            if (read == -1) {
-                clearReadData();
-                throw new IOException("Could not read meta data!");
+        CommandInfo command = frameDecoder.read(socketChannel);
+        if (command != null) {
+            FRAMES_READ.increment();
+            BYTES_READ.add(command.getCommand().limit());
+        }
+        return command;
+    }
+
+    /***
+     * Tries to write queued commands. Can be not completed for several times
+     * As many commands as the channel accepts are written by gathering writes
+     * @return true if all commands were written, false otherwise
+     * @throws IOException if something went wrong
+     */
+    public boolean writeCommand() throws IOException {
+        while (true) {
+            fillWriteBatch();
+            if (writeBatchSize == 0) {
+                writing = false;
+                key.interestOps(readSuspended ? 0 : SelectionKey.OP_READ);
+                return true;
             }
-            if (read != metaDataLength) {
-                return null;
+            long written = socketChannel.write(writeBuffers, 0, 2 * writeBatchSize);
+            BYTES_WRITTEN.add(written);
+            completeWrittenCommands();
+            if (writeBatchSize > 0) { // channel does not accept more now
+                return false;
             }
-            metaDataBuffer.flip();
-            int length = metaDataBuffer.getInt();
-            byte type = metaDataBuffer.get();
-            if (! (type >= ProtocolConstants.MIN_INDEX && type <= ProtocolConstants.MAX_INDEX)) { // data validation
-                clearReadData();
-                throw new IllegalStateException();
+        }
+    }
+
+    /***
+     * Moves queued commands to the write batch by priority
+     * Big commands are split into chunks (if the receiver supports them), so commands of higher
+     * priority go between the chunks, commands of one priority are written in order
+     * @throws IOException if command can not be encoded
+     */
+    private void fillWriteBatch() throws IOException {
+        long batchBytes = 0;
+        for (int i = 0; i < writeBatchSize; ++ i) {
+            batchBytes += writeBuffers[2 * i + 1].remaining();
+        }
+        while (writeBatchSize < WRITE_BATCH_SIZE && (writeBatchSize == 0 || batchBytes < WRITE_BATCH_BYTES)) {
+            int priority = nextPriority();
+            if (priority == -1) {
+                return;
             }
-            readCommandLength = length;
-            readCommandType = type;
-            try {
-                readBuffer = ByteBuffer.allocate(readCommandLength);
+            if (streamCommands[priority] == null) {
+                CommandInfo commandInfo = pollCommand(writeQueues.get(priority));
+                if (commandInfo == null) { // superseded
+                    continue;
+                }
+                ByteBuffer command;
+                try {
+                    command = commandInfo.getCommand(wireFormat); // already encoded when it was queued
+                }
+                catch (IOException e) {
+                    commandInfo.release();
+                    throw e;
+                }
+                if (wireFormat < ProtocolConstants.CHUNKED_FORMAT ||
+                        command.remaining() <= ConnectConfiguration.CHUNK_DATA_SIZE) {
+                    ByteBuffer metaData = writeBuffers[2 * writeBatchSize];
+                    metaData.clear();
+                    metaData.putInt(command.remaining());
+                    metaData.put(commandInfo.getCommandType());
+                    metaData.flip();
+                    batchBytes += addToWriteBatch(commandInfo, command, true);
+                    continue;
+                }
+                streamCommands[priority] = commandInfo;
+                streamData[priority] = command;
+                streamIds[priority] = nextStreamId ++;
             }
-            catch (OutOfMemoryError error) {
-                clearReadData();
-                throw new IllegalStateException();
+            batchBytes += addChunkToWriteBatch(priority);
+        }
+    }
+
+    /***
+     * Finds priority of the next command to write
+     * @return priority, -1 if there is nothing to write
+     */
+    private int nextPriority() {
+        for (int priority = 0; priority < CommandInfo.PRIORITIES; ++ priority) {
+            if (streamCommands[priority] != null || ! writeQueues.get(priority).isEmpty()) {
+                return priority;
             }
         }
-        int read = socketChannel.read(readBuffer);
-        if (read == -1) {
-            clearReadData();
-            throw new IOException("Could not read command content!");
+        return -1;
+    }
+
+    /***
+     * Takes the next command from the queue
+     * @param queue queue
+     * @return command, null if the command is superseded (it is released)
+     */
+    private CommandInfo pollCommand(AbstractQueue<CommandInfo> queue) {
+        CommandInfo commandInfo = queue.poll();
+        String supersedeKey = commandInfo.getSupersedeKey();
+        if (supersedeKey != null) {
+            if (supersededCommands.remove(commandInfo)) { // its bytes are not counted already
+                commandInfo.release();
+                return null;
+            }
+            if (pendingCommands.get(supersedeKey) == commandInfo) {
+                pendingCommands.remove(supersedeKey);
+            }
         }
-        bytesRead += read;
-        if (bytesRead == readCommandLength) {
-            // if all data has been read
-            readBuffer.flip();
-            ByteBuffer result = readBuffer;
-            byte commandType = readCommandType;
-            clearReadData();
-            return new CommandInfo(result, commandType, null);
+        return commandInfo;
+    }
+
+    /***
+     * Adds the next chunk of the big command to the write batch
+     * @param priority command priority
+     * @return chunk data length
+     */
+    private int addChunkToWriteBatch(int priority) {
+        CommandInfo commandInfo = streamCommands[priority];
+        ByteBuffer data = streamData[priority];
+        int length = Math.min(data.remaining(), ConnectConfiguration.CHUNK_DATA_SIZE);
+        ByteBuffer chunk = data.slice();
+        chunk.limit(length);
+        data.position(data.position() + length);
+        boolean last = ! data.hasRemaining();
+        ByteBuffer metaData = writeBuffers[2 * writeBatchSize];
+        metaData.clear();
+        metaData.putInt(ProtocolConstants.CHUNK_HEADER_LENGTH + length);
+        metaData.put(ProtocolConstants.CHUNK_INDEX);
+        metaData.putInt(streamIds[priority]);
+        metaData.put(commandInfo.getCommandType());
+        metaData.put((byte) (last ? 1 : 0));
+        metaData.flip();
+        if (last) {
+            streamCommands[priority] = null;
+            streamData[priority] = null;
         }
-        return null;
+        return addToWriteBatch(commandInfo, chunk, last);
     }
 
     /***
-     * Clears reading data
+     * Adds data to the write batch (its meta data is already put)
+     * @param commandInfo command
+     * @param data command or chunk data
+     * @param end if the data ends the command
+     * @return data length
      */
-    private void clearReadData() {
-        readBuffer = null;
-        readCommandLength = -1;
-        bytesRead = 0;
-        readCommandType = -1;
+    private int addToWriteBatch(CommandInfo commandInfo, ByteBuffer data, boolean end) {
+        writeBuffers[2 * writeBatchSize + 1] = data;
+        writeBatch[writeBatchSize] = commandInfo;
+        writeBatchEnds[writeBatchSize] = end;
+        ++ writeBatchSize;
+        return data.remaining();
     }
 
     /***
-     * Tries to write command. Can be not completed for several times
-     * @return true if was written completely, false otherwise
-     * @throws IOException if something went wrong
+     * Releases completely written commands and moves the rest to the beginning of the batch
      */
-    public boolean writeCommand() throws IOException {
-        if (bytesWritten == 0) {
-            // if the writing process occurs first time, write meta data
-            int metaDataLength = ProtocolConstants.COMMAND_LENGTH +
-                    ProtocolConstants.INFO_INDEX_LENGTH;
-            ByteBuffer metaDataBuffer = ByteBuffer.allocate(metaDataLength);
-            metaDataBuffer.putInt(writeCommandLength);
-            metaDataBuffer.put(writeCommandType);
-            metaDataBuffer.flip();
-            int written = socketChannel.write(metaDataBuffer);
-            if (written == -1) {
-                clearWriteData();
-                throw new IOException("Could not write meta data (command " + writeCommandClass +  ")!");
-            }
-            if (written != metaDataLength) {
-                return false;
+    private void completeWrittenCommands() {
+        int completed = 0;
+        while (completed < writeBatchSize && ! writeBuffers[2 * completed].hasRemaining() &&
+                ! writeBuffers[2 * completed + 1].hasRemaining()) {
+            CommandInfo commandInfo = writeBatch[completed];
+            int length = writeBuffers[2 * completed + 1].limit();
+            queuedBytes.addAndGet(- length);
+            writtenBytes += writeBuffers[2 * completed].limit() + length;
+            if (writeBatchEnds[completed]) {
+                ++ writtenCount;
+                FRAMES_WRITTEN.increment();
+                writeCommandClass = commandInfo.getCommandClass();
+                commandInfo.release();
             }
+            ++ completed;
+        }
+        if (completed == 0) {
+            return;
         }
-        int position = writeBuffer.position(); // remembering buffer position
-        writeBuffer.position(bytesWritten); // set it to the right point
-        int written = socketChannel.write(writeBuffer);
-        if (written == -1) {
-            clearWriteData();
-            throw new IOException("Could not write command content (command " + writeCommandClass +  ")!");
+        // meta data buffers of completed commands are moved to the end to be reused
+        ByteBuffer[] completedMetaData = new ByteBuffer[completed];
+        for (int i = 0; i < completed; ++ i) {
+            completedMetaData[i] = writeBuffers[2 * i];
         }
-        writeBuffer.position(position); // returning to old position
-        bytesWritten += written;
-        // checking if all info was written
-        if (bytesWritten == writeCommandLength) {
-            key.interestOps(SelectionKey.OP_READ);
-            return true;
+        int left = writeBatchSize - completed;
+        System.arraycopy(writeBatch, completed, writeBatch, 0, left);
+        System.arraycopy(writeBatchEnds, completed, writeBatchEnds, 0, left);
+        System.arraycopy(writeBuffers, 2 * completed, writeBuffers, 0, 2 * left);
+        for (int i = 0; i < completed; ++ i) {
+            writeBatch[left + i] = null;
+            writeBuffers[2 * (left + i)] = completedMetaData[i];
+            writeBuffers[2 * (left + i) + 1] = null;
         }
-        return false;
+        writeBatchSize = left;
     }
 
     /***
-     * Clears writing data
+     * Clears writing data (all queued and partially written commands are discarded)
      */
     public void clearWriteData() {
-        writeBuffer = null;
-        bytesWritten = 0;
-        writeCommandLength = -1;
-        writeCommandType = -1;
-        writeCommandClass = null;
+        for (int i = 0; i < writeBatchSize; ++ i) {
+            if (writeBatchEnds[i]) { // other chunks are released with their streams
+                writeBatch[i].release();
+            }
+            writeBatch[i] = null;
+            writeBuffers[2 * i + 1] = null;
+        }
+        writeBatchSize = 0;
+        for (int priority = 0; priority < CommandInfo.PRIORITIES; ++ priority) {
+            if (streamCommands[priority] != null) {
+                streamCommands[priority].release();
+                streamCommands[priority] = null;
+                streamData[priority] = null;
+            }
+            CommandInfo commandInfo;
+            while ((commandInfo = writeQueues.get(priority).poll()) != null) {
+                commandInfo.release();
+            }
+        }
+        pendingCommands.clear();
+        supersededCommands.clear();
+        queuedBytes.set(0);
+        writing = false;
+    }
+
+    /***
+     * Suspends or resumes reading from the channel (must be called by the selector thread)
+     * @param readSuspended if reading is suspended
+     */
+    public void setReadSuspended(boolean readSuspended) {
+        this.readSuspended = readSuspended;
+        if (! writing) { // otherwise the interest will be set after writing
+            key.interestOps(readSuspended ? 0 : SelectionKey.OP_READ);
+        }
+    }
+
+    public boolean isReadSuspended() {
+        return readSuspended;
     }
 
     /***
@@ -210,60 +415,99 @@ public class UserConnection {
     }
 
     /***
-     * Links command to write to the connection
-     * @param command command itself
-     * @param commandType command type
+     * Registers this connection on a selector with attachment
+     * @param selector selector
+     * @param attachment key attachment
+     * @return selection key
+     * @throws IOException if something went wrong
      */
-    private void linkCommandToConnection(ByteBuffer command, byte commandType, String commandClass) {
-        writeBuffer = command;
-        writeCommandLength = command.capacity();
-        writeCommandType = commandType;
-        writeCommandClass = commandClass;
-        key.interestOps(SelectionKey.OP_WRITE);
+    public SelectionKey registerOnSelector(Selector selector, Object attachment) throws IOException {
+        key = socketChannel.register(selector, SelectionKey.OP_READ, attachment);
+        return key;
     }
 
     /***
-     * Links command to write to the connection
-     * @param commandInfo command to write
+     * Starts waiting for the channel to be writable (if there are commands to write)
      */
-    private void linkCommandToConnection(CommandInfo commandInfo) {
-        linkCommandToConnection(commandInfo.getCommand(), commandInfo.getCommandType(), commandInfo.getCommandClass());
+    public void checkWriteCommands() {
+        if (! writing && nextPriority() != -1) {
+            writing = true;
+            writtenCount = 0;
+            writtenBytes = 0;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
     }
 
     /***
-     * Adds new command to write
+     * Adds command to write (must be called by the selector thread)
+     * Queued moves, resizes and points that are superseded by the command are not written,
+     * so a slow receiver gets only the latest state of a dragged component
+     * Ephemeral commands are dropped if too many of them are queued, they never disconnect the receiver
+     * @param commandInfo command info
+     * @return true if the command was added, false if the receiver is too slow (it should be disconnected)
+     * @throws IOException if command can not be encoded
+     * @throws CancelledKeyException if the connection is closed
      */
-    private void linkNewCommandToWrite() {
-        CommandInfo commandInfo = writeCommands.poll();
-        if (commandInfo != null) {
-            linkCommandToConnection(commandInfo);
+    public boolean addCommandToWrite(CommandInfo commandInfo) throws IOException {
+        if (! key.isValid()) {
+            throw new CancelledKeyException();
+        }
+        int length = commandInfo.getCommand(wireFormat).remaining(); // encoded once for all receivers
+        dropSupersededCommand(commandInfo);
+        if (commandInfo.getPriority() == CommandInfo.EPHEMERAL_PRIORITY) {
+            if (writeQueues.get(CommandInfo.EPHEMERAL_PRIORITY).size() >=
+                    ConnectConfiguration.EPHEMERAL_QUEUE_CAPACITY) {
+                droppedCount.incrementAndGet();
+                return true;
+            }
+        }
+        else if (queuedBytes.get() > 0 && queuedBytes.get() + length > ConnectConfiguration.OUTBOUND_LIMIT) {
+            return false;
         }
+        queueCommandToWrite(commandInfo, length);
+        if (commandInfo.getSupersedeKey() != null) {
+            pendingCommands.put(commandInfo.getSupersedeKey(), commandInfo);
+        }
+        checkWriteCommands();
+        return true;
     }
 
     /***
-     * Checks if there are anything to write
-     * Checks if channel can write right now
-     * Adds new command to write if ok
+     * Adds command to write without linking it (for threads other than the selector thread,
+     * the command is linked by checkWriteCommands)
+     * @param commandInfo command info
+     * @throws IOException if command can not be encoded
      */
-    public void checkWriteCommands() {
-        if (! writeCommands.isEmpty()) {
-            if (isFree()) {
-                linkNewCommandToWrite();
-            }
-        }
+    public void queueCommandToWrite(CommandInfo commandInfo) throws IOException {
+        queueCommandToWrite(commandInfo, commandInfo.getCommand(wireFormat).remaining());
     }
 
     /***
-     * Adds command to write
+     * Adds command to the queue
      * @param commandInfo command info
+     * @param length encoded command length
+     */
+    private void queueCommandToWrite(CommandInfo commandInfo, int length) {
+        commandInfo.retain(); // released after writing
+        queuedBytes.addAndGet(length);
+        writeQueues.get(commandInfo.getPriority()).add(commandInfo);
+    }
+
+    /***
+     * Marks the queued command superseded by the new one (only not started one is marked,
+     * it is skipped when its turn comes)
+     * @param commandInfo new command
+     * @throws IOException if command can not be encoded
      */
-    public void addCommandToWrite(CommandInfo commandInfo) {
-        if (isFree()) { // if channel is ready to write
-            linkCommandToConnection(commandInfo.getCommand(),
-                    commandInfo.getCommandType(), commandInfo.getCommandClass());
+    private void dropSupersededCommand(CommandInfo commandInfo) throws IOException {
+        if (commandInfo.getSupersedeKey() == null) {
+            return;
         }
-        else {
-            writeCommands.add(commandInfo);
+        CommandInfo queued = pendingCommands.remove(commandInfo.getSupersedeKey());
+        if (queued != null && queued.isSupersededBy(commandInfo)) {
+            supersededCommands.add(queued);
+            queuedBytes.addAndGet(- queued.getCommand(wireFormat).remaining());
+            droppedCount.incrementAndGet();
         }
     }
 
@@ -287,14 +531,34 @@ public class UserConnection {
         user.setStatus(status);
     }
 
-    public void setWriteCommandClass(String writeCommandClass) {
-        this.writeCommandClass = writeCommandClass;
-    }
-
     public void setId(int id) {
         this.id = id;
     }
 
+    public void setWireFormat(byte wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    public byte getWireFormat() {
+        return wireFormat;
+    }
+
+    public void setProtocolVersion(byte protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public byte getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setDigestVersion(byte digestVersion) {
+        this.digestVersion = digestVersion;
+    }
+
+    public byte getDigestVersion() {
+        return digestVersion;
+    }
+
     public String getWriteCommandClass() {
         return writeCommandClass;
     }
@@ -320,18 +584,30 @@ public class UserConnection {
     }
 
     public int getReadCommandLength() {
-        return readCommandLength;
+        return frameDecoder.getFrameLength();
     }
 
-    public int getWriteCommandLength() {
-        return writeCommandLength;
+    public FrameDecoder getFrameDecoder() {
+        return frameDecoder;
     }
 
-    public int getId() {
-        return id;
+    public int getWrittenCount() {
+        return writtenCount;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
     }
 
-    public AbstractQueue<CommandInfo> getWriteCommands() {
-        return writeCommands;
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public int getId() {
+        return id;
     }
 }
@@ -18,9 +18,31 @@ public class ProtocolConstants {
     public static final byte MESSAGE_INDEX = 68;
     public static final byte BOARD_MESSAGE_INDEX = 69;
     public static final byte SETUP_INDEX = 70;
+    public static final byte EPHEMERAL_INDEX = 71; // board events that change nothing (points)
+    public static final byte CHUNK_INDEX = 72; // part of a big command of another index
 
     public static final byte MIN_INDEX = 63;
-    public static final byte MAX_INDEX = 70;
+    public static final byte MAX_INDEX = 72;
+
+    /** Chunk meta data: [stream id][command index][1 if it is the last chunk, 0 otherwise] */
+    public static final int CHUNK_HEADER_LENGTH = 4 + 1 + 1;
+
+    /** Wire formats (negotiated at login) */
+    public static final byte SERIALIZED_FORMAT = 0;
+    public static final byte BINARY_FORMAT = 1;
+    public static final byte CHUNKED_FORMAT = 2; // binary, big commands are split into chunks
+
+    /** Board digest formulas (negotiated at login, clients that do not request one use the legacy formula) */
+    public static final byte LEGACY_DIGEST = 0; // containers are hashed in order, contents by their data
+    public static final byte CONTAINERS_DIGEST = 1; // sum of mixed container hashes, contents by their blob ids
+
+    /** Protocol version sent at login. Clients of older versions can not read container deltas,
+     * text edits, image patches and blob references, they get serialized commands in the old layouts
+     * (0 - clients without wire formats, 1 - clients of the first binary formats) */
+    public static final byte PROTOCOL_VERSION = 2;
+
+    /** First byte of binary frame (serialized frames start with 0xAC) */
+    public static final byte BINARY_MARKER = 0x42;
 
     /** Server answer */
     public static final byte ANSWER_OK = 100;
@@ -0,0 +1,413 @@
+package rslib.cs.protocol.codec;
+
+import rslib.cs.common.Status;
+import rslib.cs.protocol.ProtocolConstants;
+import rslib.cs.protocol.events.board.BoardEvent;
+import rslib.cs.protocol.events.board.BoardEvent.BoardEventType;
+import rslib.cs.protocol.events.board.PointEvent;
+import rslib.cs.protocol.events.board.board.*;
+import rslib.cs.protocol.events.board.common.*;
+import rslib.cs.protocol.events.board.container.ChangeContainerLayerEvent;
+import rslib.cs.protocol.events.board.container.ClearContainerEvent;
+import rslib.cs.protocol.events.board.container.DeleteContainerEvent;
+import rslib.cs.protocol.events.board.container.text.ChangeTextEvent;
+import rslib.cs.protocol.events.board.container.text.EditTextEvent;
+import rslib.gui.container.text.TextOperation;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/***
+ * Holds binary codecs for board events
+ * Events with containers, images and files are left to serialization
+ */
+class BoardEventCodecs {
+
+    /** Text operation component types (count is positive for retain and negative for delete) */
+    private static final byte COUNT = 0;
+    private static final byte INSERT = 1;
+
+    /***
+     * Registers all board event codecs
+     */
+    static void register() {
+        register(BoardEventType.SEND_HASH_E, SendHashEvent.class, new EventCodec<SendHashEvent>() {
+            @Override
+            public void encode(SendHashEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+            }
+
+            @Override
+            public SendHashEvent decode(ByteBuffer buffer) {
+                return new SendHashEvent(buffer.getInt());
+            }
+        });
+        register(BoardEventType.POINT_E, PointEvent.class, new EventCodec<PointEvent>() {
+            @Override
+            public void encode(PointEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getX());
+                buffer.putInt(info.getY());
+                WireCodec.putString(buffer, info.getUsername());
+            }
+
+            @Override
+            public PointEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                return new PointEvent(hash, x, y, WireCodec.getString(buffer));
+            }
+        });
+        register(BoardEventType.MOVE_E, MoveEvent.class, new EventCodec<MoveEvent>() {
+            @Override
+            public void encode(MoveEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.putInt(info.getLeft());
+                buffer.putInt(info.getTop());
+                buffer.put(info.isUnblock() ? (byte) 1 : (byte) 0);
+            }
+
+            @Override
+            public MoveEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                int left = buffer.getInt();
+                int top = buffer.getInt();
+                return new MoveEvent(hash, id, left, top, buffer.get() != 0);
+            }
+        });
+        register(BoardEventType.RESIZE_E, ResizeEvent.class, new EventCodec<ResizeEvent>() {
+            @Override
+            public void encode(ResizeEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.putInt(info.getLeft());
+                buffer.putInt(info.getTop());
+                buffer.putInt(info.getWidth());
+                buffer.putInt(info.getHeight());
+                buffer.put(info.isUnblock() ? (byte) 1 : (byte) 0);
+            }
+
+            @Override
+            public ResizeEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                int left = buffer.getInt();
+                int top = buffer.getInt();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                return new ResizeEvent(hash, id, left, top, width, height, buffer.get() != 0);
+            }
+        });
+        register(BoardEventType.CHANGE_NAME_E, ChangeNameEvent.class, new EventCodec<ChangeNameEvent>() {
+            @Override
+            public void encode(ChangeNameEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                WireCodec.putString(buffer, info.getName());
+            }
+
+            @Override
+            public ChangeNameEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeNameEvent(hash, id, WireCodec.getString(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_FONT_E, ChangeFontEvent.class, new EventCodec<ChangeFontEvent>() {
+            @Override
+            public void encode(ChangeFontEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                WireCodec.putFont(buffer, info.getFont());
+            }
+
+            @Override
+            public ChangeFontEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeFontEvent(hash, id, WireCodec.getFont(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_COLOR_E, ChangeColorEvent.class, new EventCodec<ChangeColorEvent>() {
+            @Override
+            public void encode(ChangeColorEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                WireCodec.putColor(buffer, info.getForeground());
+                WireCodec.putColor(buffer, info.getBackground());
+            }
+
+            @Override
+            public ChangeColorEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeColorEvent(hash, id, WireCodec.getColor(buffer), WireCodec.getColor(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_OPAQUE_E, ChangeOpaqueEvent.class, new EventCodec<ChangeOpaqueEvent>() {
+            @Override
+            public void encode(ChangeOpaqueEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.put(info.isOpaque() ? (byte) 1 : (byte) 0);
+            }
+
+            @Override
+            public ChangeOpaqueEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeOpaqueEvent(hash, id, buffer.get() != 0);
+            }
+        });
+        register(BoardEventType.CHANGE_BLOCK_E, ChangeBlockEvent.class, new EventCodec<ChangeBlockEvent>() {
+            @Override
+            public void encode(ChangeBlockEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.put(info.isBlock() ? (byte) 1 : (byte) 0);
+                WireCodec.putString(buffer, info.getUsername());
+            }
+
+            @Override
+            public ChangeBlockEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                boolean block = buffer.get() != 0;
+                return new ChangeBlockEvent(hash, id, block, WireCodec.getString(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_OWNER_E, ChangeOwnerEvent.class, new EventCodec<ChangeOwnerEvent>() {
+            @Override
+            public void encode(ChangeOwnerEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                WireCodec.putString(buffer, info.getNewOwner());
+            }
+
+            @Override
+            public ChangeOwnerEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeOwnerEvent(hash, id, WireCodec.getString(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_STATUS_E, ChangeStatusEvent.class, new EventCodec<ChangeStatusEvent>() {
+            @Override
+            public void encode(ChangeStatusEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.put((byte) info.getNewStatus().ordinal());
+            }
+
+            @Override
+            public ChangeStatusEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                int status = buffer.get();
+                if (status < 0 || status >= Status.values().length) {
+                    throw new IllegalArgumentException("Wrong status!");
+                }
+                return new ChangeStatusEvent(hash, id, Status.values()[status]);
+            }
+        });
+        register(BoardEventType.CLEAR_BOARD_E, ClearBoardEvent.class, new EventCodec<ClearBoardEvent>() {
+            @Override
+            public void encode(ClearBoardEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+            }
+
+            @Override
+            public ClearBoardEvent decode(ByteBuffer buffer) {
+                return new ClearBoardEvent(buffer.getInt());
+            }
+        });
+        register(BoardEventType.DELETE_CONTAINER_E, DeleteContainerEvent.class,
+                new EventCodec<DeleteContainerEvent>() {
+            @Override
+            public void encode(DeleteContainerEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+            }
+
+            @Override
+            public DeleteContainerEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new DeleteContainerEvent(hash, buffer.getInt());
+            }
+        });
+        register(BoardEventType.CHANGE_GENERAL_FONT_E, ChangeGeneralFontEvent.class,
+                new EventCodec<ChangeGeneralFontEvent>() {
+            @Override
+            public void encode(ChangeGeneralFontEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                WireCodec.putFont(buffer, info.getFont());
+            }
+
+            @Override
+            public ChangeGeneralFontEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new ChangeGeneralFontEvent(hash, WireCodec.getFont(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_GENERAL_COLOR_E, ChangeGeneralColorEvent.class,
+                new EventCodec<ChangeGeneralColorEvent>() {
+            @Override
+            public void encode(ChangeGeneralColorEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                WireCodec.putColor(buffer, info.getForeground());
+                WireCodec.putColor(buffer, info.getBackground());
+            }
+
+            @Override
+            public ChangeGeneralColorEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new ChangeGeneralColorEvent(hash, WireCodec.getColor(buffer), WireCodec.getColor(buffer));
+            }
+        });
+        register(BoardEventType.CHANGE_GENERAL_OPAQUE_E, ChangeGeneralOpaqueEvent.class,
+                new EventCodec<ChangeGeneralOpaqueEvent>() {
+            @Override
+            public void encode(ChangeGeneralOpaqueEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.put(info.isOpaque() ? (byte) 1 : (byte) 0);
+            }
+
+            @Override
+            public ChangeGeneralOpaqueEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new ChangeGeneralOpaqueEvent(hash, buffer.get() != 0);
+            }
+        });
+        register(BoardEventType.CHANGE_SYNC_MODE_E, ChangeSyncModeEvent.class,
+                new EventCodec<ChangeSyncModeEvent>() {
+            @Override
+            public void encode(ChangeSyncModeEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.put(info.isAsynchronous() ? (byte) 1 : (byte) 0);
+            }
+
+            @Override
+            public ChangeSyncModeEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new ChangeSyncModeEvent(hash, buffer.get() != 0);
+            }
+        });
+        register(BoardEventType.CHANGE_CONTAINER_LAYER_E, ChangeContainerLayerEvent.class,
+                new EventCodec<ChangeContainerLayerEvent>() {
+            @Override
+            public void encode(ChangeContainerLayerEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.putInt(info.getLayer());
+            }
+
+            @Override
+            public ChangeContainerLayerEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeContainerLayerEvent(hash, id, buffer.getInt());
+            }
+        });
+        register(BoardEventType.CLEAR_CONTAINER_E, ClearContainerEvent.class,
+                new EventCodec<ClearContainerEvent>() {
+            @Override
+            public void encode(ClearContainerEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+            }
+
+            @Override
+            public ClearContainerEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                return new ClearContainerEvent(hash, buffer.getInt());
+            }
+        });
+        register(BoardEventType.CHANGE_TEXT_E, ChangeTextEvent.class, new EventCodec<ChangeTextEvent>() {
+            @Override
+            public void encode(ChangeTextEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                WireCodec.putString(buffer, info.getText());
+            }
+
+            @Override
+            public ChangeTextEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                return new ChangeTextEvent(hash, id, WireCodec.getString(buffer));
+            }
+        });
+        register(BoardEventType.EDIT_TEXT_E, EditTextEvent.class, new EventCodec<EditTextEvent>() {
+            @Override
+            public void encode(EditTextEvent info, ByteBuffer buffer) {
+                buffer.putInt(info.getHash());
+                buffer.putInt(info.getId());
+                buffer.putInt(info.getRevision());
+                List<Object> components = info.getOperation().getComponents();
+                buffer.putInt(components.size());
+                for (Object component : components) {
+                    if (component instanceof String) {
+                        buffer.put(INSERT);
+                        WireCodec.putString(buffer, (String) component);
+                    }
+                    else {
+                        buffer.put(COUNT);
+                        buffer.putInt((Integer) component);
+                    }
+                }
+                WireCodec.putString(buffer, info.getUsername());
+            }
+
+            @Override
+            public EditTextEvent decode(ByteBuffer buffer) {
+                int hash = buffer.getInt();
+                int id = buffer.getInt();
+                int revision = buffer.getInt();
+                int size = buffer.getInt();
+                TextOperation operation = new TextOperation();
+                for (int i = 0; i < size; ++ i) {
+                    byte type = buffer.get();
+                    if (type == INSERT) {
+                        String text = WireCodec.getString(buffer);
+                        if (text == null) {
+                            throw new IllegalArgumentException("Wrong text operation!");
+                        }
+                        operation.insert(text);
+                    }
+                    else if (type == COUNT) {
+                        int count = buffer.getInt();
+                        if (count > 0) {
+                            operation.retain(count);
+                        }
+                        else {
+                            operation.delete(- count);
+                        }
+                    }
+                    else {
+                        throw new IllegalArgumentException("Wrong text operation!");
+                    }
+                }
+                String username = WireCodec.getString(buffer);
+                if (username == null) {
+                    throw new IllegalArgumentException("Wrong username!");
+                }
+                return new EditTextEvent(hash, id, revision, operation, username);
+            }
+        });
+    }
+
+    /***
+     * Registers board event codec
+     * @param tag event type
+     * @param type event class
+     * @param codec codec
+     * @param <T> event type
+     */
+    private static <T extends BoardEvent> void register(BoardEventType tag, Class<T> type,
+                                                         EventCodec<T> codec) {
+        WireCodec.register(ProtocolConstants.BOARD_INDEX, tag, type, codec);
+    }
+}
@@ -0,0 +1,31 @@
+package rslib.cs.protocol.codec;
+
+import rslib.cs.protocol.RedStringInfo;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/***
+ * Represents a fixed-layout binary codec for one event type
+ * @param <T> event type
+ */
+public interface EventCodec<T extends RedStringInfo> {
+
+    /***
+     * Writes event fields to the buffer
+     * @param info event
+     * @param buffer target buffer
+     * @throws BufferOverflowException if buffer is too small
+     */
+    public void encode(T info, ByteBuffer buffer) throws BufferOverflowException;
+
+    /***
+     * Reads event fields from the buffer
+     * @param buffer source buffer
+     * @return event
+     * @throws BufferUnderflowException if data is wrong
+     * @throws IllegalArgumentException if data is wrong
+     */
+    public T decode(ByteBuffer buffer) throws BufferUnderflowException, IllegalArgumentException;
+}
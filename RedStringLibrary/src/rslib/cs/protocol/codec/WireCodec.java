@@ -0,0 +1,275 @@
+package rslib.cs.protocol.codec;
+
+import rslib.cs.protocol.ProtocolConstants;
+import rslib.cs.protocol.RedStringInfo;
+import rslib.gui.style.ColorModel;
+import rslib.gui.style.FontModel;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Holds binary event codecs keyed by event type and encodes/decodes binary frames
+ * Binary frame layout: marker, group (command index), tag (event type ordinal), event fields
+ */
+public class WireCodec {
+
+    /** Binary frame header length */
+    public static final int HEADER_LENGTH = 3;
+
+    /** Initial scratch buffer size */
+    private static final int SCRATCH_SIZE = 256;
+
+    /** Maximum scratch buffer size (larger events are not worth a binary codec) */
+    private static final int MAXIMUM_SCRATCH_SIZE = 1024 * 1024;
+
+    /** Charset for strings */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Codecs for encoding (by event class) */
+    private static final Map<Class<?>, Registration> encoders = new ConcurrentHashMap<>(); // concurrency
+
+    /** Codecs for decoding (by group and tag) */
+    private static final Map<Integer, Registration> decoders = new ConcurrentHashMap<>(); // concurrency
+
+    /** Scratch buffer for encoding (one per thread) */
+    private static final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(SCRATCH_SIZE);
+        }
+    };
+
+    static {
+        BoardEventCodecs.register();
+    }
+
+    /***
+     * Registers codec
+     * @param group command index of the event
+     * @param tag event type
+     * @param type event class
+     * @param codec codec
+     * @param <T> event type
+     */
+    public static <T extends RedStringInfo> void register(byte group, Enum<?> tag, Class<T> type,
+                                                          EventCodec<T> codec) {
+        if (tag.ordinal() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("WireCodec: tag is too big!");
+        }
+        Registration registration = new Registration(group, (byte) tag.ordinal(), codec);
+        encoders.put(type, registration);
+        decoders.put(key(group, registration.tag), registration);
+    }
+
+    /***
+     * Checks if the event can be encoded in binary format
+     * @param info event
+     * @return true if binary codec exists, false otherwise
+     */
+    public static boolean hasCodec(RedStringInfo info) {
+        return info != null && encoders.containsKey(info.getClass());
+    }
+
+    /***
+     * Checks if the received data is a binary frame
+     * @param buffer data
+     * @return true if binary, false if serialized
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_LENGTH && buffer.get(0) == ProtocolConstants.BINARY_MARKER;
+    }
+
+    /***
+     * Encodes event in binary format
+     * @param info event
+     * @return flipped buffer with encoded event, null if no codec exists
+     * @throws IOException if event is too big
+     */
+    @SuppressWarnings("unchecked")
+    public static ByteBuffer encode(RedStringInfo info) throws IOException {
+        Registration registration = encoders.get(info.getClass());
+        if (registration == null) {
+            return null;
+        }
+        EventCodec<RedStringInfo> codec = (EventCodec<RedStringInfo>) registration.codec;
+        ByteBuffer buffer = scratch.get();
+        while (true) {
+            buffer.clear();
+            try {
+                buffer.put(ProtocolConstants.BINARY_MARKER);
+                buffer.put(registration.group);
+                buffer.put(registration.tag);
+                codec.encode(info, buffer);
+                break;
+            }
+            catch (BufferOverflowException e) {
+                if (buffer.capacity() >= MAXIMUM_SCRATCH_SIZE) {
+                    throw new IOException("Event is too big for binary format!");
+                }
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                scratch.set(buffer);
+            }
+        }
+        buffer.flip();
+        ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+        result.put(buffer);
+        result.flip();
+        return result;
+    }
+
+    /***
+     * Decodes binary frame
+     * @param buffer data
+     * @return decoded event
+     * @throws IOException if data is wrong
+     */
+    public static RedStringInfo decode(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        data.rewind();
+        try {
+            if (data.get() != ProtocolConstants.BINARY_MARKER) {
+                throw new IOException("Not a binary frame!");
+            }
+            byte group = data.get();
+            byte tag = data.get();
+            Registration registration = decoders.get(key(group, tag));
+            if (registration == null) {
+                throw new IOException("Unknown binary event (group " + group + ", tag " + tag + ")!");
+            }
+            return registration.codec.decode(data);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Wrong binary event data!");
+        }
+    }
+
+    /***
+     * Writes string (length and UTF-8 bytes, -1 for null)
+     * @param buffer target buffer
+     * @param string string
+     */
+    public static void putString(ByteBuffer buffer, String string) {
+        if (string == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /***
+     * Reads string
+     * @param buffer source buffer
+     * @return string (may be null)
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Wrong string length!");
+        }
+        if (buffer.hasArray()) {
+            String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+            return string;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /***
+     * Writes color (presence flag and rgba)
+     * @param buffer target buffer
+     * @param color color (may be null)
+     */
+    public static void putColor(ByteBuffer buffer, ColorModel color) {
+        if (color == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        buffer.put((byte) 1);
+        buffer.putInt(color.getRgba());
+    }
+
+    /***
+     * Reads color
+     * @param buffer source buffer
+     * @return color (may be null)
+     */
+    public static ColorModel getColor(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return new ColorModel(buffer.getInt());
+    }
+
+    /***
+     * Writes font
+     * @param buffer target buffer
+     * @param font font
+     */
+    public static void putFont(ByteBuffer buffer, FontModel font) {
+        putString(buffer, font.getName());
+        buffer.putInt(font.getStyle());
+        buffer.putInt(font.getSize());
+    }
+
+    /***
+     * Reads font
+     * @param buffer source buffer
+     * @return font
+     */
+    public static FontModel getFont(ByteBuffer buffer) {
+        String name = getString(buffer);
+        int style = buffer.getInt();
+        int size = buffer.getInt();
+        return new FontModel(name, style, size);
+    }
+
+    /***
+     * Forms decoder key
+     * @param group command index
+     * @param tag event tag
+     * @return key
+     */
+    private static Integer key(byte group, byte tag) {
+        return (group << 8) | (tag & 0xff);
+    }
+
+    /***
+     * Holds registered codec with its group and tag
+     */
+    private static class Registration {
+
+        /** Command index */
+        private final byte group;
+
+        /** Event tag */
+        private final byte tag;
+
+        /** Codec */
+        private final EventCodec<? extends RedStringInfo> codec;
+
+        /***
+         * Constructor
+         * @param group command index
+         * @param tag event tag
+         * @param codec codec
+         */
+        Registration(byte group, byte tag, EventCodec<? extends RedStringInfo> codec) {
+            this.group = group;
+            this.tag = tag;
+            this.codec = codec;
+        }
+    }
+}
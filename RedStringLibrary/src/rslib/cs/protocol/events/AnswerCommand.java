@@ -1,5 +1,6 @@
 package rslib.cs.protocol.events;
 
+import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.RedStringInfo;
 
 import java.io.IOException;
@@ -20,6 +21,12 @@ public class AnswerCommand implements RedStringInfo {
     /** Notification message */
     private String message;
 
+    /** Accepted wire format */
+    private byte wireFormat;
+
+    /** Accepted board digest formula */
+    private byte digestVersion;
+
     /***
      * Constructor
      * @param answer server answer
@@ -31,6 +38,31 @@ public class AnswerCommand implements RedStringInfo {
         }
         this.answer = answer;
         this.message = message;
+        wireFormat = ProtocolConstants.SERIALIZED_FORMAT;
+        digestVersion = ProtocolConstants.LEGACY_DIGEST;
+    }
+
+    /***
+     * Constructor
+     * @param answer server answer
+     * @param message message itself
+     * @param wireFormat accepted wire format
+     */
+    public AnswerCommand(byte answer, String message, byte wireFormat) {
+        this(answer, message);
+        this.wireFormat = wireFormat;
+    }
+
+    /***
+     * Constructor
+     * @param answer server answer
+     * @param message message itself
+     * @param wireFormat accepted wire format
+     * @param digestVersion accepted board digest formula
+     */
+    public AnswerCommand(byte answer, String message, byte wireFormat, byte digestVersion) {
+        this(answer, message, wireFormat);
+        this.digestVersion = digestVersion;
     }
 
     /***
@@ -47,15 +79,29 @@ public class AnswerCommand implements RedStringInfo {
         return message;
     }
 
+    public byte getWireFormat() {
+        return wireFormat;
+    }
+
+    public byte getDigestVersion() {
+        return digestVersion;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeByte(answer);
         out.writeUTF(message);
+        out.writeByte(wireFormat);
+        out.writeByte(digestVersion);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         answer = in.readByte();
         message = in.readUTF();
+        int format = in.read(); // old servers do not send wire format
+        wireFormat = format == -1 ? ProtocolConstants.SERIALIZED_FORMAT : (byte) format;
+        int digest = in.read(); // old servers do not send digest formula
+        digestVersion = digest == -1 ? ProtocolConstants.LEGACY_DIGEST : (byte) digest;
     }
 }
@@ -13,7 +13,8 @@ public abstract class AdminEvent implements ClientEvent {
     public enum AdminEventType {
         SERVER_LOG_E,
         LOG_FILE_E,
-        LOG_SIZE_E
+        LOG_SIZE_E,
+        METRICS_E
     }
 
     public abstract AdminEventType getIndex();
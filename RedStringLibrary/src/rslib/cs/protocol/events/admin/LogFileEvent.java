@@ -4,7 +4,7 @@ import java.io.*;
 import java.util.ArrayList;
 
 /***
- * Represents log file event
+ * Represents log file event (a page of log file lines)
  */
 public class LogFileEvent extends AdminEvent {
 
@@ -14,16 +14,26 @@ public class LogFileEvent extends AdminEvent {
     /** Log message */
     private ArrayList<String> content;
 
+    /** Number of the first line of the page */
+    private long firstLine;
+
+    /** Number of lines in the log file */
+    private long lineCount;
+
     /***
      * Constructor
      * @param content file content
+     * @param firstLine number of the first line of the page
+     * @param lineCount number of lines in the log file
      * @throws IOException if problems with reading occurred
      */
-    public LogFileEvent(ArrayList<String> content) throws IOException {
+    public LogFileEvent(ArrayList<String> content, long firstLine, long lineCount) throws IOException {
         if (content == null) {
             throw new IllegalArgumentException("LogFileEvent: content is null!");
         }
         this.content = content;
+        this.firstLine = firstLine;
+        this.lineCount = lineCount;
     }
 
     /***
@@ -36,6 +46,14 @@ public class LogFileEvent extends AdminEvent {
         return content;
     }
 
+    public long getFirstLine() {
+        return firstLine;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
     @Override
     public AdminEvent.AdminEventType getIndex() {
         return AdminEventType.LOG_FILE_E;
@@ -44,10 +62,14 @@ public class LogFileEvent extends AdminEvent {
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeObject(content);
+        out.writeLong(firstLine);
+        out.writeLong(lineCount);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         content = (ArrayList<String>) in.readObject();
+        firstLine = in.readLong();
+        lineCount = in.readLong();
     }
 }
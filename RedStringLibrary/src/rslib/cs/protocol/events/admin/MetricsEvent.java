@@ -0,0 +1,118 @@
+package rslib.cs.protocol.events.admin;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map;
+import java.util.TreeMap;
+
+/***
+ * Represents server metrics snapshot: counters and gauges, summaries of histograms
+ */
+public class MetricsEvent extends AdminEvent {
+
+    /** For better parsing */
+    public static final long serialVersionUID = 4410283857729913L;
+
+    /** Indices of histogram summary */
+    public static final int COUNT = 0;
+    public static final int MEAN = 1;
+    public static final int P50 = 2;
+    public static final int P90 = 3;
+    public static final int P99 = 4;
+    public static final int MAX = 5;
+    public static final int SUMMARY_LENGTH = 6;
+
+    /** Time of the snapshot */
+    private long time;
+
+    /** Counters and gauges */
+    private Map<String, Long> values;
+
+    /** Summaries of histograms */
+    private Map<String, long[]> histograms;
+
+    /***
+     * Constructor
+     * @param time time of the snapshot
+     * @param values counters and gauges
+     * @param histograms summaries of histograms
+     */
+    public MetricsEvent(long time, Map<String, Long> values, Map<String, long[]> histograms) {
+        if (values == null) {
+            throw new NullPointerException("MetricsEvent: values is null!");
+        }
+        if (histograms == null) {
+            throw new NullPointerException("MetricsEvent: histograms is null!");
+        }
+        this.time = time;
+        this.values = values;
+        this.histograms = histograms;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public MetricsEvent() {
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Map<String, Long> getValues() {
+        return values;
+    }
+
+    public Map<String, long[]> getHistograms() {
+        return histograms;
+    }
+
+    @Override
+    public AdminEventType getIndex() {
+        return AdminEventType.METRICS_E;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(time);
+        out.writeInt(values.size());
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(histograms.size());
+        for (Map.Entry<String, long[]> entry : histograms.entrySet()) {
+            out.writeUTF(entry.getKey());
+            for (int i = 0; i < SUMMARY_LENGTH; ++ i) {
+                out.writeLong(entry.getValue()[i]);
+            }
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        time = in.readLong();
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("MetricsEvent: wrong size!");
+        }
+        values = new TreeMap<>();
+        for (int i = 0; i < size; ++ i) {
+            values.put(in.readUTF(), in.readLong());
+        }
+        size = in.readInt();
+        if (size < 0) {
+            throw new IOException("MetricsEvent: wrong size!");
+        }
+        histograms = new TreeMap<>();
+        for (int i = 0; i < size; ++ i) {
+            String name = in.readUTF();
+            long[] summary = new long[SUMMARY_LENGTH];
+            for (int j = 0; j < SUMMARY_LENGTH; ++ j) {
+                summary[j] = in.readLong();
+            }
+            histograms.put(name, summary);
+        }
+    }
+}
@@ -52,9 +52,11 @@ public abstract class BoardEvent implements ClientEvent {
 
         // Text container
         CHANGE_TEXT_E,
+        EDIT_TEXT_E,
 
         // Image container
         CHANGE_IMAGE_E,
+        PATCH_IMAGE_E,
 
         // File container
         CHANGE_FILE_E
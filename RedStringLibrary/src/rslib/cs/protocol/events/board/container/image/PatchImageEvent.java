@@ -0,0 +1,61 @@
+package rslib.cs.protocol.events.board.container.image;
+
+import rslib.cs.protocol.events.board.common.ComponentEvent;
+import rslib.gui.container.image.ImagePatch;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/***
+ * Represents a patch image event (only changed pixels of the image are sent)
+ */
+public class PatchImageEvent extends ComponentEvent {
+
+    /** Image patch */
+    private ImagePatch patch;
+
+    /***
+     * Constructor
+     * @param hash board hash
+     * @param id component id
+     * @param patch image patch
+     */
+    public PatchImageEvent(int hash, int id, ImagePatch patch) {
+        super(hash, id);
+        if (patch == null) {
+            throw new NullPointerException("PatchImageEvent: patch is null!");
+        }
+        this.patch = patch;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public PatchImageEvent() {
+    }
+
+    @Override
+    public BoardEventType getIndex() {
+        return BoardEventType.PATCH_IMAGE_E;
+    }
+
+    public ImagePatch getPatch() {
+        return patch;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeObject(patch);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        patch = (ImagePatch) in.readObject();
+        if (patch == null) {
+            throw new IOException("PatchImageEvent: patch is null!");
+        }
+    }
+}
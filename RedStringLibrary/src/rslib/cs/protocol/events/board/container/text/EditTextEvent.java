@@ -0,0 +1,86 @@
+package rslib.cs.protocol.events.board.container.text;
+
+import rslib.cs.protocol.events.board.common.ComponentEvent;
+import rslib.gui.container.text.TextOperation;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/***
+ * Represents edit text event (an operation on the text, its size depends on the edit, not on the text)
+ * Sent by the client it holds the revision the operation is based on,
+ * sent by the server it holds the revision the operation made
+ */
+public class EditTextEvent extends ComponentEvent {
+
+    /** Text revision */
+    private int revision;
+
+    /** Text operation */
+    private TextOperation operation;
+
+    /** Edit author */
+    private String username;
+
+    /***
+     * Constructor
+     * @param hash board hash
+     * @param id container id
+     * @param revision text revision
+     * @param operation text operation
+     * @param username edit author
+     */
+    public EditTextEvent(int hash, int id, int revision, TextOperation operation, String username) {
+        super(hash, id);
+        if (operation == null) {
+            throw new NullPointerException("EditTextEvent: operation is null!");
+        }
+        if (username == null) {
+            throw new NullPointerException("EditTextEvent: username is null!");
+        }
+        this.revision = revision;
+        this.operation = operation;
+        this.username = username;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public EditTextEvent() {
+    }
+
+    @Override
+    public BoardEventType getIndex() {
+        return BoardEventType.EDIT_TEXT_E;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public TextOperation getOperation() {
+        return operation;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(revision);
+        operation.writeExternal(out);
+        out.writeUTF(username);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        revision = in.readInt();
+        operation = new TextOperation();
+        operation.readExternal(in);
+        username = in.readUTF();
+    }
+}
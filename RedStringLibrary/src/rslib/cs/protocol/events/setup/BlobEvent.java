@@ -0,0 +1,64 @@
+package rslib.cs.protocol.events.setup;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/***
+ * Represents a blob (content of an image or a file) sent by request
+ */
+public class BlobEvent implements SetupEvent {
+
+    /** For better parsing */
+    public static final long serialVersionUID = 389217654320918L;
+
+    /** Blob id */
+    private String id;
+
+    /** Blob content (null if the blob was not found) */
+    private byte[] blob;
+
+    /***
+     * Constructor
+     * @param id blob id
+     * @param blob blob content (null if the blob was not found)
+     */
+    public BlobEvent(String id, byte[] blob) {
+        if (id == null) {
+            throw new IllegalArgumentException("BlobEvent: id is null!");
+        }
+        this.id = id;
+        this.blob = blob;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public BlobEvent() {
+    }
+
+    @Override
+    public SetupEventType getIndex() {
+        return SetupEventType.BLOB_E;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getBlob() {
+        return blob;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeUTF(id);
+        out.writeObject(blob);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        id = in.readUTF();
+        blob = (byte[]) in.readObject();
+    }
+}
@@ -0,0 +1,62 @@
+package rslib.cs.protocol.events.setup;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Represents a request of blobs (content of images and files) by their ids
+ */
+public class BlobRequest implements SetupEvent {
+
+    /** For better parsing */
+    public static final long serialVersionUID = 782621947215566L;
+
+    /** Blob ids */
+    private List<String> ids;
+
+    /***
+     * Constructor
+     * @param ids blob ids
+     */
+    public BlobRequest(List<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("BlobRequest: ids is null!");
+        }
+        this.ids = ids;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public BlobRequest() {
+    }
+
+    @Override
+    public SetupEventType getIndex() {
+        return SetupEventType.BLOB_R;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.writeUTF(id);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        ids = new ArrayList<>();
+        for (int i = 0; i < size; ++ i) {
+            ids.add(in.readUTF());
+        }
+    }
+}
@@ -15,7 +15,10 @@ public interface SetupEvent extends ClientEvent {
         BOARD_R,
         SET_BOARD_E,
         CLOSE_BOARD_E,
-        DELETE_BOARD_E
+        DELETE_BOARD_E,
+        UPDATE_BOARD_E,
+        BLOB_R,
+        BLOB_E
     }
 
     public abstract SetupEventType getIndex();
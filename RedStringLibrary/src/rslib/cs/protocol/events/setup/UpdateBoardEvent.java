@@ -0,0 +1,100 @@
+package rslib.cs.protocol.events.setup;
+
+import rslib.gui.board.ExternalizableBoard;
+import rslib.gui.container.ExternalizableContainer;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/***
+ * Represents an update board event (the part of the board that was changed
+ * since the known client board state)
+ */
+public class UpdateBoardEvent implements SetupEvent {
+
+    /** For better parsing */
+    public static final long serialVersionUID = 672527829225117L;
+
+    /** Board info (without containers) */
+    private ExternalizableBoard serializableBoard;
+
+    /** Changed and added containers */
+    private CopyOnWriteArrayList<ExternalizableContainer> serializableContainers;
+
+    /** Layers of all board containers (by container id, missing containers are deleted) */
+    private Map<Integer, Integer> layers;
+
+    /***
+     * Constructor
+     * @param serializableBoard board info (without containers)
+     * @param serializableContainers changed and added containers
+     * @param layers layers of all board containers
+     */
+    public UpdateBoardEvent(ExternalizableBoard serializableBoard,
+                            CopyOnWriteArrayList<ExternalizableContainer> serializableContainers,
+                            Map<Integer, Integer> layers) {
+        if (serializableBoard == null) {
+            throw new IllegalArgumentException("UpdateBoardEvent: serializableBoard is null!");
+        }
+        if (serializableContainers == null) {
+            throw new IllegalArgumentException("UpdateBoardEvent: serializableContainers is null!");
+        }
+        if (layers == null) {
+            throw new IllegalArgumentException("UpdateBoardEvent: layers is null!");
+        }
+        this.serializableBoard = serializableBoard;
+        this.serializableContainers = serializableContainers;
+        this.layers = layers;
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public UpdateBoardEvent() {
+    }
+
+    @Override
+    public SetupEventType getIndex() {
+        return SetupEventType.UPDATE_BOARD_E;
+    }
+
+    public ExternalizableBoard getSerializableBoard() {
+        return serializableBoard;
+    }
+
+    public CopyOnWriteArrayList<ExternalizableContainer> getSerializableContainers() {
+        return serializableContainers;
+    }
+
+    public Map<Integer, Integer> getLayers() {
+        return layers;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeObject(serializableBoard);
+        out.writeObject(serializableContainers);
+        out.writeInt(layers.size());
+        for (Map.Entry<Integer, Integer> entry : layers.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        serializableBoard = (ExternalizableBoard) in.readObject();
+        serializableContainers = (CopyOnWriteArrayList<ExternalizableContainer>) in.readObject();
+        int size = in.readInt();
+        layers = new LinkedHashMap<>();
+        for (int i = 0; i < size; ++ i) {
+            int id = in.readInt();
+            layers.put(id, in.readInt());
+        }
+    }
+}
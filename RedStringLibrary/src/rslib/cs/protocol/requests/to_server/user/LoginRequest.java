@@ -1,6 +1,7 @@
 package rslib.cs.protocol.requests.to_server.user;
 
 import rslib.cs.common.LobbyInfo;
+import rslib.cs.protocol.ProtocolConstants;
 
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -20,6 +21,15 @@ public class LoginRequest implements UserServerRequest {
     /** User name */
     private String username;
 
+    /** Requested wire format */
+    private byte wireFormat;
+
+    /** Protocol version of the client */
+    private byte protocolVersion;
+
+    /** Requested board digest formula */
+    private byte digestVersion;
+
     /***
      * Constructor
      * @param username username
@@ -34,6 +44,9 @@ public class LoginRequest implements UserServerRequest {
         }
         this.username = username;
         this.lobbyInfo = lobbyInfo;
+        wireFormat = ProtocolConstants.CHUNKED_FORMAT;
+        protocolVersion = ProtocolConstants.PROTOCOL_VERSION;
+        digestVersion = ProtocolConstants.CONTAINERS_DIGEST;
     }
 
     /***
@@ -51,6 +64,18 @@ public class LoginRequest implements UserServerRequest {
         return username;
     }
 
+    public byte getWireFormat() {
+        return wireFormat;
+    }
+
+    public byte getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public byte getDigestVersion() {
+        return digestVersion;
+    }
+
     public LobbyInfo getLobbyInfo() {
         return lobbyInfo;
     }
@@ -59,11 +84,21 @@ public class LoginRequest implements UserServerRequest {
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeObject(lobbyInfo);
         out.writeUTF(username);
+        out.writeByte(wireFormat);
+        out.writeByte(protocolVersion);
+        out.writeByte(digestVersion);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         lobbyInfo = (LobbyInfo) in.readObject();
         username = in.readUTF();
+        int format = in.read(); // old clients do not send wire format
+        wireFormat = format == -1 ? ProtocolConstants.SERIALIZED_FORMAT : (byte) format;
+        int version = in.read(); // clients of the first binary formats do not send protocol version
+        protocolVersion = (byte) (format == -1 ? 0 : version == -1 ? 1 : version);
+        int digest = in.read(); // clients of protocol version 2 use containers digest without requesting it
+        digestVersion = digest != -1 ? (byte) digest : protocolVersion >= 2
+                ? ProtocolConstants.CONTAINERS_DIGEST : ProtocolConstants.LEGACY_DIGEST;
     }
 }
@@ -1,11 +1,19 @@
 package rslib.cs.server;
 
 import rslib.cs.common.CommandInfo;
+import rslib.cs.common.ConnectConfiguration;
+import rslib.cs.common.MetricCounter;
+import rslib.cs.common.MetricHistogram;
+import rslib.cs.common.Metrics;
 import rslib.cs.common.UserConnection;
+import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.RedStringInfo;
 import rslib.cs.server.util.CommandReceiver;
 import rslib.cs.server.util.IncomingCommand;
 import rslib.cs.server.util.LobbyCommand;
+import rslib.cs.server.util.SelectorLoop;
+import rslib.cs.server.util.SelectorPool;
+import rslib.cs.server.util.SerialExecutor;
 import rslib.cs.server.util.ServerUtil;
 
 import java.io.IOException;
@@ -14,14 +22,15 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /***
- * Represents selector server structure
+ * Represents selector server structure (works on a selector loop shared with other lobbies)
  */
-public abstract class Lobby implements Runnable {
+public abstract class Lobby {
 
-    /** The main selector */
-    protected Selector selector;
+    /** Selector loop (shared with other lobbies) */
+    protected final SelectorLoop loop;
 
     /** Users */
     protected final Map<SelectionKey, UserConnection> users;
@@ -35,26 +44,73 @@ public abstract class Lobby implements Runnable {
     /** Commands to users */
     private final AbstractQueue<LobbyCommand> lobbyCommands;
 
-    /** Command executor */
-    protected Executor executor;
+    /** Command executor (serial, on shared workers) */
+    protected final SerialExecutor executor;
+
+    /** Registers new users and sends lobby commands */
+    private final Runnable pending;
+
+    /** If pending processing is scheduled on the selector loop */
+    private final AtomicBoolean pendingScheduled;
+
+    /** If lobby is working */
+    private volatile boolean working;
+
+    /** Commands that did not fit into executor queue, reading from their senders is suspended
+     * (used by selector loop only) */
+    private final Map<UserConnection, Runnable> suspendedReaders;
+
+    /** Resumes suspended readers */
+    private final Runnable resume;
+
+    /** Metrics of all lobbies */
+    private static final MetricHistogram QUEUE_TIME = Metrics.getDefault().histogram("lobby.queue.nanos");
+    private static final MetricHistogram COMMAND_TIME = Metrics.getDefault().histogram("lobby.command.nanos");
+    private static final MetricHistogram FAN_OUT = Metrics.getDefault().histogram("lobby.broadcast.receivers");
+    private static final MetricCounter SUSPENDED_READS = Metrics.getDefault().counter("lobby.reads.suspended");
 
     /** Current processing readable connection id */
     private int currentReadable;
     private final int NO_READABLE = -100;
 
     /**
-     * Constructor. Starts the selector
+     * Constructor. Binds the lobby to a selector loop of the pool
      *
+     * @param selectorPool shared selector pool
      * @throws IOException if something went wrong
      */
-    public Lobby() throws IOException {
+    public Lobby(SelectorPool selectorPool) throws IOException {
+        if (selectorPool == null) {
+            throw new NullPointerException("Lobby: selectorPool is null!");
+        }
         currentReadable = NO_READABLE;
         users = new ConcurrentHashMap<>(); // concurrency
         userList = new CopyOnWriteArrayList<>(); // concurrency
         newUsers = new CopyOnWriteArrayList<>(); // concurrency
         lobbyCommands = new ConcurrentLinkedQueue<>(); // concurrency
-        selector = Selector.open();
-        executor = new Executor();
+        loop = selectorPool.nextLoop();
+        executor = selectorPool.newSerialExecutor(ConnectConfiguration.LOBBY_QUEUE_CAPACITY);
+        suspendedReaders = new LinkedHashMap<>();
+        resume = new Runnable() {
+            @Override
+            public void run() {
+                resumeReading();
+            }
+        };
+        executor.setDrainListener(new Runnable() {
+            @Override
+            public void run() {
+                loop.execute(Lobby.this, resume);
+            }
+        });
+        pendingScheduled = new AtomicBoolean(false);
+        pending = new Runnable() {
+            @Override
+            public void run() {
+                processPending();
+            }
+        };
+        working = true;
     }
 
     /***
@@ -80,6 +136,14 @@ public abstract class Lobby implements Runnable {
      */
     public abstract void commandLog(String message);
 
+    /***
+     * Defines if command logs are enabled (checked before building a message on hot paths)
+     * @return true if command logs are enabled
+     */
+    protected boolean isCommandLogEnabled() {
+        return true;
+    }
+
     /***
      * Shutdowns GUI
      */
@@ -97,7 +161,7 @@ public abstract class Lobby implements Runnable {
      */
     public synchronized void addUser(UserConnection userConnection) {
         newUsers.add(userConnection);
-        selector.wakeup();
+        schedulePending();
     }
 
     /***
@@ -176,13 +240,30 @@ public abstract class Lobby implements Runnable {
             currentReadable = connection.getId();
             CommandInfo command = connection.readCommand();
             if (command != null) { // if message was read completely
-                executor.addCommand(new IncomingCommand(command, connection));
+                final IncomingCommand incoming = new IncomingCommand(command, connection);
+                if (command.getCommandType() == ProtocolConstants.EPHEMERAL_INDEX) {
+                    // it changes nothing, so it does not wait behind other commands
+                    processIncomingCommand(incoming);
+                }
+                else {
+                    Runnable task = new Runnable() {
+                        @Override
+                        public void run() {
+                            processIncomingCommand(incoming);
+                        }
+                    };
+                    if (! executor.offer(task)) { // lobby is flooded
+                        suspendReading(connection, task);
+                    }
+                }
+            }
+            if (! connection.getFrameDecoder().isReading()) { // chunks of big commands let others in
                 currentReadable = NO_READABLE;
             }
             return;
         }
         catch (IllegalStateException e) {
-            errorLog("Unexpected command (unexpected meta data) from "
+            errorLog("Unexpected command (" + e.getMessage() + ") from "
                     + connection.toString() + " !");
         }
         catch (IOException e1) {
@@ -194,6 +275,50 @@ public abstract class Lobby implements Runnable {
         closeConnection(key);
     }
 
+    /***
+     * Stops reading from the connection until executor queue is drained
+     * @param connection connection
+     * @param task the command that did not fit into the queue
+     */
+    private void suspendReading(UserConnection connection, Runnable task) {
+        suspendedReaders.put(connection, task);
+        SUSPENDED_READS.increment();
+        try {
+            connection.setReadSuspended(true);
+        }
+        catch (CancelledKeyException e) {
+            // user is not connected anymore
+            return;
+        }
+        log("Too many commands to process, reading from " + connection.toString() + " is suspended!");
+    }
+
+    /***
+     * Passes held commands to executor and resumes reading from their senders
+     * (called by the selector loop after executor queue was drained)
+     */
+    private void resumeReading() {
+        Iterator<Map.Entry<UserConnection, Runnable>> iterator = suspendedReaders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UserConnection, Runnable> entry = iterator.next();
+            UserConnection connection = entry.getKey();
+            if (! connection.getKey().isValid()) {
+                iterator.remove();
+                continue;
+            }
+            if (! executor.offer(entry.getValue())) {
+                return; // the queue is full again, waiting for the next drain
+            }
+            iterator.remove();
+            try {
+                connection.setReadSuspended(false);
+            }
+            catch (CancelledKeyException e) {
+                // user is not connected anymore
+            }
+        }
+    }
+
     /***
      * Processes writable key
      * @param key writable key
@@ -201,12 +326,10 @@ public abstract class Lobby implements Runnable {
      */
     protected void processWritableKey(SelectionKey key, UserConnection connection) {
         try {
-            if (connection.writeCommand()) {
-                commandLog(connection.getWriteCommandClass() +
-                        " was written to " + connection.toString() + "!");
-                // if the command was written completely
-                connection.clearWriteData();
-                connection.checkWriteCommands(); // checking for remaining commands
+            if (connection.writeCommand() && isCommandLogEnabled()) {
+                // if all commands were written completely
+                commandLog(connection.getWrittenCount() + " command(s) (last " + connection.getWriteCommandClass() +
+                        ") were written to " + connection.toString() + "!");
             }
         }
         catch (IOException e) {
@@ -221,53 +344,150 @@ public abstract class Lobby implements Runnable {
     }
 
     /***
-     * The main processing
+     * Processes selected key (called by the selector loop)
+     * @param key selected key
+     */
+    public void processKey(SelectionKey key) {
+        UserConnection connection = users.get(key);
+        if (key.isReadable()) {
+            if (canRead(connection)) {
+                processReadableKey(key, connection);
+            }
+        } else if (key.isWritable()) {
+            processWritableKey(key, connection);
+        }
+    }
+
+    /***
+     * Handles unexpected error while processing selected key (called by the selector loop).
+     * Only the connection of the key is closed
+     * @param key selected key
+     * @param e the error
+     */
+    public void keyFailed(SelectionKey key, RuntimeException e) {
+        currentReadable = NO_READABLE;
+        UserConnection connection = users.get(key);
+        errorLog("Unexpected error while processing " +
+                (connection == null ? "connection" : connection.toString()) + ": " + e + "!");
+        try {
+            closeConnection(key);
+        }
+        catch (RuntimeException e1) {
+            key.cancel();
+        }
+    }
+
+    /***
+     * Handles unexpected error of the lobby task (called by the selector loop).
+     * The lobby is closed, other lobbies of the loop keep working
+     * @param e the error
      */
-    @Override
-    public void run() {
-        while (selector.isOpen()) {
-            // trying to add new users to selector
+    public void taskFailed(RuntimeException e) {
+        errorLog("Unexpected error in lobby task: " + e + "!");
+        try {
+            shutdown();
+        }
+        catch (RuntimeException e1) {
+            errorLog("Error while closing lobby: " + e1 + "!");
+        }
+    }
+
+    /***
+     * Registers new users and sends lobby commands (called by the selector loop)
+     */
+    private void processPending() {
+        pendingScheduled.set(false);
+        if (! working) {
+            return;
+        }
+        // trying to add new users to selector
+        try {
+            registerNewUsers();
+        }
+        catch (IOException e) {
+            log("Failed to register new user: " + e.getMessage() + "!");
+        }
+        // check lobbyCommands
+        while (! lobbyCommands.isEmpty()) {
+            LobbyCommand lobbyCommand = lobbyCommands.poll();
             try {
-                registerNewUsers();
+                notifyUsers(lobbyCommand.getCommandInfo(), lobbyCommand.getCommandReceiver());
             }
             catch (IOException e) {
-                log("Failed to register new user: " + e.getMessage() + "!");
+                errorLog("Error while processing lobby command: " + e.getMessage() + "!");
             }
-            // check lobbyCommands
-            while (! lobbyCommands.isEmpty()) {
-                LobbyCommand lobbyCommand = lobbyCommands.poll();
-                try {
-                    notifyUsers(lobbyCommand.getCommandInfo(), lobbyCommand.getCommandReceiver());
-                }
-                catch (IOException e) {
-                    errorLog("Error while processing lobby command: " + e.getMessage() + "!");
-                }
-            }
-            try {
-                selector.select();
-                Set<SelectionKey> keys = selector.selectedKeys();
-                for (SelectionKey key : keys) {
-                    if (! key.isValid()) {
-                        continue;
-                    }
-                    UserConnection connection = users.get(key);
-                    if (key.isReadable()) {
-                        if (canRead(connection)) {
-                            processReadableKey(key, connection);
-                        }
-                    } else if (key.isWritable()) {
-                        processWritableKey(key, connection);
-                    }
-                }
-                keys.clear(); // clear keys
-            }
-            catch (IOException | ClosedSelectorException e) {
-                errorLog("Fatal error in lobby selector: " + e.getMessage() + "!");
-                shutdown();
+            finally {
+                lobbyCommand.getCommandInfo().release(); // receivers hold their own references
             }
         }
     }
 
+    /***
+     * Asks the selector loop to process new users and lobby commands
+     */
+    protected void schedulePending() {
+        if (pendingScheduled.compareAndSet(false, true)) {
+            loop.execute(this, pending);
+        }
+    }
+
+    /***
+     * Releases commands queued for the closed connection (pooled and shared frames go back).
+     * Writing data is owned by the selector thread, so they are released by the selector loop
+     * @param connection closed connection
+     */
+    protected void releaseWriteData(final UserConnection connection) {
+        loop.execute(this, new Runnable() {
+            @Override
+            public void run() {
+                connection.clearWriteData();
+            }
+        });
+    }
+
+    /***
+     * Registers user connection on the lobby selector
+     * @param userConnection user connection
+     * @return associated key
+     * @throws IOException if something went wrong
+     */
+    protected SelectionKey register(UserConnection userConnection) throws IOException {
+        return userConnection.registerOnSelector(loop.getSelector(), this);
+    }
+
+    public int getUserCount() {
+        return userList.size();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    public int getMaxQueueDepth() {
+        return executor.getMaxQueueDepth();
+    }
+
+    public long getRejectedCount() {
+        return executor.getRejectedCount();
+    }
+
+    /***
+     * Checks if the lobby is working
+     * @return true if working, false otherwise
+     */
+    public boolean isWorking() {
+        return working;
+    }
+
+    /***
+     * Stops processing of commands (connections should be closed by subclasses)
+     */
+    protected void stopWorking() {
+        working = false;
+        executor.clear();
+        lobbyCommands.clear();
+    }
+
     /***
      * Sends all users a notification the command (if it is a notification, the status will be considered)
      * @param info command
@@ -276,10 +496,15 @@ public abstract class Lobby implements Runnable {
      */
     private void notifyUsers(CommandInfo info, CommandReceiver commandReceiver) throws IOException {
         List<UserConnection> receivers = commandReceiver.getReceivers();
+        FAN_OUT.record(receivers.size());
         for (UserConnection receiver : receivers) {
             if (receiver.getStatus().ordinal() >= commandReceiver.getMinimumUserStatus().ordinal()) {
                 try {
-                    receiver.addCommandToWrite(info);
+                    if (! receiver.addCommandToWrite(info)) {
+                        errorLog("Too many commands to " + receiver.toString() + " (" +
+                                receiver.getQueuedBytes() + " bytes are queued), disconnecting!");
+                        closeConnection(receiver.getKey()); // queued commands are released
+                    }
                 }
                 catch (CancelledKeyException e) {
                     // user is not connected anymore
@@ -294,7 +519,6 @@ public abstract class Lobby implements Runnable {
      * @param receiver command receiver
      */
     protected void addLobbyCommand(RedStringInfo info, byte commandType, CommandReceiver receiver) {
-        //TODO: see wakeup repetitions
         CommandInfo commandInfo;
         try {
             commandInfo = new CommandInfo(info, commandType);
@@ -303,8 +527,7 @@ public abstract class Lobby implements Runnable {
             errorLog("Unable to write lobby command: " + e.getMessage() + "!");
             return;
         }
-        lobbyCommands.add(new LobbyCommand(commandInfo, receiver));
-        selector.wakeup();
+        addLobbyCommand(commandInfo, receiver);
     }
 
     /***
@@ -313,9 +536,8 @@ public abstract class Lobby implements Runnable {
      * @param receiver command receiver
      */
     protected void addLobbyCommand(CommandInfo commandInfo, CommandReceiver receiver) {
-        //TODO: see wakeup repetitions
         lobbyCommands.add(new LobbyCommand(commandInfo, receiver));
-        selector.wakeup();
+        schedulePending();
     }
 
     /***
@@ -334,75 +556,41 @@ public abstract class Lobby implements Runnable {
     }
 
     /***
-     * For processing incoming commands
+     * Processes incoming command (called by the lobby serial executor, ephemeral ones by the selector loop)
+     * @param command incoming command
      */
-    class Executor implements Runnable {
-
-        /** Command queue */
-        private final AbstractQueue<IncomingCommand> commands;
-
-        /***
-         * Constructor
-         */
-        Executor() {
-            commands = new ConcurrentLinkedQueue<>();
+    private void processIncomingCommand(IncomingCommand command) {
+        if (! working) {
+            return;
         }
-
-        @Override
-        public void run() {
-            while (selector.isOpen()) {
-                if (commands.isEmpty()) {
-                    try {
-                        synchronized (commands) {
-                            commands.wait(1000);
-                        }
-                    }
-                    catch (InterruptedException | IllegalMonitorStateException e) {
-                        // can not be
-                        errorLog("Fatal error in executor thread: " + e.getMessage() + "!");
-                        shutdown();
-                    }
-                }
-                else {
-                    while (! commands.isEmpty()) {
-                        IncomingCommand command = commands.poll();
-                        CommandInfo commandInfo = command.getCommandInfo();
-                        UserConnection connection = command.getConnection();
-                        try {
-                            processReadCommand(commandInfo, connection);
-                            continue;
-                        }
-                        catch (IllegalStateException e) {
-                            errorLog("Unexpected command (unexpected command index) from " + connection.toString() + "!");
-                        }
-                        catch (ClassNotFoundException e1) {
-                            errorLog("Unexpected command (class not found) from " + connection.toString() + "!");
-                        }
-                        catch (ClassCastException e2) {
-                            errorLog("Unexpected command (class cast) from " + connection.toString() + "!");
-                        }
-                        catch (IOException e3) {
-                            errorLog("Error while processing command from " + connection.toString() + ":"
-                                    + e3.getMessage());
-                        }
-                        closeConnection(connection.getKey());
-                    }
-                }
-            }
+        CommandInfo commandInfo = command.getCommandInfo();
+        UserConnection connection = command.getConnection();
+        long start = System.nanoTime();
+        QUEUE_TIME.record(start - command.getReadTime());
+        try {
+            processReadCommand(commandInfo, connection);
+            COMMAND_TIME.recordSince(start);
+            return;
         }
-
-        public void addCommand(IncomingCommand command) {
-            commands.add(command);
-            try {
-                synchronized (commands) {
-                    commands.notify();
-                }
-            }
-            catch (IllegalMonitorStateException e) {
-                // can not be
-                errorLog("Fatal error while adding command to execute: " + e.getMessage() + "!");
-                shutdown();
-            }
+        catch (IllegalStateException e) {
+            errorLog("Unexpected command (unexpected command index) from " + connection.toString() + "!");
+        }
+        catch (ClassNotFoundException e1) {
+            errorLog("Unexpected command (class not found) from " + connection.toString() + "!");
+        }
+        catch (ClassCastException e2) {
+            errorLog("Unexpected command (class cast) from " + connection.toString() + "!");
+        }
+        catch (IOException e3) {
+            errorLog("Error while processing command from " + connection.toString() + ":"
+                    + e3.getMessage());
+        }
+        catch (RuntimeException e4) { // ephemeral commands are processed by the selector loop
+            errorLog("Error while processing command from " + connection.toString() + ": " + e4);
+        }
+        finally {
+            commandInfo.release(); // relayed commands hold their own references
         }
+        closeConnection(connection.getKey());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,10 @@
 package rslib.cs.server;
 
+import rslib.cs.common.CommandExecutor;
 import rslib.cs.common.CommandInfo;
+import rslib.cs.common.MetricCounter;
+import rslib.cs.common.MetricHistogram;
+import rslib.cs.common.Metrics;
 import rslib.cs.common.UserConnection;
 import rslib.cs.server.util.IncomingCommand;
 import rslib.cs.common.ConnectConfiguration;
@@ -8,11 +12,9 @@ import rslib.cs.common.ConnectConfiguration;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.*;
-import java.util.AbstractQueue;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /***
  * Represents a selector server structure with server socket
@@ -32,13 +34,19 @@ public abstract class Server implements Runnable {
     protected boolean equalHostsAllowed;
 
     /** If logs are enabled */
-    protected boolean allLogsEnabled;
+    protected volatile boolean allLogsEnabled;
 
     /** If command logs are enabled */
-    protected boolean commandLogsEnabled;
+    protected volatile boolean commandLogsEnabled;
 
     /** Command executor */
-    protected Executor executor;
+    protected CommandExecutor executor;
+
+    /** Metrics of all servers */
+    private static final MetricCounter ACCEPTED = Metrics.getDefault().counter("server.connections.accepted");
+    private static final MetricCounter SELECTED_KEYS = Metrics.getDefault().counter("server.keys.selected");
+    private static final MetricHistogram QUEUE_TIME = Metrics.getDefault().histogram("server.queue.nanos");
+    private static final MetricHistogram COMMAND_TIME = Metrics.getDefault().histogram("server.command.nanos");
 
     /***
      * Constructor. Launches server socket channel
@@ -55,7 +63,7 @@ public abstract class Server implements Runnable {
         equalHostsAllowed = true;
         allLogsEnabled = true;
         commandLogsEnabled = true;
-        executor = new Executor();
+        executor = new CommandExecutor(ConnectConfiguration.SERVER_QUEUE_CAPACITY);
     }
 
     /***
@@ -99,6 +107,7 @@ public abstract class Server implements Runnable {
         try {
             log("Connection try");
             SocketChannel socketChannel = serverSocketChannel.accept();
+            ACCEPTED.increment();
             socketChannel.configureBlocking(false);
             UserConnection userConnection = new UserConnection(null, socketChannel);
             SelectionKey selectionKey = userConnection.registerOnSelector(selector);
@@ -135,12 +144,22 @@ public abstract class Server implements Runnable {
             // try to read incoming command
             CommandInfo command = connection.readCommand();
             if (command != null) { // if message was read completely
-                executor.addCommand(new IncomingCommand(command, connection));
+                final IncomingCommand incoming = new IncomingCommand(command, connection);
+                if (! executor.offer(new Runnable() {
+                    @Override
+                    public void run() {
+                        processIncomingCommand(incoming);
+                    }
+                })) {
+                    // not registered connections send only a few requests, so this is a flood
+                    errorLog("Too many commands from " + connection.toString() + "!");
+                    closeConnection(key);
+                }
             }
             return;
         }
         catch (IllegalStateException e) {
-            errorLog("Unexpected command (unexpected meta data) from "
+            errorLog("Unexpected command (" + e.getMessage() + ") from "
                     + connection.toString() + " !");
         }
         catch (IOException e3) {
@@ -160,6 +179,7 @@ public abstract class Server implements Runnable {
             try {
                 selector.select();
                 Set<SelectionKey> keys = selector.selectedKeys();
+                SELECTED_KEYS.add(keys.size());
                 for (SelectionKey key : keys) {
                     if (! key.isValid()) {
                         continue;
@@ -193,81 +213,45 @@ public abstract class Server implements Runnable {
         this.commandLogsEnabled = commandLogsEnabled;
     }
 
-
     /***
-     * For processing incoming commands
+     * Defines if command logs are enabled (checked before building a message on hot paths)
+     * @return true if command logs are enabled
      */
-    class Executor implements Runnable {
+    public boolean isCommandLogEnabled() {
+        return commandLogsEnabled;
+    }
 
-        /** Command queue */
-        private final AbstractQueue<IncomingCommand> commands;
 
-        /***
-         * Constructor
-         */
-        Executor() {
-            commands = new ConcurrentLinkedQueue<>();
+    /***
+     * Processes incoming command (called by the executor thread)
+     * @param command incoming command
+     */
+    private void processIncomingCommand(IncomingCommand command) {
+        CommandInfo commandInfo = command.getCommandInfo();
+        UserConnection connection = command.getConnection();
+        long start = System.nanoTime();
+        QUEUE_TIME.record(start - command.getReadTime());
+        try {
+            processReadCommand(commandInfo, connection);
+            COMMAND_TIME.recordSince(start);
+            return;
         }
-
-        @Override
-        public void run() {
-            while (selector.isOpen()) {
-                if (commands.isEmpty()) {
-                    try {
-                        synchronized (commands) {
-                            commands.wait(1000);
-                        }
-                    }
-                    catch (InterruptedException | IllegalMonitorStateException e) {
-                        // can not be
-                        errorLog("Fatal error in executor thread: " + e.getMessage() + "!");
-                        shutdown();
-                    }
-                }
-                else {
-                    while (! commands.isEmpty()) {
-                        IncomingCommand command = commands.poll();
-                        CommandInfo commandInfo = command.getCommandInfo();
-                        UserConnection connection = command.getConnection();
-                        try {
-                            processReadCommand(commandInfo, connection);
-                            continue;
-                        }
-                        catch (IllegalStateException e) {
-                            errorLog("Unexpected command (unexpected command index) from " + connection.toString() + "!");
-                        }
-                        catch (ClassNotFoundException e1) {
-                            errorLog("Unexpected command (class not found) from " + connection.toString() + "!");
-                        }
-                        catch (ClassCastException e2) {
-                            errorLog("Unexpected command (class cast) from " + connection.toString() + "!");
-                        }
-                        catch (IOException e3) {
-                            errorLog("Error while processing command from " + connection.toString() + ":"
-                                    + e3.getMessage());
-                        }
-                        closeConnection(connection.getKey());
-                    }
-                }
-            }
+        catch (IllegalStateException e) {
+            errorLog("Unexpected command (unexpected command index) from " + connection.toString() + "!");
         }
-
-        /***
-         * Adds command to executor
-         * @param command command
-         */
-        public void addCommand(IncomingCommand command) {
-            commands.add(command);
-            try {
-                synchronized (commands) {
-                    commands.notify();
-                }
-            }
-            catch (IllegalMonitorStateException e) {
-                // can not be
-                errorLog("Fatal error while adding command to execute: " + e.getMessage() + "!");
-                shutdown();
-            }
+        catch (ClassNotFoundException e1) {
+            errorLog("Unexpected command (class not found) from " + connection.toString() + "!");
+        }
+        catch (ClassCastException e2) {
+            errorLog("Unexpected command (class cast) from " + connection.toString() + "!");
+        }
+        catch (IOException e3) {
+            errorLog("Error while processing command from " + connection.toString() + ":"
+                    + e3.getMessage());
+        }
+        finally {
+            commandInfo.release(); // returning the buffer to the pool
         }
+        closeConnection(connection.getKey());
     }
 }
@@ -1,33 +1,40 @@
 package rslib.cs.server.admin;
 
 import rslib.cs.common.DataChecking;
+import rslib.cs.common.BufferPool;
 import rslib.cs.common.CommandInfo;
 import rslib.cs.common.Status;
 import rslib.cs.common.UserConnection;
 import rslib.cs.common.ConnectConfiguration;
+import rslib.cs.common.Metrics;
 import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.RedStringInfo;
 import rslib.cs.protocol.events.admin.LogFileEvent;
 import rslib.cs.protocol.events.admin.LogSizeEvent;
+import rslib.cs.protocol.events.admin.MetricsEvent;
 import rslib.cs.protocol.events.admin.ServerLogEvent;
 import rslib.cs.protocol.requests.to_lobby.admin.InternalRequest;
+import rslib.listeners.LogBatchListener;
+import rslib.util.AsyncLog;
 import rslib.util.DataManagement;
+import rslib.util.FileWorking;
+import rslib.util.LogIndex;
 import rslib.cs.server.util.CommandReceiver;
 import rslib.cs.server.Lobby;
 import rslib.cs.server.user.UserServer;
 import rslib.cs.server.util.LobbySession;
+import rslib.cs.server.util.SelectorPool;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /***
@@ -41,6 +48,27 @@ public class AdminLobby extends Lobby {
     /** Link to admin server */
     private AdminServer adminServer;
 
+    /** Own selector pool (admin lobby lives longer than user server) */
+    private SelectorPool selectorPool;
+
+    /** Log of messages for administrators (they are sent in batches) */
+    private AsyncLog adminLog;
+
+    /** Index of log file lines (pages of the file are sent without reading the whole file) */
+    private LogIndex logIndex;
+
+    /** Administrators that follow the log file and numbers of the next lines they get */
+    private Map<UserConnection, Long> logFollowers;
+
+    /** Listener of lines written to the log file (sends them to followers) */
+    private LogBatchListener followListener;
+
+    /** Administrators that watch metrics */
+    private List<UserConnection> metricsWatchers;
+
+    /** Timer that sends metrics to watchers (null if lobby is not working) */
+    private Timer metricsTimer;
+
     /** List of commands */
     public static final String COMMANDS = "List of available commands:\n" +
             "-enablelogs enables all logs\n" +
@@ -48,6 +76,7 @@ public class AdminLobby extends Lobby {
             "-start starts user server\n" +
             "-shutdown shutdowns user server\n" +
             "-lobbies list server lobbies with info about users and boards\n" +
+            "-buffers shows buffer pool statistics\n" +
             "-shutdownlobby <lobby name> shutdowns lobby\n" +
             "-changelobbyname <lobby name> <new name> changes lobby name\n" +
             "-changelobbypassword <lobby name> <new password> changes lobby password\n" +
@@ -57,7 +86,14 @@ public class AdminLobby extends Lobby {
             "readonly, common, moderator, root)\n" +
             "-kick <lobby name> <username> kicks user\n" +
             "-ban <lobby name> <username> bans user\n" +
-            "-unban <lobby name> <username> unbans user";
+            "-unban <lobby name> <username> unbans user\n" +
+            "-getlogfile [<first line>] sends page of log file (the last lines by default)\n" +
+            "-getlogtime <dd/MM/yyyy> <HH:mm:ss> sends page of log file written since the time\n" +
+            "-followlog sends new lines of log file as they are written\n" +
+            "-unfollowlog stops sending new lines of log file\n" +
+            "-metrics sends server metrics\n" +
+            "-watchmetrics sends server metrics every second\n" +
+            "-unwatchmetrics stops sending server metrics";
 
     /***
      * Constructor
@@ -66,22 +102,62 @@ public class AdminLobby extends Lobby {
      * @throws IOException if something went wrong
      */
     public AdminLobby(AdminServer adminServer, UserServer userServer) throws IOException {
+        this(adminServer, userServer, new SelectorPool("admin-lobby", 1));
+    }
+
+    /***
+     * Constructor
+     * @param adminServer link to API adapter
+     * @param userServer link to server
+     * @param selectorPool own selector pool
+     * @throws IOException if something went wrong
+     */
+    private AdminLobby(AdminServer adminServer, UserServer userServer, SelectorPool selectorPool)
+            throws IOException {
+        super(selectorPool);
         if (adminServer == null) {
             throw new IllegalArgumentException("ServerAPI: adminServer is null!");
         }
         if (userServer == null) {
             throw new IllegalArgumentException("ServerAPI: userServer is null!");
         }
-        selector = Selector.open();
+        this.selectorPool = selectorPool;
         this.adminServer = adminServer;
         this.userServer = userServer;
         newUsers = new CopyOnWriteArrayList<>(); // concurrency
+        adminLog = new AsyncLog("admin-log", null, new LogBatchListener() {
+            @Override
+            public void hearLogs(List<String> logs) {
+                sendLogs(logs);
+            }
+        });
+        logIndex = new LogIndex(new File(AdminServer.LOG_FILE));
+        logFollowers = new ConcurrentHashMap<>(); // concurrency
+        followListener = new LogBatchListener() {
+            @Override
+            public void hearLogs(List<String> logs) {
+                sendFollowedLogs();
+            }
+        };
+        metricsWatchers = new CopyOnWriteArrayList<>(); // concurrency
     }
 
     @Override
     public void start() {
-        new Thread(this).start();
-        new Thread(executor).start();
+        selectorPool.start();
+        adminLog.start();
+        FileWorking.addLogListener(AdminServer.LOG_FILE, followListener);
+        metricsTimer = new Timer("admin-metrics", true);
+        metricsTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                if (! metricsWatchers.isEmpty()) {
+                    addAdminLobbyCommand(createMetricsEvent(),
+                            new CommandReceiver(metricsWatchers, Status.ADMINISTRATOR));
+                }
+            }
+        }, ConnectConfiguration.METRICS_PUSH_INTERVAL, ConnectConfiguration.METRICS_PUSH_INTERVAL);
+        schedulePending();
         foldLog("Admin lobby launched successfully!");
     }
 
@@ -100,21 +176,48 @@ public class AdminLobby extends Lobby {
         foldLog(message);
     }
 
+    @Override
+    protected boolean isCommandLogEnabled() {
+        // written log events are not logged, otherwise following the log file never stops sending
+        return false;
+    }
+
     /***
-     * Sends logs to admins
+     * Sends logs to admins (the message is sent by the log thread with the next batch)
      * @param message log message
      * @param needFold if it is needed to fold log
      */
     public void sendLog(String message, boolean needFold) {
-        DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-        Date date = new Date();
-        addAdminLobbyCommand(new ServerLogEvent(dateFormat.format(date) + ": " + message),
-                new CommandReceiver(userList, Status.ADMINISTRATOR));
+        adminLog.log(message);
         if (needFold) {
             foldLog(message);
         }
     }
 
+    /***
+     * Sends batch of logs to admins (one event holds many messages)
+     * @param logs log messages with time
+     */
+    private void sendLogs(List<String> logs) {
+        if (userList.isEmpty()) {
+            return;
+        }
+        StringBuilder batch = new StringBuilder();
+        for (String log : logs) {
+            if (batch.length() > 0 && batch.length() + log.length() >= ConnectConfiguration.LOG_BATCH_SIZE) {
+                addAdminLobbyCommand(new ServerLogEvent(batch.toString()),
+                        new CommandReceiver(userList, Status.ADMINISTRATOR));
+                batch.setLength(0);
+            }
+            if (batch.length() > 0) {
+                batch.append('\n');
+            }
+            batch.append(log);
+        }
+        addAdminLobbyCommand(new ServerLogEvent(batch.toString()),
+                new CommandReceiver(userList, Status.ADMINISTRATOR));
+    }
+
     /***
      * Folds log message
      * @param message log message
@@ -125,6 +228,10 @@ public class AdminLobby extends Lobby {
 
     @Override
     public synchronized void shutdown() {
+        if (! isWorking()) {
+            return;
+        }
+        stopWorking();
         //TODO: reduce closing repetition
         // Closing all connections
         Set<SelectionKey> keySet = users.keySet();
@@ -138,15 +245,16 @@ public class AdminLobby extends Lobby {
                             + e.getMessage() + " !");
                 }
             }
+            releaseWriteData(users.get(key));
         }
 
         // Closing lobby itself
-        try {
-            selector.close();
-        }
-        catch (IOException e) {
-            errorLog("Error while closing lobby selector: " + e.getMessage() + "!");
-        }
+        selectorPool.shutdown();
+        FileWorking.removeLogListener(AdminServer.LOG_FILE, followListener);
+        logFollowers.clear();
+        metricsTimer.cancel();
+        metricsWatchers.clear();
+        adminLog.shutdown();
         errorLog("Server API was closed!");
     }
 
@@ -156,6 +264,8 @@ public class AdminLobby extends Lobby {
         UserConnection userConnection = users.get(key);
         users.remove(key);
         userList.remove(userConnection);
+        logFollowers.remove(userConnection);
+        metricsWatchers.remove(userConnection);
         SocketChannel socketChannel = (SocketChannel)key.channel();
         if (socketChannel.isConnected()) {
             try {
@@ -166,6 +276,7 @@ public class AdminLobby extends Lobby {
             }
         }
         key.cancel();
+        releaseWriteData(userConnection);
         String message = userConnection.toString() + " disconnected!";
         sendLog(message, true);
     }
@@ -178,7 +289,7 @@ public class AdminLobby extends Lobby {
         }
         for (UserConnection userConnection : newUsers) {
             userConnection.setId(generateId());
-            SelectionKey key = userConnection.registerOnSelector(selector);
+            SelectionKey key = register(userConnection);
             // checking name collisions
             String oldName = userConnection.getUsername();
             String newName = checkUsername(oldName);
@@ -206,7 +317,7 @@ public class AdminLobby extends Lobby {
         String request = ((InternalRequest) DataManagement.inflate(buffer)).getCommand();
         sendLog("Received internal command \"" + request + "\" from " +
                 connection.toString() + "!", true);
-        processCommand(request);
+        processCommand(request, connection);
     }
 
     /***
@@ -226,8 +337,9 @@ public class AdminLobby extends Lobby {
     /***
      * Processes internal command
      * @param command command
+     * @param connection connection of administrator
      */
-    private void processCommand(String command) {
+    private void processCommand(String command, UserConnection connection) {
         String[] result = command.split(" ");
         if (result[0].equals("-start") && result.length == 1) {
             if (userServer != null) {
@@ -271,6 +383,25 @@ public class AdminLobby extends Lobby {
             sendLog(info, true);
             return;
         }
+        if (result[0].equals("-buffers") && result.length == 1) {
+            sendLog(BufferPool.getDefault().toString(), true);
+            return;
+        }
+        if (result[0].equals("-metrics") && result.length == 1) {
+            addAdminLobbyCommand(createMetricsEvent(), new CommandReceiver(connection));
+            return;
+        }
+        if (result[0].equals("-watchmetrics") && result.length == 1) {
+            if (! metricsWatchers.contains(connection)) {
+                metricsWatchers.add(connection);
+            }
+            addAdminLobbyCommand(createMetricsEvent(), new CommandReceiver(connection));
+            return;
+        }
+        if (result[0].equals("-unwatchmetrics") && result.length == 1) {
+            metricsWatchers.remove(connection);
+            return;
+        }
         if (result[0].equals("-changelobbyname") && result.length == 3) {
             userServer.changeLobbyNameCommand(result[1], result[2]);
             return;
@@ -361,18 +492,55 @@ public class AdminLobby extends Lobby {
             sendLog("Log file was cleared!", true);
             return;
         }
-        if (result[0].equals("-getlogfile") && result.length == 1) {
+        if (result[0].equals("-getlogfile") && result.length <= 2) {
+            try {
+                long lineCount = logIndex.refresh();
+                long first = Math.max(lineCount - ConnectConfiguration.LOG_PAGE_LINES, 0);
+                if (result.length == 2) {
+                    first = Long.parseLong(result[1]);
+                }
+                sendLogPage(first, connection);
+            }
+            catch (NumberFormatException e) {
+                sendLog("Illegal line number!", true);
+            }
+            catch (IOException e) {
+                sendLog("Problems extracting log file: " + e.getMessage(), true);
+            }
+            return;
+        }
+        if (result[0].equals("-getlogtime") && result.length == 3) {
+            try {
+                DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+                long time = dateFormat.parse(result[1] + " " + result[2]).getTime();
+                logIndex.refresh();
+                sendLogPage(logIndex.find(time), connection);
+            }
+            catch (ParseException e) {
+                sendLog("Illegal time!", true);
+            }
+            catch (IOException e) {
+                sendLog("Problems extracting log file: " + e.getMessage(), true);
+            }
+            return;
+        }
+        if (result[0].equals("-followlog") && result.length == 1) {
             try {
-                sendLogFile("logs.txt");
-                sendLog("Log file was sent!", true);
+                logFollowers.put(connection, logIndex.refresh());
+                sendLog(connection.toString() + " follows log file!", true);
             }
             catch (IOException e) {
                 sendLog("Problems extracting log file: " + e.getMessage(), true);
             }
             return;
         }
+        if (result[0].equals("-unfollowlog") && result.length == 1) {
+            logFollowers.remove(connection);
+            sendLog(connection.toString() + " does not follow log file!", true);
+            return;
+        }
         if (result[0].equals("-getlogsize") && result.length == 1) {
-            File file = new File("logs.txt");
+            File file = new File(AdminServer.LOG_FILE);
             addAdminLobbyCommand(new LogSizeEvent(file.length()),
                     new CommandReceiver(userList, Status.ADMINISTRATOR));
             return;
@@ -381,39 +549,69 @@ public class AdminLobby extends Lobby {
     }
 
     /***
-     * Sends log file by parts
-     * @param filename file name
+     * Sends page of log file to administrator
+     * @param first number of the first line
+     * @param connection connection of administrator
+     * @return number of the line after the page
      * @throws IOException if something went wrong
      */
-    private void sendLogFile(String filename) throws IOException {
-        if (filename == null) {
-            throw new IllegalArgumentException("LogFileEvent: filename is null!");
+    private long sendLogPage(long first, UserConnection connection) throws IOException {
+        List<String> lines = logIndex.read(first, ConnectConfiguration.LOG_PAGE_LINES,
+                ConnectConfiguration.LOG_PAGE_SIZE);
+        addAdminLobbyCommand(new LogFileEvent(new ArrayList<>(lines), first, logIndex.getLineCount()),
+                new CommandReceiver(connection));
+        return first + lines.size();
+    }
+
+    /***
+     * Sends new lines of log file to followers (called by the log writer thread)
+     */
+    private void sendFollowedLogs() {
+        if (logFollowers.isEmpty()) {
+            return;
         }
-        ArrayList<String> content = new ArrayList<>();
-        BufferedReader br = null;
         try {
-            String line;
-            int lines = 0;
-            br = new BufferedReader(new FileReader(filename));
-            while ((line = br.readLine()) != null) {
-                content.add(line);
-                if (++ lines == 100) {
-                    addAdminLobbyCommand(new LogFileEvent(content), new CommandReceiver(userList,
-                            Status.ADMINISTRATOR));
-                    content.clear();
-                    break;
+            long lineCount = logIndex.refresh();
+            for (Map.Entry<UserConnection, Long> entry : logFollowers.entrySet()) {
+                long first = entry.getValue();
+                if (first > lineCount) { // the file was rotated or cleared
+                    first = 0;
                 }
-            }
-        }
-        finally {
-            try {
-                if (br != null) {
-                    br.close();
+                long next = first;
+                while (next < lineCount) {
+                    long last = next;
+                    next = sendLogPage(next, entry.getKey());
+                    if (next == last) { // the last line is not ended yet
+                        break;
+                    }
                 }
-            } catch (IOException e1) {
-                // ????????
+                logFollowers.replace(entry.getKey(), entry.getValue(), next);
             }
         }
+        catch (IOException e) {
+            System.out.println("Problems extracting log file: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Creates snapshot of metrics: counters, histograms and current values of lobbies, queues and buffers
+     * @return metrics event
+     */
+    private MetricsEvent createMetricsEvent() {
+        Metrics metrics = Metrics.getDefault();
+        Map<String, Long> values = metrics.getCounterValues();
+        UserServer server = userServer;
+        if (server != null) {
+            server.putGauges(values);
+        }
+        BufferPool bufferPool = BufferPool.getDefault();
+        values.put("buffers.acquired", bufferPool.getAcquiredCount());
+        values.put("buffers.reused", bufferPool.getReusedCount());
+        values.put("buffers.allocated.bytes", bufferPool.getAllocatedBytes());
+        values.put("log.dropped", adminLog.getDroppedCount());
+        Runtime runtime = Runtime.getRuntime();
+        values.put("memory.used.bytes", runtime.totalMemory() - runtime.freeMemory());
+        return new MetricsEvent(System.currentTimeMillis(), values, metrics.getHistogramSummaries());
     }
 
     /***
@@ -22,6 +22,9 @@ import java.util.Set;
  */
 public class AdminServer extends Server {
 
+    /** Log file name */
+    public static final String LOG_FILE = "logs.txt";
+
     /** Link to user server */
     protected UserServer userServer;
 
@@ -73,17 +76,14 @@ public class AdminServer extends Server {
      * @param message message
      */
     public void foldLog(String message) {
-        //FileWorking.logToFile("logs.txt", "Admin server: " + message);
+        FileWorking.logToFile(LOG_FILE, "Admin server: " + message);
     }
 
     /***
      * Deletes log file
      */
     public static void deleteLogFile() {
-        File file = new File("logs.txt");
-        if (! file.delete()) {
-            System.out.println("Problems deleting log file!");
-        }
+        FileWorking.clearLogFile(LOG_FILE);
     }
 
     @Override
@@ -114,6 +114,7 @@ public class AdminServer extends Server {
                 foldLog("Error while shutting down ServerSocketChannel: " + e.getMessage() + " !");
             }
         }
+        executor.shutdown();
         foldLog("Admin server has been shut down!");
         working = false;
     }
@@ -0,0 +1,126 @@
+package rslib.cs.server.user;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/***
+ * Bounded log of recent board changes. Every entry keeps the board version and hash
+ * after the change and the id of the changed component, so the changes since
+ * the known client board state can be found by its hash
+ */
+public class BoardEventLog {
+
+    /***
+     * Represents a log entry
+     */
+    private static class Entry {
+
+        /** Board version after the change */
+        private final long version;
+
+        /** Board hash after the change */
+        private final int hash;
+
+        /** Changed component id */
+        private final int id;
+
+        /***
+         * Constructor
+         * @param version board version after the change
+         * @param hash board hash after the change
+         * @param id changed component id
+         */
+        private Entry(long version, int hash, int id) {
+            this.version = version;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+
+    /** Maximum number of entries */
+    private final int capacity;
+
+    /** Entries (from the oldest to the newest) */
+    private final Deque<Entry> entries;
+
+    /** Board version before the oldest entry */
+    private long baseVersion;
+
+    /** Board hash before the oldest entry */
+    private int baseHash;
+
+    /***
+     * Constructor
+     * @param capacity maximum number of entries
+     */
+    public BoardEventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("BoardEventLog: capacity is not positive!");
+        }
+        this.capacity = capacity;
+        entries = new ArrayDeque<>();
+    }
+
+    /***
+     * Clears the log and sets the current board state as the base one
+     * @param version board version
+     * @param hash board hash
+     */
+    public synchronized void reset(long version, int hash) {
+        entries.clear();
+        baseVersion = version;
+        baseHash = hash;
+    }
+
+    /***
+     * Adds a change to the log (the oldest one is truncated if the log is full)
+     * @param version board version after the change
+     * @param hash board hash after the change
+     * @param id changed component id (BOARD_ID for the board itself)
+     */
+    public synchronized void add(long version, int hash, int id) {
+        if (entries.size() == capacity) {
+            Entry oldest = entries.pollFirst();
+            baseVersion = oldest.version;
+            baseHash = oldest.hash;
+        }
+        entries.addLast(new Entry(version, hash, id));
+    }
+
+    /***
+     * Finds the version of the board state with the given hash
+     * @param hash board hash
+     * @return board version, -1 if the state is not in the log (it was truncated or is unknown)
+     */
+    public synchronized long findVersion(int hash) {
+        if (hash == 0) { // hash of a blocked board, the state is unknown
+            return -1;
+        }
+        Iterator<Entry> iterator = entries.descendingIterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.hash == hash) {
+                return entry.version;
+            }
+        }
+        return baseHash == hash ? baseVersion : -1;
+    }
+
+    /***
+     * Finds components changed since the given board version
+     * @param version board version (must be in the log)
+     * @return ids of changed components (BOARD_ID for the board itself)
+     */
+    public synchronized Set<Integer> getChangedSince(long version) {
+        Set<Integer> changed = new LinkedHashSet<>();
+        for (Entry entry : entries) {
+            if (entry.version > version) {
+                changed.add(entry.id);
+            }
+        }
+        return changed;
+    }
+}
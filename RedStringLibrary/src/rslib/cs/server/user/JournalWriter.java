@@ -0,0 +1,121 @@
+package rslib.cs.server.user;
+
+import rslib.cs.common.ConnectConfiguration;
+import rslib.cs.common.MetricHistogram;
+import rslib.cs.common.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Represents a writer thread that commits lobby journals in groups: every commit interval
+ * all records appended to a journal since the last commit are written by one write and one force,
+ * so the number of disk flushes does not grow with the number of changes
+ */
+public class JournalWriter implements Runnable {
+
+    /** Metrics of journal commits */
+    private static final MetricHistogram COMMIT_TIME = Metrics.getDefault().histogram("journal.commit.nanos");
+    private static final MetricHistogram COMMIT_RECORDS = Metrics.getDefault().histogram("journal.commit.records");
+
+    /** Journals with records to commit */
+    private final Queue<LobbyJournal> journals;
+
+    /** Journals committed in the current round (used only by the writer thread) */
+    private final List<LobbyJournal> round;
+
+    /** If writer is working */
+    private volatile boolean working;
+
+    /** Writer thread */
+    private Thread thread;
+
+    /***
+     * Constructor
+     */
+    public JournalWriter() {
+        journals = new ConcurrentLinkedQueue<>(); // concurrency
+        round = new ArrayList<>();
+    }
+
+    /***
+     * Launches writer thread (if it is not working yet)
+     */
+    public synchronized void start() {
+        if (working) {
+            return;
+        }
+        working = true;
+        thread = new Thread(this, "journal-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /***
+     * Adds journal with records to commit
+     * @param journal journal
+     */
+    void schedule(LobbyJournal journal) {
+        journals.add(journal);
+    }
+
+    /***
+     * Stops writer thread after committing the appended records
+     */
+    public void shutdown() {
+        Thread writerThread;
+        synchronized (this) {
+            if (! working) {
+                return;
+            }
+            working = false;
+            writerThread = thread;
+        }
+        LockSupport.unpark(writerThread);
+        if (writerThread != Thread.currentThread()) {
+            try {
+                writerThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(ConnectConfiguration.JOURNAL_COMMIT_INTERVAL);
+        while (working) {
+            long start = System.nanoTime();
+            commit();
+            long left = interval - (System.nanoTime() - start);
+            if (left > 0) {
+                LockSupport.parkNanos(this, left);
+            }
+        }
+        commit();
+    }
+
+    /***
+     * Commits all journals with appended records (the records appended meanwhile wait for the next round)
+     */
+    private void commit() {
+        LobbyJournal journal;
+        while ((journal = journals.poll()) != null) {
+            round.add(journal);
+        }
+        for (LobbyJournal scheduled : round) {
+            long start = System.nanoTime();
+            int count = scheduled.commit();
+            if (count > 0) {
+                COMMIT_TIME.recordSince(start);
+                COMMIT_RECORDS.record(count);
+            }
+        }
+        round.clear();
+    }
+}
@@ -0,0 +1,439 @@
+package rslib.cs.server.user;
+
+import rslib.cs.common.ConnectConfiguration;
+import rslib.listeners.JournalListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/***
+ * Represents a durable journal of lobby changes: the snapshot of the lobby state and the records
+ * of the changes made after it. Records are appended by the lobby and written by the journal writer
+ * (so the lobby never waits for the disk), a new snapshot replaces the records made before it.
+ * Directory layout: "snapshot" holds the state and the generation of the records that follow it,
+ * "N.journal" holds the records of generation N. Record layout: payload length, checksum, type, payload
+ */
+public class LobbyJournal {
+
+    /** Record types: applied board or setup event, lobby info and ban list */
+    public static final byte EVENT_RECORD = 1;
+    public static final byte LOBBY_RECORD = 2;
+
+    /** Record header length (payload length, checksum, type) */
+    private static final int HEADER_LENGTH = 9;
+
+    /** Snapshot header: marker, generation, state length, checksum */
+    private static final int SNAPSHOT_MARKER = 0x52534a53;
+    private static final int SNAPSHOT_HEADER_LENGTH = 20;
+
+    /** File names */
+    private static final String SNAPSHOT_FILE = "snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /** Journal directory */
+    private final File directory;
+
+    /** Writer that commits the journal */
+    private final JournalWriter writer;
+
+    /** Records that are not written yet */
+    private List<ByteBuffer> records;
+
+    /** Snapshot that is not written yet (null if there is no new snapshot) */
+    private byte[] snapshot;
+
+    /** Generation of appended records (increased by every snapshot) */
+    private long generation;
+
+    /** Number and size of records appended after the last snapshot */
+    private int recordCount;
+    private long recordSize;
+
+    /** If the journal is waiting for the writer */
+    private boolean scheduled;
+
+    /** If the journal was closed (nothing is appended anymore) */
+    private boolean closed;
+
+    /** If the journal must be deleted */
+    private boolean deleted;
+
+    /** Journal file being appended (used only by the writer thread, null if not opened) */
+    private FileChannel channel;
+
+    /** Generation of the opened journal file */
+    private long channelGeneration;
+
+    /***
+     * Constructor (the directory is created if it does not exist)
+     * @param directory journal directory
+     * @param writer writer that commits the journal
+     * @throws IOException if directory can not be created
+     */
+    public LobbyJournal(File directory, JournalWriter writer) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("LobbyJournal: directory is null!");
+        }
+        if (writer == null) {
+            throw new NullPointerException("LobbyJournal: writer is null!");
+        }
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory.getPath() + "!");
+        }
+        this.directory = directory;
+        this.writer = writer;
+        records = new ArrayList<>();
+    }
+
+    /***
+     * Appends record (does not wait for writing)
+     * @param type record type
+     * @param payload record data
+     */
+    public synchronized void append(byte type, byte[] payload) {
+        if (payload == null) {
+            throw new NullPointerException("LobbyJournal: payload is null!");
+        }
+        if (closed) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(type, payload));
+        record.put(type);
+        record.put(payload);
+        record.flip();
+        records.add(record);
+        ++ recordCount;
+        recordSize += record.limit();
+        schedule();
+    }
+
+    /***
+     * Replaces the journal by the snapshot of the lobby state (does not wait for writing),
+     * records appended before are dropped
+     * @param state lobby state
+     */
+    public synchronized void snapshot(byte[] state) {
+        if (state == null) {
+            throw new NullPointerException("LobbyJournal: state is null!");
+        }
+        if (closed) {
+            return;
+        }
+        records.clear();
+        snapshot = state;
+        ++ generation;
+        recordCount = 0;
+        recordSize = 0;
+        schedule();
+    }
+
+    /***
+     * Defines if the records appended after the last snapshot are too many to replay them quickly
+     * @return true if the lobby state should be snapshotted
+     */
+    public synchronized boolean needsSnapshot() {
+        return recordCount >= ConnectConfiguration.JOURNAL_SNAPSHOT_RECORDS ||
+                recordSize >= ConnectConfiguration.JOURNAL_SNAPSHOT_SIZE;
+    }
+
+    /***
+     * Closes the journal, appended records are still written
+     */
+    public synchronized void close() {
+        closed = true;
+        schedule();
+    }
+
+    /***
+     * Closes the journal and deletes its directory (the lobby will not be recovered)
+     */
+    public synchronized void delete() {
+        closed = true;
+        deleted = true;
+        records.clear();
+        snapshot = null;
+        schedule();
+    }
+
+    /***
+     * Passes the journal to the writer if it is not waiting for it already
+     */
+    private void schedule() {
+        if (! scheduled) {
+            scheduled = true;
+            writer.schedule(this);
+        }
+    }
+
+    /***
+     * Writes appended records and the new snapshot (called by the writer thread)
+     * @return number of written records
+     */
+    int commit() {
+        List<ByteBuffer> committed;
+        byte[] state;
+        long committedGeneration;
+        boolean close;
+        boolean remove;
+        synchronized (this) {
+            scheduled = false;
+            committed = records;
+            records = new ArrayList<>();
+            state = snapshot;
+            snapshot = null;
+            committedGeneration = generation;
+            close = closed;
+            remove = deleted;
+        }
+        if (remove) {
+            closeChannel();
+            deleteDirectory();
+            return 0;
+        }
+        try {
+            if (state != null) {
+                writeSnapshot(state, committedGeneration);
+            }
+            if (! committed.isEmpty()) {
+                if (channel == null || channelGeneration != committedGeneration) {
+                    closeChannel();
+                    channel = FileChannel.open(getJournalFile(committedGeneration).toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    channelGeneration = committedGeneration;
+                }
+                ByteBuffer[] buffers = committed.toArray(new ByteBuffer[committed.size()]);
+                ByteBuffer last = buffers[buffers.length - 1];
+                while (last.hasRemaining()) { // one gathering write and one force for the whole group
+                    channel.write(buffers);
+                }
+                channel.force(false);
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Error when writing journal " + directory.getPath() + " : " + e.getMessage());
+            closeChannel();
+        }
+        if (close) {
+            closeChannel();
+        }
+        return committed.size();
+    }
+
+    /***
+     * Writes snapshot (to a temporary file that replaces the old snapshot),
+     * deletes the records of older generations
+     * @param state lobby state
+     * @param stateGeneration generation of records made after the snapshot
+     * @throws IOException if snapshot can not be written
+     */
+    private void writeSnapshot(byte[] state, long stateGeneration) throws IOException {
+        File temporary = new File(directory, SNAPSHOT_FILE + TEMPORARY_SUFFIX);
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_LENGTH);
+        header.putInt(SNAPSHOT_MARKER);
+        header.putLong(stateGeneration);
+        header.putInt(state.length);
+        header.putInt(checksum((byte) 0, state));
+        header.flip();
+        ByteBuffer[] buffers = new ByteBuffer[] {header, ByteBuffer.wrap(state)};
+        try (FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffers[1].hasRemaining()) {
+                out.write(buffers);
+            }
+            out.force(true);
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        closeChannel();
+        for (long oldGeneration : getGenerations()) {
+            if (oldGeneration < stateGeneration && ! getJournalFile(oldGeneration).delete()) {
+                System.out.println("Problems deleting old journal of " + directory.getPath() + "!");
+            }
+        }
+    }
+
+    /***
+     * Reads the snapshot (called before the journal is used)
+     * @return lobby state, null if there is no snapshot
+     * @throws IOException if snapshot can not be read or is damaged
+     */
+    public byte[] readSnapshot() throws IOException {
+        File file = new File(directory, SNAPSHOT_FILE);
+        if (! file.exists()) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (data.remaining() < SNAPSHOT_HEADER_LENGTH || data.getInt() != SNAPSHOT_MARKER) {
+            throw new IOException("LobbyJournal: wrong snapshot!");
+        }
+        long stateGeneration = data.getLong();
+        int length = data.getInt();
+        int checksum = data.getInt();
+        if (length != data.remaining()) {
+            throw new IOException("LobbyJournal: wrong snapshot length!");
+        }
+        byte[] state = Arrays.copyOfRange(data.array(), data.position(), data.limit());
+        if (checksum((byte) 0, state) != checksum) {
+            throw new IOException("LobbyJournal: wrong snapshot checksum!");
+        }
+        synchronized (this) {
+            generation = stateGeneration;
+        }
+        return state;
+    }
+
+    /***
+     * Replays records made after the snapshot (called after the snapshot is read, before the journal is used).
+     * A torn record (the server stopped while writing it) ends the records of its generation
+     * @param listener listener that applies records
+     * @return number of replayed records
+     * @throws IOException if record can not be applied
+     * @throws ClassNotFoundException if record can not be applied
+     */
+    public int replay(JournalListener listener) throws IOException, ClassNotFoundException {
+        if (listener == null) {
+            throw new NullPointerException("LobbyJournal: listener is null!");
+        }
+        long lastGeneration;
+        synchronized (this) {
+            lastGeneration = generation;
+        }
+        int count = 0;
+        for (long recordGeneration : getGenerations()) {
+            if (recordGeneration < lastGeneration) { // the snapshot was written, old records were not deleted
+                continue;
+            }
+            lastGeneration = recordGeneration;
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(getJournalFile(recordGeneration).toPath()));
+            while (data.remaining() >= HEADER_LENGTH) {
+                int length = data.getInt();
+                int checksum = data.getInt();
+                byte type = data.get();
+                if (length < 0 || length > data.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                data.get(payload);
+                if (checksum(type, payload) != checksum) {
+                    break;
+                }
+                listener.hearRecord(type, ByteBuffer.wrap(payload));
+                ++ count;
+            }
+        }
+        synchronized (this) {
+            generation = lastGeneration; // a snapshot made after the replay replaces all records
+        }
+        return count;
+    }
+
+    /***
+     * Returns generations of the journal files
+     * @return generations in ascending order
+     */
+    private List<Long> getGenerations() {
+        List<Long> generations = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (! name.endsWith(JOURNAL_SUFFIX)) {
+                continue;
+            }
+            try {
+                generations.add(Long.parseLong(name.substring(0, name.length() - JOURNAL_SUFFIX.length())));
+            }
+            catch (NumberFormatException e) {
+                // not a journal file
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /***
+     * Returns journal file
+     * @param fileGeneration generation of records in the file
+     * @return journal file
+     */
+    private File getJournalFile(long fileGeneration) {
+        return new File(directory, fileGeneration + JOURNAL_SUFFIX);
+    }
+
+    /***
+     * Calculates record checksum
+     * @param type record type
+     * @param payload record data
+     * @return checksum
+     */
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /***
+     * Forces the directory entries (the renamed snapshot) to the disk
+     */
+    private void forceDirectory() {
+        try (FileChannel directoryChannel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+        catch (IOException e) {
+            // directories can not be opened on some platforms, the rename is still atomic
+        }
+    }
+
+    /***
+     * Closes the journal file (it is opened again by the next commit)
+     */
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            System.out.println("Error when closing journal " + directory.getPath() + " : " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /***
+     * Deletes the journal directory
+     */
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (! file.delete()) {
+                    System.out.println("Problems deleting journal file " + file.getPath() + "!");
+                }
+            }
+        }
+        if (! directory.delete()) {
+            System.out.println("Problems deleting journal directory " + directory.getPath() + "!");
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
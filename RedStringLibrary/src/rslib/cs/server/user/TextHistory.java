@@ -0,0 +1,76 @@
+package rslib.cs.server.user;
+
+import rslib.gui.container.text.TextOperation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/***
+ * Bounded history of recent operations on the text of one container. An operation based on an older
+ * revision is transformed against the operations made since that revision
+ */
+public class TextHistory {
+
+    /** Maximum number of operations */
+    private final int capacity;
+
+    /** Operations (from the oldest to the newest) */
+    private final Deque<TextOperation> operations;
+
+    /** Text revision after the newest operation */
+    private int revision;
+
+    /***
+     * Constructor
+     * @param capacity maximum number of operations
+     * @param revision current text revision
+     */
+    public TextHistory(int capacity, int revision) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("TextHistory: capacity is not positive!");
+        }
+        this.capacity = capacity;
+        this.revision = revision;
+        operations = new ArrayDeque<>();
+    }
+
+    /***
+     * Transforms operation against the operations made since its revision
+     * @param baseRevision revision the operation is based on
+     * @param operation operation
+     * @return operation to apply to the current text, null if the revision is unknown (too old or wrong)
+     * @throws IllegalArgumentException if operation does not match the text
+     */
+    public TextOperation transform(int baseRevision, TextOperation operation) throws IllegalArgumentException {
+        int count = revision - baseRevision; // operations the client has not seen
+        if (count < 0 || count > operations.size()) {
+            return null;
+        }
+        Iterator<TextOperation> iterator = operations.descendingIterator();
+        TextOperation[] concurrent = new TextOperation[count];
+        for (int i = count - 1; i >= 0; -- i) {
+            concurrent[i] = iterator.next();
+        }
+        for (TextOperation applied : concurrent) {
+            operation = TextOperation.transform(operation, applied)[0];
+        }
+        return operation;
+    }
+
+    /***
+     * Adds applied operation
+     * @param operation operation
+     */
+    public void add(TextOperation operation) {
+        operations.addLast(operation);
+        if (operations.size() > capacity) {
+            operations.removeFirst();
+        }
+        ++ revision;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+}
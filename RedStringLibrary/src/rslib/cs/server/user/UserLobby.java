@@ -4,21 +4,28 @@ import rslib.commands.common.ChangeBlockCommand;
 import rslib.cs.common.*;
 import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.codec.WireCodec;
 import rslib.cs.protocol.events.bmessage.BoardMessageEvent;
 import rslib.cs.protocol.events.board.BoardEvent;
+import rslib.cs.protocol.events.board.PointEvent;
 import rslib.cs.protocol.events.board.board.*;
 import rslib.cs.protocol.events.board.common.*;
 import rslib.cs.protocol.events.board.container.*;
 import rslib.cs.protocol.events.board.container.file.ChangeFileEvent;
 import rslib.cs.protocol.events.board.container.image.ChangeImageEvent;
+import rslib.cs.protocol.events.board.container.image.PatchImageEvent;
 import rslib.cs.protocol.events.board.container.text.ChangeTextEvent;
+import rslib.cs.protocol.events.board.container.text.EditTextEvent;
 import rslib.cs.protocol.events.message.ShowMessageEvent;
+import rslib.cs.protocol.events.setup.BlobEvent;
+import rslib.cs.protocol.events.setup.BlobRequest;
 import rslib.cs.protocol.events.setup.BoardRequest;
 import rslib.cs.protocol.events.setup.DeleteBoardEvent;
 import rslib.cs.protocol.events.setup.SetBoardEvent;
 import rslib.cs.protocol.events.chat.NotificationEvent;
 import rslib.cs.protocol.events.main_client.*;
 import rslib.cs.protocol.events.setup.SetupEvent;
+import rslib.cs.protocol.events.setup.UpdateBoardEvent;
 import rslib.cs.protocol.requests.to_lobby.user.*;
 import rslib.gui.BasicComponent;
 import rslib.gui.board.ExternalizableBoard;
@@ -27,17 +34,21 @@ import rslib.gui.container.BoardContainer;
 import rslib.gui.container.ExternalizableContainer;
 import rslib.gui.container.file.FileContainer;
 import rslib.gui.container.image.ImageContainer;
+import rslib.gui.container.image.ImageModel;
+import rslib.gui.container.image.ImagePatch;
 import rslib.gui.container.text.TextContainer;
+import rslib.gui.container.text.TextOperation;
 import rslib.gui.style.FontModel;
+import rslib.listeners.JournalListener;
 import rslib.util.DataManagement;
 import rslib.cs.server.util.CommandReceiver;
 import rslib.cs.server.Lobby;
 import rslib.cs.server.util.LobbySession;
+import rslib.cs.server.util.SelectorPool;
 
-import java.io.IOException;
+import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -48,6 +59,17 @@ import java.util.concurrent.CopyOnWriteArrayList;
  */
 public class UserLobby extends Lobby {
 
+    /** Handling times of board events (by event type) */
+    private static final MetricHistogram[] BOARD_EVENT_TIMES;
+    static {
+        BoardEvent.BoardEventType[] types = BoardEvent.BoardEventType.values();
+        BOARD_EVENT_TIMES = new MetricHistogram[types.length];
+        for (int i = 0; i < types.length; ++ i) {
+            BOARD_EVENT_TIMES[i] = Metrics.getDefault().histogram("board." + types[i].name().toLowerCase() +
+                    ".nanos");
+        }
+    }
+
     /** Board instance */
     private ExternalizableBoard serverBoard;
 
@@ -64,9 +86,18 @@ public class UserLobby extends Lobby {
     /** Board listeners */
     private List<UserConnection> boardUsers;
 
+    /** Log of recent board changes */
+    private final BoardEventLog boardLog;
+
+    /** Histories of recent text edits (by container id) */
+    private final Map<Integer, TextHistory> textHistories;
+
     /** Link to server */
     private UserServer userServer;
 
+    /** Journal of lobby changes (the lobby is recovered from it when the server starts) */
+    private final LobbyJournal journal;
+
     /***
      * Constructor
      * @param userServer link to server
@@ -74,25 +105,115 @@ public class UserLobby extends Lobby {
      * @throws IOException if something went wrong
      */
     public UserLobby(UserServer userServer, LobbyInfo lobbyInfo) throws IOException {
-        if (userServer == null) {
-            throw new NullPointerException("Lobby: userServer is null!");
-        }
+        this(userServer, lobbyInfo, createJournal(userServer));
+        snapshot(); // the journal starts with the lobby info
+    }
+
+    /***
+     * Constructor
+     * @param userServer link to server
+     * @param lobbyInfo info about this lobby
+     * @param journal journal of lobby changes
+     * @throws IOException if something went wrong
+     */
+    private UserLobby(UserServer userServer, LobbyInfo lobbyInfo, LobbyJournal journal) throws IOException {
+        super(getSelectorPool(userServer));
         if (lobbyInfo == null) {
             throw new NullPointerException("Lobby: lobbyInfo is null!");
         }
         serverBoard = null;
-        selector = Selector.open();
         this.userServer = userServer;
         this.lobbyInfo = lobbyInfo;
+        this.journal = journal;
         banList = new ConcurrentHashMap<>(); // concurrency
         boardUsers = new CopyOnWriteArrayList<>(); // concurrency
+        boardLog = new BoardEventLog(ConnectConfiguration.BOARD_LOG_CAPACITY);
+        textHistories = new HashMap<>();
         start();
     }
 
+    /***
+     * Recovers lobby from its journal: reads the snapshot and replays the records made after it
+     * @param userServer link to server
+     * @param directory journal directory
+     * @return recovered lobby, null if the lobby has no board (it would be closed as empty)
+     * @throws IOException if journal can not be read
+     * @throws ClassNotFoundException if journal is damaged
+     */
+    @SuppressWarnings("unchecked")
+    public static UserLobby recover(UserServer userServer, File directory) throws IOException,
+            ClassNotFoundException {
+        LobbyJournal journal = new LobbyJournal(directory, getJournalWriter(userServer));
+        byte[] state = journal.readSnapshot();
+        if (state == null) { // the server stopped before the first snapshot was written
+            journal.delete();
+            return null;
+        }
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state));
+        final UserLobby userLobby = new UserLobby(userServer, (LobbyInfo) in.readObject(), journal);
+        userLobby.banList.putAll((Map<String, String>) in.readObject());
+        userLobby.serverBoard = (ExternalizableBoard) in.readObject();
+        int count = journal.replay(new JournalListener() {
+            @Override
+            public void hearRecord(byte type, ByteBuffer payload) throws IOException, ClassNotFoundException {
+                userLobby.replayRecord(type, payload);
+            }
+        });
+        if (userLobby.serverBoard == null) {
+            userLobby.stopWorking();
+            journal.delete();
+            return null;
+        }
+        // nobody is connected, so nothing is blocked
+        userLobby.serverBoard.setBlocked(false, null);
+        for (BoardContainer container : userLobby.serverBoard.getContainers()) {
+            container.setBlocked(false, null);
+        }
+        userLobby.boardLog.reset(userLobby.serverBoard.getVersion(), userLobby.serverBoard.hashCode());
+        userLobby.snapshot(); // the replayed records are not replayed again
+        userLobby.log("Recovered lobby (" + count + " journal records)!");
+        return userLobby;
+    }
+
+    /***
+     * Creates journal of a new lobby
+     * @param userServer link to server
+     * @return journal
+     * @throws IOException if journal directory can not be created
+     */
+    private static LobbyJournal createJournal(UserServer userServer) throws IOException {
+        return new LobbyJournal(new File(ConnectConfiguration.SERVER_JOURNAL_DIRECTORY, UUID.randomUUID().toString()),
+                getJournalWriter(userServer));
+    }
+
+    /***
+     * Returns journal writer of the server
+     * @param userServer link to server
+     * @return journal writer
+     */
+    private static JournalWriter getJournalWriter(UserServer userServer) {
+        if (userServer == null) {
+            throw new NullPointerException("Lobby: userServer is null!");
+        }
+        return userServer.getJournalWriter();
+    }
+
+    /***
+     * Returns selector pool of the server
+     * @param userServer link to server
+     * @return selector pool
+     */
+    private static SelectorPool getSelectorPool(UserServer userServer) {
+        if (userServer == null) {
+            throw new NullPointerException("Lobby: userServer is null!");
+        }
+        return userServer.getSelectorPool();
+    }
+
     @Override
     public void start() {
-        new Thread(this).start();
-        new Thread(executor).start();
+        // threads are shared by the server lobbies, only pending users are processed
+        schedulePending();
     }
 
     @Override
@@ -105,6 +226,11 @@ public class UserLobby extends Lobby {
         userServer.commandLog("Lobby " + lobbyInfo.getLobbyName() + ": " + message);
     }
 
+    @Override
+    protected boolean isCommandLogEnabled() {
+        return userServer.isCommandLogEnabled();
+    }
+
     @Override
     public void errorLog(String message) {
         userServer.errorLog("Lobby " + lobbyInfo.getLobbyName() + ": " + message);
@@ -112,6 +238,20 @@ public class UserLobby extends Lobby {
 
     @Override
     public synchronized void shutdown() {
+        if (close()) {
+            journal.delete(); // the lobby is closed for good
+        }
+    }
+
+    /***
+     * Closes the lobby and its connections, the journal is kept (the lobby is recovered when the server starts)
+     * @return true if the lobby was working, false if it was closed already
+     */
+    public synchronized boolean close() {
+        if (! isWorking()) {
+            return false;
+        }
+        stopWorking();
         //TODO: reduce closing repetition
         // Closing all connections
         Set<SelectionKey> keySet = users.keySet();
@@ -125,17 +265,14 @@ public class UserLobby extends Lobby {
                             + e.getMessage() + " !");
                 }
             }
+            releaseWriteData(users.get(key));
         }
 
-        // Closing lobby itself
-        try {
-            selector.close();
-        }
-        catch (IOException e) {
-            errorLog("Error while closing lobby selector: " + e.getMessage() + "!");
-        }
+        // Closing lobby itself (selector loop is shared and stays open)
         userServer.removeLobby(lobbyInfo.getLobbyName());
+        journal.close();
         log("Lobby " + lobbyInfo.getLobbyName() + " was closed!");
+        return true;
     }
 
     @Override
@@ -159,6 +296,7 @@ public class UserLobby extends Lobby {
             }
         }
         key.cancel();
+        releaseWriteData(userConnection);
         String message = userConnection.toString() + " disconnected!";
         log(message);
         if (users.isEmpty()) {
@@ -217,41 +355,92 @@ public class UserLobby extends Lobby {
                 // if it is a command to lobby, handle it
                 UserLobbyRequest request = (UserLobbyRequest) DataManagement.inflate(buffer);
                 commandClass = request.getClass().getSimpleName();
-                commandLog("Received " + commandClass + " from " + connection.toString() +
-                        "(" + buffer.capacity() + " bytes)!");
+                if (isCommandLogEnabled()) {
+                    commandLog("Received " + commandClass + " from " + connection.toString() +
+                            "(" + buffer.limit() + " bytes)!");
+                }
                 handleClientRequest(request, connection);
                 return;
             }
             case ProtocolConstants.CHAT_INDEX: {
                 commandClass = "chat event";
-                commandLog("Received " + commandClass + " from " + connection.toString() +
-                        "(" + buffer.capacity() + " bytes)!");
+                if (isCommandLogEnabled()) {
+                    commandLog("Received " + commandClass + " from " + connection.toString() +
+                            "(" + buffer.limit() + " bytes)!");
+                }
                 CommandReceiver receiver = new CommandReceiver(userList, Status.READONLY);
                 receiver.removeReceiver(connection);
-                addLobbyCommand(new CommandInfo(buffer, ProtocolConstants.CHAT_INDEX, commandClass), receiver);
+                addLobbyCommand(command.relay(ProtocolConstants.CHAT_INDEX, commandClass, null), receiver);
                 return;
             }
             case ProtocolConstants.SETUP_INDEX: {
                 SetupEvent setupEvent = (SetupEvent) DataManagement.inflate(buffer);
                 commandClass = setupEvent.getClass().getSimpleName();
-                commandLog("Received " + commandClass + " from " + connection.toString() +
-                        "(" + buffer.capacity() + " bytes)!");
-                handleSetupEvent(setupEvent, connection);
+                if (isCommandLogEnabled()) {
+                    commandLog("Received " + commandClass + " from " + connection.toString() +
+                            "(" + buffer.limit() + " bytes)!");
+                }
+                if (storeBlobs(setupEvent, connection)) {
+                    handleSetupEvent(setupEvent, connection);
+                }
+                return;
+            }
+            case ProtocolConstants.EPHEMERAL_INDEX: { // called by the selector loop
+                // no hash check and no board log: points change nothing
+                PointEvent pointEvent = (PointEvent) DataManagement.inflate(buffer);
+                commandClass = pointEvent.getClass().getSimpleName();
+                if (boardUsers.contains(connection) && pointEvent.getUsername().equals(connection.getUsername())) {
+                    // only chunked format has the ephemeral lane, the others get points as board events
+                    List<UserConnection> ephemeralUsers = new ArrayList<>();
+                    List<UserConnection> orderedUsers = new ArrayList<>();
+                    for (UserConnection user : boardUsers) {
+                        if (user.getWireFormat() >= ProtocolConstants.CHUNKED_FORMAT) {
+                            ephemeralUsers.add(user);
+                        }
+                        else {
+                            orderedUsers.add(user);
+                        }
+                    }
+                    if (! ephemeralUsers.isEmpty()) {
+                        addLobbyCommand(command.relay(ProtocolConstants.EPHEMERAL_INDEX, commandClass, pointEvent),
+                                new CommandReceiver(ephemeralUsers, Status.READONLY));
+                    }
+                    if (! orderedUsers.isEmpty()) {
+                        addLobbyCommand(command.relay(ProtocolConstants.BOARD_INDEX, commandClass, pointEvent),
+                                new CommandReceiver(orderedUsers, Status.READONLY));
+                    }
+                }
                 return;
             }
             case ProtocolConstants.BOARD_INDEX: {
                 BoardEvent boardEvent = (BoardEvent) DataManagement.inflate(buffer);
                 commandClass = boardEvent.getClass().getSimpleName();
-                commandLog("Received " + commandClass + " from " + connection.toString() +
-                        "(" + buffer.capacity() + " bytes)!");
+                if (isCommandLogEnabled()) {
+                    commandLog("Received " + commandClass + " from " + connection.toString() +
+                            "(" + buffer.limit() + " bytes)!");
+                }
+                if (! storeBlobs(boardEvent, connection)) {
+                    return;
+                }
                 try {
-                    if (handleBoardEvent(boardEvent, connection)) {
+                    long start = System.nanoTime();
+                    boolean handled = handleBoardEvent(boardEvent, connection);
+                    BOARD_EVENT_TIMES[boardEvent.getIndex().ordinal()].recordSince(start);
+                    if (handled) {
+                        logBoardEvent(boardEvent);
+                        journalBoardEvent(boardEvent);
                         CommandReceiver receiver = new CommandReceiver(boardUsers, Status.READONLY);
-                        addLobbyCommand(new CommandInfo(buffer, ProtocolConstants.BOARD_INDEX, commandClass), receiver);
+                        addLobbyCommand(command.relay(ProtocolConstants.BOARD_INDEX, commandClass, boardEvent),
+                                receiver);
                     }
                 }
                 catch (Exception e) {
                     errorLog("Error while processing board event: " + e.getMessage());
+                    if (serverBoard != null) { // the event could be applied partially
+                        boardLog.reset(serverBoard.getVersion(), serverBoard.hashCode());
+                        textHistories.clear();
+                        snapshot();
+                    }
                 }
                 return;
             }
@@ -259,6 +448,104 @@ public class UserLobby extends Lobby {
         throw new IllegalStateException();
     }
 
+    /***
+     * Stores blobs (content of images and files) of the received event,
+     * only blob ids are kept in the event
+     * @param info received event
+     * @param connection event sender
+     * @return true if all blobs are stored, false if some referenced blob is unknown
+     */
+    private boolean storeBlobs(RedStringInfo info, UserConnection connection) {
+        BlobStore blobStore = userServer.getBlobStore();
+        for (BlobHolder blob : DataManagement.collectBlobs(info)) {
+            String id = blob.getBlobId();
+            try {
+                if (blob.isResolved()) {
+                    blobStore.put(id, blob.getBlob());
+                    blob.release();
+                }
+                else if (! BlobStore.isValidId(id) || ! blobStore.contains(id)) {
+                    errorLog("Unknown blob " + id + " from " + connection.toString() + "!");
+                    return false;
+                }
+            }
+            catch (IOException e) {
+                errorLog("Unable to store blob " + id + ": " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Applies text edit (transforms it against the edits its author has not seen yet)
+     * @param textContainer text container
+     * @param event edit text event
+     * @param connection edit author
+     * @return event to send to board users, null if the edit can not be applied
+     */
+    private EditTextEvent editText(TextContainer textContainer, EditTextEvent event, UserConnection connection) {
+        int id = textContainer.getComponentId();
+        TextHistory history = textHistories.get(id);
+        if (history == null || history.getRevision() != textContainer.getTextRevision()) {
+            // the text was replaced, older edits can not be transformed
+            history = new TextHistory(ConnectConfiguration.TEXT_HISTORY_CAPACITY, textContainer.getTextRevision());
+            textHistories.put(id, history);
+        }
+        try {
+            TextOperation operation = history.transform(event.getRevision(), event.getOperation());
+            if (operation == null) {
+                return null;
+            }
+            String text = operation.apply(textContainer.getText());
+            if (text.length() > TextContainer.TEXT_MAXIMUM_SIZE) {
+                return null;
+            }
+            textContainer.setText(text);
+            history.add(operation);
+            return new EditTextEvent(serverBoard.hashCode(), id, history.getRevision(), operation,
+                    connection.getUsername());
+        }
+        catch (IllegalArgumentException e) {
+            errorLog("Wrong text edit from " + connection.toString() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /***
+     * Applies patch to the stored image (pixels are loaded from the blob store, the new ones are stored there)
+     * @param image image
+     * @param patch patch
+     * @return patched image (released), null if the patch can not be applied
+     */
+    private ImageModel patchImage(ImageModel image, ImagePatch patch) {
+        if (image == null) {
+            return null;
+        }
+        BlobStore blobStore = userServer.getBlobStore();
+        try {
+            if (! image.isResolved()) {
+                byte[] blob = blobStore.get(image.getBlobId());
+                if (blob == null) {
+                    errorLog("Unknown blob " + image.getBlobId() + " of patched image!");
+                    return null;
+                }
+                image.resolve(blob);
+            }
+            ImageModel patched = patch.apply(image);
+            blobStore.put(patched.getBlobId(), patched.getBlob());
+            patched.release();
+            return patched;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            errorLog("Unable to patch image: " + e.getMessage());
+            return null;
+        }
+        finally {
+            image.release();
+        }
+    }
+
     /***
      * Checks board synchronization
      * @param boardEvent event
@@ -266,9 +553,22 @@ public class UserLobby extends Lobby {
      * @return if sender board is synchronized
      */
     private boolean synchronization(BoardEvent boardEvent, UserConnection connection) {
+        if (connection.getDigestVersion() == ProtocolConstants.LEGACY_DIGEST) {
+            return legacySynchronization(boardEvent, connection);
+        }
         if (boardEvent.getHash() != serverBoard.hashCode()) {
-            addSetupLobbyCommand(new SetBoardEvent(serverBoard), new CommandReceiver(connection));
-            String message = connection.toString() + " board is not actual, sent server board!";
+            String message;
+            long version = boardLog.findVersion(boardEvent.getHash());
+            if (version == -1) { // client board state is unknown or too old
+                addSetupLobbyCommand(new SetBoardEvent(serverBoard), new CommandReceiver(connection));
+                message = connection.toString() + " board is not actual, sent server board!";
+            }
+            else {
+                UpdateBoardEvent updateBoardEvent = createUpdateBoardEvent(boardLog.getChangedSince(version));
+                addSetupLobbyCommand(updateBoardEvent, new CommandReceiver(connection));
+                message = connection.toString() + " board is not actual (version " + version + "), sent " +
+                        updateBoardEvent.getSerializableContainers().size() + " changed containers!";
+            }
             log(message);
             addBoardMessageLobbyCommand(new BoardMessageEvent(message), new CommandReceiver(connection));
             return false;
@@ -276,6 +576,408 @@ public class UserLobby extends Lobby {
         return true;
     }
 
+    /***
+     * Checks board synchronization of the client that uses the legacy digest formula
+     * (the board log does not know its hashes, so the whole board is sent if it is not actual)
+     * @param boardEvent event
+     * @param connection event sender
+     * @return if sender board is synchronized
+     */
+    private boolean legacySynchronization(BoardEvent boardEvent, UserConnection connection) {
+        try {
+            if (boardEvent.getHash() == serverBoard.legacyHashCode(userServer.getBlobStore())) {
+                return true;
+            }
+        }
+        catch (IOException e) {
+            errorLog("Calculating legacy board hash failed: " + e.getMessage() + "!");
+        }
+        String message = connection.toString() + " board is not actual, sent server board!";
+        addSetupLobbyCommand(new SetBoardEvent(serverBoard), new CommandReceiver(connection));
+        log(message);
+        addBoardMessageLobbyCommand(new BoardMessageEvent(message), new CommandReceiver(connection));
+        return false;
+    }
+
+    /***
+     * Creates update of the board
+     * @param changed ids of changed components
+     * @return update board event
+     */
+    private UpdateBoardEvent createUpdateBoardEvent(Set<Integer> changed) {
+        CopyOnWriteArrayList<ExternalizableContainer> containers = new CopyOnWriteArrayList<>();
+        for (int id : changed) {
+            BoardContainer container = serverBoard.findContainer(id);
+            if (container != null) { // otherwise it is the board or a deleted container
+                containers.add((ExternalizableContainer) container);
+            }
+        }
+        Map<Integer, Integer> layers = new LinkedHashMap<>();
+        for (BoardContainer container : serverBoard.getContainers()) {
+            layers.put(container.getComponentId(), container.getLayer());
+        }
+        return new UpdateBoardEvent(serverBoard.getBoardInfo(), containers, layers);
+    }
+
+    /***
+     * Adds applied board event to the board log
+     * @param boardEvent applied board event
+     */
+    private void logBoardEvent(BoardEvent boardEvent) {
+        int id;
+        switch (boardEvent.getIndex()) {
+            case SEND_HASH_E:
+            case POINT_E: {
+                return; // the board is not changed
+            }
+            case SET_BOARD_CONTENT_E:
+            case CLEAR_BOARD_E: { // all texts are replaced
+                textHistories.clear();
+                boardLog.reset(serverBoard.getVersion(), serverBoard.hashCode());
+                return;
+            }
+            case CHANGE_GENERAL_FONT_E:
+            case CHANGE_GENERAL_COLOR_E:
+            case CHANGE_GENERAL_OPAQUE_E: { // all containers are changed
+                boardLog.reset(serverBoard.getVersion(), serverBoard.hashCode());
+                return;
+            }
+            case CHANGE_SYNC_MODE_E: {
+                id = InteractiveBoard.BOARD_ID;
+                break;
+            }
+            case ADD_CONTAINER_E: {
+                id = ((AddContainerEvent) boardEvent).getSerializableContainer().getComponentId();
+                break;
+            }
+            default: {
+                id = ((ComponentEvent) boardEvent).getId();
+                break;
+            }
+        }
+        boardLog.add(serverBoard.getVersion(), serverBoard.hashCode(), id);
+    }
+
+    /***
+     * Appends applied board event to the journal
+     * @param boardEvent applied board event
+     */
+    private void journalBoardEvent(BoardEvent boardEvent) {
+        switch (boardEvent.getIndex()) {
+            case SEND_HASH_E:
+            case POINT_E: {
+                return; // the board is not changed
+            }
+            case PATCH_IMAGE_E: { // the patched image is stored already, the patch is not applied again
+                int id = ((PatchImageEvent) boardEvent).getId();
+                ImageContainer imageContainer = (ImageContainer) serverBoard.findContainer(id);
+                journalEvent(new ChangeImageEvent(serverBoard.hashCode(), id, imageContainer.getImage()));
+                return;
+            }
+            default: {
+                journalEvent(boardEvent);
+            }
+        }
+    }
+
+    /***
+     * Appends applied event to the journal, snapshots the lobby state if the journal is too long
+     * @param info applied event
+     */
+    private void journalEvent(RedStringInfo info) {
+        try {
+            byte[] payload = null;
+            if (WireCodec.hasCodec(info)) {
+                try {
+                    payload = WireCodec.encode(info).array();
+                }
+                catch (IOException e) {
+                    // too big for binary format, it is serialized
+                }
+            }
+            if (payload == null) {
+                payload = DataManagement.serialize(info);
+            }
+            journal.append(LobbyJournal.EVENT_RECORD, payload);
+        }
+        catch (IOException e) {
+            errorLog("Unable to journal " + info.getClass().getSimpleName() + ": " + e.getMessage());
+            return;
+        }
+        if (journal.needsSnapshot()) {
+            snapshot();
+        }
+    }
+
+    /***
+     * Appends lobby info and ban list to the journal
+     */
+    private void journalLobby() {
+        try {
+            journal.append(LobbyJournal.LOBBY_RECORD, serializeState(false));
+        }
+        catch (IOException e) {
+            errorLog("Unable to journal lobby info: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Replaces the journal by the snapshot of the lobby state (the whole board is changed or the journal is long)
+     */
+    private void snapshot() {
+        try {
+            journal.snapshot(serializeState(true));
+        }
+        catch (IOException e) {
+            errorLog("Unable to snapshot lobby state: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Serializes lobby state (blobs of the board are stored already, only their ids are serialized)
+     * @param withBoard if the board is serialized too
+     * @return serialized lobby info, ban list and board
+     * @throws IOException if something went wrong
+     */
+    private byte[] serializeState(boolean withBoard) throws IOException {
+        ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(arrayOutputStream);
+        objectOutputStream.writeObject(lobbyInfo);
+        objectOutputStream.writeObject(new HashMap<>(banList));
+        if (withBoard) {
+            objectOutputStream.writeObject(serverBoard);
+        }
+        objectOutputStream.close();
+        return arrayOutputStream.toByteArray();
+    }
+
+    /***
+     * Applies journal record while the lobby is recovered
+     * @param type record type
+     * @param payload record data
+     * @throws IOException if record is wrong
+     * @throws ClassNotFoundException if record is wrong
+     */
+    @SuppressWarnings("unchecked")
+    private void replayRecord(byte type, ByteBuffer payload) throws IOException, ClassNotFoundException {
+        switch (type) {
+            case LobbyJournal.LOBBY_RECORD: {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload.array()));
+                lobbyInfo = (LobbyInfo) in.readObject();
+                banList.clear();
+                banList.putAll((Map<String, String>) in.readObject());
+                break;
+            }
+            case LobbyJournal.EVENT_RECORD: {
+                replayBoardEvent((BoardEvent) DataManagement.inflate(payload));
+                break;
+            }
+            default: {
+                throw new IOException("Unknown journal record " + type + "!");
+            }
+        }
+    }
+
+    /***
+     * Applies journaled board event (rights were checked when the event was applied first)
+     * @param boardEvent board event
+     */
+    private void replayBoardEvent(BoardEvent boardEvent) {
+        if (serverBoard == null) {
+            return;
+        }
+        switch (boardEvent.getIndex()) {
+            case CHANGE_SYNC_MODE_E: {
+                serverBoard.setAsynchronous(((ChangeSyncModeEvent) boardEvent).isAsynchronous());
+                return;
+            }
+            case CLEAR_BOARD_E: {
+                serverBoard.clearBoard();
+                return;
+            }
+            case SET_BOARD_CONTENT_E: {
+                serverBoard.setBoardContent(((SetBoardContentEvent) boardEvent).getSerializableContainers());
+                return;
+            }
+            case ADD_CONTAINER_E: {
+                serverBoard.addContainer(((AddContainerEvent) boardEvent).getSerializableContainer());
+                return;
+            }
+            case CHANGE_GENERAL_COLOR_E: {
+                setGeneralContainerColor((ChangeGeneralColorEvent) boardEvent);
+                return;
+            }
+            case CHANGE_GENERAL_FONT_E: {
+                setGeneralContainerFont(((ChangeGeneralFontEvent) boardEvent).getFont());
+                return;
+            }
+            case CHANGE_GENERAL_OPAQUE_E: {
+                setGeneralContainerOpaque(((ChangeGeneralOpaqueEvent) boardEvent).isOpaque());
+                return;
+            }
+        }
+        if (! (boardEvent instanceof ComponentEvent)) {
+            return;
+        }
+        int id = ((ComponentEvent) boardEvent).getId();
+        BasicComponent component = id == InteractiveBoard.BOARD_ID ? serverBoard : serverBoard.findContainer(id);
+        if (component == null) {
+            return;
+        }
+        switch (boardEvent.getIndex()) {
+            case DELETE_CONTAINER_E: {
+                serverBoard.deleteContainer(id);
+                break;
+            }
+            case CHANGE_BLOCK_E: {
+                ChangeBlockEvent cbe = (ChangeBlockEvent) boardEvent;
+                component.setBlocked(cbe.isBlock(), cbe.getUsername());
+                break;
+            }
+            case RESIZE_E: {
+                ResizeEvent resizeEvent = (ResizeEvent) boardEvent;
+                component.resizeComponent(resizeEvent.getLeft(), resizeEvent.getTop(), resizeEvent.getWidth(),
+                        resizeEvent.getHeight());
+                if (resizeEvent.isUnblock()) {
+                    component.setBlocked(false, null);
+                }
+                break;
+            }
+            case MOVE_E: {
+                MoveEvent moveEvent = (MoveEvent) boardEvent;
+                component.moveComponent(moveEvent.getLeft(), moveEvent.getTop());
+                if (moveEvent.isUnblock()) {
+                    component.setBlocked(false, null);
+                }
+                break;
+            }
+            case CHANGE_NAME_E: {
+                component.setComponentName(((ChangeNameEvent) boardEvent).getName());
+                break;
+            }
+            case CHANGE_COLOR_E: {
+                ChangeColorEvent cce = (ChangeColorEvent) boardEvent;
+                if (cce.getForeground() != null) {
+                    component.setComponentForeground(cce.getForeground());
+                }
+                if (cce.getBackground() != null) {
+                    component.setComponentBackground(cce.getBackground());
+                }
+                break;
+            }
+            case CHANGE_OPAQUE_E: {
+                component.setComponentOpaque(((ChangeOpaqueEvent) boardEvent).isOpaque());
+                break;
+            }
+            case CHANGE_FONT_E: {
+                component.setComponentFont(((ChangeFontEvent) boardEvent).getFont());
+                break;
+            }
+            case CHANGE_OWNER_E: {
+                component.setComponentOwner(((ChangeOwnerEvent) boardEvent).getNewOwner());
+                break;
+            }
+            case CHANGE_STATUS_E: {
+                component.setComponentStatus(((ChangeStatusEvent) boardEvent).getNewStatus());
+                break;
+            }
+            case CHANGE_CONTAINER_LAYER_E: {
+                if (component instanceof BoardContainer) {
+                    serverBoard.setLayerPosition((BoardContainer) component,
+                            ((ChangeContainerLayerEvent) boardEvent).getLayer());
+                }
+                break;
+            }
+            case CLEAR_CONTAINER_E: {
+                if (component instanceof BoardContainer) {
+                    ((BoardContainer) component).clearContainer();
+                }
+                break;
+            }
+            case SET_CONTAINER_CONTENT_E: {
+                if (component instanceof BoardContainer) {
+                    ((BoardContainer) component).setContent(
+                            ((SetContainerContentEvent) boardEvent).getSerializableContainer());
+                }
+                break;
+            }
+            case CHANGE_TEXT_E: {
+                if (component instanceof TextContainer) {
+                    ((TextContainer) component).setText(((ChangeTextEvent) boardEvent).getText());
+                }
+                break;
+            }
+            case EDIT_TEXT_E: {
+                if (component instanceof TextContainer) {
+                    TextContainer textContainer = (TextContainer) component;
+                    textContainer.setText(((EditTextEvent) boardEvent).getOperation().apply(textContainer.getText()));
+                }
+                break;
+            }
+            case CHANGE_IMAGE_E: {
+                if (component instanceof ImageContainer) {
+                    ((ImageContainer) component).setImage(((ChangeImageEvent) boardEvent).getImage());
+                }
+                break;
+            }
+            case CHANGE_FILE_E: {
+                if (component instanceof FileContainer) {
+                    ((FileContainer) component).setFile(((ChangeFileEvent) boardEvent).getFile());
+                }
+                break;
+            }
+        }
+    }
+
+    /***
+     * Changes general container colors and colors of not blocked containers
+     * @param event change general color event (null color is not changed)
+     */
+    private void setGeneralContainerColor(ChangeGeneralColorEvent event) {
+        if (event.getForeground() != null) {
+            serverBoard.setGeneralContainerForeground(event.getForeground());
+            for (BoardContainer container : serverBoard.getContainers()) {
+                if (! container.isBlocked()) {
+                    container.setComponentForeground(event.getForeground());
+                }
+            }
+        }
+        if (event.getBackground() != null) {
+            serverBoard.setGeneralContainerBackground(event.getBackground());
+            for (BoardContainer container : serverBoard.getContainers()) {
+                if (! container.isBlocked()) {
+                    container.setComponentBackground(event.getBackground());
+                }
+            }
+        }
+    }
+
+    /***
+     * Changes general container font and font of not blocked containers
+     * @param font new font
+     */
+    private void setGeneralContainerFont(FontModel font) {
+        serverBoard.setGeneralContainerFont(font);
+        for (BoardContainer container : serverBoard.getContainers()) {
+            if (! container.isBlocked()) {
+                container.setComponentFont(font);
+            }
+        }
+    }
+
+    /***
+     * Changes general container opaque and opaque of not blocked containers
+     * @param opaque new opaque
+     */
+    private void setGeneralContainerOpaque(boolean opaque) {
+        serverBoard.setGeneralContainerOpaque(opaque);
+        for (BoardContainer container : serverBoard.getContainers()) {
+            if (! container.isBlocked()) {
+                container.setComponentOpaque(opaque);
+            }
+        }
+    }
+
     /***
      * Handles board event
      * @param boardEvent board event
@@ -283,7 +985,10 @@ public class UserLobby extends Lobby {
      * @return true if event can be implemented, false otherwise
      */
     private boolean handleBoardEvent(BoardEvent boardEvent, UserConnection connection) {
-        if (! serverBoard.isAsynchronous()) {
+        // concurrent text edits are transformed, the board hash of their authors may differ for a while,
+        // streamed moves and resizes arrive before the author hears the previous ones
+        if (! serverBoard.isAsynchronous() && boardEvent.getIndex() != BoardEvent.BoardEventType.EDIT_TEXT_E &&
+                ! isDragged(boardEvent, connection)) {
             if (! synchronization(boardEvent, connection)) {
                 return false;
             }
@@ -374,22 +1079,11 @@ public class UserLobby extends Lobby {
             case CHANGE_GENERAL_COLOR_E: {
                 ChangeGeneralColorEvent cgce = (ChangeGeneralColorEvent) boardEvent;
                 if (checkComponent(connection, serverBoard, Status.LOBBY_ROOT)) {
+                    setGeneralContainerColor(cgce);
                     if (cgce.getForeground() != null) {
-                        serverBoard.setGeneralContainerForeground(cgce.getForeground());
-                        for (BoardContainer container : serverBoard.getContainers()) {
-                            if (! container.isBlocked()) {
-                                container.setComponentForeground(cgce.getForeground());
-                            }
-                        }
                         message = connection.toString() + " changed general container foreground color!";
                     }
                     if (cgce.getBackground() != null) {
-                        serverBoard.setGeneralContainerBackground(cgce.getBackground());
-                        for (BoardContainer container : serverBoard.getContainers()) {
-                            if (! container.isBlocked()) {
-                                container.setComponentBackground(cgce.getBackground());
-                            }
-                        }
                         if (cgce.getForeground() != null) {
                             message += "\n" + connection.toString() + " changed general container background color!";
                         }
@@ -408,12 +1102,7 @@ public class UserLobby extends Lobby {
             case CHANGE_GENERAL_FONT_E: {
                 FontModel font = ((ChangeGeneralFontEvent) boardEvent).getFont();
                 if (checkComponent(connection, serverBoard, Status.LOBBY_ROOT)) {
-                    serverBoard.setGeneralContainerFont(font);
-                    for (BoardContainer container : serverBoard.getContainers()) {
-                        if (! container.isBlocked()) {
-                            container.setComponentFont(font);
-                        }
-                    }
+                    setGeneralContainerFont(font);
                     message = connection.toString() + " changed general container font!";
                     success = true;
                 } else {
@@ -425,12 +1114,7 @@ public class UserLobby extends Lobby {
             case CHANGE_GENERAL_OPAQUE_E: {
                 boolean opaque = ((ChangeGeneralOpaqueEvent) boardEvent).isOpaque();
                 if (checkComponent(connection, serverBoard, Status.LOBBY_ROOT)) {
-                    serverBoard.setGeneralContainerOpaque(opaque);
-                    for (BoardContainer container : serverBoard.getContainers()) {
-                        if (! container.isBlocked()) {
-                            container.setComponentOpaque(opaque);
-                        }
-                    }
+                    setGeneralContainerOpaque(opaque);
                     message = connection.toString() + " changed general container opaque!";
                     success = true;
                 } else {
@@ -477,14 +1161,17 @@ public class UserLobby extends Lobby {
                 }
                 if (checkComponent(connection, component)) {
                     if (checkResizing(component, resizeEvent)) {
+                        boolean dragged = isDragged(resizeEvent, connection);
                         component.resizeComponent(resizeEvent.getLeft(), resizeEvent.getTop(),
                                 resizeEvent.getWidth(), resizeEvent.getHeight());
-                        message = connection.toString() + " resized " + component.getComponentId() + "!";
                         if (resizeEvent.isUnblock()) {
                             component.setBlocked(false, null);
-                            message += "\n" +
+                            message = connection.toString() + " resized " + component.getComponentId() + "!\n" +
                                     connection.toString() + " unblocked " + component.getComponentId() + "!";
                         }
+                        else if (! dragged) { // steps of dragging are not logged
+                            message = connection.toString() + " resized " + component.getComponentId() + "!";
+                        }
                         success = true;
                     }
                     else {
@@ -510,13 +1197,16 @@ public class UserLobby extends Lobby {
                     break;
                 }
                 if (checkComponent(connection, component)) {
+                    boolean dragged = isDragged(moveEvent, connection);
                     component.moveComponent(moveEvent.getLeft(), moveEvent.getTop());
-                    message = connection.toString() + " moved " + component.getComponentId() + "!";
                     if (moveEvent.isUnblock()) {
                         component.setBlocked(false, null);
-                        message += "\n" +
+                        message = connection.toString() + " moved " + component.getComponentId() + "!\n" +
                                 connection.toString() + " unblocked " + component.getComponentId() + "!";
                     }
+                    else if (! dragged) { // steps of dragging are not logged
+                        message = connection.toString() + " moved " + component.getComponentId() + "!";
+                    }
                     success = true;
                 } else {
                     message = connection.toString() + " has no rights to move component " +
@@ -749,6 +1439,42 @@ public class UserLobby extends Lobby {
                 }
                 break;
             }
+            case EDIT_TEXT_E: {
+                EditTextEvent ete = (EditTextEvent) boardEvent;
+                TextContainer textContainer;
+                try {
+                    textContainer = (TextContainer) serverBoard.findContainer(ete.getId());
+                    if (textContainer == null) {
+                        throw new ClassCastException();
+                    }
+                }
+                catch (ClassCastException e) {
+                    message = "Unable to find text container by id!";
+                    success = false;
+                    break;
+                }
+                if (checkComponent(connection, textContainer)) {
+                    EditTextEvent applied = editText(textContainer, ete, connection);
+                    if (applied != null) {
+                        // the transformed operation is sent instead of the received one,
+                        // there is no message for every keystroke
+                        addBoardLobbyCommand(applied, new CommandReceiver(boardUsers, Status.READONLY));
+                        success = false;
+                    }
+                    else {
+                        message = connection.toString() + " edited old text of " +
+                                textContainer.getComponentId() + ", sent actual text!";
+                        success = false;
+                        addSetupLobbyCommand(createUpdateBoardEvent(Collections.singleton(textContainer.getComponentId())),
+                                new CommandReceiver(connection));
+                    }
+                } else {
+                    message = connection.toString() + " has no rights to edit text of " +
+                            textContainer.getComponentId() + "!";
+                    success = false;
+                }
+                break;
+            }
             case CHANGE_IMAGE_E: {
                 ChangeImageEvent cie = (ChangeImageEvent) boardEvent;
                 ImageContainer imageContainer;
@@ -774,6 +1500,40 @@ public class UserLobby extends Lobby {
                 }
                 break;
             }
+            case PATCH_IMAGE_E: {
+                PatchImageEvent pie = (PatchImageEvent) boardEvent;
+                ImageContainer imageContainer;
+                try {
+                    imageContainer = (ImageContainer) serverBoard.findContainer(pie.getId());
+                    if (imageContainer == null) {
+                        throw new ClassCastException();
+                    }
+                }
+                catch (ClassCastException e) {
+                    message = "Unable to find image container by id!";
+                    success = false;
+                    break;
+                }
+                if (checkComponent(connection, imageContainer)) {
+                    ImageModel image = patchImage(imageContainer.getImage(), pie.getPatch());
+                    if (image != null) {
+                        imageContainer.setImage(image);
+                        message = connection.toString() + " drew " + pie.getPatch().getSize() +
+                                " pixels on " + imageContainer.getComponentId() + "!";
+                        success = true;
+                    }
+                    else {
+                        message = connection.toString() + " sent wrong patch to " +
+                                imageContainer.getComponentId() + "!";
+                        success = false;
+                    }
+                } else {
+                    message = connection.toString() + " has no rights to draw on " +
+                            imageContainer.getComponentId() + "!";
+                    success = false;
+                }
+                break;
+            }
             case CHANGE_FILE_E: {
                 ChangeFileEvent cfe = (ChangeFileEvent) boardEvent;
                 FileContainer fileContainer;
@@ -814,6 +1574,29 @@ public class UserLobby extends Lobby {
         return success;
     }
 
+    /***
+     * Defines if the event is a step of dragging (moves and resizes are streamed while the author
+     * drags the component, it is blocked by the author, so positions do not conflict)
+     * @param boardEvent board event
+     * @param connection event author
+     * @return true if the event moves or resizes the component blocked by its author
+     */
+    private boolean isDragged(BoardEvent boardEvent, UserConnection connection) {
+        int id;
+        if (boardEvent instanceof MoveEvent) {
+            id = ((MoveEvent) boardEvent).getId();
+        }
+        else if (boardEvent instanceof ResizeEvent) {
+            id = ((ResizeEvent) boardEvent).getId();
+        }
+        else {
+            return false;
+        }
+        BasicComponent component = id == InteractiveBoard.BOARD_ID ? serverBoard : serverBoard.findContainer(id);
+        return component != null && component.isBlocked() &&
+                connection.getUsername().equals(component.getBlockOwner());
+    }
+
     /***
      * Checks if the component can be processed
      * Compares user status and component status and component owner
@@ -900,6 +1683,9 @@ public class UserLobby extends Lobby {
                 else {
                     if (connection.equals(root)) {
                         serverBoard = new ExternalizableBoard(serializableBoard);
+                        boardLog.reset(serverBoard.getVersion(), serverBoard.hashCode());
+                        textHistories.clear();
+                        snapshot();
                         log(connection.toString() + "Created new server board!");
                         boardUsers.add(connection); // add to board users
                         addSetupLobbyCommand(new SetBoardEvent(serializableBoard), new CommandReceiver(connection));
@@ -914,6 +1700,25 @@ public class UserLobby extends Lobby {
                 }
                 break;
             }
+            case BLOB_R: {
+                BlobStore blobStore = userServer.getBlobStore();
+                for (String id : ((BlobRequest) setupEvent).getIds()) {
+                    byte[] blob = null;
+                    try {
+                        if (BlobStore.isValidId(id)) {
+                            blob = blobStore.get(id);
+                        }
+                    }
+                    catch (IOException e) {
+                        errorLog("Unable to read blob " + id + ": " + e.getMessage());
+                    }
+                    if (blob == null) {
+                        errorLog(connection.toString() + " requested unknown blob " + id + "!");
+                    }
+                    addSetupLobbyCommand(new BlobEvent(id, blob), new CommandReceiver(connection));
+                }
+                break;
+            }
             case CLOSE_BOARD_E: {
                 boardUsers.remove(connection); // remove from board users
                 log(connection.toString() + " is not board user anymore!");
@@ -940,6 +1745,9 @@ public class UserLobby extends Lobby {
                             container.setComponentOwner(root.getUsername());
                         }
                     }
+                    boardLog.reset(serverBoard.getVersion(), serverBoard.hashCode());
+                    textHistories.clear();
+                    snapshot();
                     addSetupLobbyCommand(new SetBoardEvent(serverBoard),
                             new CommandReceiver(boardUsers, Status.READONLY));
                     log(connection.toString() + " set new board!");
@@ -954,6 +1762,9 @@ public class UserLobby extends Lobby {
                     addSetupLobbyCommand(new DeleteBoardEvent(),
                             new CommandReceiver(boardUsers, Status.READONLY));
                     serverBoard = null;
+                    boardLog.reset(0, 0);
+                    textHistories.clear();
+                    snapshot();
                     log(connection.toString() + " deleted server board!");
                 }
                 else {
@@ -1024,7 +1835,7 @@ public class UserLobby extends Lobby {
         }
         for (UserConnection userConnection : newUsers) {
             userConnection.setId(generateId());
-            SelectionKey key = userConnection.registerOnSelector(selector);
+            SelectionKey key = register(userConnection);
             // checking name collisions
             String oldName = userConnection.getUsername();
             String newName = checkUsername(oldName);
@@ -1145,7 +1956,8 @@ public class UserLobby extends Lobby {
      * @return lobby session
      */
     public LobbySession getSession() {
-        return new LobbySession(lobbyInfo.getLobbyName(), userList, boardUsers, serverBoard);
+        return new LobbySession(lobbyInfo.getLobbyName(), userList, boardUsers, serverBoard,
+                getQueueDepth(), getMaxQueueDepth(), getRejectedCount());
     }
 
     /***
@@ -1184,6 +1996,7 @@ public class UserLobby extends Lobby {
         String newName = userServer.checkLobbyName(lobbyName);
         userServer.changeLobbyName(lobbyInfo.getLobbyName(), newName);
         lobbyInfo.setLobbyName(newName);
+        journalLobby();
         message += newName + "!";
         addClientLobbyCommand(new ChangeLobbyNameEvent(oldName, newName),
                 new CommandReceiver(userList, Status.READONLY));
@@ -1231,6 +2044,7 @@ public class UserLobby extends Lobby {
             lobbyInfo.setSecured(true);
         }
         lobbyInfo.setPassword(password); // changing it here
+        journalLobby();
         //TODO: send new password?
         addChatLobbyCommand(new NotificationEvent(message),
                 new CommandReceiver(userList, Status.MODERATOR)); // notification
@@ -1608,6 +2422,7 @@ public class UserLobby extends Lobby {
     private void banUser(UserConnection target, String message) {
         //TODO: see banList structure
         banList.put(target.getHost(), target.getUsername()); // ban him here
+        journalLobby();
         addClientLobbyCommand(new BanEvent(), new CommandReceiver(target)); // ban him on the client
         addChatLobbyCommand(new NotificationEvent(message),
                 new CommandReceiver(userList, Status.READONLY)); // notification
@@ -1659,6 +2474,7 @@ public class UserLobby extends Lobby {
             //TODO: see banList structure
             if (entry.getValue().equals(username)) {
                 banList.remove(entry.getKey());
+                journalLobby();
                 addChatLobbyCommand(new NotificationEvent(message),
                         new CommandReceiver(userList, Status.READONLY)); // notification
                 log(message);
@@ -1774,6 +2590,8 @@ public class UserLobby extends Lobby {
      * @param receiver command receiver
      */
     private void addBoardLobbyCommand(RedStringInfo info, CommandReceiver receiver) {
+        logBoardEvent((BoardEvent) info); // board events are sent after they were applied to the server board
+        journalBoardEvent((BoardEvent) info);
         addLobbyCommand(info, ProtocolConstants.BOARD_INDEX, receiver);
     }
 
@@ -1794,4 +2612,100 @@ public class UserLobby extends Lobby {
     private void addSetupLobbyCommand(RedStringInfo info, CommandReceiver receiver) {
         addLobbyCommand(info, ProtocolConstants.SETUP_INDEX, receiver);
     }
+
+    /***
+     * Adds command to write. Receivers of older protocol versions get the command
+     * in the old layouts (or its old equivalent) if it is needed
+     * @param commandInfo command
+     * @param receiver command receiver
+     */
+    @Override
+    protected void addLobbyCommand(CommandInfo commandInfo, CommandReceiver receiver) {
+        RedStringInfo info = commandInfo.getInfo();
+        if (hasLegacyForm(info)) {
+            List<UserConnection> legacyUsers = new ArrayList<>();
+            for (UserConnection user : receiver.getReceivers()) {
+                if (user.getProtocolVersion() < ProtocolConstants.PROTOCOL_VERSION) {
+                    legacyUsers.add(user);
+                }
+            }
+            if (! legacyUsers.isEmpty()) {
+                for (UserConnection user : legacyUsers) {
+                    receiver.removeReceiver(user);
+                }
+                addLegacyLobbyCommand(info, commandInfo.getCommandType(),
+                        new CommandReceiver(legacyUsers, receiver.getMinimumUserStatus()));
+                if (receiver.getReceivers().isEmpty()) {
+                    commandInfo.release();
+                    return;
+                }
+            }
+        }
+        super.addLobbyCommand(commandInfo, receiver);
+    }
+
+    /***
+     * Defines if clients of older protocol versions can not read the command as it is
+     * (it has containers, contents or it is unknown to them)
+     * @param info command (may be null)
+     * @return true if the command has to be converted, false otherwise
+     */
+    private static boolean hasLegacyForm(RedStringInfo info) {
+        return info instanceof AddContainerEvent || info instanceof SetContainerContentEvent ||
+                info instanceof ChangeImageEvent || info instanceof ChangeFileEvent ||
+                info instanceof SetBoardContentEvent || info instanceof SetBoardEvent ||
+                info instanceof UpdateBoardEvent || info instanceof EditTextEvent ||
+                info instanceof PatchImageEvent || info instanceof BlobEvent;
+    }
+
+    /***
+     * Adds command for clients of older protocol versions to write
+     * @param info command
+     * @param commandType command type
+     * @param receiver command receiver
+     */
+    private void addLegacyLobbyCommand(RedStringInfo info, byte commandType, CommandReceiver receiver) {
+        RedStringInfo legacyInfo = toLegacyInfo(info);
+        if (legacyInfo == null) { // nothing to send
+            return;
+        }
+        byte[] serialized;
+        try {
+            serialized = DataManagement.serializeLegacy(legacyInfo, userServer.getBlobStore());
+        }
+        catch (IOException e) {
+            errorLog("Unable to write lobby command for old clients: " + e.getMessage() + "!");
+            return;
+        }
+        super.addLobbyCommand(new CommandInfo(ByteBuffer.wrap(serialized), commandType,
+                legacyInfo.getClass().getSimpleName()), receiver);
+    }
+
+    /***
+     * Converts command to its equivalent that is known to clients of older protocol versions
+     * (commands are sent after they were applied, so the server board has the result)
+     * @param info command
+     * @return equivalent command, null if nothing has to be sent
+     */
+    private RedStringInfo toLegacyInfo(RedStringInfo info) {
+        if (info instanceof EditTextEvent) { // the whole text instead of the operation
+            EditTextEvent event = (EditTextEvent) info;
+            BoardContainer container = serverBoard.findContainer(event.getId());
+            return container instanceof TextContainer ? new ChangeTextEvent(event.getHash(), event.getId(),
+                    ((TextContainer) container).getText()) : null;
+        }
+        if (info instanceof PatchImageEvent) { // the whole image instead of the patch
+            PatchImageEvent event = (PatchImageEvent) info;
+            BoardContainer container = serverBoard.findContainer(event.getId());
+            return container instanceof ImageContainer ? new ChangeImageEvent(event.getHash(), event.getId(),
+                    ((ImageContainer) container).getImage()) : null;
+        }
+        if (info instanceof UpdateBoardEvent) { // the whole board instead of the changed containers
+            return serverBoard != null ? new SetBoardEvent(serverBoard.toExternalizable()) : null;
+        }
+        if (info instanceof BlobEvent) { // old clients get contents in place, they never request blobs
+            return null;
+        }
+        return info;
+    }
 }
@@ -12,13 +12,14 @@ import rslib.cs.server.Server;
 import rslib.cs.server.admin.AdminLobby;
 import rslib.cs.server.admin.AdminServer;
 import rslib.cs.server.util.LobbySession;
+import rslib.cs.server.util.SelectorPool;
 import rslib.cs.server.util.ServerUtil;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.nio.channels.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 /***
  * Represents main server for users
@@ -34,6 +35,15 @@ public class UserServer extends Server  {
     /** Link to admin server */
     private AdminServer adminServer;
 
+    /** Selector threads shared by all lobbies */
+    private SelectorPool selectorPool;
+
+    /** Blobs (content of images and files) of all lobbies */
+    private BlobStore blobStore;
+
+    /** Writer of lobby journals */
+    private JournalWriter journalWriter;
+
     /***
      * The constructor. Starts the server
      * @param adminServer  link to main server (for logs)
@@ -46,15 +56,69 @@ public class UserServer extends Server  {
         }
         this.adminServer  = adminServer;
         lobbies = new ConcurrentHashMap<>(); // concurrency
+        selectorPool = new SelectorPool("lobby", SelectorPool.DEFAULT_SIZE);
+        blobStore = new BlobStore(new File(ConnectConfiguration.SERVER_BLOB_DIRECTORY),
+                ConnectConfiguration.SERVER_BLOB_CACHE_SIZE);
+        journalWriter = new JournalWriter();
     }
 
     @Override
     public void start() {
+        selectorPool.start();
+        journalWriter.start();
+        recoverLobbies(); // before users can log in
         new Thread(this).start();
         new Thread(executor).start();
         adminServer.foldLog("User server launched successfully!");
     }
 
+    /***
+     * Recovers lobbies from their journals (in parallel, lobbies do not depend on each other)
+     */
+    private void recoverLobbies() {
+        File[] directories = new File(ConnectConfiguration.SERVER_JOURNAL_DIRECTORY).listFiles();
+        if (directories == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService recoveryPool = Executors.newFixedThreadPool(SelectorPool.DEFAULT_SIZE);
+        Map<File, Future<UserLobby>> recoveries = new LinkedHashMap<>();
+        for (final File directory : directories) {
+            if (! directory.isDirectory()) {
+                continue;
+            }
+            recoveries.put(directory, recoveryPool.submit(new Callable<UserLobby>() {
+                @Override
+                public UserLobby call() throws Exception {
+                    return UserLobby.recover(UserServer.this, directory);
+                }
+            }));
+        }
+        recoveryPool.shutdown();
+        for (Map.Entry<File, Future<UserLobby>> entry : recoveries.entrySet()) {
+            try {
+                UserLobby userLobby = entry.getValue().get();
+                if (userLobby != null) {
+                    String lobbyName = userLobby.getLobbyInfo().getLobbyName();
+                    String newName = checkLobbyName(lobbyName);
+                    if (! newName.equals(lobbyName)) {
+                        userLobby.changeLobbyName(newName);
+                    }
+                    lobbies.put(newName, userLobby);
+                }
+            }
+            catch (ExecutionException e) {
+                errorLog("Unable to recover lobby from " + entry.getKey().getPath() + ": " +
+                        e.getCause().getMessage());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log("Recovered " + lobbies.size() + " lobbies in " + (System.currentTimeMillis() - start) + " ms!");
+    }
+
     @Override
     public void log(String message) {
         String mess = "UserServer: " + message;
@@ -66,8 +130,11 @@ public class UserServer extends Server  {
 
     @Override
     public void commandLog(String message) {
+        if (! commandLogsEnabled) {
+            return;
+        }
         String mess = "UserServer: Command: " + message;
-        if (commandLogsEnabled && adminLobby != null) {
+        if (adminLobby != null) {
             adminLobby.sendLog(mess, false);
         }
         adminServer.foldLog(mess);
@@ -87,8 +154,10 @@ public class UserServer extends Server  {
         // Closing all lobbies
         Set <Map.Entry<String, UserLobby>> entries = lobbies.entrySet();
         for (Map.Entry<String, UserLobby> entry: entries) {
-            entry.getValue().shutdown(); // shutting down each lobby
+            entry.getValue().close(); // closing each lobby, it is recovered when the server starts
         }
+        journalWriter.shutdown();
+        selectorPool.shutdown();
         // Closing all unregistered connections
         Set<SelectionKey> keySet = users.keySet();
         for (SelectionKey key : keySet) {
@@ -113,6 +182,7 @@ public class UserServer extends Server  {
                 errorLog("Error while shutting down ServerSocketChannel: " + e.getMessage() + " !");
             }
         }
+        executor.shutdown();
         log("Server has been shut down!");
     }
 
@@ -143,7 +213,9 @@ public class UserServer extends Server  {
         if (commandType == ProtocolConstants.CONNECT_INDEX) {
             // if it is a command to server, handle it
             UserServerRequest request = (UserServerRequest) DataManagement.inflate(buffer);
-            commandLog("Received " + request.getClass().getSimpleName() + " from " + connection.getHost() + "!");
+            if (commandLogsEnabled) {
+                commandLog("Received " + request.getClass().getSimpleName() + " from " + connection.getHost() + "!");
+            }
             handleRequest(request, connection.getKey(), connection);
         } else {
             // not expected here
@@ -161,12 +233,18 @@ public class UserServer extends Server  {
         switch (request.getIndex()) {
             case LOGIN_R: {
                 LoginRequest loginRequest = (LoginRequest) request;
-                login(key, connection, loginRequest.getUsername(), loginRequest.getLobbyInfo());
+                login(key, connection, loginRequest.getUsername(), loginRequest.getLobbyInfo(),
+                        ServerUtil.negotiateWireFormat(loginRequest.getWireFormat(),
+                                loginRequest.getProtocolVersion()), loginRequest.getProtocolVersion(),
+                        ServerUtil.negotiateDigest(loginRequest.getDigestVersion()));
                 break;
             }
             case CREATE_LOBBY_R: {
                 CreateLobbyRequest createLobbyRequest = (CreateLobbyRequest) request;
-                createLobby(key, connection, createLobbyRequest.getUsername(), createLobbyRequest.getLobbyInfo());
+                createLobby(key, connection, createLobbyRequest.getUsername(), createLobbyRequest.getLobbyInfo(),
+                        ServerUtil.negotiateWireFormat(createLobbyRequest.getWireFormat(),
+                                createLobbyRequest.getProtocolVersion()), createLobbyRequest.getProtocolVersion(),
+                        ServerUtil.negotiateDigest(createLobbyRequest.getDigestVersion()));
                 break;
             }
             case SEND_LOBBY_LIST_R: {
@@ -201,6 +279,31 @@ public class UserServer extends Server  {
         return lobbySessions;
     }
 
+    /***
+     * Puts current values of lobbies and server queues to the metrics snapshot
+     * @param values metrics values
+     */
+    public void putGauges(Map<String, Long> values) {
+        long userCount = 0;
+        long queueDepth = 0;
+        long maxQueueDepth = 0;
+        long rejectedCount = 0;
+        for (UserLobby userLobby : lobbies.values()) {
+            userCount += userLobby.getUserCount();
+            queueDepth += userLobby.getQueueDepth();
+            maxQueueDepth = Math.max(maxQueueDepth, userLobby.getMaxQueueDepth());
+            rejectedCount += userLobby.getRejectedCount();
+        }
+        values.put("lobbies", (long) lobbies.size());
+        values.put("lobby.users", userCount);
+        values.put("lobby.queue.depth", queueDepth);
+        values.put("lobby.queue.depth.max", maxQueueDepth);
+        values.put("lobby.queue.rejected", rejectedCount);
+        values.put("server.connections.unregistered", (long) users.size());
+        values.put("server.queue.depth", (long) executor.getQueueDepth());
+        values.put("server.queue.rejected", executor.getRejectedCount());
+    }
+
     /***
      * Changing lobby name internally
      * @param oldName old name
@@ -301,6 +404,18 @@ public class UserServer extends Server  {
         userLobby.unbanUser(username);
     }
 
+    public SelectorPool getSelectorPool() {
+        return selectorPool;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    public JournalWriter getJournalWriter() {
+        return journalWriter;
+    }
+
     /***
      * Removes lobby from list
      * @param lobbyName lobby name
@@ -315,8 +430,12 @@ public class UserServer extends Server  {
      * @param connection associated connection
      * @param username user name
      * @param lobbyInfo info about lobby
+     * @param wireFormat negotiated wire format
+     * @param protocolVersion protocol version of the client
+     * @param digestVersion negotiated board digest formula
      */
-    private void createLobby(SelectionKey key, UserConnection connection, String username, LobbyInfo lobbyInfo) {
+    private void createLobby(SelectionKey key, UserConnection connection, String username, LobbyInfo lobbyInfo,
+                             byte wireFormat, byte protocolVersion, byte digestVersion) {
         SocketChannel socketChannel = (SocketChannel) key.channel();
         String userHost = connection.getHost();
         String lobbyName = lobbyInfo.getLobbyName();
@@ -338,11 +457,18 @@ public class UserServer extends Server  {
                     return;
                 }
                 userLobby = new UserLobby(this, lobbyInfo); // creating new lobby
-                userLobby.addUser(new UserConnection(new User(username, Status.LOBBY_ROOT),
-                        socketChannel));
-                ServerUtil.writeMessageToClient(socketChannel, new AnswerCommand(ProtocolConstants.ANSWER_OK,
-                        newName)); // writing message to user
+                UserConnection newUser = new UserConnection(new User(username, Status.LOBBY_ROOT),
+                        socketChannel);
+                newUser.setWireFormat(wireFormat);
+            newUser.setProtocolVersion(protocolVersion);
+            newUser.setDigestVersion(digestVersion);
+                newUser.setProtocolVersion(protocolVersion);
+                newUser.setDigestVersion(digestVersion);
                 lobbies.put(newName, userLobby);
+                // answer must be written before the lobby starts writing to the channel
+                ServerUtil.writeMessageToClient(socketChannel, new AnswerCommand(ProtocolConstants.ANSWER_OK,
+                        newName, wireFormat, digestVersion)); // writing message to user
+                userLobby.addUser(newUser);
                 users.remove(key);
                 key.cancel(); // unregister user from main selector
                 log("Successfully created lobby " + newName + " by user " + username + " (host " +
@@ -394,8 +520,12 @@ public class UserServer extends Server  {
      * @param connection associated connection
      * @param username user name
      * @param lobbyInfo info about lobby
+     * @param wireFormat negotiated wire format
+     * @param protocolVersion protocol version of the client
+     * @param digestVersion negotiated board digest formula
      */
-    private void login(SelectionKey key, UserConnection connection, String username, LobbyInfo lobbyInfo) {
+    private void login(SelectionKey key, UserConnection connection, String username, LobbyInfo lobbyInfo,
+                       byte wireFormat, byte protocolVersion, byte digestVersion) {
         SocketChannel socketChannel = (SocketChannel)key.channel();
         String lobbyName = lobbyInfo.getLobbyName();
         String userHost = connection.getHost();
@@ -439,9 +569,13 @@ public class UserServer extends Server  {
             }
             UserConnection newUser = new UserConnection(new User(username, Status.COMMON),
                     socketChannel);
-            userLobby.addUser(newUser); // registering user
+            newUser.setWireFormat(wireFormat);
+            newUser.setProtocolVersion(protocolVersion);
+            newUser.setDigestVersion(digestVersion);
+            // answer must be written before the lobby starts writing to the channel
             ServerUtil.writeMessageToClient(socketChannel, new AnswerCommand(ProtocolConstants.ANSWER_OK,
-                    "")); // writing message to user
+                    "", wireFormat, digestVersion)); // writing message to user
+            userLobby.addUser(newUser); // registering user
             users.remove(key);
             key.cancel(); // unregister user from main selector
             log(newUser.toString() + " has successfully connected to lobby " +
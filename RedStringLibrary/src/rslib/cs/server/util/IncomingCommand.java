@@ -14,6 +14,9 @@ public class IncomingCommand {
     /** Command sender */
     private UserConnection connection;
 
+    /** Time the command was read (System.nanoTime()) */
+    private long readTime;
+
     /***
      * Constructor
      * @param commandInfo command
@@ -28,6 +31,7 @@ public class IncomingCommand {
         }
         this.commandInfo = commandInfo;
         this.connection = connection;
+        readTime = System.nanoTime();
     }
 
     public CommandInfo getCommandInfo() {
@@ -37,4 +41,8 @@ public class IncomingCommand {
     public UserConnection getConnection() {
         return connection;
     }
+
+    public long getReadTime() {
+        return readTime;
+    }
 }
@@ -22,6 +22,15 @@ public class LobbySession {
     /** Board users */
     private List<UserConnection> boardUsers;
 
+    /** Command queue depth */
+    private int queueDepth;
+
+    /** Maximum observed command queue depth */
+    private int maxQueueDepth;
+
+    /** Number of commands that did not fit into the queue */
+    private long rejectedCount;
+
     /***
      * Constructor
      * @param serializableBoard board
@@ -45,9 +54,29 @@ public class LobbySession {
         this.boardUsers = boardUsers;
     }
 
+    /***
+     * Constructor
+     * @param serializableBoard board
+     * @param users all users
+     * @param boardUsers board users
+     * @param queueDepth command queue depth
+     * @param maxQueueDepth maximum observed command queue depth
+     * @param rejectedCount number of commands that did not fit into the queue
+     */
+    public LobbySession(String lobbyName, List<UserConnection> users,
+                        List<UserConnection> boardUsers, ExternalizableBoard serializableBoard,
+                        int queueDepth, int maxQueueDepth, long rejectedCount) {
+        this(lobbyName, users, boardUsers, serializableBoard);
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.rejectedCount = rejectedCount;
+    }
+
     @Override
     public String toString() {
-        String s = "\nLobby: " + lobbyName + "\n\nAll users:\n";
+        String s = "\nLobby: " + lobbyName + "\n";
+        s += "Command queue: " + queueDepth + " (max " + maxQueueDepth + ", rejected " + rejectedCount + ")\n";
+        s += "\nAll users:\n";
         if (users.isEmpty()) {
             s += "No users\n";
         }
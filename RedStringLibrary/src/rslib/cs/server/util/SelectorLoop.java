@@ -0,0 +1,169 @@
+package rslib.cs.server.util;
+
+import rslib.cs.server.Lobby;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractQueue;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/***
+ * Represents one selector thread shared by several lobbies
+ * Every key registered on the selector must have its lobby as an attachment
+ */
+public class SelectorLoop implements Runnable {
+
+    /** The selector */
+    private final Selector selector;
+
+    /** Tasks to run on the selector thread */
+    private final AbstractQueue<Task> tasks;
+
+    /***
+     * Constructor
+     * @throws IOException if selector can not be opened
+     */
+    public SelectorLoop() throws IOException {
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>(); // concurrency
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /***
+     * Checks if the loop is working
+     * @return true if working, false otherwise
+     */
+    public boolean isOpen() {
+        return selector.isOpen();
+    }
+
+    /***
+     * Adds task to run on the selector thread (before the next select)
+     * @param lobby lobby of the task (it is closed if the task fails)
+     * @param task task
+     */
+    public void execute(Lobby lobby, Runnable task) {
+        if (lobby == null) {
+            throw new NullPointerException("SelectorLoop: lobby is null!");
+        }
+        if (task == null) {
+            throw new NullPointerException("SelectorLoop: task is null!");
+        }
+        tasks.add(new Task(lobby, task));
+        selector.wakeup();
+    }
+
+    /***
+     * Closes the selector (the thread will stop)
+     */
+    public void close() {
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            runTasks();
+            try {
+                selector.select();
+                Set<SelectionKey> keys = selector.selectedKeys();
+                for (SelectionKey key : keys) {
+                    if (! key.isValid()) {
+                        continue;
+                    }
+                    Lobby lobby = (Lobby) key.attachment();
+                    try {
+                        lobby.processKey(key);
+                    }
+                    catch (CancelledKeyException e) {
+                        // user is not connected anymore
+                    }
+                    catch (RuntimeException e) {
+                        // only the connection of the key is closed
+                        lobby.keyFailed(key, e);
+                    }
+                }
+                keys.clear(); // clear keys
+            }
+            catch (ClosedSelectorException e) {
+                // selector was closed, the loop ends
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+        }
+        runTasks(); // tasks added before the selector was closed (releasing data of closed connections)
+    }
+
+    /***
+     * Runs added tasks
+     */
+    private void runTasks() {
+        Task task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.runnable.run();
+            }
+            catch (RuntimeException e) {
+                // only the lobby of the task is closed, other lobbies of the loop keep working
+                task.lobby.taskFailed(e);
+            }
+        }
+    }
+
+    /***
+     * Shutdowns all lobbies of the loop after a fatal selector error
+     * @param e the error
+     */
+    private void fail(IOException e) {
+        Set<Lobby> lobbies = new HashSet<>();
+        try {
+            for (SelectionKey key : selector.keys()) {
+                lobbies.add((Lobby) key.attachment());
+            }
+        }
+        catch (ClosedSelectorException e1) {
+            // nothing to do
+        }
+        close();
+        for (Lobby lobby : lobbies) {
+            lobby.errorLog("Fatal error in lobby selector: " + e.getMessage() + "!");
+            lobby.shutdown();
+        }
+    }
+
+    /***
+     * Represents a task of a lobby
+     */
+    private static class Task {
+
+        /** Lobby of the task */
+        private final Lobby lobby;
+
+        /** The task itself */
+        private final Runnable runnable;
+
+        /***
+         * Constructor
+         * @param lobby lobby of the task
+         * @param runnable the task itself
+         */
+        Task(Lobby lobby, Runnable runnable) {
+            this.lobby = lobby;
+            this.runnable = runnable;
+        }
+    }
+}
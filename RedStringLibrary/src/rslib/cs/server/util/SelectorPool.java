@@ -0,0 +1,112 @@
+package rslib.cs.server.util;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Represents a fixed pool of selector threads and worker threads shared by lobbies
+ * Each lobby is bound to one selector loop and runs its commands in its own serial executor
+ */
+public class SelectorPool {
+
+    /** Default pool size */
+    public static final int DEFAULT_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /** Selector loops */
+    private final SelectorLoop[] loops;
+
+    /** Shared workers for command processing */
+    private final ExecutorService workers;
+
+    /** Next loop to assign */
+    private final AtomicInteger next;
+
+    /** Pool name (for threads) */
+    private final String name;
+
+    /** If pool was started */
+    private boolean started;
+
+    /***
+     * Constructor
+     * @param name pool name (for threads)
+     * @param size number of selector threads (and worker threads)
+     * @throws IOException if selector can not be opened
+     */
+    public SelectorPool(String name, int size) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("SelectorPool: name is null!");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("SelectorPool: size must be positive!");
+        }
+        this.name = name;
+        loops = new SelectorLoop[size];
+        for (int i = 0; i < size; ++ i) {
+            loops[i] = new SelectorLoop();
+        }
+        workers = Executors.newFixedThreadPool(size, new ThreadFactory() {
+
+            /** Worker counter */
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, SelectorPool.this.name + "-worker-" +
+                        counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        next = new AtomicInteger();
+    }
+
+    /***
+     * Starts selector threads
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (int i = 0; i < loops.length; ++ i) {
+            Thread thread = new Thread(loops[i], name + "-selector-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        started = true;
+    }
+
+    /***
+     * Returns the loop for a new lobby (round robin)
+     * @return selector loop
+     */
+    public SelectorLoop nextLoop() {
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    /***
+     * Creates serial executor on the shared workers
+     * @param capacity queue capacity
+     * @return serial executor
+     */
+    public SerialExecutor newSerialExecutor(int capacity) {
+        return new SerialExecutor(workers, capacity);
+    }
+
+    public int getSize() {
+        return loops.length;
+    }
+
+    /***
+     * Stops all threads
+     */
+    public synchronized void shutdown() {
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+        workers.shutdown();
+    }
+}
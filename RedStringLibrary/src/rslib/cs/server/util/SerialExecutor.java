@@ -0,0 +1,210 @@
+package rslib.cs.server.util;
+
+import rslib.cs.common.MetricCounter;
+import rslib.cs.common.Metrics;
+
+import java.util.AbstractQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Runs tasks one by one in the order of adding on a shared worker pool
+ * (at most one task of this executor is running at any moment)
+ * The queue is bounded: when it is full, tasks are rejected until it is drained to a half
+ */
+public class SerialExecutor implements Executor {
+
+    /** Maximum tasks run at once before giving the worker to other executors */
+    private static final int BATCH_SIZE = 64;
+
+    /** Metrics of all serial executors */
+    private static final MetricCounter EXECUTED = Metrics.getDefault().counter("executor.tasks.executed");
+    private static final MetricCounter REJECTED = Metrics.getDefault().counter("executor.tasks.rejected");
+    private static final MetricCounter DRAINS = Metrics.getDefault().counter("executor.drains");
+
+    /** Shared workers */
+    private final Executor workers;
+
+    /** Task queue */
+    private final AbstractQueue<Runnable> tasks;
+
+    /** Queue capacity */
+    private final int capacity;
+
+    /** Current queue depth (size of ConcurrentLinkedQueue is not constant time) */
+    private final AtomicInteger queueDepth;
+
+    /** Maximum observed queue depth */
+    private final AtomicInteger maxQueueDepth;
+
+    /** Number of executed tasks */
+    private final AtomicLong executedCount;
+
+    /** Number of rejected tasks */
+    private final AtomicLong rejectedCount;
+
+    /** If the drain is submitted to workers */
+    private final AtomicBoolean scheduled;
+
+    /** If some tasks were rejected since the queue was drained last time */
+    private final AtomicBoolean overflowed;
+
+    /** Drains the queue */
+    private final Runnable drain;
+
+    /** Called by a worker when the overflowed queue is drained to a half (may be null) */
+    private volatile Runnable drainListener;
+
+    /***
+     * Constructor
+     * @param workers shared workers
+     * @param capacity queue capacity
+     */
+    public SerialExecutor(Executor workers, int capacity) {
+        if (workers == null) {
+            throw new NullPointerException("SerialExecutor: workers is null!");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("SerialExecutor: capacity must be positive!");
+        }
+        this.workers = workers;
+        this.capacity = capacity;
+        tasks = new ConcurrentLinkedQueue<>(); // concurrency
+        queueDepth = new AtomicInteger();
+        maxQueueDepth = new AtomicInteger();
+        executedCount = new AtomicLong();
+        rejectedCount = new AtomicLong();
+        scheduled = new AtomicBoolean(false);
+        overflowed = new AtomicBoolean(false);
+        drain = new Runnable() {
+            @Override
+            public void run() {
+                DRAINS.increment();
+                try {
+                    for (int i = 0; i < BATCH_SIZE; ++ i) {
+                        Runnable task = tasks.poll();
+                        if (task == null) {
+                            break;
+                        }
+                        queueDepth.decrementAndGet();
+                        task.run();
+                        executedCount.incrementAndGet();
+                        EXECUTED.increment();
+                    }
+                }
+                finally {
+                    scheduled.set(false);
+                    if (queueDepth.get() <= capacity / 2 && overflowed.compareAndSet(true, false)) {
+                        Runnable listener = drainListener;
+                        if (listener != null) {
+                            listener.run();
+                        }
+                    }
+                    if (! tasks.isEmpty()) {
+                        schedule();
+                    }
+                }
+            }
+        };
+    }
+
+    /***
+     * Adds task if there is free space in the queue
+     * @param task task
+     * @return true if added, false if the queue is full
+     */
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("SerialExecutor: task is null!");
+        }
+        int depth = queueDepth.incrementAndGet();
+        if (depth > capacity) {
+            queueDepth.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            REJECTED.increment();
+            overflowed.set(true);
+            schedule(); // the drain will call the listener even if the queue got empty meanwhile
+            return false;
+        }
+        int max;
+        while (depth > (max = maxQueueDepth.get())) {
+            if (maxQueueDepth.compareAndSet(max, depth)) {
+                break;
+            }
+        }
+        tasks.add(task);
+        schedule();
+        return true;
+    }
+
+    /***
+     * Adds task ignoring the capacity
+     * @param task task
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("SerialExecutor: task is null!");
+        }
+        queueDepth.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+
+    /***
+     * Removes all waiting tasks
+     */
+    public void clear() {
+        while (tasks.poll() != null) {
+            queueDepth.decrementAndGet();
+        }
+    }
+
+    /***
+     * Sets listener that is called when the overflowed queue is drained to a half
+     * @param drainListener listener
+     */
+    public void setDrainListener(Runnable drainListener) {
+        this.drainListener = drainListener;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /***
+     * Submits the drain if it is not submitted yet
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(drain);
+            }
+            catch (RejectedExecutionException e) {
+                // workers were shut down, nobody will run the tasks
+                clear();
+                scheduled.set(false);
+            }
+        }
+    }
+}
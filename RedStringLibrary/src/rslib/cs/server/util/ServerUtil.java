@@ -36,6 +36,37 @@ public class ServerUtil {
         }
     }
 
+    /***
+     * Chooses wire format for the connection
+     * @param requested wire format requested by client
+     * @param protocolVersion protocol version of the client
+     * @return the best format supported by both sides
+     */
+    public static byte negotiateWireFormat(byte requested, byte protocolVersion) {
+        if (protocolVersion < ProtocolConstants.PROTOCOL_VERSION) { // commands in old layouts are serialized
+            return ProtocolConstants.SERIALIZED_FORMAT;
+        }
+        if (requested >= ProtocolConstants.CHUNKED_FORMAT) {
+            return ProtocolConstants.CHUNKED_FORMAT;
+        }
+        if (requested >= ProtocolConstants.BINARY_FORMAT) {
+            return ProtocolConstants.BINARY_FORMAT;
+        }
+        return ProtocolConstants.SERIALIZED_FORMAT;
+    }
+
+    /***
+     * Chooses board digest formula for the connection
+     * @param requested digest formula requested by client
+     * @return the newest formula supported by both sides
+     */
+    public static byte negotiateDigest(byte requested) {
+        if (requested >= ProtocolConstants.CONTAINERS_DIGEST) {
+            return ProtocolConstants.CONTAINERS_DIGEST;
+        }
+        return ProtocolConstants.LEGACY_DIGEST;
+    }
+
     /***
      * Checks requested name for collisions appearance
      * @param requested requested name
@@ -143,6 +143,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     @Override
     public void setComponentOwner(String owner) {
         this.owner = owner;
+        changed();
     }
 
     @Override
@@ -153,6 +154,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     @Override
     public void setComponentStatus(Status status) {
         this.status = status;
+        changed();
     }
 
     @Override
@@ -164,6 +166,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     public void moveComponent(int left, int top) {
         this.left = left;
         this.top = top;
+        changed();
     }
 
     @Override
@@ -182,6 +185,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
         this.top = top;
         this.width = width;
         this.height = height;
+        changed();
     }
 
     @Override
@@ -202,6 +206,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     @Override
     public void setComponentName(String name) {
         this.name = name;
+        changed();
     }
 
     @Override
@@ -212,6 +217,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     @Override
     public void setComponentFont(FontModel font) {
         this.font = font;
+        changed();
     }
 
     @Override
@@ -222,6 +228,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     @Override
     public void setComponentForeground(ColorModel color) {
         this.foreground = color;
+        changed();
     }
 
     @Override
@@ -233,6 +240,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     public void setComponentBackground(ColorModel color) {
         color.setOpaque(opaque);
         background = color;
+        changed();
     }
 
     @Override
@@ -244,6 +252,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
     public void setComponentOpaque(boolean opaque) {
         this.opaque = opaque;
         background.setOpaque(opaque);
+        changed();
     }
 
     @Override
@@ -280,6 +289,7 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
         else {
             this.blockOwner = blockOwner;
         }
+        changed();
     }
 
     @Override
@@ -292,6 +302,12 @@ public abstract class ExternalizableComponent implements Externalizable, BasicCo
         return blockOwner;
     }
 
+    /***
+     * Called after every change of the component (to update cached hashes)
+     */
+    protected void changed() {
+    }
+
     @Override
     public String toString() {
         return
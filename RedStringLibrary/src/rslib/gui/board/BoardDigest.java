@@ -0,0 +1,251 @@
+package rslib.gui.board;
+
+import rslib.cs.common.BlobStore;
+import rslib.gui.container.BoardContainer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Maintains the hash of board containers and the board version
+ * Container hashes are cached and combined independently of order,
+ * only changed containers are hashed again.
+ * Legacy hashes of containers (see ProtocolConstants.LEGACY_DIGEST) are kept in the order
+ * clients of older protocol versions keep containers: added containers are appended,
+ * changed ones keep their place
+ */
+public class BoardDigest {
+
+    /** Cached container hashes (by container id) */
+    private final Map<Integer, Integer> hashes;
+
+    /** Changed containers (by container id, the container is null if it must be found on the board) */
+    private final Map<Integer, BoardContainer> changed;
+
+    /** Legacy container hashes in the order of old clients (by container id, null if it must be hashed again) */
+    private final LinkedHashMap<Integer, Integer> legacyHashes;
+
+    /** Combined hash of the cached containers */
+    private int containersHash;
+
+    /** If all containers must be hashed again */
+    private boolean reset;
+
+    /** Board version (increased on every change) */
+    private long version;
+
+    /***
+     * Constructor
+     */
+    public BoardDigest() {
+        hashes = new HashMap<>();
+        changed = new HashMap<>();
+        legacyHashes = new LinkedHashMap<>();
+        reset = true;
+    }
+
+    /***
+     * Marks container as changed
+     * @param container changed container
+     */
+    public synchronized void changed(BoardContainer container) {
+        forget(container.getComponentId());
+        changed.put(container.getComponentId(), container);
+        legacyHashes.put(container.getComponentId(), null);
+        ++ version;
+    }
+
+    /***
+     * Marks container as changed (the container will be found on the board)
+     * @param id container id
+     */
+    public synchronized void changed(int id) {
+        forget(id);
+        if (! changed.containsKey(id)) {
+            changed.put(id, null);
+        }
+        legacyHashes.put(id, null);
+        ++ version;
+    }
+
+    /***
+     * Marks container as removed
+     * @param id container id
+     */
+    public synchronized void removed(int id) {
+        forget(id);
+        changed.remove(id);
+        legacyHashes.remove(id);
+        ++ version;
+    }
+
+    /***
+     * Marks board as changed (containers are not affected)
+     */
+    public synchronized void boardChanged() {
+        ++ version;
+    }
+
+    /***
+     * Marks all containers as changed (they will be hashed again)
+     */
+    public synchronized void reset() {
+        hashes.clear();
+        changed.clear();
+        containersHash = 0;
+        reset = true;
+        for (Map.Entry<Integer, Integer> entry : legacyHashes.entrySet()) {
+            entry.setValue(null);
+        }
+        ++ version;
+    }
+
+    /***
+     * Replaces all containers (they will be hashed again)
+     * @param containers all board containers in the order they were received
+     */
+    public synchronized void setContainers(Iterable<? extends BoardContainer> containers) {
+        legacyHashes.clear();
+        for (BoardContainer container : containers) {
+            legacyHashes.put(container.getComponentId(), null);
+        }
+        reset();
+    }
+
+    /***
+     * Removes all containers (nothing has to be hashed again)
+     */
+    public synchronized void clear() {
+        hashes.clear();
+        changed.clear();
+        legacyHashes.clear();
+        containersHash = 0;
+        reset = false;
+        ++ version;
+    }
+
+    /***
+     * Returns combined hash of the board containers
+     * @param board board (to find changed containers)
+     * @param containers all board containers
+     * @return combined hash
+     */
+    public synchronized int getContainersHash(InteractiveBoard board,
+                                              Iterable<? extends BoardContainer> containers) {
+        if (reset) {
+            for (BoardContainer container : containers) {
+                remember(container);
+            }
+            changed.clear();
+            reset = false;
+        }
+        else if (! changed.isEmpty()) {
+            for (Map.Entry<Integer, BoardContainer> entry : changed.entrySet()) {
+                BoardContainer container = entry.getValue();
+                if (container == null) {
+                    container = board.findContainer(entry.getKey());
+                }
+                if (container != null) { // otherwise it was deleted
+                    remember(container);
+                }
+            }
+            changed.clear();
+        }
+        return containersHash;
+    }
+
+    /***
+     * Returns hash of the board containers calculated by the legacy formula
+     * (containers are combined in order, contents are hashed by their data)
+     * @param board board (to find changed containers)
+     * @param seed hash of the board component
+     * @param blobStore store with the blobs of released contents
+     * @return combined hash
+     * @throws IOException if content of a changed container is not available
+     */
+    public synchronized int getLegacyHash(InteractiveBoard board, int seed, BlobStore blobStore)
+            throws IOException {
+        int result = seed;
+        Iterator<Map.Entry<Integer, Integer>> iterator = legacyHashes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Integer> entry = iterator.next();
+            Integer hash = entry.getValue();
+            if (hash == null) {
+                BoardContainer container = board.findContainer(entry.getKey());
+                if (container == null) { // deleted
+                    iterator.remove();
+                    continue;
+                }
+                hash = container.toExternalizable().legacyHashCode(blobStore);
+                entry.setValue(hash);
+            }
+            result = 31 * result + hash;
+        }
+        return result;
+    }
+
+    /***
+     * Orders containers the way clients of older protocol versions keep them
+     * (containers that are unknown to the digest go last)
+     * @param containers board containers
+     * @return ordered containers
+     */
+    public synchronized <T extends BoardContainer> List<T> legacyOrder(List<T> containers) {
+        Map<Integer, T> byId = new LinkedHashMap<>();
+        for (T container : containers) {
+            byId.put(container.getComponentId(), container);
+        }
+        List<T> ordered = new ArrayList<>(containers.size());
+        for (Integer id : legacyHashes.keySet()) {
+            T container = byId.remove(id);
+            if (container != null) {
+                ordered.add(container);
+            }
+        }
+        ordered.addAll(byId.values());
+        return ordered;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /***
+     * Hashes container and adds it to the combined hash
+     * @param container container
+     */
+    private void remember(BoardContainer container) {
+        int hash = container.toExternalizable().hashCode();
+        Integer old = hashes.put(container.getComponentId(), hash);
+        if (old != null) {
+            containersHash -= mix(old);
+        }
+        containersHash += mix(hash);
+    }
+
+    /***
+     * Removes container from the combined hash
+     * @param id container id
+     */
+    private void forget(int id) {
+        Integer old = hashes.remove(id);
+        if (old != null) {
+            containersHash -= mix(old);
+        }
+    }
+
+    /***
+     * Spreads container hash bits (so the sum of similar hashes does not collide easily)
+     * @param hash container hash
+     * @return mixed hash
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
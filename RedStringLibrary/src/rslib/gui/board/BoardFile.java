@@ -0,0 +1,708 @@
+package rslib.gui.board;
+
+import rslib.cs.common.BlobHolder;
+import rslib.gui.container.BoardContainer;
+import rslib.gui.container.ExternalizableContainer;
+import rslib.gui.container.file.FileContainer;
+import rslib.gui.container.image.ImageContainer;
+import rslib.listeners.ProgressListener;
+import rslib.util.BlobOutputStream;
+import rslib.util.DataManagement;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/***
+ * Represents a board file (.brd). Layout: header, skeleton (the board serialized with blobs written
+ * as references), container index (id, type, bounds, layer and the blob section of every container)
+ * and blob sections (content of images and files, every blob is stored once, files are deflated).
+ * The file is mapped, so the skeleton is read at once and blobs are decoded on demand or in parallel.
+ * The file is written to a temporary file that replaces it, so it is never left half-written.
+ * Files of the old format (the whole board serialized) are read as well
+ */
+public class BoardFile {
+
+    /** Header: marker, version, skeleton length, index length, skeleton checksum, index checksum */
+    private static final int MARKER = 0x52534244;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 24;
+
+    /** Blob section compressions */
+    public static final byte STORED = 0;
+    public static final byte DEFLATED = 1;
+
+    /** Maximum blob content length (raw pixels of the biggest image or the biggest file) */
+    private static final int MAXIMUM_BLOB_LENGTH = Math.max(FileContainer.FILE_MAXIMUM_SIZE,
+            1 + 4 * ImageContainer.IMAGE_MAXIMUM_WIDTH * ImageContainer.IMAGE_MAXIMUM_HEIGHT);
+
+    /** Deflated blob is kept if it is at least this part smaller than the content */
+    private static final int DEFLATE_RATIO = 8;
+
+    /** Maximum size of one write (progress is reported after every write) */
+    private static final int WRITE_SIZE = 1024 * 1024;
+
+    /** Suffix of the temporary file */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** Board skeleton (blobs are not resolved until they are read) */
+    private final ExternalizableBoard board;
+
+    /** Container index (empty for old files) */
+    private final List<Entry> entries;
+
+    /** Blob sections by blob id */
+    private final Map<String, Entry> sections;
+
+    /** Mapped file (null for old files) */
+    private final ByteBuffer mapped;
+
+    /** Offset of the first blob section */
+    private final int blobsOffset;
+
+    /***
+     * Constructor
+     * @param board board skeleton
+     * @param entries container index
+     * @param mapped mapped file
+     * @param blobsOffset offset of the first blob section
+     */
+    private BoardFile(ExternalizableBoard board, List<Entry> entries, ByteBuffer mapped, int blobsOffset) {
+        this.board = board;
+        this.entries = entries;
+        this.mapped = mapped;
+        this.blobsOffset = blobsOffset;
+        sections = new HashMap<>();
+        for (Entry entry : entries) {
+            if (entry.blobId != null) {
+                sections.put(entry.blobId, entry);
+            }
+        }
+    }
+
+    /***
+     * Writes board to file (all blobs of the board must be resolved)
+     * @param board board
+     * @param file file
+     * @throws IOException if something went wrong
+     */
+    public static void write(ExternalizableBoard board, File file) throws IOException {
+        write(board, file, null);
+    }
+
+    /***
+     * Writes board to file (all blobs of the board must be resolved).
+     * Writing is stopped by interrupting the thread, the file is not changed then
+     * @param board board
+     * @param file file
+     * @param listener listener of written bytes (may be null)
+     * @throws IOException if something went wrong
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public static void write(ExternalizableBoard board, File file, ProgressListener listener) throws IOException {
+        if (board == null) {
+            throw new NullPointerException("BoardFile: board is null!");
+        }
+        List<ExternalizableContainer> containers = new ArrayList<>(board.getContainers());
+        Map<String, Entry> written = new HashMap<>();
+        List<ByteBuffer> blobs = new ArrayList<>();
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(containers.size());
+        long offset = 0;
+        for (ExternalizableContainer container : containers) {
+            List<BlobHolder> holders = DataManagement.collectBlobs(Collections.singletonList(container));
+            BlobHolder holder = holders.isEmpty() ? null : holders.get(0);
+            Entry section = null;
+            if (holder != null) {
+                String id = holder.getBlobId();
+                section = written.get(id);
+                if (section == null) {
+                    byte[] blob = holder.getBlob();
+                    if (blob == null) {
+                        throw new IOException("BoardFile: blob " + id + " is not resolved!");
+                    }
+                    byte compression = STORED;
+                    byte[] data = blob;
+                    if (container.getType() == BoardContainer.ContainerType.FILE_CONTAINER) {
+                        byte[] deflated = deflate(blob);
+                        if (deflated != null) {
+                            compression = DEFLATED;
+                            data = deflated;
+                        }
+                    }
+                    if (offset + data.length > Integer.MAX_VALUE - HEADER_LENGTH) {
+                        throw new IOException("BoardFile: board is too big!");
+                    }
+                    section = new Entry(0, null, 0, 0, 0, 0, 0, id, (int) offset, data.length,
+                            blob.length, compression, checksum(data, 0, data.length));
+                    written.put(id, section);
+                    blobs.add(ByteBuffer.wrap(data));
+                    offset += data.length;
+                }
+            }
+            index.writeInt(container.getComponentId());
+            index.writeByte(container.getType().ordinal());
+            index.writeInt(container.getComponentLeft());
+            index.writeInt(container.getComponentTop());
+            index.writeInt(container.getComponentWidth());
+            index.writeInt(container.getComponentHeight());
+            index.writeInt(container.getLayer());
+            index.writeUTF(section == null ? "" : section.blobId);
+            index.writeInt(section == null ? 0 : section.offset);
+            index.writeInt(section == null ? 0 : section.length);
+            index.writeInt(section == null ? 0 : section.rawLength);
+            index.writeByte(section == null ? STORED : section.compression);
+            index.writeInt(section == null ? 0 : section.checksum);
+        }
+        index.close();
+        ByteArrayOutputStream skeletonBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new BlobOutputStream(skeletonBytes, written.keySet())) {
+            oos.writeObject(board);
+        }
+        byte[] skeleton = skeletonBytes.toByteArray();
+        byte[] indexData = indexBytes.toByteArray();
+        if (offset + skeleton.length + indexData.length > Integer.MAX_VALUE - HEADER_LENGTH) {
+            throw new IOException("BoardFile: board is too big!");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MARKER);
+        header.putInt(VERSION);
+        header.putInt(skeleton.length);
+        header.putInt(indexData.length);
+        header.putInt(checksum(skeleton, 0, skeleton.length));
+        header.putInt(checksum(indexData, 0, indexData.length));
+        header.flip();
+        ByteBuffer[] parts = new ByteBuffer[3 + blobs.size()];
+        parts[0] = header;
+        parts[1] = ByteBuffer.wrap(skeleton);
+        parts[2] = ByteBuffer.wrap(indexData);
+        for (int i = 0; i < blobs.size(); ++ i) {
+            parts[3 + i] = blobs.get(i);
+        }
+        long total = HEADER_LENGTH + skeleton.length + indexData.length + offset;
+        File temporary = new File(file.getPath() + TEMPORARY_SUFFIX);
+        boolean moved = false;
+        try {
+            try (FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long done = 0;
+                for (ByteBuffer part : parts) {
+                    while (part.hasRemaining()) { // big blobs are written by slices
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("BoardFile: writing was interrupted!");
+                        }
+                        ByteBuffer slice = part.duplicate();
+                        slice.limit(slice.position() + Math.min(WRITE_SIZE, slice.remaining()));
+                        int count = out.write(slice);
+                        part.position(part.position() + count);
+                        done += count;
+                        if (listener != null) {
+                            listener.hearProgress(done, total);
+                        }
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        }
+        finally {
+            if (! moved && temporary.exists() && ! temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    /***
+     * Reads board from file with all blobs (they are decoded in parallel)
+     * @param file file
+     * @return board
+     * @throws IOException if file is wrong
+     * @throws ClassNotFoundException if file is wrong
+     */
+    public static ExternalizableBoard read(File file) throws IOException, ClassNotFoundException {
+        return read(file, null);
+    }
+
+    /***
+     * Reads board from file with all blobs (they are decoded in parallel).
+     * Reading is stopped by interrupting the thread
+     * @param file file
+     * @param listener listener of decoded blob bytes (may be null)
+     * @return board
+     * @throws IOException if file is wrong
+     * @throws InterruptedIOException if the thread was interrupted
+     * @throws ClassNotFoundException if file is wrong
+     */
+    public static ExternalizableBoard read(File file, ProgressListener listener)
+            throws IOException, ClassNotFoundException {
+        BoardFile boardFile = open(file);
+        if (boardFile.sections.size() > 1) {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), boardFile.sections.size());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                boardFile.resolveBlobs(pool, listener);
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+        else {
+            boardFile.resolveBlobs(null, listener);
+        }
+        return boardFile.getBoard();
+    }
+
+    /***
+     * Opens board file: reads the skeleton and the container index, blobs are not read
+     * @param file file
+     * @return board file
+     * @throws IOException if file is wrong
+     * @throws ClassNotFoundException if file is wrong
+     */
+    public static BoardFile open(File file) throws IOException, ClassNotFoundException {
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_LENGTH || readMarker(channel) != MARKER) {
+                return openOld(file);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("BoardFile: file is too big!");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // stays valid after closing
+        }
+        int version = mapped.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("BoardFile: unknown version " + version + "!");
+        }
+        int skeletonLength = mapped.getInt(8);
+        int indexLength = mapped.getInt(12);
+        long blobsOffset = (long) HEADER_LENGTH + skeletonLength + indexLength;
+        if (skeletonLength < 0 || indexLength < 0 || blobsOffset > mapped.limit()) {
+            throw new IOException("BoardFile: wrong header!");
+        }
+        byte[] skeleton = readSection(mapped, HEADER_LENGTH, skeletonLength, mapped.getInt(16));
+        byte[] index = readSection(mapped, HEADER_LENGTH + skeletonLength, indexLength, mapped.getInt(20));
+        ExternalizableBoard board;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(skeleton))) {
+            board = (ExternalizableBoard) ois.readObject();
+        }
+        return new BoardFile(board, readIndex(index), mapped, (int) blobsOffset);
+    }
+
+    /***
+     * Opens file of the old format (the whole board is read)
+     * @param file file
+     * @return board file without index
+     * @throws IOException if file is wrong
+     * @throws ClassNotFoundException if file is wrong
+     */
+    private static BoardFile openOld(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ExternalizableBoard board = (ExternalizableBoard) ois.readObject();
+            return new BoardFile(board, Collections.<Entry>emptyList(), null, 0);
+        }
+    }
+
+    /***
+     * Reads file marker
+     * @param channel file channel
+     * @return marker
+     * @throws IOException if something went wrong
+     */
+    private static int readMarker(FileChannel channel) throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(4);
+        while (marker.hasRemaining()) {
+            if (channel.read(marker, marker.position()) < 0) {
+                return 0;
+            }
+        }
+        return marker.getInt(0);
+    }
+
+    /***
+     * Reads container index
+     * @param data index data
+     * @return index entries
+     * @throws IOException if index is wrong
+     */
+    private static List<Entry> readIndex(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int count = in.readInt();
+        if (count < 0 || count > data.length) { // every entry takes several bytes
+            throw new IOException("BoardFile: wrong index!");
+        }
+        BoardContainer.ContainerType[] types = BoardContainer.ContainerType.values();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; ++ i) {
+            int id = in.readInt();
+            int type = in.readUnsignedByte();
+            if (type >= types.length) {
+                throw new IOException("BoardFile: wrong container type!");
+            }
+            int left = in.readInt();
+            int top = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            int layer = in.readInt();
+            String blobId = in.readUTF();
+            int offset = in.readInt();
+            int length = in.readInt();
+            int rawLength = in.readInt();
+            if (offset < 0 || length < 0 || rawLength < 0 || rawLength > MAXIMUM_BLOB_LENGTH) {
+                throw new IOException("BoardFile: wrong blob section!");
+            }
+            entries.add(new Entry(id, types[type], left, top, width, height, layer,
+                    blobId.isEmpty() ? null : blobId, offset, length, rawLength, in.readByte(), in.readInt()));
+        }
+        return entries;
+    }
+
+    /***
+     * Copies section of the mapped file and checks it
+     * @param mapped mapped file
+     * @param offset section offset
+     * @param length section length
+     * @param checksum expected checksum
+     * @return section data
+     * @throws IOException if section is wrong
+     */
+    private static byte[] readSection(ByteBuffer mapped, long offset, int length, int checksum)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset + length > mapped.limit()) {
+            throw new IOException("BoardFile: section is out of file!");
+        }
+        byte[] data = new byte[length];
+        ByteBuffer section = mapped.duplicate();
+        section.position((int) offset);
+        section.get(data);
+        if (checksum(data, 0, length) != checksum) {
+            throw new IOException("BoardFile: wrong checksum!");
+        }
+        return data;
+    }
+
+    /***
+     * Returns board skeleton (resolved blobs stay resolved)
+     * @return board
+     */
+    public ExternalizableBoard getBoard() {
+        return board;
+    }
+
+    /***
+     * Returns container index
+     * @return index entries (empty for files of the old format)
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /***
+     * Reads and decodes blob content
+     * @param blobId blob id
+     * @return content, null if file has no such blob
+     * @throws IOException if blob section is wrong
+     */
+    public byte[] readBlob(String blobId) throws IOException {
+        Entry section = sections.get(blobId);
+        if (section == null) {
+            return null;
+        }
+        byte[] data = readSection(mapped, (long) blobsOffset + section.offset, section.length, section.checksum);
+        switch (section.compression) {
+            case STORED:
+                return data;
+            case DEFLATED:
+                return inflate(data, section.rawLength);
+            default:
+                throw new IOException("BoardFile: unknown compression " + section.compression + "!");
+        }
+    }
+
+    /***
+     * Resolves blob holder from the file (on demand)
+     * @param holder blob holder
+     * @return true if holder is resolved
+     * @throws IOException if blob section is wrong
+     */
+    public boolean resolve(BlobHolder holder) throws IOException {
+        if (holder.isResolved()) {
+            return true;
+        }
+        byte[] blob = readBlob(holder.getBlobId());
+        if (blob == null) {
+            return false;
+        }
+        holder.resolve(blob);
+        return true;
+    }
+
+    /***
+     * Resolves all blob holders of the board, every blob is decoded once
+     * @param executor executor to decode blobs in parallel (null to decode them in the calling thread)
+     * @throws IOException if some blob section is wrong or missing
+     */
+    public void resolveBlobs(ExecutorService executor) throws IOException {
+        resolveBlobs(executor, null);
+    }
+
+    /***
+     * Resolves all blob holders of the board, every blob is decoded once
+     * @param executor executor to decode blobs in parallel (null to decode them in the calling thread)
+     * @param listener listener of decoded blob bytes (may be null)
+     * @throws IOException if some blob section is wrong or missing
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public void resolveBlobs(ExecutorService executor, ProgressListener listener) throws IOException {
+        Map<String, List<BlobHolder>> unresolved = new HashMap<>();
+        for (BlobHolder holder : DataManagement.collectBlobs(board.getContainers())) {
+            if (! holder.isResolved()) {
+                List<BlobHolder> holders = unresolved.get(holder.getBlobId());
+                if (holders == null) {
+                    holders = new ArrayList<>();
+                    unresolved.put(holder.getBlobId(), holders);
+                }
+                holders.add(holder);
+            }
+        }
+        long total = 0;
+        for (String id : unresolved.keySet()) {
+            Entry section = sections.get(id);
+            if (section == null) {
+                throw new IOException("BoardFile: blob " + id + " is missing!");
+            }
+            total += section.length;
+        }
+        long done = 0;
+        Map<String, Future<byte[]>> decoded = new HashMap<>();
+        for (final String id : unresolved.keySet()) {
+            if (executor == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("BoardFile: reading was interrupted!");
+                }
+                byte[] blob = readBlob(id);
+                for (BlobHolder holder : unresolved.get(id)) {
+                    holder.resolve(blob);
+                }
+                done += sections.get(id).length;
+                if (listener != null) {
+                    listener.hearProgress(done, total);
+                }
+            }
+            else {
+                decoded.put(id, executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return readBlob(id);
+                    }
+                }));
+            }
+        }
+        try {
+            for (Map.Entry<String, Future<byte[]>> entry : decoded.entrySet()) {
+                byte[] blob = entry.getValue().get();
+                for (BlobHolder holder : unresolved.get(entry.getKey())) {
+                    holder.resolve(blob);
+                }
+                done += sections.get(entry.getKey()).length;
+                if (listener != null) {
+                    listener.hearProgress(done, total);
+                }
+            }
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("BoardFile: reading was interrupted!");
+        }
+    }
+
+    /***
+     * Deflates blob
+     * @param blob content
+     * @return deflated content, null if it is not smaller enough
+     */
+    private static byte[] deflate(byte[] blob) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(blob);
+            deflater.finish();
+            int limit = blob.length - blob.length / DEFLATE_RATIO;
+            byte[] buffer = new byte[limit];
+            int length = 0;
+            while (! deflater.finished() && length < limit) {
+                length += deflater.deflate(buffer, length, limit - length);
+            }
+            return deflater.finished() && length < limit ? Arrays.copyOf(buffer, length) : null;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /***
+     * Inflates blob
+     * @param data deflated content
+     * @param length content length
+     * @return content
+     * @throws IOException if data is wrong
+     */
+    private static byte[] inflate(byte[] data, int length) throws IOException {
+        if (length < 0 || length > MAXIMUM_BLOB_LENGTH) {
+            throw new IOException("BoardFile: wrong blob length " + length + "!");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] blob = new byte[length];
+            int read = 0;
+            while (read < length && ! inflater.finished()) {
+                int count = inflater.inflate(blob, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length || ! inflater.finished()) {
+                throw new IOException("BoardFile: wrong deflated blob!");
+            }
+            return blob;
+        }
+        catch (DataFormatException e) {
+            throw new IOException("BoardFile: wrong deflated blob!", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    /***
+     * Calculates checksum (CRC32)
+     * @param data data
+     * @param offset data offset
+     * @param length data length
+     * @return checksum
+     */
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /***
+     * Represents an entry of container index: container info and its blob section
+     */
+    public static class Entry {
+
+        /** Container id and type */
+        private final int id;
+        private final BoardContainer.ContainerType type;
+
+        /** Container bounds and layer */
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+        private final int layer;
+
+        /** Blob id (null if container has no blob) */
+        private final String blobId;
+
+        /** Blob section: offset (from the first section), stored length, content length, compression, checksum */
+        private final int offset;
+        private final int length;
+        private final int rawLength;
+        private final byte compression;
+        private final int checksum;
+
+        /***
+         * Constructor
+         * @param id container id
+         * @param type container type
+         * @param left container left
+         * @param top container top
+         * @param width container width
+         * @param height container height
+         * @param layer container layer
+         * @param blobId blob id
+         * @param offset blob section offset
+         * @param length blob section length
+         * @param rawLength blob content length
+         * @param compression blob section compression
+         * @param checksum blob section checksum
+         */
+        private Entry(int id, BoardContainer.ContainerType type, int left, int top, int width, int height,
+                      int layer, String blobId, int offset, int length, int rawLength, byte compression,
+                      int checksum) {
+            this.id = id;
+            this.type = type;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.layer = layer;
+            this.blobId = blobId;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.compression = compression;
+            this.checksum = checksum;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public BoardContainer.ContainerType getType() {
+            return type;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getLayer() {
+            return layer;
+        }
+
+        public String getBlobId() {
+            return blobId;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getRawLength() {
+            return rawLength;
+        }
+    }
+}
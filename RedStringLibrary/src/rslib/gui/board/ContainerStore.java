@@ -0,0 +1,204 @@
+package rslib.gui.board;
+
+import rslib.gui.container.BoardContainer;
+import rslib.gui.container.ExternalizableContainer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Represents containers of a board: an index by id and the list sorted by layer (z-order).
+ * Containers are found without scanning, layer shifts touch only the containers of the shifted range.
+ * An immutable snapshot of the containers is made only when it is needed after a change
+ */
+class ContainerStore {
+
+    /** Containers by id */
+    private final Map<Integer, ExternalizableContainer> index;
+
+    /** Containers sorted by layer (containers of one layer keep the order they were added in) */
+    private final List<ExternalizableContainer> order;
+
+    /** Snapshot of the sorted containers (null if it must be made again) */
+    private volatile List<ExternalizableContainer> snapshot;
+
+    /***
+     * Constructor
+     * @param containers initial containers
+     */
+    ContainerStore(Collection<ExternalizableContainer> containers) {
+        index = new ConcurrentHashMap<>(); // concurrency
+        order = new ArrayList<>();
+        setAll(containers);
+    }
+
+    /***
+     * Replaces all containers
+     * @param containers new containers
+     */
+    synchronized void setAll(Collection<ExternalizableContainer> containers) {
+        index.clear();
+        order.clear();
+        order.addAll(containers);
+        Collections.sort(order, new Comparator<ExternalizableContainer>() { // stable
+            @Override
+            public int compare(ExternalizableContainer first, ExternalizableContainer second) {
+                return Integer.compare(first.getLayer(), second.getLayer());
+            }
+        });
+        for (ExternalizableContainer container : order) {
+            index.put(container.getComponentId(), container);
+        }
+        snapshot = null;
+    }
+
+    /***
+     * Finds container (may be called by any thread)
+     * @param id container id
+     * @return container, null if it was not found
+     */
+    ExternalizableContainer find(int id) {
+        return index.get(id);
+    }
+
+    /***
+     * Returns immutable snapshot of containers sorted by layer (may be called by any thread)
+     * @return containers
+     */
+    List<ExternalizableContainer> snapshot() {
+        List<ExternalizableContainer> current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = Collections.unmodifiableList(
+                            Arrays.asList(order.toArray(new ExternalizableContainer[order.size()])));
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /***
+     * Returns the highest layer
+     * @return highest layer, the layer below the background if there are no containers
+     */
+    synchronized int getMaxLayer() {
+        return order.isEmpty() ? BoardContainer.BACKGROUND_LAYER - 1 : order.get(order.size() - 1).getLayer();
+    }
+
+    /***
+     * Adds container above the containers of its layer (the container with the same id is replaced)
+     * @param container container
+     */
+    synchronized void add(ExternalizableContainer container) {
+        ExternalizableContainer old = index.put(container.getComponentId(), container);
+        int position = old == null ? -1 : positionOf(old);
+        if (position >= 0) {
+            order.remove(position);
+        }
+        order.add(upperBound(container.getLayer()), container);
+        snapshot = null;
+    }
+
+    /***
+     * Removes container
+     * @param id container id
+     * @return removed container, null if it was not found
+     */
+    synchronized ExternalizableContainer remove(int id) {
+        ExternalizableContainer container = index.remove(id);
+        if (container != null) {
+            int position = positionOf(container);
+            if (position >= 0) {
+                order.remove(position);
+            }
+            snapshot = null;
+        }
+        return container;
+    }
+
+    /***
+     * Changes layer of container and moves it above the containers of the new layer
+     * @param container container of the store
+     * @param layer new layer
+     */
+    synchronized void setLayer(ExternalizableContainer container, int layer) {
+        int position = positionOf(container);
+        if (position >= 0) {
+            order.remove(position);
+        }
+        container.setLayer(layer);
+        if (position >= 0) {
+            order.add(upperBound(layer), container);
+            snapshot = null;
+        }
+    }
+
+    /***
+     * Shifts layers of the containers in the range (the order of the containers is not changed)
+     * @param from lowest shifted layer
+     * @param to highest shifted layer
+     * @param delta layer change (1 or -1)
+     */
+    synchronized void shiftLayers(int from, int to, int delta) {
+        for (int i = lowerBound(from), end = upperBound(to); i < end; ++ i) {
+            ExternalizableContainer container = order.get(i);
+            container.setLayer(container.getLayer() + delta);
+        }
+        snapshot = null;
+    }
+
+    /***
+     * Finds position of container in the sorted list
+     * @param container container
+     * @return position, -1 if container is not in the list
+     */
+    private int positionOf(ExternalizableContainer container) {
+        for (int i = lowerBound(container.getLayer()), end = order.size(); i < end; ++ i) {
+            ExternalizableContainer current = order.get(i);
+            if (current == container) {
+                return i;
+            }
+            if (current.getLayer() != container.getLayer()) {
+                break;
+            }
+        }
+        for (int i = 0, end = order.size(); i < end; ++ i) { // the layer was changed outside of the store
+            if (order.get(i) == container) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /***
+     * Finds the first container with layer not lower than the given one
+     * @param layer layer
+     * @return position of the container (list size if there is no such container)
+     */
+    private int lowerBound(int layer) {
+        int low = 0;
+        int high = order.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.get(middle).getLayer() < layer) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /***
+     * Finds the first container with layer higher than the given one
+     * @param layer layer
+     * @return position of the container (list size if there is no such container)
+     */
+    private int upperBound(int layer) {
+        return layer == Integer.MAX_VALUE ? order.size() : lowerBound(layer + 1);
+    }
+}
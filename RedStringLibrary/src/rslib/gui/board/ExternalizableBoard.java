@@ -1,6 +1,8 @@
 package rslib.gui.board;
 
+import rslib.cs.common.BlobStore;
 import rslib.cs.common.Status;
+import rslib.cs.protocol.ProtocolConstants;
 import rslib.cs.protocol.events.board.BoardEvent;
 import rslib.cs.protocol.events.main_client.MainClientEvent;
 import rslib.gui.ExternalizableComponent;
@@ -11,11 +13,15 @@ import rslib.gui.container.image.ExternalizableImageContainer;
 import rslib.gui.container.text.ExternalizableTextContainer;
 import rslib.gui.style.ColorModel;
 import rslib.gui.style.FontModel;
+import rslib.util.LegacyOutputStream;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 
@@ -27,8 +33,8 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     /** For better parsing */
     public static final long serialVersionUID = 85451821811231L;
 
-    /** All containers */
-    protected CopyOnWriteArrayList<ExternalizableContainer> containers;
+    /** All containers (shared with copies of the board) */
+    private ContainerStore containers;
 
     /** General container font */
     protected FontModel generalFont;
@@ -45,6 +51,9 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     /** If the board working is asynchronous */
     protected boolean asynchronous;
 
+    /** Digest of containers and board version (shared with copies of the board) */
+    protected BoardDigest digest;
+
     /***
      * Constructor
      * @param owner component owner username
@@ -101,12 +110,14 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
             throw new IllegalArgumentException("SerializableBoard: "
                     + "generalBackground is null!");
         }
-        this.containers = containers;
+        this.containers = new ContainerStore(containers);
         this.generalFont = generalFont;
         this.generalOpaque = generalOpaque;
         this.generalForeground = generalForeground;
         this.generalBackground = generalBackground;
         this.asynchronous = asynchronous;
+        digest = new BoardDigest();
+        attachContainers(containers);
     }
 
     /***
@@ -123,22 +134,50 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
         generalForeground = sb.generalForeground;
         generalBackground = sb.generalBackground;
         asynchronous = sb.asynchronous;
+        digest = sb.digest;
     }
 
     /***
      * Constructor for externalization
      */
     public ExternalizableBoard() {
+        digest = new BoardDigest();
+    }
+
+    /***
+     * Returns containers
+     * @return immutable snapshot of containers sorted by layer
+     */
+    public List<ExternalizableContainer> getContainers() {
+        return containers.snapshot();
     }
 
-    public CopyOnWriteArrayList<ExternalizableContainer> getContainers() {
-        return containers;
+
+    /***
+     * Links all containers to the digest, so it is notified about their changes
+     * @param order containers in the order they were received
+     */
+    private void attachContainers(List<ExternalizableContainer> order) {
+        for (ExternalizableContainer container : containers.snapshot()) {
+            container.setDigest(digest);
+        }
+        digest.setContainers(order);
     }
 
+    /***
+     * Unlinks all containers from the digest
+     */
+    private void detachContainers() {
+        for (ExternalizableContainer container : containers.snapshot()) {
+            container.setDigest(null);
+        }
+    }
 
     @Override
     public void clearBoard() {
-        containers.clear();
+        detachContainers();
+        containers.setAll(Collections.<ExternalizableContainer>emptyList());
+        digest.clear();
     }
 
     @Override
@@ -146,42 +185,23 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
         ExternalizableContainer sc = container.toExternalizable();
         int layer = container.getLayer();
         if (layer == BoardContainer.TO_FRONT) {
-            int max = BoardContainer.BACKGROUND_LAYER - 1;
-            for (BoardContainer bc : containers) {
-                int bcLayer = bc.getLayer();
-                if (bcLayer > max) {
-                    max = bcLayer;
-                }
-            }
-            container.setLayer(max + 1);
+            container.setLayer(Math.max(containers.getMaxLayer(), BoardContainer.BACKGROUND_LAYER - 1) + 1);
         }
         else {
-            for (BoardContainer bc : containers) {
-                int bcLayer = bc.getLayer();
-                if (bcLayer >= layer) {
-                    ++ bcLayer;
-                    bc.setLayer(bcLayer);
-                }
-            }
+            containers.shiftLayers(layer, Integer.MAX_VALUE, 1);
         }
+        sc.setDigest(digest);
         containers.add(sc);
+        digest.changed(sc);
     }
 
     @Override
     public void deleteContainer(int id) {
-        int layer = 10000;
-        for (ExternalizableContainer sc : containers) {
-            if (sc.getComponentId() == id) {
-                containers.remove(sc);
-                layer = sc.getLayer();
-            }
-        }
-        for (BoardContainer container : containers) {
-            int bcLayer = container.getLayer();
-            if (bcLayer > layer) {
-                -- bcLayer;
-                container.setLayer(bcLayer);
-            }
+        ExternalizableContainer sc = containers.remove(id);
+        if (sc != null) {
+            sc.setDigest(null);
+            digest.removed(id);
+            containers.shiftLayers(sc.getLayer() + 1, Integer.MAX_VALUE, -1);
         }
     }
 
@@ -197,17 +217,13 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
 
     @Override
     public BoardContainer findContainer(int id) {
-        for (ExternalizableContainer container : containers) {
-            if (container.getComponentId() == id) {
-                return container;
-            }
-        }
-        return null;
+        return containers.find(id);
     }
 
     @Override
     public void setGeneralContainerFont(FontModel font) {
         generalFont = font;
+        digest.boardChanged();
     }
 
     @Override
@@ -219,6 +235,7 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     public void setGeneralContainerOpaque(boolean opaque) {
         generalOpaque = opaque;
         generalBackground.setOpaque(opaque);
+        sharedBackgroundChanged(generalBackground);
     }
 
     @Override
@@ -229,9 +246,24 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     @Override
     public void setGeneralContainerBackground(ColorModel color) {
         generalBackground.setOpaque(generalOpaque);
+        sharedBackgroundChanged(generalBackground);
         generalBackground = color;
     }
 
+    /***
+     * Marks containers that share the changed color model as changed
+     * (only they are hashed again)
+     * @param color changed color model
+     */
+    private void sharedBackgroundChanged(ColorModel color) {
+        for (ExternalizableContainer container : containers.snapshot()) {
+            if (container.getComponentBackground() == color) {
+                digest.changed(container);
+            }
+        }
+        digest.boardChanged();
+    }
+
     @Override
     public ColorModel getGeneralContainerBackground() {
         return generalBackground;
@@ -240,6 +272,7 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     @Override
     public void setGeneralContainerForeground(ColorModel color) {
         generalForeground = color;
+        digest.boardChanged();
     }
 
     @Override
@@ -253,57 +286,32 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
         int newLayer;
         switch (layer) {
             case BoardContainer.TO_BACKGROUND: {
-                for (BoardContainer bc : containers) {
-                    int bcLayer = bc.getLayer();
-                    if (bcLayer < oldLayer) {
-                        ++ bcLayer;
-                        bc.setLayer(bcLayer);
-                    }
-                }
+                containers.shiftLayers(Integer.MIN_VALUE, oldLayer - 1, 1);
                 newLayer = BoardContainer.BACKGROUND_LAYER;
                 break;
             }
             case BoardContainer.TO_FRONT: {
-                int max = 0;
-                for (BoardContainer bc : containers) {
-                    int bcLayer = bc.getLayer();
-                    if (bcLayer > max) {
-                        max = bcLayer;
-                    }
-                    if (bcLayer > oldLayer) {
-                        -- bcLayer;
-                        bc.setLayer(bcLayer);
-                    }
-                }
-                newLayer = max;
+                newLayer = Math.max(containers.getMaxLayer(), 0);
+                containers.shiftLayers(oldLayer + 1, Integer.MAX_VALUE, -1);
                 break;
             }
             default: {
                 if (layer > oldLayer) {
-                    for (BoardContainer bc : containers) {
-                        int bcLayer = bc.getLayer();
-                        if (bcLayer <= layer && bcLayer > oldLayer) {
-                            -- bcLayer;
-                            bc.setLayer(bcLayer);
-                        }
-                    }
+                    containers.shiftLayers(oldLayer + 1, layer, -1);
                 }
-                else {
-                    if (layer < oldLayer) {
-                        for (BoardContainer bc : containers) {
-                            int bcLayer = bc.getLayer();
-                            if (bcLayer >= layer && bcLayer < oldLayer) {
-                                ++ bcLayer;
-                                bc.setLayer(bcLayer);
-                            }
-                        }
-                    }
+                else if (layer < oldLayer) {
+                    containers.shiftLayers(layer, oldLayer - 1, 1);
                 }
                 newLayer = layer;
                 break;
             }
         }
-        container.setLayer(newLayer);
+        if (containers.find(container.getComponentId()) == container) {
+            containers.setLayer((ExternalizableContainer) container, newLayer);
+        }
+        else {
+            container.setLayer(newLayer);
+        }
     }
 
     @Override
@@ -314,6 +322,7 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     @Override
     public void setAsynchronous(boolean asynchronous) {
         this.asynchronous = asynchronous;
+        digest.boardChanged();
     }
 
     @Override
@@ -376,7 +385,83 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
 
     @Override
     public void setBoardContent(CopyOnWriteArrayList<ExternalizableContainer> serializableContainers) {
-        this.containers = serializableContainers;
+        detachContainers();
+        containers.setAll(serializableContainers);
+        attachContainers(serializableContainers);
+    }
+
+    @Override
+    public void updateBoard(ExternalizableBoard serializableBoard,
+                            CopyOnWriteArrayList<ExternalizableContainer> serializableContainers,
+                            Map<Integer, Integer> layers) {
+        owner = serializableBoard.owner;
+        status = serializableBoard.status;
+        left = serializableBoard.left;
+        top = serializableBoard.top;
+        width = serializableBoard.width;
+        height = serializableBoard.height;
+        name = serializableBoard.name;
+        font = serializableBoard.font;
+        opaque = serializableBoard.opaque;
+        foreground = serializableBoard.foreground;
+        background = serializableBoard.background;
+        blocked = serializableBoard.blocked;
+        blockOwner = serializableBoard.blockOwner;
+        generalFont = serializableBoard.generalFont;
+        generalOpaque = serializableBoard.generalOpaque;
+        generalForeground = serializableBoard.generalForeground;
+        generalBackground = serializableBoard.generalBackground;
+        asynchronous = serializableBoard.asynchronous;
+        for (ExternalizableContainer container : containers.snapshot()) {
+            if (! layers.containsKey(container.getComponentId())) { // deleted
+                containers.remove(container.getComponentId());
+                container.setDigest(null);
+                digest.removed(container.getComponentId());
+            }
+        }
+        for (ExternalizableContainer container : serializableContainers) {
+            ExternalizableContainer old = containers.find(container.getComponentId());
+            if (old != null) {
+                old.setDigest(null);
+            }
+            container.setDigest(digest);
+            containers.add(container);
+            digest.changed(container);
+        }
+        List<ExternalizableContainer> updated = containers.snapshot();
+        for (ExternalizableContainer container : updated) {
+            int layer = layers.get(container.getComponentId());
+            if (container.getLayer() != layer) { // only shifted containers are hashed again
+                container.setLayer(layer);
+            }
+        }
+        containers.setAll(updated); // sorted by the new layers
+        digest.boardChanged();
+    }
+
+    /***
+     * Returns board info without containers
+     * @return board info
+     */
+    public ExternalizableBoard getBoardInfo() {
+        return new ExternalizableBoard(owner, status, left, top, width, height,
+                minimumWidth, minimumHeight, maximumWidth, maximumHeight, name, id,
+                font, opaque, foreground, background, blocked, blockOwner,
+                new CopyOnWriteArrayList<ExternalizableContainer>(),
+                generalFont, generalOpaque, generalForeground, generalBackground, asynchronous);
+    }
+
+    /***
+     * Returns board version (increased on every change of the board or its containers)
+     * @return board version
+     */
+    public long getVersion() {
+        return digest.getVersion();
+    }
+
+    @Override
+    protected void changed() {
+        digest.boardChanged();
     }
 
     @Override
@@ -395,7 +480,7 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     public String toString() {
         return "InteractiveBoard{" + '\n' +
                 super.toString() +
-                "containers=" + containers.toString() + '\n' +
+                "containers=" + containers.snapshot().toString() + '\n' +
                 ", generalFont=" + generalFont.toString() + '\n' +
                 ", generalOpaque=" + generalOpaque + '\n' +
                 ", generalForeground=" + generalForeground.toString() + '\n' +
@@ -415,7 +500,7 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
 
         ExternalizableBoard that = (ExternalizableBoard) o;
 
-        if (!containers.equals(that.containers)) return false;
+        if (!containers.snapshot().equals(that.containers.snapshot())) return false;
         if (!generalBackground.equals(that.generalBackground)) return false;
         if (generalOpaque != that.generalOpaque) return false;
         if (!generalFont.equals(that.generalFont)) return false;
@@ -430,11 +515,58 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
         if (blocked) {
             return 0;
         }
-        int result = super.hashCode();
-        for (BoardContainer container : containers) {
-            result = 31 * result + container.hashCode();
+        return hashCode(digest.getContainersHash(this, containers.snapshot()));
+    }
+
+    /***
+     * Calculates board hash by the specified digest formula
+     * @param digestVersion digest formula (see ProtocolConstants)
+     * @param blobStore store with the blobs of released contents (used by the legacy formula)
+     * @return board hash
+     * @throws IOException if content of a container is not available
+     */
+    public int hashCode(byte digestVersion, BlobStore blobStore) throws IOException {
+        if (digestVersion == ProtocolConstants.LEGACY_DIGEST) {
+            return legacyHashCode(blobStore);
+        }
+        return hashCode();
+    }
+
+    /***
+     * Calculates board hash by the legacy formula (containers are hashed in the order
+     * old clients keep them, contents are hashed by their data)
+     * @param blobStore store with the blobs of released contents
+     * @return board hash
+     * @throws IOException if content of a container is not available
+     */
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        if (blocked) {
+            return 0;
+        }
+        return generalHashCode(digest.getLegacyHash(this, super.hashCode(), blobStore));
+    }
+
+    /***
+     * Calculates board hash with the specified hash of containers
+     * (for boards that maintain their own digest of containers)
+     * @param containersHash combined hash of containers (see BoardDigest)
+     * @return board hash
+     */
+    public int hashCode(int containersHash) {
+        if (blocked) {
+            return 0;
         }
-        //result = 31 * result + (containers != null? containers.hashCode() : 0);
+        int result = super.hashCode();
+        result = 31 * result + containersHash;
+        return generalHashCode(result);
+    }
+
+    /***
+     * Adds general container settings to the board hash
+     * @param result hash of the board component and its containers
+     * @return board hash
+     */
+    private int generalHashCode(int result) {
         result = 31 * result + generalFont.hashCode();
         result = 31 * result + (generalOpaque ? 1 : 0);
         result = 31 * result + generalForeground.hashCode();
@@ -446,7 +578,12 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
-        out.writeObject(containers);
+        if (out instanceof LegacyOutputStream) { // in the order old clients keep containers
+            out.writeObject(new CopyOnWriteArrayList<>(digest.legacyOrder(containers.snapshot())));
+        }
+        else {
+            out.writeObject(new CopyOnWriteArrayList<>(containers.snapshot()));
+        }
         out.writeObject(generalFont);
         out.writeBoolean(generalOpaque);
         out.writeObject(generalForeground);
@@ -457,11 +594,14 @@ public class ExternalizableBoard extends ExternalizableComponent implements Inte
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         super.readExternal(in);
-        containers = (CopyOnWriteArrayList<ExternalizableContainer>) in.readObject();
+        CopyOnWriteArrayList<ExternalizableContainer> read =
+                (CopyOnWriteArrayList<ExternalizableContainer>) in.readObject();
+        containers = new ContainerStore(read);
         generalFont = (FontModel) in.readObject();
         generalOpaque = in.readBoolean();
         generalForeground = (ColorModel) in.readObject();
         generalBackground = (ColorModel) in.readObject();
         asynchronous = in.readBoolean();
+        attachContainers(read);
     }
 }
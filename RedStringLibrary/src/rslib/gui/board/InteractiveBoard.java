@@ -8,6 +8,7 @@ import rslib.gui.style.FontModel;
 import rslib.listeners.BoardListener;
 import rslib.listeners.MainClientListener;
 
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /***
@@ -33,6 +34,17 @@ public interface InteractiveBoard extends BasicComponent,
      */
     public void setBoardContent(CopyOnWriteArrayList<ExternalizableContainer> serializableContainers);
 
+    /***
+     * Updates the board. Sets board info, replaces (or adds) the given containers,
+     * deletes containers that are not in the layer list and sets layers of all containers
+     * @param serializableBoard board info
+     * @param serializableContainers changed and added containers
+     * @param layers layers of all board containers (by container id)
+     */
+    public void updateBoard(ExternalizableBoard serializableBoard,
+                            CopyOnWriteArrayList<ExternalizableContainer> serializableContainers,
+                            Map<Integer, Integer> layers);
+
     /***
      * Adds a container to the board
      * @param container current container
@@ -1,7 +1,9 @@
 package rslib.gui.container;
 
+import rslib.cs.common.BlobStore;
 import rslib.cs.common.Status;
 import rslib.gui.ExternalizableComponent;
+import rslib.gui.board.BoardDigest;
 import rslib.gui.style.ColorModel;
 import rslib.gui.style.FontModel;
 
@@ -24,6 +26,9 @@ public abstract class ExternalizableContainer extends ExternalizableComponent im
     /** Container type */
     protected BoardContainer.ContainerType type;
 
+    /** Digest of the board holding the container (notified about changes, may be null) */
+    private BoardDigest digest;
+
     /***
      * Constructor
      * @param owner component owner username
@@ -77,6 +82,7 @@ public abstract class ExternalizableContainer extends ExternalizableComponent im
     @Override
     public void setLayer(int layer) {
         this.layer = layer;
+        changed();
     }
 
     @Override
@@ -84,6 +90,27 @@ public abstract class ExternalizableContainer extends ExternalizableComponent im
         return layer;
     }
 
+    /***
+     * Sets digest of the board holding the container
+     * @param digest board digest (null if the container is not on a board)
+     */
+    public void setDigest(BoardDigest digest) {
+        this.digest = digest;
+    }
+
+    /***
+     * Copies container (the content is shared, the copy is not linked to a digest)
+     * @return copy of the container
+     */
+    public abstract ExternalizableContainer copy();
+
+    @Override
+    protected void changed() {
+        if (digest != null) {
+            digest.changed(this);
+        }
+    }
+
     @Override
     public String toString() {
         return super.toString() +
@@ -115,6 +142,16 @@ public abstract class ExternalizableContainer extends ExternalizableComponent im
         return result;
     }
 
+    /***
+     * Calculates hash code of the legacy digest formula (contents are hashed by their data)
+     * @param blobStore store with the blobs of released contents
+     * @return hash code
+     * @throws IOException if content is not available
+     */
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        return hashCode();
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
@@ -1,5 +1,6 @@
 package rslib.gui.container.file;
 
+import rslib.cs.common.BlobStore;
 import rslib.cs.common.Status;
 import rslib.gui.container.ExternalizableContainer;
 import rslib.gui.style.ColorModel;
@@ -66,11 +67,13 @@ public class ExternalizableFileContainer extends ExternalizableContainer impleme
     @Override
     public void setContent(ExternalizableContainer serializableContainer) {
         file = ((ExternalizableFileContainer) serializableContainer).getFile();
+        changed();
     }
 
     @Override
     public void clearContainer() {
         file = null;
+        changed();
     }
 
     @Override
@@ -81,6 +84,7 @@ public class ExternalizableFileContainer extends ExternalizableContainer impleme
     @Override
     public void setFile(FileModel file) {
         this.file = file;
+        changed();
     }
 
     @Override
@@ -88,6 +92,15 @@ public class ExternalizableFileContainer extends ExternalizableContainer impleme
         return this;
     }
 
+    @Override
+    public ExternalizableContainer copy() {
+        return new ExternalizableFileContainer(getComponentOwner(), getComponentStatus(), getComponentLeft(), getComponentTop(),
+                getComponentWidth(), getComponentHeight(), getComponentMinimumWidth(), getComponentMinimumHeight(),
+                getComponentMaximumWidth(), getComponentMaximumHeight(), getComponentName(), getComponentId(),
+                getComponentFont(), isComponentOpaque(), getComponentForeground(), getComponentBackground(),
+                layer, type, isBlocked(), getBlockOwner(), file);
+    }
+
     @Override
     public String toString() {
         return "FileContainer{" +
@@ -119,6 +132,16 @@ public class ExternalizableFileContainer extends ExternalizableContainer impleme
         return result;
     }
 
+    @Override
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        if (blocked) {
+            return 0;
+        }
+        int result = super.hashCode();
+        result = 31 * result + (file != null ? file.legacyHashCode(blobStore) : 0);
+        return result;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
@@ -1,5 +1,11 @@
 package rslib.gui.container.file;
 
+import rslib.cs.common.BlobHolder;
+import rslib.cs.common.BlobStore;
+import rslib.util.BlobOutputStream;
+import rslib.util.DataManagement;
+import rslib.util.LegacyOutputStream;
+
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -7,19 +13,31 @@ import java.io.ObjectOutput;
 import java.util.Arrays;
 
 /***
- * Represents a file model
+ * Represents a file model. File data is stored as a blob
  */
-public class FileModel implements Externalizable {
+public class FileModel implements Externalizable, BlobHolder {
+
+    /** For better parsing (the value of the old versions, older clients and files use it) */
+    public static final long serialVersionUID = 1140221378670480196L;
 
     /** File name */
     private String filename;
 
-    /** File data */
+    /** File data (null if only the blob id is known) */
     private byte[] data;
 
+    /** Blob id of data (null if not computed yet) */
+    private String blobId;
+
     /** Data length */
     private int length;
 
+    /** Cached hash code (0 if not computed yet, the model is never changed) */
+    private int hash;
+
+    /** Cached hash code of the legacy digest formula (0 if not computed yet) */
+    private int legacyHash;
+
     /***
      * Constructor
      * @param filename file name
@@ -55,12 +73,49 @@ public class FileModel implements Externalizable {
         return data;
     }
 
+    @Override
+    public String getBlobId() {
+        if (blobId == null) {
+            blobId = DataManagement.blobId(data);
+        }
+        return blobId;
+    }
+
+    @Override
+    public boolean isContent(byte[] blob) {
+        return blob != null && blob.length == length && DataManagement.blobId(blob).equals(getBlobId());
+    }
+
+    @Override
+    public boolean isResolved() {
+        return data != null;
+    }
+
+    @Override
+    public byte[] getBlob() {
+        return data;
+    }
+
+    @Override
+    public void resolve(byte[] blob) {
+        if (blob.length != length) {
+            throw new IllegalArgumentException("FileModel: wrong blob length!");
+        }
+        data = blob;
+    }
+
+    @Override
+    public void release() {
+        getBlobId();
+        data = null;
+    }
+
     @Override
     public String toString() {
         return "FileModel{" +
                 "filename='" + filename + '\'' +
                 "data length='" + length + '\'' +
-                ", data hash=" + Arrays.hashCode(data) +
+                ", data blob=" + blobId +
                 '}';
     }
 
@@ -72,7 +127,7 @@ public class FileModel implements Externalizable {
         FileModel fileModel = (FileModel) o;
 
         if (length != fileModel.length) return false;
-        if (!Arrays.equals(data, fileModel.data)) return false;
+        if (!getBlobId().equals(fileModel.getBlobId())) return false;
         if (filename != null ? !filename.equals(fileModel.filename) : fileModel.filename != null) return false;
 
         return true;
@@ -80,17 +135,66 @@ public class FileModel implements Externalizable {
 
     @Override
     public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = filename != null ? filename.hashCode() : 0;
+        result = 31 * result + getBlobId().hashCode();
+        result = 31 * result + length;
+        hash = result;
+        return result;
+    }
+
+    /***
+     * Calculates hash code of the legacy digest formula (it hashes the data,
+     * released data is read from the store and is not kept)
+     * @param blobStore store with the blob of released data (can be null if data is kept)
+     * @return hash code
+     * @throws IOException if data is not available
+     */
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        if (legacyHash != 0) {
+            return legacyHash;
+        }
         int result = filename != null ? filename.hashCode() : 0;
-        result = 31 * result + (data != null ? Arrays.hashCode(data) : 0);
+        result = 31 * result + Arrays.hashCode(loadData(blobStore));
         result = 31 * result + length;
+        legacyHash = result;
         return result;
     }
 
+    /***
+     * Returns file data without keeping the loaded one
+     * @param blobStore store with the blob of released data (can be null if data is kept)
+     * @return data
+     * @throws IOException if data is not available
+     */
+    byte[] loadData(BlobStore blobStore) throws IOException {
+        if (data != null) {
+            return data;
+        }
+        byte[] blob = blobStore != null ? blobStore.get(getBlobId()) : null;
+        if (blob == null) {
+            throw new IOException("FileModel: unknown blob " + getBlobId() + "!");
+        }
+        return blob;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeUTF(filename);
         out.writeInt(length);
-        out.writeObject(data);
+        if (out instanceof LegacyOutputStream) { // inline data
+            out.writeObject(loadData(((LegacyOutputStream) out).getBlobStore()));
+        }
+        else if (data == null || (out instanceof BlobOutputStream &&
+                ((BlobOutputStream) out).isReference(getBlobId()))) { // only the reference
+            out.writeObject(null);
+            out.writeUTF(getBlobId());
+        }
+        else {
+            out.writeObject(data);
+        }
     }
 
     @Override
@@ -98,6 +202,9 @@ public class FileModel implements Externalizable {
         filename = in.readUTF();
         length = in.readInt();
         data = (byte[]) in.readObject();
+        blobId = data == null ? in.readUTF() : null;
+        hash = 0;
+        legacyHash = 0;
         /*data = new byte[length];
         int read = 0;
         boolean readAll = false;
@@ -1,5 +1,6 @@
 package rslib.gui.container.image;
 
+import rslib.cs.common.BlobStore;
 import rslib.cs.common.Status;
 import rslib.gui.container.ExternalizableContainer;
 import rslib.gui.style.ColorModel;
@@ -66,16 +67,19 @@ public class ExternalizableImageContainer extends ExternalizableContainer implem
     @Override
     public void setContent(ExternalizableContainer serializableContainer) {
         image = ((ExternalizableImageContainer) serializableContainer).getImage();
+        changed();
     }
 
     @Override
     public void clearContainer() {
         image = null;
+        changed();
     }
 
     @Override
     public void setImage(ImageModel image) {
         this.image = image;
+        changed();
     }
 
     @Override
@@ -88,6 +92,15 @@ public class ExternalizableImageContainer extends ExternalizableContainer implem
         return this;
     }
 
+    @Override
+    public ExternalizableContainer copy() {
+        return new ExternalizableImageContainer(getComponentOwner(), getComponentStatus(), getComponentLeft(), getComponentTop(),
+                getComponentWidth(), getComponentHeight(), getComponentMinimumWidth(), getComponentMinimumHeight(),
+                getComponentMaximumWidth(), getComponentMaximumHeight(), getComponentName(), getComponentId(),
+                getComponentFont(), isComponentOpaque(), getComponentForeground(), getComponentBackground(),
+                layer, type, isBlocked(), getBlockOwner(), image);
+    }
+
     @Override
     public String toString() {
         return "ImageContainer{" +
@@ -119,6 +132,16 @@ public class ExternalizableImageContainer extends ExternalizableContainer implem
         return result;
     }
 
+    @Override
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        if (blocked) {
+            return 0;
+        }
+        int result = super.hashCode();
+        result = 31 * result + (image != null ? image.legacyHashCode(blobStore) : 0);
+        return result;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
@@ -0,0 +1,515 @@
+package rslib.gui.container.image;
+
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+/***
+ * Deflates data into a zlib stream (it is read by java.util.zip.Inflater) with its own
+ * LZ77 matching and Huffman coding. The output of java.util.zip.Deflater depends on the zlib
+ * build of the platform, while the blob id of an image is the hash of its encoded pixels,
+ * so the same pixels must be encoded to the same bytes by the server and by every client
+ */
+class ImageDeflater {
+
+    /** Window size */
+    private static final int WINDOW_SIZE = 32768;
+
+    /** Window mask */
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    /** Minimum match length */
+    private static final int MINIMUM_MATCH = 3;
+
+    /** Maximum match length */
+    private static final int MAXIMUM_MATCH = 258;
+
+    /** Hash bits of the first bytes of a match */
+    private static final int HASH_BITS = 15;
+
+    /** Number of checked earlier positions with the same hash */
+    private static final int MAXIMUM_CHAIN = 4;
+
+    /** Positions inside longer matches are not hashed (runs of one color are long matches) */
+    private static final int MAXIMUM_INSERT = 16;
+
+    /** Match of this length is taken without checking the other positions */
+    private static final int GOOD_MATCH = 32;
+
+    /** Symbols of one block (every block has its own Huffman codes) */
+    private static final int BLOCK_SYMBOLS = 1 << 16;
+
+    /** Number of literal/length codes */
+    private static final int LITERAL_CODES = 286;
+
+    /** Number of distance codes */
+    private static final int DISTANCE_CODES = 30;
+
+    /** Number of code length codes */
+    private static final int LENGTH_CODES = 19;
+
+    /** End of block code */
+    private static final int END_OF_BLOCK = 256;
+
+    /** Maximum length of literal/length and distance codes */
+    private static final int MAXIMUM_BITS = 15;
+
+    /** Maximum length of code length codes */
+    private static final int MAXIMUM_LENGTH_BITS = 7;
+
+    /** Base match lengths of length codes 257..285 */
+    private static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+
+    /** Extra bits of length codes 257..285 */
+    private static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+
+    /** Base distances of distance codes */
+    private static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+
+    /** Extra bits of distance codes */
+    private static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+
+    /** Order of code length code lengths in the block header */
+    private static final int[] LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2,
+            14, 1, 15 };
+
+    /** Length code (index in LENGTH_BASE) of every match length */
+    private static final byte[] LENGTH_CODE = new byte[MAXIMUM_MATCH + 1];
+
+    static {
+        for (int code = 0; code < LENGTH_BASE.length; ++ code) {
+            int end = code + 1 < LENGTH_BASE.length ? LENGTH_BASE[code + 1] : MAXIMUM_MATCH + 1;
+            for (int length = LENGTH_BASE[code]; length < end; ++ length) {
+                LENGTH_CODE[length] = (byte) code;
+            }
+        }
+    }
+
+    /** Output */
+    private byte[] out;
+
+    /** Output size */
+    private int size;
+
+    /** Bits that are not written yet (the lowest bits go first) */
+    private long bits;
+
+    /** Number of bits that are not written yet */
+    private int bitCount;
+
+    /***
+     * Constructor
+     * @param capacity initial output capacity
+     */
+    private ImageDeflater(int capacity) {
+        out = new byte[Math.max(64, capacity)];
+    }
+
+    /***
+     * Deflates data
+     * @param data data
+     * @return zlib stream
+     */
+    static byte[] deflate(byte[] data) {
+        if (data == null) {
+            throw new NullPointerException("ImageDeflater: data is null!");
+        }
+        ImageDeflater deflater = new ImageDeflater(data.length / 4);
+        deflater.writeByte(0x78); // deflate with 32K window
+        deflater.writeByte(0x01); // no dictionary, header checksum
+        deflater.compress(data);
+        Adler32 adler = new Adler32();
+        adler.update(data, 0, data.length);
+        int checksum = (int) adler.getValue();
+        deflater.writeByte(checksum >>> 24);
+        deflater.writeByte(checksum >>> 16);
+        deflater.writeByte(checksum >>> 8);
+        deflater.writeByte(checksum);
+        return Arrays.copyOf(deflater.out, deflater.size);
+    }
+
+    /***
+     * Finds matches of earlier data (greedily) and writes blocks of literals and matches
+     * @param data data
+     */
+    private void compress(byte[] data) {
+        int[] head = new int[1 << HASH_BITS];
+        Arrays.fill(head, -1);
+        int[] previous = new int[WINDOW_SIZE];
+        int[] lengths = new int[BLOCK_SYMBOLS]; // 0 for literals
+        int[] values = new int[BLOCK_SYMBOLS]; // literal or distance
+        int count = 0;
+        int position = 0;
+        while (position < data.length) {
+            int matchLength = 0;
+            int matchDistance = 0;
+            if (data.length - position >= MINIMUM_MATCH) {
+                int limit = Math.min(MAXIMUM_MATCH, data.length - position);
+                int candidate = head[hash(data, position)];
+                for (int chain = 0; chain < MAXIMUM_CHAIN && candidate >= 0 &&
+                        position - candidate <= WINDOW_SIZE; ++ chain) {
+                    if (data[candidate + matchLength] != data[position + matchLength]) {
+                        candidate = previous[candidate & WINDOW_MASK];
+                        continue; // can not be longer
+                    }
+                    int length = matchLength(data, candidate, position, limit);
+                    if (length > matchLength) {
+                        matchLength = length;
+                        matchDistance = position - candidate;
+                        if (length >= GOOD_MATCH || length == limit) {
+                            break;
+                        }
+                    }
+                    candidate = previous[candidate & WINDOW_MASK];
+                }
+            }
+            int step = 1;
+            if (matchLength >= MINIMUM_MATCH) {
+                lengths[count] = matchLength;
+                values[count] = matchDistance;
+                step = matchLength;
+            }
+            else {
+                lengths[count] = 0;
+                values[count] = data[position] & 0xFF;
+            }
+            int end = position + step;
+            int inserted = step <= MAXIMUM_INSERT ? end : position + 1;
+            for (; position < inserted; ++ position) {
+                if (data.length - position >= MINIMUM_MATCH) {
+                    int hash = hash(data, position);
+                    previous[position & WINDOW_MASK] = head[hash];
+                    head[hash] = position;
+                }
+            }
+            position = end;
+            if (++ count == BLOCK_SYMBOLS) {
+                writeBlock(lengths, values, count, false);
+                count = 0;
+            }
+        }
+        writeBlock(lengths, values, count, true);
+    }
+
+    /***
+     * Calculates hash of three bytes
+     * @param data data
+     * @param position position of the first byte
+     * @return hash
+     */
+    private static int hash(byte[] data, int position) {
+        int value = (data[position] & 0xFF) << 16 | (data[position + 1] & 0xFF) << 8 |
+                (data[position + 2] & 0xFF);
+        return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    /***
+     * Calculates length of the match
+     * @param data data
+     * @param earlier position of the earlier data
+     * @param position current position
+     * @param limit maximum length
+     * @return match length
+     */
+    private static int matchLength(byte[] data, int earlier, int position, int limit) {
+        int length = 0;
+        while (length < limit && data[earlier + length] == data[position + length]) {
+            ++ length;
+        }
+        return length;
+    }
+
+    /***
+     * Writes block with dynamic Huffman codes
+     * @param lengths match lengths of symbols (0 for literals)
+     * @param values literals or match distances of symbols
+     * @param count number of symbols
+     * @param last true if it is the last block
+     */
+    private void writeBlock(int[] lengths, int[] values, int count, boolean last) {
+        int[] literalFrequencies = new int[LITERAL_CODES];
+        int[] distanceFrequencies = new int[DISTANCE_CODES];
+        for (int i = 0; i < count; ++ i) {
+            if (lengths[i] == 0) {
+                ++ literalFrequencies[values[i]];
+            }
+            else {
+                ++ literalFrequencies[END_OF_BLOCK + 1 + LENGTH_CODE[lengths[i]]];
+                ++ distanceFrequencies[distanceCode(values[i])];
+            }
+        }
+        literalFrequencies[END_OF_BLOCK] = 1;
+        int[] literalLengths = codeLengths(literalFrequencies, MAXIMUM_BITS);
+        int[] distanceLengths = codeLengths(distanceFrequencies, MAXIMUM_BITS);
+        int literalCount = LITERAL_CODES;
+        while (literalLengths[literalCount - 1] == 0) {
+            -- literalCount;
+        }
+        int distanceCount = DISTANCE_CODES;
+        while (distanceLengths[distanceCount - 1] == 0) {
+            -- distanceCount;
+        }
+
+        // code lengths of both codes are sent as one sequence with runs
+        int[] codeLengths = new int[literalCount + distanceCount];
+        System.arraycopy(literalLengths, 0, codeLengths, 0, literalCount);
+        System.arraycopy(distanceLengths, 0, codeLengths, literalCount, distanceCount);
+        int[] symbols = new int[codeLengths.length];
+        int[] extras = new int[codeLengths.length];
+        int symbolCount = runs(codeLengths, symbols, extras);
+        int[] lengthFrequencies = new int[LENGTH_CODES];
+        for (int i = 0; i < symbolCount; ++ i) {
+            ++ lengthFrequencies[symbols[i]];
+        }
+        int[] lengthLengths = codeLengths(lengthFrequencies, MAXIMUM_LENGTH_BITS);
+        int lengthCount = LENGTH_CODES;
+        while (lengthCount > 4 && lengthLengths[LENGTH_ORDER[lengthCount - 1]] == 0) {
+            -- lengthCount;
+        }
+
+        writeBits(last ? 1 : 0, 1);
+        writeBits(2, 2); // dynamic Huffman codes
+        writeBits(literalCount - 257, 5);
+        writeBits(distanceCount - 1, 5);
+        writeBits(lengthCount - 4, 4);
+        for (int i = 0; i < lengthCount; ++ i) {
+            writeBits(lengthLengths[LENGTH_ORDER[i]], 3);
+        }
+        int[] lengthCodes = codes(lengthLengths);
+        for (int i = 0; i < symbolCount; ++ i) {
+            int symbol = symbols[i];
+            writeBits(lengthCodes[symbol], lengthLengths[symbol]);
+            if (symbol == 16) {
+                writeBits(extras[i], 2);
+            }
+            else if (symbol == 17) {
+                writeBits(extras[i], 3);
+            }
+            else if (symbol == 18) {
+                writeBits(extras[i], 7);
+            }
+        }
+
+        int[] literalCodes = codes(literalLengths);
+        int[] distanceCodes = codes(distanceLengths);
+        for (int i = 0; i < count; ++ i) {
+            int value = values[i];
+            if (lengths[i] == 0) {
+                writeBits(literalCodes[value], literalLengths[value]);
+            }
+            else {
+                int code = LENGTH_CODE[lengths[i]];
+                writeBits(literalCodes[END_OF_BLOCK + 1 + code], literalLengths[END_OF_BLOCK + 1 + code]);
+                writeBits(lengths[i] - LENGTH_BASE[code], LENGTH_EXTRA[code]);
+                code = distanceCode(value);
+                writeBits(distanceCodes[code], distanceLengths[code]);
+                writeBits(value - DISTANCE_BASE[code], DISTANCE_EXTRA[code]);
+            }
+        }
+        writeBits(literalCodes[END_OF_BLOCK], literalLengths[END_OF_BLOCK]);
+        if (last && bitCount > 0) {
+            writeByte((int) bits);
+            bits = 0;
+            bitCount = 0;
+        }
+    }
+
+    /***
+     * Finds distance code
+     * @param distance match distance
+     * @return distance code
+     */
+    private static int distanceCode(int distance) {
+        int code = DISTANCE_CODES - 1;
+        while (DISTANCE_BASE[code] > distance) {
+            -- code;
+        }
+        return code;
+    }
+
+    /***
+     * Replaces runs of code lengths by the repeat codes: 16 repeats the previous
+     * length 3..6 times, 17 and 18 are 3..10 and 11..138 zeros
+     * @param lengths code lengths
+     * @param symbols symbols (filled)
+     * @param extras extra bits of symbols (filled)
+     * @return number of symbols
+     */
+    private static int runs(int[] lengths, int[] symbols, int[] extras) {
+        int count = 0;
+        int i = 0;
+        while (i < lengths.length) {
+            int length = lengths[i];
+            int run = 1;
+            while (i + run < lengths.length && lengths[i + run] == length) {
+                ++ run;
+            }
+            if (length == 0 && run >= 3) {
+                run = Math.min(run, 138);
+                symbols[count] = run <= 10 ? 17 : 18;
+                extras[count ++] = run <= 10 ? run - 3 : run - 11;
+                i += run;
+            }
+            else if (length != 0 && run >= 4) {
+                symbols[count] = length;
+                extras[count ++] = 0;
+                int left = run - 1;
+                while (left >= 3) {
+                    int repeat = Math.min(left, 6);
+                    symbols[count] = 16;
+                    extras[count ++] = repeat - 3;
+                    left -= repeat;
+                }
+                i += run - left; // the rest (less than 3) are written as they are
+            }
+            else {
+                symbols[count] = length;
+                extras[count ++] = 0;
+                ++ i;
+            }
+        }
+        return count;
+    }
+
+    /***
+     * Calculates lengths of Huffman codes. At least two codes are used (a single code is
+     * incomplete), frequencies are halved until the longest code fits the limit
+     * @param frequencies symbol frequencies
+     * @param limit maximum code length
+     * @return code lengths (0 for unused symbols)
+     */
+    private static int[] codeLengths(int[] frequencies, int limit) {
+        int[] weights = frequencies.clone();
+        int used = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                ++ used;
+            }
+        }
+        for (int i = 0; used < 2; ++ i) {
+            if (weights[i] == 0) {
+                weights[i] = 1;
+                ++ used;
+            }
+        }
+        while (true) {
+            int[] lengths = huffmanLengths(weights, used);
+            int maximum = 0;
+            for (int length : lengths) {
+                maximum = Math.max(maximum, length);
+            }
+            if (maximum <= limit) {
+                return lengths;
+            }
+            for (int i = 0; i < weights.length; ++ i) {
+                if (weights[i] > 0) {
+                    weights[i] = Math.max(1, weights[i] >> 1);
+                }
+            }
+        }
+    }
+
+    /***
+     * Builds Huffman tree (ties are broken by the symbol, so the tree is always the same)
+     * @param weights symbol weights
+     * @param used number of symbols with weight
+     * @return code lengths
+     */
+    private static int[] huffmanLengths(int[] weights, int used) {
+        long[] leaves = new long[used];
+        int leafCount = 0;
+        for (int symbol = 0; symbol < weights.length; ++ symbol) {
+            if (weights[symbol] > 0) {
+                leaves[leafCount ++] = (long) weights[symbol] << 16 | symbol;
+            }
+        }
+        Arrays.sort(leaves);
+        int nodes = 2 * used - 1;
+        long[] nodeWeights = new long[nodes];
+        int[] parents = new int[nodes];
+        for (int i = 0; i < used; ++ i) {
+            nodeWeights[i] = leaves[i] >>> 16;
+        }
+        int leaf = 0;
+        int inner = used;
+        for (int node = used; node < nodes; ++ node) { // leaves and inner nodes are both sorted by weight
+            for (int child = 0; child < 2; ++ child) {
+                int next;
+                if (leaf < used && (inner == node || nodeWeights[leaf] <= nodeWeights[inner])) {
+                    next = leaf ++;
+                }
+                else {
+                    next = inner ++;
+                }
+                nodeWeights[node] += nodeWeights[next];
+                parents[next] = node;
+            }
+        }
+        int[] depths = new int[nodes];
+        for (int node = nodes - 2; node >= 0; -- node) { // parents go after their children
+            depths[node] = depths[parents[node]] + 1;
+        }
+        int[] lengths = new int[weights.length];
+        for (int i = 0; i < used; ++ i) {
+            lengths[(int) (leaves[i] & 0xFFFF)] = depths[i];
+        }
+        return lengths;
+    }
+
+    /***
+     * Assigns canonical Huffman codes
+     * @param lengths code lengths
+     * @return codes with reversed bits (Huffman codes are packed starting from the highest bit)
+     */
+    private static int[] codes(int[] lengths) {
+        int[] counts = new int[MAXIMUM_BITS + 1];
+        for (int length : lengths) {
+            if (length > 0) {
+                ++ counts[length];
+            }
+        }
+        int[] next = new int[MAXIMUM_BITS + 1];
+        int code = 0;
+        for (int length = 1; length <= MAXIMUM_BITS; ++ length) {
+            code = (code + counts[length - 1]) << 1;
+            next[length] = code;
+        }
+        int[] codes = new int[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; ++ symbol) {
+            int length = lengths[symbol];
+            if (length > 0) {
+                codes[symbol] = Integer.reverse(next[length] ++) >>> (32 - length);
+            }
+        }
+        return codes;
+    }
+
+    /***
+     * Writes bits
+     * @param value bits (the lowest bit goes first)
+     * @param count number of bits
+     */
+    private void writeBits(int value, int count) {
+        bits |= (long) value << bitCount;
+        bitCount += count;
+        while (bitCount >= 8) {
+            writeByte((int) bits);
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    /***
+     * Writes byte
+     * @param value byte (the lowest 8 bits)
+     */
+    private void writeByte(int value) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+        out[size ++] = (byte) value;
+    }
+}
@@ -0,0 +1,264 @@
+package rslib.gui.container.image;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/***
+ * Encodes image pixels for storing and sending. The first byte of encoded data is the format:
+ * run-length encoding for drawings (big areas of one color), deflate of pixel differences
+ * for photos (like PNG "sub" filter), raw pixels if nothing helps. The same pixels are always
+ * encoded to the same bytes (the blob id of an image is the hash of the encoded pixels)
+ */
+public class ImageEncoding {
+
+    /** Formats */
+    public static final byte RAW = 0;
+    public static final byte RLE = 1;
+    public static final byte DEFLATE = 2;
+
+    /** Run-length encoding is chosen if it is this times smaller than raw pixels */
+    private static final int RLE_RATIO = 16;
+
+    /***
+     * Encodes pixels (the format is chosen by size)
+     * @param pixels pixels
+     * @return encoded pixels
+     */
+    public static byte[] encode(int[] pixels) {
+        if (pixels == null) {
+            throw new NullPointerException("ImageEncoding: pixels is null!");
+        }
+        int rawSize = pixels.length * 4;
+        if (rleSize(pixels) * RLE_RATIO <= rawSize) {
+            return encodeRle(pixels);
+        }
+        byte[] deflated = encodeDeflate(pixels);
+        if (deflated.length < rawSize) {
+            return deflated;
+        }
+        ByteBuffer raw = ByteBuffer.allocate(1 + rawSize);
+        raw.put(RAW);
+        raw.asIntBuffer().put(pixels);
+        return raw.array();
+    }
+
+    /***
+     * Decodes pixels
+     * @param data encoded pixels
+     * @param size number of pixels
+     * @return pixels
+     * @throws IllegalArgumentException if data is wrong
+     */
+    public static int[] decode(byte[] data, int size) throws IllegalArgumentException {
+        if (data == null) {
+            throw new NullPointerException("ImageEncoding: data is null!");
+        }
+        if (data.length == 0 || size < 0) {
+            throw new IllegalArgumentException("ImageEncoding: wrong data!");
+        }
+        switch (data[0]) {
+            case RAW: {
+                if (data.length - 1 != size * 4) {
+                    throw new IllegalArgumentException("ImageEncoding: wrong raw data length!");
+                }
+                int[] pixels = new int[size];
+                ByteBuffer.wrap(data, 1, data.length - 1).asIntBuffer().get(pixels);
+                return pixels;
+            }
+            case RLE:
+                return decodeRle(data, size);
+            case DEFLATE:
+                return decodeDeflate(data, size);
+            default:
+                throw new IllegalArgumentException("ImageEncoding: unknown format!");
+        }
+    }
+
+    /***
+     * Calculates size of run-length encoded pixels without encoding them
+     * @param pixels pixels
+     * @return encoded size
+     */
+    private static long rleSize(int[] pixels) {
+        long size = 1;
+        int i = 0;
+        while (i < pixels.length) {
+            int run = runLength(pixels, i);
+            size += varIntSize(run) + 4;
+            i += run;
+        }
+        return size;
+    }
+
+    /***
+     * Encodes pixels as runs (run length as variable-length int, then pixel)
+     * @param pixels pixels
+     * @return encoded pixels
+     */
+    private static byte[] encodeRle(int[] pixels) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) rleSize(pixels));
+        buffer.put(RLE);
+        int i = 0;
+        while (i < pixels.length) {
+            int run = runLength(pixels, i);
+            putVarInt(buffer, run);
+            buffer.putInt(pixels[i]);
+            i += run;
+        }
+        return buffer.array();
+    }
+
+    /***
+     * Decodes runs
+     * @param data encoded pixels
+     * @param size number of pixels
+     * @return pixels
+     * @throws IllegalArgumentException if data is wrong
+     */
+    private static int[] decodeRle(byte[] data, int size) throws IllegalArgumentException {
+        int[] pixels = new int[size];
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        int i = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                int run = getVarInt(buffer);
+                int pixel = buffer.getInt();
+                if (run <= 0 || run > size - i) {
+                    throw new IllegalArgumentException("ImageEncoding: wrong run length!");
+                }
+                for (int end = i + run; i < end; ++ i) {
+                    pixels[i] = pixel;
+                }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("ImageEncoding: wrong run data!");
+        }
+        if (i != size) {
+            throw new IllegalArgumentException("ImageEncoding: not enough runs!");
+        }
+        return pixels;
+    }
+
+    /***
+     * Deflates differences of neighbour pixels (with ImageDeflater, the output of
+     * java.util.zip.Deflater differs between platforms)
+     * @param pixels pixels
+     * @return encoded pixels
+     */
+    private static byte[] encodeDeflate(int[] pixels) {
+        ByteBuffer filtered = ByteBuffer.allocate(pixels.length * 4);
+        int previous = 0;
+        for (int pixel : pixels) {
+            filtered.putInt(pixel - previous);
+            previous = pixel;
+        }
+        byte[] deflated = ImageDeflater.deflate(filtered.array());
+        byte[] encoded = new byte[1 + deflated.length];
+        encoded[0] = DEFLATE;
+        System.arraycopy(deflated, 0, encoded, 1, deflated.length);
+        return encoded;
+    }
+
+    /***
+     * Inflates differences of neighbour pixels
+     * @param data encoded pixels
+     * @param size number of pixels
+     * @return pixels
+     * @throws IllegalArgumentException if data is wrong
+     */
+    private static int[] decodeDeflate(byte[] data, int size) throws IllegalArgumentException {
+        byte[] filtered = new byte[size * 4];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            int length = 0;
+            while (length < filtered.length) { // never more than the image, so wrong data can not eat memory
+                int count = inflater.inflate(filtered, length, filtered.length - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length == filtered.length && ! inflater.finished() &&
+                    inflater.inflate(new byte[1]) != 0) { // the end of data is not reached yet
+                length = -1;
+            }
+            if (length != filtered.length || ! inflater.finished()) {
+                throw new IllegalArgumentException("ImageEncoding: wrong deflated data length!");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IllegalArgumentException("ImageEncoding: wrong deflated data!");
+        }
+        finally {
+            inflater.end();
+        }
+        int[] pixels = new int[size];
+        ByteBuffer.wrap(filtered).asIntBuffer().get(pixels);
+        for (int i = 1; i < size; ++ i) {
+            pixels[i] += pixels[i - 1];
+        }
+        return pixels;
+    }
+
+    /***
+     * Calculates length of run of equal pixels
+     * @param pixels pixels
+     * @param start run start
+     * @return run length
+     */
+    private static int runLength(int[] pixels, int start) {
+        int end = start + 1;
+        while (end < pixels.length && pixels[end] == pixels[start]) {
+            ++ end;
+        }
+        return end - start;
+    }
+
+    /***
+     * Calculates size of variable-length int
+     * @param value value (not negative)
+     * @return size in bytes
+     */
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            ++ size;
+        }
+        return size;
+    }
+
+    /***
+     * Writes variable-length int (7 bits per byte, the high bit means that more bytes follow)
+     * @param buffer buffer
+     * @param value value (not negative)
+     */
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /***
+     * Reads variable-length int
+     * @param buffer buffer
+     * @return value
+     * @throws IllegalArgumentException if value is too long
+     */
+    private static int getVarInt(ByteBuffer buffer) throws IllegalArgumentException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("ImageEncoding: wrong run length!");
+    }
+}
@@ -1,12 +1,24 @@
 package rslib.gui.container.image;
 
+import rslib.cs.common.BlobHolder;
+import rslib.cs.common.BlobStore;
+import rslib.util.BlobOutputStream;
+import rslib.util.DataManagement;
+import rslib.util.LegacyOutputStream;
+
 import java.io.*;
 import java.util.Arrays;
 
 /***
- * Represents an image model
+ * Represents an image model. Pixels are stored as a blob in encoded (usually compressed) form,
+ * they are decoded only when they are needed (the server never needs them to store and send images).
+ * The blob id is the hash of the encoded pixels, the encoding gives the same bytes everywhere,
+ * so images that are encoded separately (patched by the server and by every client) have the same id
  */
-public class ImageModel implements Externalizable {
+public class ImageModel implements Externalizable, BlobHolder {
+
+    /** For better parsing (the value of the old versions, older clients and files use it) */
+    public static final long serialVersionUID = -5422109726613340658L;
 
     /** Image width */
     private int width;
@@ -14,9 +26,15 @@ public class ImageModel implements Externalizable {
     /** Image height */
     private int height;
 
-    /** Image pixels */
+    /** Image pixels (null if they are not decoded yet or only the blob id is known) */
     private int[] pixels;
 
+    /** Encoded pixels (null if they are not encoded yet or only the blob id is known) */
+    private byte[] encoded;
+
+    /** Blob id of encoded pixels (null if not computed yet) */
+    private String blobId;
+
     /** Scale */
     private int scale;
 
@@ -26,6 +44,12 @@ public class ImageModel implements Externalizable {
     /** Vertical offset */
     private int vOffset;
 
+    /** Cached hash code (0 if not computed yet, the model is never changed) */
+    private int hash;
+
+    /** Cached hash code of the legacy digest formula (0 if not computed yet) */
+    private int legacyHash;
+
     /***
      * Constructor
      * @param width image width
@@ -61,10 +85,74 @@ public class ImageModel implements Externalizable {
         return height;
     }
 
-    public int[] getPixels() {
+    /***
+     * Returns image pixels (decodes them on the first call)
+     * @return pixels, null if image is not resolved
+     * @throws IllegalArgumentException if image size or encoded pixels are wrong
+     */
+    public int[] getPixels() throws IllegalArgumentException {
+        if (pixels == null && encoded != null) {
+            if (! isValidSize(width, height)) { // nothing is allocated for the size from the network
+                throw new IllegalArgumentException("ImageModel: wrong image size!");
+            }
+            pixels = ImageEncoding.decode(encoded, width * height);
+        }
         return pixels;
     }
 
+    /***
+     * Checks image size
+     * @param width image width
+     * @param height image height
+     * @return true if image is not bigger than the maximum image
+     */
+    public static boolean isValidSize(int width, int height) {
+        return width >= 0 && height >= 0 && width <= ImageContainer.IMAGE_MAXIMUM_WIDTH &&
+                height <= ImageContainer.IMAGE_MAXIMUM_HEIGHT;
+    }
+
+    @Override
+    public String getBlobId() {
+        if (blobId == null && isResolved()) {
+            blobId = DataManagement.blobId(getBlob());
+        }
+        return blobId;
+    }
+
+    @Override
+    public boolean isContent(byte[] blob) {
+        return blob != null && blob.length > 0 && DataManagement.blobId(blob).equals(getBlobId());
+    }
+
+    @Override
+    public boolean isResolved() {
+        return pixels != null || encoded != null;
+    }
+
+    @Override
+    public byte[] getBlob() {
+        if (encoded == null && pixels != null) {
+            encoded = ImageEncoding.encode(pixels);
+        }
+        return encoded;
+    }
+
+    @Override
+    public void resolve(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            throw new IllegalArgumentException("ImageModel: wrong blob!");
+        }
+        encoded = blob; // decoded on demand
+        pixels = null;
+    }
+
+    @Override
+    public void release() {
+        getBlobId();
+        pixels = null;
+        encoded = null;
+    }
+
     public int getScale() {
         return scale;
     }
@@ -82,7 +170,7 @@ public class ImageModel implements Externalizable {
         return "ContainerImage{" +
                 "width=" + width +
                 ", height=" + height +
-                ", pixels hash=" + Arrays.hashCode(pixels) +
+                ", pixels blob=" + blobId +
                 ", scale=" + scale +
                 ", horizontal offset=" + hOffset +
                 ", vertical offset=" + vOffset +
@@ -98,7 +186,7 @@ public class ImageModel implements Externalizable {
 
         if (height != that.height) return false;
         if (width != that.width) return false;
-        if (!Arrays.equals(pixels, that.pixels)) return false;
+        if (!getBlobId().equals(that.getBlobId())) return false;
         if (scale != that.scale) return false;
         if (hOffset != that.hOffset) return false;
         if (vOffset != that.vOffset) return false;
@@ -108,20 +196,83 @@ public class ImageModel implements Externalizable {
 
     @Override
     public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = width;
+        result = 31 * result + height;
+        result = 31 * result + getBlobId().hashCode();
+        result = 31 * result + scale;
+        result = 31 * result + hOffset;
+        result = 31 * result + vOffset;
+        hash = result;
+        return result;
+    }
+
+    /***
+     * Calculates hash code of the legacy digest formula (it hashes the pixels,
+     * they are decoded for it and are not kept)
+     * @param blobStore store with the blob of released pixels (can be null if pixels are kept)
+     * @return hash code
+     * @throws IOException if pixels are not available or can not be decoded
+     */
+    public int legacyHashCode(BlobStore blobStore) throws IOException {
+        if (legacyHash != 0) {
+            return legacyHash;
+        }
         int result = width;
         result = 31 * result + height;
-        result = 31 * result + (pixels != null ? Arrays.hashCode(pixels) : 0);
+        result = 31 * result + Arrays.hashCode(loadPixels(blobStore));
         result = 31 * result + scale;
         result = 31 * result + hOffset;
         result = 31 * result + vOffset;
+        legacyHash = result;
         return result;
     }
 
+    /***
+     * Returns image pixels without keeping the decoded ones
+     * @param blobStore store with the blob of released pixels (can be null if pixels are kept)
+     * @return pixels
+     * @throws IOException if pixels are not available or can not be decoded
+     */
+    int[] loadPixels(BlobStore blobStore) throws IOException {
+        if (pixels != null) {
+            return pixels;
+        }
+        byte[] blob = encoded;
+        if (blob == null && blobStore != null && getBlobId() != null) {
+            blob = blobStore.get(getBlobId());
+        }
+        if (blob == null) {
+            throw new IOException("ImageModel: unknown blob " + getBlobId() + "!");
+        }
+        if (! isValidSize(width, height)) {
+            throw new IOException("ImageModel: wrong image size!");
+        }
+        try {
+            return ImageEncoding.decode(blob, width * height);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("ImageModel: wrong blob " + getBlobId() + "!", e);
+        }
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeInt(width);
         out.writeInt(height);
-        out.writeObject(pixels);
+        if (out instanceof LegacyOutputStream) { // raw pixels
+            out.writeObject(loadPixels(((LegacyOutputStream) out).getBlobStore()));
+        }
+        else if (! isResolved() || (out instanceof BlobOutputStream &&
+                ((BlobOutputStream) out).isReference(getBlobId()))) { // only the reference
+            out.writeObject(null);
+            out.writeUTF(getBlobId());
+        }
+        else {
+            out.writeObject(getBlob());
+        }
         out.writeInt(scale);
         out.writeInt(hOffset);
         out.writeInt(vOffset);
@@ -131,7 +282,24 @@ public class ImageModel implements Externalizable {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         width = in.readInt();
         height = in.readInt();
-        pixels = (int[]) in.readObject();
+        if (! isValidSize(width, height)) {
+            throw new IOException("ImageModel: wrong image size!");
+        }
+        Object data = in.readObject();
+        pixels = null;
+        encoded = null;
+        if (data instanceof byte[]) {
+            encoded = (byte[]) data;
+        }
+        else if (data instanceof int[]) { // raw pixels of old files
+            pixels = (int[]) data;
+        }
+        else if (data != null) {
+            throw new IOException("ImageModel: wrong pixels!");
+        }
+        blobId = data == null ? in.readUTF() : null;
+        hash = 0;
+        legacyHash = 0;
         scale = in.readInt();
         hOffset = in.readInt();
         vOffset = in.readInt();
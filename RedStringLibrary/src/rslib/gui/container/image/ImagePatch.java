@@ -0,0 +1,202 @@
+package rslib.gui.container.image;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/***
+ * Represents a patch of image pixels: changed spans of the pixel array (a stroke or a few of them)
+ * Only changed pixels are held, so a pencil line is kilobytes instead of the whole image
+ */
+public class ImagePatch implements Externalizable {
+
+    /** Image width */
+    private int width;
+
+    /** Image height */
+    private int height;
+
+    /** Changed spans (start index in the pixel array and length, in pairs) */
+    private int[] spans;
+
+    /** Pixels of all spans (one by one) */
+    private int[] pixels;
+
+    /***
+     * Constructor
+     * @param width image width
+     * @param height image height
+     * @param spans changed spans (start index and length, in pairs)
+     * @param pixels pixels of all spans
+     */
+    public ImagePatch(int width, int height, int[] spans, int[] pixels) {
+        if (spans == null) {
+            throw new NullPointerException("ImagePatch: spans is null!");
+        }
+        if (pixels == null) {
+            throw new NullPointerException("ImagePatch: pixels is null!");
+        }
+        this.width = width;
+        this.height = height;
+        this.spans = spans;
+        this.pixels = pixels;
+        check();
+    }
+
+    /***
+     * Constructor for externalization
+     */
+    public ImagePatch() {
+    }
+
+    /***
+     * Checks that spans are inside the image and match the pixels
+     * @throws IllegalArgumentException if patch is wrong
+     */
+    private void check() throws IllegalArgumentException {
+        if (width <= 0 || height <= 0 || width > ImageContainer.IMAGE_MAXIMUM_WIDTH ||
+                height > ImageContainer.IMAGE_MAXIMUM_HEIGHT) {
+            throw new IllegalArgumentException("ImagePatch: wrong image size!");
+        }
+        if (spans.length % 2 != 0) {
+            throw new IllegalArgumentException("ImagePatch: wrong spans!");
+        }
+        int size = width * height;
+        long count = 0;
+        for (int i = 0; i < spans.length; i += 2) {
+            int start = spans[i];
+            int length = spans[i + 1];
+            if (start < 0 || length <= 0 || length > size - start) {
+                throw new IllegalArgumentException("ImagePatch: span is out of image!");
+            }
+            count += length;
+        }
+        if (count != pixels.length) {
+            throw new IllegalArgumentException("ImagePatch: pixels do not match spans!");
+        }
+    }
+
+    /***
+     * Creates patch that turns one image into another
+     * @param from source image (resolved)
+     * @param to target image (resolved)
+     * @return patch, null if images have different sizes (patch is impossible) or the same pixels
+     */
+    public static ImagePatch diff(ImageModel from, ImageModel to) {
+        if (from == null || to == null || from.getWidth() != to.getWidth() ||
+                from.getHeight() != to.getHeight()) {
+            return null;
+        }
+        int[] source = from.getPixels();
+        int[] target = to.getPixels();
+        if (source == null || target == null || source.length != target.length) {
+            return null;
+        }
+        int spanCount = 0;
+        int pixelCount = 0;
+        for (int i = 0; i < target.length; ++ i) {
+            if (source[i] != target[i]) {
+                if (i == 0 || source[i - 1] == target[i - 1]) {
+                    ++ spanCount;
+                }
+                ++ pixelCount;
+            }
+        }
+        if (spanCount == 0) {
+            return null;
+        }
+        int[] spans = new int[spanCount * 2];
+        int[] pixels = new int[pixelCount];
+        int span = -2;
+        int pixel = 0;
+        for (int i = 0; i < target.length; ++ i) {
+            if (source[i] != target[i]) {
+                if (i == 0 || source[i - 1] == target[i - 1]) {
+                    span += 2;
+                    spans[span] = i;
+                }
+                ++ spans[span + 1];
+                pixels[pixel ++] = target[i];
+            }
+        }
+        return new ImagePatch(from.getWidth(), from.getHeight(), spans, pixels);
+    }
+
+    /***
+     * Applies patch to image
+     * @param image image (resolved)
+     * @return new image with patched pixels (the source one is not changed)
+     * @throws IllegalArgumentException if image is not resolved or has different size
+     */
+    public ImageModel apply(ImageModel image) throws IllegalArgumentException {
+        if (image == null) {
+            throw new NullPointerException("ImagePatch: image is null!");
+        }
+        if (! image.isResolved()) {
+            throw new IllegalArgumentException("ImagePatch: image is not resolved!");
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IllegalArgumentException("ImagePatch: image has different size!");
+        }
+        int[] patched = image.getPixels().clone();
+        int pixel = 0;
+        for (int i = 0; i < spans.length; i += 2) {
+            System.arraycopy(pixels, pixel, patched, spans[i], spans[i + 1]);
+            pixel += spans[i + 1];
+        }
+        return new ImageModel(width, height, patched, image.getScale(), image.gethOffset(),
+                image.getvOffset());
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /***
+     * Returns number of changed pixels
+     * @return number of changed pixels
+     */
+    public int getSize() {
+        return pixels.length;
+    }
+
+    @Override
+    public String toString() {
+        return "ImagePatch{" +
+                "width=" + width +
+                ", height=" + height +
+                ", spans=" + spans.length / 2 +
+                ", pixels=" + pixels.length +
+                '}';
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeObject(spans);
+        out.writeObject(pixels);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        width = in.readInt();
+        height = in.readInt();
+        spans = (int[]) in.readObject();
+        pixels = (int[]) in.readObject();
+        if (spans == null || pixels == null) {
+            throw new IOException("ImagePatch: wrong data!");
+        }
+        try {
+            check(); // the patch comes from the network
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
@@ -4,6 +4,7 @@ import rslib.cs.common.Status;
 import rslib.gui.container.ExternalizableContainer;
 import rslib.gui.style.ColorModel;
 import rslib.gui.style.FontModel;
+import rslib.util.LegacyOutputStream;
 
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -20,6 +21,12 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
     /** Container text */
     protected String text;
 
+    /** Text revision (not a part of the state, it is not compared) */
+    protected int revision;
+
+    /** Marker of externalized text with revision (the old format starts with text length) */
+    private static final int REVISION_FORMAT = -1;
+
     /***
      * Constructor
      * @param owner component owner username
@@ -51,6 +58,42 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
                                        FontModel font, boolean opaque, ColorModel foreground, ColorModel background,
                                        int layer, ContainerType type, boolean blocked, String blockOwner,
                                        String text) {
+        this(owner, status, left, top, width, height, minimumWidth, minimumHeight, maximumWidth, maximumHeight,
+                name, id, font, opaque, foreground, background, layer, type, blocked, blockOwner, text, 0);
+    }
+
+    /***
+     * Constructor
+     * @param owner component owner username
+     * @param status component status
+     * @param left component left
+     * @param top component top
+     * @param width component width
+     * @param height component height
+     * @param minimumWidth component minimum width
+     * @param minimumHeight component minimum height
+     * @param maximumWidth component maximum width
+     * @param maximumHeight component maximum height
+     * @param name component name
+     * @param id component id
+     * @param font component font
+     * @param opaque component opaque
+     * @param foreground component foreground color
+     * @param background component background color
+     * @param layer component layer
+     * @param type container type
+     * @param blocked component blocked status
+     * @param blockOwner block owner
+     * @param text container text
+     * @param revision text revision
+     */
+    public ExternalizableTextContainer(String owner, Status status, int left, int top,
+                                       int width, int height,
+                                       int minimumWidth, int minimumHeight, int maximumWidth, int maximumHeight,
+                                       String name, int id,
+                                       FontModel font, boolean opaque, ColorModel foreground, ColorModel background,
+                                       int layer, ContainerType type, boolean blocked, String blockOwner,
+                                       String text, int revision) {
         super(owner, status, left, top, width, height,
                 minimumWidth, minimumHeight,  maximumWidth, maximumHeight, name, id, font, opaque,
                 foreground, background, layer, type, blocked, blockOwner);
@@ -59,6 +102,7 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
                     + "text is null!");
         }
         this.text = text;
+        this.revision = revision;
     }
 
     /***
@@ -70,21 +114,29 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
     @Override
     public void setContent(ExternalizableContainer serializableContainer) {
         text = ((ExternalizableTextContainer) serializableContainer).getText();
+        ++ revision;
+        changed();
     }
 
     @Override
     public void clearContainer() {
         text = "";
+        ++ revision;
+        changed();
     }
 
     @Override
     public void appendText(String text) {
         this.text += text;
+        ++ revision;
+        changed();
     }
 
     @Override
     public void setText(String text) {
         this.text = text;
+        ++ revision;
+        changed();
     }
 
     @Override
@@ -92,11 +144,25 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
         return text;
     }
 
+    @Override
+    public int getTextRevision() {
+        return revision;
+    }
+
     @Override
     public ExternalizableContainer toExternalizable() {
         return this;
     }
 
+    @Override
+    public ExternalizableContainer copy() {
+        return new ExternalizableTextContainer(getComponentOwner(), getComponentStatus(), getComponentLeft(), getComponentTop(),
+                getComponentWidth(), getComponentHeight(), getComponentMinimumWidth(), getComponentMinimumHeight(),
+                getComponentMaximumWidth(), getComponentMaximumHeight(), getComponentName(), getComponentId(),
+                getComponentFont(), isComponentOpaque(), getComponentForeground(), getComponentBackground(),
+                layer, type, isBlocked(), getBlockOwner(), text, revision);
+    }
+
     @Override
     public String toString() {
         return "TextContainer{" +
@@ -131,20 +197,28 @@ public class ExternalizableTextContainer extends ExternalizableContainer impleme
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
-        if (text == null || text.length() == 0) {
-            out.writeInt(0);
-        }
-        else {
-            out.writeInt(text.length());
-            out.writeUTF(text);
+        if (out instanceof LegacyOutputStream) { // old format without revision
+            out.writeInt(text != null ? text.length() : 0);
+            if (text != null && text.length() != 0) {
+                out.writeUTF(text);
+            }
+            return;
         }
+        out.writeInt(REVISION_FORMAT);
+        out.writeInt(revision);
+        out.writeUTF(text != null ? text : "");
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         super.readExternal(in);
-        if (in.readInt() != 0) {
+        int length = in.readInt();
+        if (length == REVISION_FORMAT) {
+            revision = in.readInt();
             text = in.readUTF();
         }
+        else { // old format
+            text = length != 0 ? in.readUTF() : "";
+        }
     }
 }
@@ -27,4 +27,10 @@ public interface TextContainer extends BoardContainer {
      * @return container text
      */
     public String getText();
+
+    /***
+     * Gets text revision (number of text changes, it orders concurrent edits)
+     * @return text revision
+     */
+    public int getTextRevision();
 }
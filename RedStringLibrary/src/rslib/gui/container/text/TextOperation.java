@@ -0,0 +1,472 @@
+package rslib.gui.container.text;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * Represents an operation on text: components go through the whole text and retain, insert or delete symbols
+ * Components: positive Integer retains symbols, negative Integer deletes symbols, String inserts symbols
+ * Operations can be composed and transformed against concurrent ones (operational transformation)
+ */
+public class TextOperation implements Externalizable {
+
+    /** Component types (for externalization) */
+    private static final byte RETAIN = 0;
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+
+    /** Components */
+    private List<Object> components;
+
+    /** Length of text the operation is applied to */
+    private int baseLength;
+
+    /** Length of text after the operation */
+    private int targetLength;
+
+    /***
+     * Constructor (empty operation, components are added by retain, insert and delete)
+     */
+    public TextOperation() {
+        components = new ArrayList<>();
+    }
+
+    /***
+     * Creates operation that inserts text
+     * @param length text length
+     * @param position insert position
+     * @param text inserted text
+     * @return operation
+     */
+    public static TextOperation insert(int length, int position, String text) {
+        return new TextOperation().retain(position).insert(text).retain(length - position);
+    }
+
+    /***
+     * Creates operation that deletes text
+     * @param length text length
+     * @param position delete position
+     * @param count number of deleted symbols
+     * @return operation
+     */
+    public static TextOperation delete(int length, int position, int count) {
+        return new TextOperation().retain(position).delete(count).retain(length - position - count);
+    }
+
+    /***
+     * Retains symbols
+     * @param count number of symbols
+     * @return this operation
+     */
+    public TextOperation retain(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("TextOperation: count is negative!");
+        }
+        if (count == 0) {
+            return this;
+        }
+        baseLength += count;
+        targetLength += count;
+        Object last = last(0);
+        if (isRetain(last)) {
+            components.set(components.size() - 1, (Integer) last + count);
+        }
+        else {
+            components.add(count);
+        }
+        return this;
+    }
+
+    /***
+     * Inserts symbols
+     * @param text inserted symbols
+     * @return this operation
+     */
+    public TextOperation insert(String text) {
+        if (text == null) {
+            throw new NullPointerException("TextOperation: text is null!");
+        }
+        if (text.isEmpty()) {
+            return this;
+        }
+        targetLength += text.length();
+        Object last = last(0);
+        if (last instanceof String) {
+            components.set(components.size() - 1, last + text);
+        }
+        else if (isDelete(last)) {
+            // inserts always go before deletes, so equal operations have equal components
+            Object previous = last(1);
+            if (previous instanceof String) {
+                components.set(components.size() - 2, previous + text);
+            }
+            else {
+                components.add(components.size() - 1, text);
+            }
+        }
+        else {
+            components.add(text);
+        }
+        return this;
+    }
+
+    /***
+     * Deletes symbols
+     * @param count number of symbols
+     * @return this operation
+     */
+    public TextOperation delete(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("TextOperation: count is negative!");
+        }
+        if (count == 0) {
+            return this;
+        }
+        baseLength += count;
+        Object last = last(0);
+        if (isDelete(last)) {
+            components.set(components.size() - 1, (Integer) last - count);
+        }
+        else {
+            components.add(- count);
+        }
+        return this;
+    }
+
+    /***
+     * Returns component from the end
+     * @param index index from the end (0 for the last one)
+     * @return component, null if there is no such component
+     */
+    private Object last(int index) {
+        int i = components.size() - 1 - index;
+        return i >= 0 ? components.get(i) : null;
+    }
+
+    /***
+     * Applies operation to text
+     * @param text text
+     * @return new text
+     * @throws IllegalArgumentException if operation does not match the text
+     */
+    public String apply(String text) throws IllegalArgumentException {
+        if (text.length() != baseLength) {
+            throw new IllegalArgumentException("TextOperation: text length does not match!");
+        }
+        StringBuilder result = new StringBuilder(targetLength);
+        int position = 0;
+        for (Object component : components) {
+            if (component instanceof String) {
+                result.append((String) component);
+            }
+            else {
+                int count = (Integer) component;
+                if (count > 0) {
+                    result.append(text, position, position + count);
+                    position += count;
+                }
+                else {
+                    position -= count;
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /***
+     * Composes this operation with the next one
+     * @param next operation applied after this one
+     * @return operation that has the same effect as both
+     * @throws IllegalArgumentException if operations do not match
+     */
+    public TextOperation compose(TextOperation next) throws IllegalArgumentException {
+        if (targetLength != next.baseLength) {
+            throw new IllegalArgumentException("TextOperation: operations can not be composed!");
+        }
+        TextOperation result = new TextOperation();
+        int i1 = 0;
+        int i2 = 0;
+        Object op1 = get(components, i1 ++);
+        Object op2 = get(next.components, i2 ++);
+        while (op1 != null || op2 != null) {
+            if (isDelete(op1)) {
+                result.delete(- (Integer) op1);
+                op1 = get(components, i1 ++);
+                continue;
+            }
+            if (op2 instanceof String) {
+                result.insert((String) op2);
+                op2 = get(next.components, i2 ++);
+                continue;
+            }
+            if (op1 == null || op2 == null) {
+                throw new IllegalArgumentException("TextOperation: operations can not be composed!");
+            }
+            if (isRetain(op1) && isRetain(op2)) {
+                int count1 = (Integer) op1;
+                int count2 = (Integer) op2;
+                result.retain(Math.min(count1, count2));
+                if (count1 > count2) {
+                    op1 = count1 - count2;
+                    op2 = get(next.components, i2 ++);
+                }
+                else if (count1 == count2) {
+                    op1 = get(components, i1 ++);
+                    op2 = get(next.components, i2 ++);
+                }
+                else {
+                    op2 = count2 - count1;
+                    op1 = get(components, i1 ++);
+                }
+            }
+            else if (op1 instanceof String && isDelete(op2)) { // inserted and then deleted
+                String text = (String) op1;
+                int count = - (Integer) op2;
+                if (text.length() > count) {
+                    op1 = text.substring(count);
+                    op2 = get(next.components, i2 ++);
+                }
+                else if (text.length() == count) {
+                    op1 = get(components, i1 ++);
+                    op2 = get(next.components, i2 ++);
+                }
+                else {
+                    op2 = - (count - text.length());
+                    op1 = get(components, i1 ++);
+                }
+            }
+            else if (op1 instanceof String) { // inserted and retained
+                String text = (String) op1;
+                int count = (Integer) op2;
+                if (text.length() > count) {
+                    result.insert(text.substring(0, count));
+                    op1 = text.substring(count);
+                    op2 = get(next.components, i2 ++);
+                }
+                else if (text.length() == count) {
+                    result.insert(text);
+                    op1 = get(components, i1 ++);
+                    op2 = get(next.components, i2 ++);
+                }
+                else {
+                    result.insert(text);
+                    op2 = count - text.length();
+                    op1 = get(components, i1 ++);
+                }
+            }
+            else { // retained and deleted
+                int count1 = (Integer) op1;
+                int count2 = - (Integer) op2;
+                result.delete(Math.min(count1, count2));
+                if (count1 > count2) {
+                    op1 = count1 - count2;
+                    op2 = get(next.components, i2 ++);
+                }
+                else if (count1 == count2) {
+                    op1 = get(components, i1 ++);
+                    op2 = get(next.components, i2 ++);
+                }
+                else {
+                    op2 = - (count2 - count1);
+                    op1 = get(components, i1 ++);
+                }
+            }
+        }
+        return result;
+    }
+
+    /***
+     * Transforms two concurrent operations applied to the same text
+     * If both insert at the same position, the first operation inserts first
+     * @param first first operation
+     * @param second second operation
+     * @return transformed operations: the first one to apply after the second one
+     * and the second one to apply after the first one (both give the same text)
+     * @throws IllegalArgumentException if operations are not concurrent
+     */
+    public static TextOperation[] transform(TextOperation first, TextOperation second)
+            throws IllegalArgumentException {
+        if (first.baseLength != second.baseLength) {
+            throw new IllegalArgumentException("TextOperation: operations are not concurrent!");
+        }
+        TextOperation firstPrime = new TextOperation();
+        TextOperation secondPrime = new TextOperation();
+        int i1 = 0;
+        int i2 = 0;
+        Object op1 = get(first.components, i1 ++);
+        Object op2 = get(second.components, i2 ++);
+        while (op1 != null || op2 != null) {
+            if (op1 instanceof String) {
+                firstPrime.insert((String) op1);
+                secondPrime.retain(((String) op1).length());
+                op1 = get(first.components, i1 ++);
+                continue;
+            }
+            if (op2 instanceof String) {
+                firstPrime.retain(((String) op2).length());
+                secondPrime.insert((String) op2);
+                op2 = get(second.components, i2 ++);
+                continue;
+            }
+            if (op1 == null || op2 == null) {
+                throw new IllegalArgumentException("TextOperation: operations are not concurrent!");
+            }
+            int count1 = Math.abs((Integer) op1);
+            int count2 = Math.abs((Integer) op2);
+            int count = Math.min(count1, count2);
+            if (isRetain(op1) && isRetain(op2)) {
+                firstPrime.retain(count);
+                secondPrime.retain(count);
+            }
+            else if (isDelete(op1) && isRetain(op2)) {
+                firstPrime.delete(count);
+            }
+            else if (isRetain(op1) && isDelete(op2)) {
+                secondPrime.delete(count);
+            }
+            // both deleted the same symbols: nothing to do
+            if (count1 > count) {
+                op1 = isRetain(op1) ? count1 - count : - (count1 - count);
+            }
+            else {
+                op1 = get(first.components, i1 ++);
+            }
+            if (count2 > count) {
+                op2 = isRetain(op2) ? count2 - count : - (count2 - count);
+            }
+            else {
+                op2 = get(second.components, i2 ++);
+            }
+        }
+        return new TextOperation[] { firstPrime, secondPrime };
+    }
+
+    /***
+     * Returns component by index
+     * @param components components
+     * @param index index
+     * @return component, null if index is out of bounds
+     */
+    private static Object get(List<Object> components, int index) {
+        return index < components.size() ? components.get(index) : null;
+    }
+
+    /***
+     * Checks if component retains symbols
+     * @param component component (may be null)
+     * @return true if component retains symbols
+     */
+    private static boolean isRetain(Object component) {
+        return component instanceof Integer && (Integer) component > 0;
+    }
+
+    /***
+     * Checks if component deletes symbols
+     * @param component component (may be null)
+     * @return true if component deletes symbols
+     */
+    private static boolean isDelete(Object component) {
+        return component instanceof Integer && (Integer) component < 0;
+    }
+
+    /***
+     * Defines if operation changes nothing
+     * @return true if operation only retains symbols
+     */
+    public boolean isNoop() {
+        return components.isEmpty() || (components.size() == 1 && isRetain(components.get(0)));
+    }
+
+    /***
+     * Returns components (positive Integer retains, negative Integer deletes, String inserts)
+     * @return unmodifiable list of components
+     */
+    public List<Object> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    public int getBaseLength() {
+        return baseLength;
+    }
+
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    @Override
+    public String toString() {
+        return "TextOperation{" +
+                "components=" + components +
+                ", baseLength=" + baseLength +
+                ", targetLength=" + targetLength +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TextOperation)) return false;
+
+        TextOperation that = (TextOperation) o;
+
+        return components.equals(that.components);
+    }
+
+    @Override
+    public int hashCode() {
+        return components.hashCode();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(components.size());
+        for (Object component : components) {
+            if (component instanceof String) {
+                out.writeByte(INSERT);
+                out.writeUTF((String) component);
+            }
+            else {
+                int count = (Integer) component;
+                out.writeByte(count > 0 ? RETAIN : DELETE);
+                out.writeInt(Math.abs(count));
+            }
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("TextOperation: wrong size!");
+        }
+        components = new ArrayList<>();
+        baseLength = 0;
+        targetLength = 0;
+        for (int i = 0; i < size; ++ i) {
+            byte type = in.readByte();
+            try {
+                switch (type) {
+                    case RETAIN:
+                        retain(in.readInt());
+                        break;
+                    case INSERT:
+                        insert(in.readUTF());
+                        break;
+                    case DELETE:
+                        delete(in.readInt());
+                        break;
+                    default:
+                        throw new IOException("TextOperation: wrong component!");
+                }
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package rslib.gui.container.text;
+
+/***
+ * Synchronizes text of one container with the server while users edit it at the same time
+ * Local operations are applied at once, only one of them waits for the server at a time (the next ones
+ * are composed in the buffer), server operations are transformed against the waiting ones
+ * Methods must be called from one thread
+ */
+public abstract class TextSynchronizer {
+
+    /** Server revision of the text the local operations are based on */
+    private int revision;
+
+    /** Operation sent to the server and not acknowledged yet (null if there is no such operation) */
+    private TextOperation outstanding;
+
+    /** Local operations waiting for the outstanding one (null if there are no such operations) */
+    private TextOperation buffer;
+
+    /***
+     * Constructor
+     * @param revision server revision of the text
+     */
+    public TextSynchronizer(int revision) {
+        this.revision = revision;
+    }
+
+    /***
+     * Handles local operation (already applied to the local text)
+     * @param operation operation
+     */
+    public void applyLocal(TextOperation operation) {
+        if (outstanding == null) {
+            outstanding = operation;
+            send(revision, operation);
+        }
+        else if (buffer == null) {
+            buffer = operation;
+        }
+        else {
+            buffer = buffer.compose(operation);
+        }
+    }
+
+    /***
+     * Handles operation of another user (applies it to the local text after transforming)
+     * @param operation operation from the server
+     */
+    public void applyServer(TextOperation operation) {
+        if (outstanding != null) {
+            TextOperation[] pair = TextOperation.transform(outstanding, operation);
+            outstanding = pair[0];
+            operation = pair[1];
+        }
+        if (buffer != null) {
+            TextOperation[] pair = TextOperation.transform(buffer, operation);
+            buffer = pair[0];
+            operation = pair[1];
+        }
+        ++ revision;
+        apply(operation);
+    }
+
+    /***
+     * Handles acknowledgement of the outstanding operation, sends the buffered ones
+     */
+    public void acknowledge() {
+        ++ revision;
+        outstanding = buffer;
+        buffer = null;
+        if (outstanding != null) {
+            send(revision, outstanding);
+        }
+    }
+
+    /***
+     * Drops waiting operations (the text was replaced)
+     * @param revision new server revision of the text
+     */
+    public void reset(int revision) {
+        this.revision = revision;
+        outstanding = null;
+        buffer = null;
+    }
+
+    /***
+     * Defines if local operations wait for the server
+     * @return true if there are local operations that are not acknowledged
+     */
+    public boolean isWaiting() {
+        return outstanding != null;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    /***
+     * Sends operation to the server
+     * @param revision server revision the operation is based on
+     * @param operation operation
+     */
+    protected abstract void send(int revision, TextOperation operation);
+
+    /***
+     * Applies operation of another user to the local text
+     * @param operation operation
+     */
+    protected abstract void apply(TextOperation operation);
+}
@@ -0,0 +1,19 @@
+package rslib.listeners;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Represents a listener that receives records of a journal while it is replayed
+ */
+public interface JournalListener {
+
+    /***
+     * Applies journal record
+     * @param type record type
+     * @param payload record data
+     * @throws IOException if record data is wrong
+     * @throws ClassNotFoundException if record data is wrong
+     */
+    public void hearRecord(byte type, ByteBuffer payload) throws IOException, ClassNotFoundException;
+}
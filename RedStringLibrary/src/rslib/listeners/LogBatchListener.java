@@ -0,0 +1,15 @@
+package rslib.listeners;
+
+import java.util.List;
+
+/***
+ * Represents a listener that receives log messages in batches (called by the log writer thread)
+ */
+public interface LogBatchListener {
+
+    /***
+     * Does log actions
+     * @param logs log messages with time
+     */
+    public void hearLogs(List<String> logs);
+}
@@ -0,0 +1,14 @@
+package rslib.listeners;
+
+/***
+ * Represents a listener that receives progress of a long operation (called by the working thread)
+ */
+public interface ProgressListener {
+
+    /***
+     * Hears progress
+     * @param done done amount of work (bytes)
+     * @param total total amount of work (bytes)
+     */
+    public void hearProgress(long done, long total);
+}
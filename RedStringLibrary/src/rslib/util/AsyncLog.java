@@ -0,0 +1,359 @@
+package rslib.util;
+
+import rslib.cs.common.ConnectConfiguration;
+import rslib.listeners.LogBatchListener;
+
+import java.io.*;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Represents a log that does not block the logging threads: messages are put to a lock-free ring
+ * and one writer thread formats them, appends them to the file (buffered, with rotation)
+ * and passes them to the listeners in batches. If the ring is full, new messages are dropped
+ */
+public class AsyncLog implements Runnable {
+
+    /** Log name (name of the writer thread) */
+    private final String name;
+
+    /** Log file (null if messages are not written to file) */
+    private final File file;
+
+    /** Listeners of written messages */
+    private final List<LogBatchListener> listeners;
+
+    /** Ring of messages (null slot means that the message is not put yet or already written,
+     * entry without message means that the file must be cleared) */
+    private final AtomicReferenceArray<Entry> entries;
+
+    /** Mask of ring index */
+    private final int mask;
+
+    /** Sequence number of the next message to put */
+    private final AtomicLong tail;
+
+    /** Sequence number of the next message to write (changed only by the writer thread) */
+    private volatile long head;
+
+    /** Number of dropped messages */
+    private final AtomicLong dropped;
+
+    /** If log is working */
+    private volatile boolean working;
+
+    /** Writer thread */
+    private Thread thread;
+
+    /** File writer (used only by the writer thread, null if file is not opened) */
+    private Writer writer;
+
+    /** Size of the file (used only by the writer thread) */
+    private long fileSize;
+
+    /** Date format (used only by the writer thread) */
+    private final DateFormat dateFormat;
+
+    /** Second the last formatted date belongs to */
+    private long dateSecond;
+
+    /** Last formatted date */
+    private String date;
+
+    /***
+     * Constructor
+     * @param name log name
+     * @param file log file (null if messages are not written to file)
+     * @param listener listener of written messages (null if there is no listener)
+     */
+    public AsyncLog(String name, File file, LogBatchListener listener) {
+        if (name == null) {
+            throw new NullPointerException("AsyncLog: name is null!");
+        }
+        this.name = name;
+        this.file = file;
+        listeners = new CopyOnWriteArrayList<>(); // concurrency
+        if (listener != null) {
+            listeners.add(listener);
+        }
+        int capacity = Integer.highestOneBit(ConnectConfiguration.LOG_QUEUE_CAPACITY - 1) << 1;
+        entries = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        tail = new AtomicLong();
+        dropped = new AtomicLong();
+        dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+        dateSecond = -1;
+    }
+
+    /***
+     * Launches writer thread (if it is not working yet)
+     */
+    public synchronized void start() {
+        if (working) {
+            return;
+        }
+        working = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /***
+     * Puts message to the log (does not wait for writing, may be called by any thread)
+     * @param message log message
+     * @return false if message was dropped (the log is full)
+     */
+    public boolean log(String message) {
+        if (message == null) {
+            throw new NullPointerException("AsyncLog: message is null!");
+        }
+        if (put(new Entry(System.currentTimeMillis(), message))) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /***
+     * Clears the log file (messages put before are cleared too)
+     */
+    public void clear() {
+        Entry entry = new Entry(System.currentTimeMillis(), null);
+        while (! put(entry) && working) {
+            Thread.yield(); // the log is full, the writer will free space soon
+        }
+    }
+
+    /***
+     * Puts entry to the ring
+     * @param entry entry
+     * @return false if the ring is full
+     */
+    private boolean put(Entry entry) {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head > mask) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                entries.lazySet((int) sequence & mask, entry);
+                return true;
+            }
+        }
+    }
+
+    /***
+     * Stops writer thread after writing the put messages
+     */
+    public void shutdown() {
+        Thread writerThread;
+        synchronized (this) {
+            if (! working) {
+                return;
+            }
+            working = false;
+            writerThread = thread;
+        }
+        LockSupport.unpark(writerThread);
+        if (writerThread != Thread.currentThread()) {
+            try {
+                writerThread.join(ConnectConfiguration.LOG_FLUSH_INTERVAL * 10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /***
+     * Adds listener of written messages (called after the messages are written to the file)
+     * @param listener listener
+     */
+    public void addListener(LogBatchListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("AsyncLog: listener is null!");
+        }
+        listeners.add(listener);
+    }
+
+    /***
+     * Removes listener of written messages
+     * @param listener listener
+     */
+    public void removeListener(LogBatchListener listener) {
+        listeners.remove(listener);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (working) {
+                if (write() == 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ConnectConfiguration.LOG_FLUSH_INTERVAL));
+                }
+            }
+            write();
+        }
+        finally {
+            closeFile();
+        }
+    }
+
+    /***
+     * Writes put messages (not more than the ring holds, so batches stay small under load)
+     * @return number of written messages
+     */
+    private int write() {
+        List<String> lines = new ArrayList<>();
+        int cleared = -1; // number of messages before the last clear marker
+        int count = 0;
+        long sequence = head;
+        while (count <= mask) {
+            int index = (int) sequence & mask;
+            Entry entry = entries.get(index);
+            if (entry == null) { // empty or the message is not put yet
+                break;
+            }
+            entries.lazySet(index, null);
+            head = ++ sequence;
+            ++ count;
+            if (entry.message != null) {
+                lines.add(format(entry));
+            }
+            else {
+                cleared = lines.size();
+            }
+        }
+        if (cleared >= 0 && file != null) {
+            closeFile();
+            if (file.exists() && ! file.delete()) {
+                System.out.println("Problems deleting log file!");
+            }
+        }
+        if (lines.isEmpty()) {
+            return count;
+        }
+        if (file != null) {
+            writeFile(lines.subList(Math.max(cleared, 0), lines.size()));
+        }
+        for (LogBatchListener listener : listeners) {
+            try {
+                listener.hearLogs(lines);
+            }
+            catch (RuntimeException e) {
+                System.out.println("Error when passing logs to listener : " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /***
+     * Formats message with its time (date is formatted once a second)
+     * @param entry message
+     * @return formatted message
+     */
+    private String format(Entry entry) {
+        long second = entry.time / 1000;
+        if (second != dateSecond) {
+            dateSecond = second;
+            date = dateFormat.format(new Date(entry.time));
+        }
+        return date + ": " + entry.message;
+    }
+
+    /***
+     * Appends messages to the file, rotates it if it is too big
+     * @param lines formatted messages
+     */
+    private void writeFile(List<String> lines) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new FileWriter(file, true));
+                fileSize = file.length();
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+                fileSize += line.length() + 1;
+            }
+            writer.flush();
+            if (fileSize >= ConnectConfiguration.LOG_FILE_SIZE) {
+                rotate();
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Error when writing log to file : " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    /***
+     * Renames the file and the old rotated files (name.1 is the newest), the oldest one is deleted
+     */
+    private void rotate() {
+        closeFile();
+        File oldest = new File(file.getPath() + "." + ConnectConfiguration.LOG_FILE_COUNT);
+        if (oldest.exists() && ! oldest.delete()) {
+            System.out.println("Problems deleting old log file!");
+        }
+        for (int i = ConnectConfiguration.LOG_FILE_COUNT - 1; i > 0; -- i) {
+            File rotated = new File(file.getPath() + "." + i);
+            if (rotated.exists() && ! rotated.renameTo(new File(file.getPath() + "." + (i + 1)))) {
+                System.out.println("Problems rotating log file!");
+            }
+        }
+        if (! file.renameTo(new File(file.getPath() + ".1"))) {
+            System.out.println("Problems rotating log file!");
+        }
+    }
+
+    /***
+     * Closes the file (it is opened again by the next write)
+     */
+    private void closeFile() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            System.out.println("Error when closing log file : " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    /***
+     * Represents a message with its time
+     */
+    private static class Entry {
+
+        /** Time the message was put */
+        private final long time;
+
+        /** Message */
+        private final String message;
+
+        /***
+         * Constructor
+         * @param time time the message was put
+         * @param message message
+         */
+        private Entry(long time, String message) {
+            this.time = time;
+            this.message = message;
+        }
+    }
+}
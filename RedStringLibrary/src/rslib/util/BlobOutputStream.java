@@ -0,0 +1,38 @@
+package rslib.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Set;
+
+/***
+ * Represents an object stream that writes known blobs as references (only their ids)
+ */
+public class BlobOutputStream extends ObjectOutputStream {
+
+    /** Ids of blobs that are known to the receiver */
+    private final Set<String> references;
+
+    /***
+     * Constructor
+     * @param out underlying stream
+     * @param references ids of blobs that are known to the receiver
+     * @throws IOException if something went wrong
+     */
+    public BlobOutputStream(OutputStream out, Set<String> references) throws IOException {
+        super(out);
+        if (references == null) {
+            throw new NullPointerException("BlobOutputStream: references is null!");
+        }
+        this.references = references;
+    }
+
+    /***
+     * Defines if blob is written as a reference
+     * @param id blob id
+     * @return true if only the blob id is written, false if the content is written
+     */
+    public boolean isReference(String id) {
+        return references.contains(id);
+    }
+}
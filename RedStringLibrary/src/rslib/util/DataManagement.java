@@ -1,11 +1,28 @@
 package rslib.util;
 
+import rslib.cs.common.BlobHolder;
+import rslib.cs.common.BlobStore;
 import rslib.cs.protocol.RedStringInfo;
+import rslib.cs.protocol.codec.WireCodec;
+import rslib.cs.protocol.events.board.board.SetBoardContentEvent;
+import rslib.cs.protocol.events.board.container.AddContainerEvent;
+import rslib.cs.protocol.events.board.container.SetContainerContentEvent;
+import rslib.cs.protocol.events.board.container.file.ChangeFileEvent;
+import rslib.cs.protocol.events.board.container.image.ChangeImageEvent;
+import rslib.cs.protocol.events.setup.BoardRequest;
+import rslib.cs.protocol.events.setup.SetBoardEvent;
+import rslib.cs.protocol.events.setup.UpdateBoardEvent;
+import rslib.gui.container.ExternalizableContainer;
+import rslib.gui.container.file.ExternalizableFileContainer;
+import rslib.gui.container.image.ExternalizableImageContainer;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /***
  * Represents some methods connected to the data management
@@ -47,18 +64,216 @@ public class DataManagement {
     }
 
     /***
-     * Inflates data
+     * Serializes data, known blobs are written as references
+     * @param serializable data
+     * @param references ids of blobs that are known to the receiver
+     * @return serialized data
+     * @throws java.io.IOException if something went wrong
+     */
+    public static byte[] serialize(RedStringInfo serializable, Set<String> references) throws IOException {
+        ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new BlobOutputStream(arrayOutputStream, references);
+        objectOutputStream.writeObject(serializable);
+        objectOutputStream.close();
+        return arrayOutputStream.toByteArray();
+    }
+
+    /***
+     * Serializes data in the layouts of older protocol versions
+     * @param serializable data
+     * @param blobStore store with the blobs of released contents
+     * @return serialized data
+     * @throws java.io.IOException if something went wrong (or a released content is not in the store)
+     */
+    public static byte[] serializeLegacy(RedStringInfo serializable, BlobStore blobStore) throws IOException {
+        ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new LegacyOutputStream(arrayOutputStream, blobStore);
+        objectOutputStream.writeObject(serializable);
+        objectOutputStream.close();
+        return arrayOutputStream.toByteArray();
+    }
+
+    /***
+     * Calculates blob id (SHA-256 of the content in hex)
+     * @param blob blob content
+     * @return blob id
+     */
+    public static String blobId(byte[] blob) {
+        MessageDigest md = sha256();
+        return toHex(md.digest(blob));
+    }
+
+    /***
+     * Creates SHA-256 digest
+     * @return digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every platform has SHA-256
+        }
+    }
+
+    /***
+     * Converts hash to hex
+     * @param hash hash
+     * @return hash in hex
+     */
+    private static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    /***
+     * Collects blob holders (images and files) of the event
+     * @param info event
+     * @return blob holders
+     */
+    public static List<BlobHolder> collectBlobs(RedStringInfo info) {
+        List<BlobHolder> blobs = new ArrayList<>();
+        if (info instanceof AddContainerEvent) {
+            collectBlobs(((AddContainerEvent) info).getSerializableContainer(), blobs);
+        }
+        else if (info instanceof SetContainerContentEvent) {
+            collectBlobs(((SetContainerContentEvent) info).getSerializableContainer(), blobs);
+        }
+        else if (info instanceof ChangeImageEvent) {
+            addBlob(((ChangeImageEvent) info).getImage(), blobs);
+        }
+        else if (info instanceof ChangeFileEvent) {
+            addBlob(((ChangeFileEvent) info).getFile(), blobs);
+        }
+        else if (info instanceof SetBoardContentEvent) {
+            collectBlobs(((SetBoardContentEvent) info).getSerializableContainers(), blobs);
+        }
+        else if (info instanceof SetBoardEvent) {
+            collectBlobs(((SetBoardEvent) info).getSerializableBoard().getContainers(), blobs);
+        }
+        else if (info instanceof BoardRequest) {
+            collectBlobs(((BoardRequest) info).getSerializableBoard().getContainers(), blobs);
+        }
+        else if (info instanceof UpdateBoardEvent) {
+            collectBlobs(((UpdateBoardEvent) info).getSerializableContainers(), blobs);
+        }
+        return blobs;
+    }
+
+    /***
+     * Collects blob holders (images and files) of containers
+     * @param containers containers
+     * @return blob holders
+     */
+    public static List<BlobHolder> collectBlobs(List<ExternalizableContainer> containers) {
+        List<BlobHolder> blobs = new ArrayList<>();
+        collectBlobs(containers, blobs);
+        return blobs;
+    }
+
+    /***
+     * Collects blob holders of containers
+     * @param containers containers
+     * @param blobs list to add to
+     */
+    private static void collectBlobs(List<ExternalizableContainer> containers, List<BlobHolder> blobs) {
+        for (ExternalizableContainer container : containers) {
+            collectBlobs(container, blobs);
+        }
+    }
+
+    /***
+     * Collects blob holder of container
+     * @param container container
+     * @param blobs list to add to
+     */
+    private static void collectBlobs(ExternalizableContainer container, List<BlobHolder> blobs) {
+        if (container instanceof ExternalizableImageContainer) {
+            addBlob(((ExternalizableImageContainer) container).getImage(), blobs);
+        }
+        else if (container instanceof ExternalizableFileContainer) {
+            addBlob(((ExternalizableFileContainer) container).getFile(), blobs);
+        }
+    }
+
+    /***
+     * Adds blob holder to list
+     * @param blob blob holder (may be null)
+     * @param blobs list to add to
+     */
+    private static void addBlob(BlobHolder blob, List<BlobHolder> blobs) {
+        if (blob != null) {
+            blobs.add(blob);
+        }
+    }
+
+    /***
+     * Inflates data (serialized or binary)
      * @param buffer data
      * @return inflated data data
      * @throws java.io.IOException if something went wrong
      * @throws ClassNotFoundException if data is wrong
      */
     public static Object inflate(ByteBuffer buffer) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream arrayInputStream = new ByteArrayInputStream(buffer.array());
-        ObjectInputStream objectInputStream = new ObjectInputStream(arrayInputStream);
+        if (WireCodec.isBinary(buffer)) {
+            return WireCodec.decode(buffer);
+        }
+        InputStream inputStream;
+        if (buffer.hasArray()) {
+            inputStream = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        }
+        else { // direct or read-only buffer, reading without copying
+            ByteBuffer data = buffer.duplicate();
+            data.rewind();
+            inputStream = new ByteBufferInputStream(data);
+        }
+        ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
         Object object = objectInputStream.readObject();
-        arrayInputStream.close();
+        inputStream.close();
         objectInputStream.close();
         return object;
     }
+
+    /***
+     * Represents a stream that reads buffer content
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        /** Source buffer */
+        private final ByteBuffer buffer;
+
+        /***
+         * Constructor
+         * @param buffer source buffer (its position is changed)
+         */
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (! buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -1,30 +1,83 @@
 package rslib.util;
 
+import rslib.listeners.LogBatchListener;
+
 import java.io.*;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /***
  * Represents working with files
  */
 public class FileWorking {
 
+    /** Logs of files (one writer thread for every file) */
+    private static final Map<String, AsyncLog> logs = new ConcurrentHashMap<>(); // concurrency
+
     /***
-     * Appends log message to log file
+     * Appends log message to log file (the message is written by the log thread)
      * @param filename log file name
      * @param message log message
      */
     public static void logToFile(String filename, String message) {
-        try {
-            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filename, true)));
-            DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-            Date date = new Date();
-            writer.println(dateFormat.format(date) + ": " + message);
-            writer.close();
+        getLog(filename).log(message);
+    }
+
+    /***
+     * Clears log file
+     * @param filename log file name
+     */
+    public static void clearLogFile(String filename) {
+        getLog(filename).clear();
+    }
+
+    /***
+     * Adds listener of messages written to log file
+     * @param filename log file name
+     * @param listener listener
+     */
+    public static void addLogListener(String filename, LogBatchListener listener) {
+        getLog(filename).addListener(listener);
+    }
+
+    /***
+     * Removes listener of messages written to log file
+     * @param filename log file name
+     * @param listener listener
+     */
+    public static void removeLogListener(String filename, LogBatchListener listener) {
+        getLog(filename).removeListener(listener);
+    }
+
+    /***
+     * Returns log of file, launches it if it is the first use of the file
+     * @param filename log file name
+     * @return log
+     */
+    private static AsyncLog getLog(String filename) {
+        if (filename == null) {
+            throw new NullPointerException("FileWorking: filename is null!");
+        }
+        AsyncLog log = logs.get(filename);
+        if (log != null) {
+            return log;
         }
-        catch (IOException e) {
-            System.out.println("Error when writing log to file : " + e.getMessage());
+        synchronized (logs) {
+            log = logs.get(filename);
+            if (log == null) {
+                log = new AsyncLog("log-" + filename, new File(filename), null);
+                log.start();
+                final AsyncLog shutdownLog = log;
+                // messages are written before exit
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    @Override
+                    public void run() {
+                        shutdownLog.shutdown();
+                    }
+                });
+                logs.put(filename, log);
+            }
+            return log;
         }
     }
 }
@@ -0,0 +1,32 @@
+package rslib.util;
+
+import rslib.cs.common.BlobStore;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/***
+ * Represents an object stream that writes data in the layouts of older protocol versions
+ * (raw contents instead of blobs, containers in the order old clients keep them)
+ */
+public class LegacyOutputStream extends ObjectOutputStream {
+
+    /** Store with the blobs of released contents (can be null if all contents are kept) */
+    private final BlobStore blobStore;
+
+    /***
+     * Constructor
+     * @param out underlying stream
+     * @param blobStore store with the blobs of released contents (can be null if all contents are kept)
+     * @throws IOException if something went wrong
+     */
+    public LegacyOutputStream(OutputStream out, BlobStore blobStore) throws IOException {
+        super(out);
+        this.blobStore = blobStore;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+}
@@ -0,0 +1,285 @@
+package rslib.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/***
+ * Represents an index of log file lines: every STRIDE-th line offset and time are kept,
+ * so lines are found by number or by time without reading the whole file.
+ * The index is built incrementally (only appended bytes are scanned), lines are read from the mapped file.
+ * If the file was rotated or cleared, the index is built again
+ */
+public class LogIndex {
+
+    /** Number of lines between indexed lines */
+    private static final int STRIDE = 64;
+
+    /** Size of the file part mapped at once */
+    private static final int MAP_SIZE = 64 * 1024 * 1024;
+
+    /** Log file */
+    private final File file;
+
+    /** Charset of the log file */
+    private final Charset charset;
+
+    /** Offsets of indexed lines (line STRIDE * i starts at offsets[i]) */
+    private long[] offsets;
+
+    /** Times of indexed lines (time of the previous indexed line if the line has no time) */
+    private long[] times;
+
+    /** Number of ended lines (the last line may be not ended yet, it is not counted) */
+    private long lineCount;
+
+    /** Number of indexed bytes */
+    private long indexedLength;
+
+    /** If the last indexed byte ends a line */
+    private boolean lineEnded;
+
+    /** File key (identifies the file, so rotation is noticed) */
+    private Object fileKey;
+
+    /** Date format of log lines */
+    private final DateFormat dateFormat;
+
+    /** Length of date in log lines */
+    private static final int DATE_LENGTH = "dd/MM/yyyy HH:mm:ss".length();
+
+    /***
+     * Constructor
+     * @param file log file
+     */
+    public LogIndex(File file) {
+        if (file == null) {
+            throw new NullPointerException("LogIndex: file is null!");
+        }
+        this.file = file;
+        charset = Charset.defaultCharset(); // log files are written by FileWriter
+        dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+        reset(null);
+    }
+
+    /***
+     * Resets the index
+     * @param key new file key
+     */
+    private void reset(Object key) {
+        offsets = new long[16];
+        times = new long[16];
+        lineCount = 0;
+        indexedLength = 0;
+        lineEnded = true;
+        fileKey = key;
+    }
+
+    /***
+     * Indexes bytes appended to the file
+     * @return number of ended lines
+     * @throws IOException if something went wrong
+     */
+    public synchronized long refresh() throws IOException {
+        if (! file.exists()) {
+            reset(null);
+            return 0;
+        }
+        Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < indexedLength || (key != null && ! key.equals(fileKey))) {
+                reset(key);
+            }
+            while (indexedLength < length) {
+                int size = (int) Math.min(MAP_SIZE, length - indexedLength);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, indexedLength, size);
+                for (int i = 0; i < size; ++ i) {
+                    if (lineEnded) {
+                        if (lineCount % STRIDE == 0) {
+                            addIndexedLine(indexedLength + i, readTime(buffer, i, channel, indexedLength + i));
+                        }
+                        lineEnded = false;
+                    }
+                    if (buffer.get(i) == '\n') {
+                        ++ lineCount;
+                        lineEnded = true;
+                    }
+                }
+                indexedLength += size;
+            }
+        }
+        return lineCount;
+    }
+
+    /***
+     * Adds indexed line
+     * @param offset line offset
+     * @param time line time, -1 if line has no time
+     */
+    private void addIndexedLine(long offset, long time) {
+        int index = (int) (lineCount / STRIDE);
+        if (index == offsets.length) {
+            offsets = Arrays.copyOf(offsets, index * 2);
+            times = Arrays.copyOf(times, index * 2);
+        }
+        offsets[index] = offset;
+        times[index] = time >= 0 || index == 0 ? time : times[index - 1];
+    }
+
+    /***
+     * Reads time of the line
+     * @param buffer mapped file part
+     * @param position line position in the part
+     * @param channel file channel (if the date does not fit the part)
+     * @param offset line offset
+     * @return time, -1 if line has no time
+     * @throws IOException if something went wrong
+     */
+    private long readTime(MappedByteBuffer buffer, int position, FileChannel channel, long offset)
+            throws IOException {
+        if (position + DATE_LENGTH > buffer.limit()) {
+            if (channel.size() - offset < DATE_LENGTH) {
+                return -1;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, DATE_LENGTH);
+            position = 0;
+        }
+        byte[] date = new byte[DATE_LENGTH];
+        for (int i = 0; i < DATE_LENGTH; ++ i) {
+            date[i] = buffer.get(position + i);
+        }
+        return parseTime(new String(date, charset));
+    }
+
+    /***
+     * Parses time of the line
+     * @param line line
+     * @return time, -1 if line has no time
+     */
+    private long parseTime(String line) {
+        if (line.length() < DATE_LENGTH) {
+            return -1;
+        }
+        try {
+            return dateFormat.parse(line.substring(0, DATE_LENGTH)).getTime();
+        }
+        catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /***
+     * Reads lines by number
+     * @param first number of the first line
+     * @param count maximum number of lines
+     * @param maxSize maximum size of lines in bytes (at least one line is read if it fits the mapped part)
+     * @return lines
+     * @throws IOException if something went wrong
+     */
+    public synchronized List<String> read(long first, int count, int maxSize) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (first < 0 || first >= lineCount || count <= 0) {
+            return lines;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long offset = offsets[(int) (first / STRIDE)];
+            long end = Math.min(indexedLength, channel.size());
+            long line = first - first % STRIDE;
+            if (offset >= end) { // the file was rotated after refreshing
+                return lines;
+            }
+            int size = (int) Math.min(end - offset, MAP_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            int start = 0;
+            int readSize = 0;
+            for (int i = 0; i < size && lines.size() < count; ++ i) {
+                if (buffer.get(i) != '\n') {
+                    continue;
+                }
+                if (line >= first) {
+                    readSize += i - start;
+                    if (readSize > maxSize && ! lines.isEmpty()) {
+                        break;
+                    }
+                    lines.add(decode(buffer, start, i));
+                }
+                ++ line;
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /***
+     * Finds first line written at the time or later
+     * @param time time
+     * @return number of the line, number of lines if there is no such line
+     * @throws IOException if something went wrong
+     */
+    public synchronized long find(long time) throws IOException {
+        int indexed = (int) ((lineCount + STRIDE - 1) / STRIDE);
+        // the last indexed line before the time (times are not decreasing)
+        int low = 0;
+        int high = indexed - 1;
+        int block = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] < time) {
+                block = middle;
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        long first = (long) block * STRIDE;
+        List<String> lines = read(first, STRIDE * 2, MAP_SIZE);
+        for (int i = 0; i < lines.size(); ++ i) {
+            long lineTime = parseTime(lines.get(i));
+            if (lineTime >= time) {
+                return first + i;
+            }
+        }
+        return Math.min(first + lines.size(), lineCount);
+    }
+
+    /***
+     * Decodes line (without line end)
+     * @param buffer mapped file part
+     * @param start line start
+     * @param end line end
+     * @return line
+     */
+    private String decode(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            -- end;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; ++ i) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -3,7 +3,6 @@ package gui.board;
 import gui.board.animation.Animatable;
 import gui.board.animation.Animation;
 import gui.board.animation.AnimationManager;
-import gui.board.animation.Geometry;
 import gui.board.animation.PointAnimation;
 import gui.board.animation.PointPanel;
 import gui.board.animation.Pointable;
@@ -17,15 +16,34 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JLayeredPane;
+import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
 import javax.swing.ToolTipManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import rslib.cs.common.Status;
 import rslib.cs.protocol.events.board.BoardEvent;
 import static rslib.cs.protocol.events.board.BoardEvent.BoardEventType.ADD_CONTAINER_E;
@@ -36,6 +54,7 @@ import rslib.cs.protocol.events.board.board.ChangeGeneralFontEvent;
 import rslib.cs.protocol.events.board.board.ChangeGeneralOpaqueEvent;
 import rslib.cs.protocol.events.board.board.ChangeSyncModeEvent;
 import rslib.cs.protocol.events.board.board.SetBoardContentEvent;
+import rslib.cs.protocol.events.board.common.ComponentEvent;
 import rslib.cs.protocol.events.board.common.ChangeBlockEvent;
 import rslib.cs.protocol.events.board.common.ChangeColorEvent;
 import rslib.cs.protocol.events.board.common.ChangeFontEvent;
@@ -52,9 +71,12 @@ import rslib.cs.protocol.events.board.container.DeleteContainerEvent;
 import rslib.cs.protocol.events.board.container.SetContainerContentEvent;
 import rslib.cs.protocol.events.board.container.file.ChangeFileEvent;
 import rslib.cs.protocol.events.board.container.image.ChangeImageEvent;
+import rslib.cs.protocol.events.board.container.image.PatchImageEvent;
 import rslib.cs.protocol.events.board.container.text.ChangeTextEvent;
+import rslib.cs.protocol.events.board.container.text.EditTextEvent;
 import rslib.cs.protocol.events.main_client.MainClientEvent;
 import rslib.gui.BasicComponent;
+import rslib.gui.board.BoardDigest;
 import rslib.gui.board.ExternalizableBoard;
 import rslib.gui.board.InteractiveBoard;
 import rslib.gui.container.BoardContainer;
@@ -63,6 +85,7 @@ import rslib.gui.container.file.ExternalizableFileContainer;
 import rslib.gui.container.file.FileContainer;
 import rslib.gui.container.image.ExternalizableImageContainer;
 import rslib.gui.container.image.ImageContainer;
+import rslib.gui.container.image.ImageModel;
 import rslib.gui.container.text.ExternalizableTextContainer;
 import rslib.gui.container.text.TextContainer;
 import rslib.gui.style.ColorModel;
@@ -113,8 +136,31 @@ public class BoardPanel extends JLayeredPane
     /** General container background color */
     private ColorModel generalBackground;
     
-    /** All board containers */
-    private final List<ContainerPanel> containers;
+    /** All board containers by id: panels of the containers near the viewport, 
+     * saved data (lightweight proxies) of the others */
+    private final Map<Integer, BoardContainer> containers;
+    
+    /** Ids of the containers shown as panels */
+    private final Set<Integer> shown;
+    
+    /** Spatial index of the containers */
+    private final SpatialIndex spatialIndex;
+    
+    /** If update of the shown containers is scheduled */
+    private final AtomicBoolean shownUpdateScheduled;
+    
+    /** Listener of the viewport (the shown containers follow it) */
+    private ChangeListener viewportListener;
+    
+    /** Detached panels by container type, they are bound to the containers 
+     * that come into view (used in event dispatch thread) */
+    private final Map<BoardContainer.ContainerType, Deque<ContainerPanel>> pool;
+    
+    /** If creation of spare panels is scheduled (used in event dispatch thread) */
+    private boolean sparesScheduled;
+
+    /** Digest of the containers (cached hashes) and board version */
+    private final BoardDigest digest;
     
     /** Board blocked */
     private boolean blocked;
@@ -136,6 +182,18 @@ public class BoardPanel extends JLayeredPane
     public static final int MAXIMUM_BOARD_WIDTH = 10000;
     public static final int MAXIMUM_BOARD_HEIGHT = 10000;
     
+    /** Maximum zoom level (the board is reduced 2^level times) */
+    public static final int MAXIMUM_ZOOM_LEVEL = 3;
+    
+    /** Board size (the panel size is reduced by the zoom) */
+    private final Dimension boardSize;
+    
+    /** Zoom level (0 is full size, containers are not shown as panels otherwise) */
+    private int zoomLevel;
+    
+    /** Thumbnails of the containers for zoomed out board */
+    private final ThumbnailCache thumbnails;
+    
     /** Point mode */
     private boolean pointMode;
     
@@ -157,6 +215,18 @@ public class BoardPanel extends JLayeredPane
     /** Animations */
     private final List<Animation> animations;
     
+    /** Number of containers shown by one task of the event dispatch thread */
+    private static final int CONTAINER_BATCH_SIZE = 50;
+    
+    /** Containers closer to the viewport than this are shown as panels */
+    private static final int SHOW_MARGIN = 256;
+    
+    /** Panels further from the viewport than this are replaced by saved data */
+    private static final int HIDE_MARGIN = 2 * SHOW_MARGIN;
+    
+    /** Maximum number of detached panels kept for reuse (of every type) */
+    private static final int POOL_SIZE = 2 * CONTAINER_BATCH_SIZE;
+    
     static {
         CONTAINER_POSITION = -1;
         SHADOW_POSITION = 0;
@@ -174,15 +244,22 @@ public class BoardPanel extends JLayeredPane
         this.commandFacade = commandFacade;
         this.viewport = viewport;
         complexPainting = true;
-        setPreferredSize(new Dimension(eb.getComponentWidth(), 
-                eb.getComponentHeight()));
-        containers = new CopyOnWriteArrayList<>();
-        List<ExternalizableContainer> eContainers = eb.getContainers();
-        for (ExternalizableContainer ec : eContainers) {
-            ContainerPanel container = inflate(ec);
-            containers.add(container);
-        }
-        addContainers(containers);
+        boardSize = new Dimension(eb.getComponentWidth(), eb.getComponentHeight());
+        setPreferredSize(new Dimension(boardSize));
+        containers = new ConcurrentHashMap<>(); // concurrency
+        shown = Collections.newSetFromMap(
+                new ConcurrentHashMap<Integer, Boolean>()); // concurrency
+        spatialIndex = new SpatialIndex(MAXIMUM_BOARD_WIDTH, MAXIMUM_BOARD_HEIGHT);
+        shownUpdateScheduled = new AtomicBoolean();
+        pool = new EnumMap<>(BoardContainer.ContainerType.class);
+        for (BoardContainer.ContainerType type : BoardContainer.ContainerType.values()) {
+            pool.put(type, new ArrayDeque<ContainerPanel>());
+        }
+        digest = new BoardDigest();
+        thumbnails = new ThumbnailCache(this);
+        for (ExternalizableContainer ec : eb.getContainers()) {
+            register(ec);
+        }
         setOpaque(true);
         owner = eb.getComponentOwner();
         status = eb.getComponentStatus();
@@ -208,6 +285,7 @@ public class BoardPanel extends JLayeredPane
         new Thread(animationManager).start();
         animations = new CopyOnWriteArrayList<>();
         initFeatures(viewport);
+        scheduleShownUpdate();
         revalidate();
     }
     
@@ -227,25 +305,358 @@ public class BoardPanel extends JLayeredPane
         addMouseListener(new BoardPopupMenu(this).createPopUpMenu());
         // Tool tip
         ToolTipManager.sharedInstance().registerComponent(this);
+        // Containers in view
+        viewportListener = new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateShownContainers();
+            }
+        };
+        viewport.addChangeListener(viewportListener);
+        // Zoom
+        MouseAdapter zoomListener = new MouseAdapter() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    setZoomLevel(zoomLevel + (e.getWheelRotation() > 0 ? 1 : -1), 
+                            e.getPoint());
+                }
+                else { // the board itself is not scrolled by the wheel
+                    JScrollPane scrollPane = (JScrollPane) SwingUtilities.
+                            getAncestorOfClass(JScrollPane.class, BoardPanel.this);
+                    if (scrollPane != null) {
+                        scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(
+                                BoardPanel.this, e, scrollPane));
+                    }
+                }
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (zoomLevel > 0 && e.getClickCount() == 2 && 
+                        SwingUtilities.isLeftMouseButton(e)) {
+                    setZoomLevel(0, e.getPoint());
+                }
+            }
+        };
+        addMouseListener(zoomListener);
+        addMouseWheelListener(zoomListener);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(java.awt.event.ComponentEvent e) {
+                scheduleShownUpdate();
+            }
+
+            @Override
+            public void componentMoved(java.awt.event.ComponentEvent e) {
+                scheduleShownUpdate();
+            }
+        });
     }
- 
+    
     /***
-     * Gets container by the current id
+     * Stops board features (the board is not used any more)
+     */
+    public void close() {
+        animationManager.stop();
+        viewport.removeChangeListener(viewportListener);
+    }
+    
+    /***
+     * Registers container by its saved data (it is shown as a panel 
+     * when it gets near the viewport)
+     * @param container container
+     */
+    private void register(BoardContainer container) {
+        ExternalizableContainer ec = container.toExternalizable();
+        ec.setDigest(null); // changes are marked by the board events
+        BoardContainer old = containers.put(ec.getComponentId(), ec);
+        if (old instanceof ContainerPanel) {
+            hide((ContainerPanel) old);
+        }
+        spatialIndex.put(ec.getComponentId(), getBounds(ec));
+        thumbnails.changed(ec.getComponentId());
+        digest.changed(ec.getComponentId());
+    }
+    
+    /***
+     * Unregisters container
      * @param id container id
-     * @return corresponding container, null if container was not found
+     * @return removed container, null if it was not found
+     */
+    private BoardContainer unregister(int id) {
+        BoardContainer container = containers.remove(id);
+        spatialIndex.remove(id);
+        thumbnails.remove(id);
+        digest.removed(id);
+        if (container instanceof ContainerPanel) {
+            hide((ContainerPanel) container);
+        }
+        return container;
+    }
+    
+    /***
+     * Removes container panel from the board
+     * @param container container panel
      */
-    private ContainerPanel getContainerById(int id) {
-        for (ContainerPanel container : containers) {
-            if (container.getComponentId() == id) {
-                return container;
+    private void hide(ContainerPanel container) {
+        shown.remove(container.getComponentId());
+        remove(container);
+    }
+    
+    /***
+     * Returns container bounds
+     * @param container container
+     * @return bounds
+     */
+    private static Rectangle getBounds(BoardContainer container) {
+        return new Rectangle(container.getComponentLeft(), container.getComponentTop(),
+                container.getComponentWidth(), container.getComponentHeight());
+    }
+    
+    /***
+     * Updates container bounds in the spatial index (called when container 
+     * is moved or resized)
+     * @param container container
+     */
+    public void containerMoved(BoardContainer container) {
+        int id = container.getComponentId();
+        if (containers.get(id) == container) {
+            spatialIndex.put(id, getBounds(container));
+            scheduleShownUpdate();
+        }
+    }
+    
+    /***
+     * Schedules update of the shown containers
+     */
+    private void scheduleShownUpdate() {
+        if (shownUpdateScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    updateShownContainers();
+                }
+            });
+        }
+    }
+    
+    /***
+     * Shows containers near the viewport as panels (by batches, so scrolling 
+     * to many containers does not freeze the event dispatch thread) and replaces 
+     * panels far from the viewport by their saved data. Panels that are used 
+     * (blocked, focused, edited) are kept. Called by the event dispatch thread
+     */
+    private void updateShownContainers() {
+        shownUpdateScheduled.set(false);
+        Rectangle view = getVisibleRect();
+        Rectangle showArea = new Rectangle(view);
+        showArea.grow(SHOW_MARGIN, SHOW_MARGIN);
+        Rectangle keepArea = new Rectangle(view);
+        keepArea.grow(HIDE_MARGIN, HIDE_MARGIN);
+        if (zoomLevel > 0) { // zoomed out board shows thumbnails only
+            showArea = new Rectangle();
+            keepArea = new Rectangle();
+        }
+        boolean changed = false;
+        List<ContainerPanel> detached = new ArrayList<>();
+        synchronized (containers) {
+            for (Integer id : new ArrayList<>(shown)) {
+                BoardContainer container = containers.get(id);
+                if (container instanceof ContainerPanel && 
+                        ! getBounds(container).intersects(keepArea) &&
+                        ((ContainerPanel) container).isDetachable()) {
+                    containers.put(id, container.toExternalizable());
+                    shown.remove(id);
+                    ((ContainerPanel) container).setVisible(false); // removed if it is not reused
+                    detached.add((ContainerPanel) container);
+                    changed = true;
+                }
+            }
+            int left = CONTAINER_BATCH_SIZE;
+            for (Integer id : spatialIndex.find(showArea)) {
+                BoardContainer container = containers.get(id);
+                if (! (container instanceof ExternalizableContainer)) {
+                    continue; // already shown
+                }
+                if (left == 0) {
+                    scheduleShownUpdate();
+                    break;
+                }
+                -- left;
+                ContainerPanel panel = take((ExternalizableContainer) container);
+                containers.put(id, panel);
+                shown.add(id);
+                setLayer(panel, panel.getLayer(), CONTAINER_POSITION);
+                if (panel.getParent() != this) {
+                    add(panel);
+                }
+                panel.setVisible(true);
+                panel.validate();
+                changed = true;
+            }
+            if (left > 0) { // all near containers are shown
+                scheduleSpares();
+            }
+        }
+        release(detached);
+        if (changed) {
+            repaint();
+        }
+    }
+    
+    /***
+     * Takes panel for the container: a detached panel bound to it (the panel 
+     * that showed the container before if it is still in the pool), a new one 
+     * if there are no detached panels of its type
+     * @param ec saved data
+     * @return panel
+     */
+    private ContainerPanel take(ExternalizableContainer ec) {
+        Deque<ContainerPanel> free = pool.get(ec.getType());
+        ContainerPanel panel = null;
+        for (ContainerPanel candidate : free) {
+            if (candidate.getComponentId() == ec.getComponentId()) {
+                panel = candidate; // only its changes are set
+                break;
+            }
+        }
+        if (panel != null) {
+            free.remove(panel);
+        }
+        else {
+            panel = free.poll();
+        }
+        if (panel == null) {
+            return inflate(ec);
+        }
+        panel.bind(ec);
+        return panel;
+    }
+    
+    /***
+     * Returns detached panels to the pool. They are added by a later task, 
+     * so the tasks that were posted for their old containers are done by then.
+     * Pooled panels stay hidden on the board (adding and removing a panel 
+     * costs more than binding it)
+     * @param panels detached panels
+     */
+    private void release(final List<ContainerPanel> panels) {
+        if (panels.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for (ContainerPanel panel : panels) {
+                    offer(panel);
+                }
+            }
+        });
+    }
+    
+    /***
+     * Adds hidden panel to the pool (it is removed from the board if the pool
+     * of its type is full)
+     * @param panel hidden panel
+     */
+    private void offer(ContainerPanel panel) {
+        Deque<ContainerPanel> free = pool.get(panel.getType());
+        if (free.size() < POOL_SIZE) {
+            free.push(panel);
+        }
+        else {
+            remove(panel);
+        }
+    }
+    
+    /***
+     * Schedules creation of spare panels for the containers near the shown ones 
+     * (one panel by task), so scrolling to them binds the spare panels instead 
+     * of creating new ones
+     */
+    private void scheduleSpares() {
+        if (sparesScheduled) {
+            return;
+        }
+        sparesScheduled = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                ExternalizableContainer ec = findSpareContainer();
+                if (ec == null) {
+                    sparesScheduled = false;
+                    return;
+                }
+                final ContainerPanel panel = inflate(ec);
+                panel.setVisible(false);
+                setLayer(panel, panel.getLayer(), CONTAINER_POSITION);
+                add(panel);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() { // after the tasks posted by the new panel
+                        offer(panel);
+                        sparesScheduled = false;
+                        scheduleSpares();
+                    }
+                });
+            }
+        });
+    }
+    
+    /***
+     * Finds hidden container near the viewport whose type has fewer detached 
+     * panels than such containers
+     * @return saved data of the container, null if there are enough detached panels
+     */
+    private ExternalizableContainer findSpareContainer() {
+        if (zoomLevel > 0) {
+            return null;
+        }
+        Rectangle nearArea = getVisibleRect();
+        nearArea.grow(HIDE_MARGIN, HIDE_MARGIN);
+        Map<BoardContainer.ContainerType, Integer> near = 
+                new EnumMap<>(BoardContainer.ContainerType.class);
+        synchronized (containers) {
+            for (Integer id : spatialIndex.find(nearArea)) {
+                BoardContainer container = containers.get(id);
+                if (! (container instanceof ExternalizableContainer)) {
+                    continue; // shown
+                }
+                ExternalizableContainer ec = (ExternalizableContainer) container;
+                Integer count = near.get(ec.getType());
+                count = count == null ? 1 : count + 1;
+                near.put(ec.getType(), count);
+                if (count <= POOL_SIZE && count > pool.get(ec.getType()).size()) {
+                    return ec;
+                }
             }
         }
         return null;
     }
     
+    /***
+     * Changes container layer (and the layer of its panel)
+     * @param container container
+     * @param layer new layer
+     */
+    private void changeLayer(BoardContainer container, int layer) {
+        if (container.getLayer() != layer) { // only shifted containers are hashed again
+            digest.changed(container.getComponentId());
+        }
+        container.setLayer(layer);
+        if (container instanceof ContainerPanel) {
+            setLayer((ContainerPanel) container, layer, CONTAINER_POSITION);
+        }
+    }
+    
     @Override
     public void clearBoard() {
         containers.clear();
+        shown.clear();
+        spatialIndex.clear();
+        thumbnails.clear();
+        digest.clear();
         removeAll();
         repaint();
     }
@@ -255,82 +666,82 @@ public class BoardPanel extends JLayeredPane
             list) {
         clearBoard();
         for (ExternalizableContainer ec : list) {
-            ContainerPanel container = inflate(ec);
-            containers.add(container);         
+            register(ec);
         }
-        addContainers(containers);
+        scheduleShownUpdate();
     }
     
-    /***
-     * Sets containers to the board
-     * @param containers container list
-     */
-    private void addContainers(final List<ContainerPanel> containers) {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                for (ContainerPanel container: containers) {
-                    setLayer(container, container.getLayer(), CONTAINER_POSITION);
-                    add(container);
-                    container.validate();
+    @Override
+    public void updateBoard(ExternalizableBoard eb, 
+            CopyOnWriteArrayList<ExternalizableContainer> list, 
+            Map<Integer, Integer> layers) {
+        owner = eb.getComponentOwner();
+        status = eb.getComponentStatus();
+        name = eb.getComponentName();
+        opaque = eb.isComponentOpaque();
+        setFont(Parsing.createFont(eb.getComponentFont()));
+        setForeground(Parsing.createColor(eb.getComponentForeground()));
+        setBackground(Parsing.createColor(eb.getComponentBackground()));
+        generalFont = eb.getGeneralContainerFont();
+        generalOpaque = eb.isGeneralContainerOpaque();
+        generalForeground = eb.getGeneralContainerForeground();
+        generalBackground = eb.getGeneralContainerBackground();
+        blocked = eb.isBlocked();
+        blockOwner = eb.getBlockOwner();
+        asynchronous = eb.isAsynchronous();
+        synchronized (containers) {
+            for (BoardContainer container : containers.values()) {
+                if (! layers.containsKey(container.getComponentId())) { // deleted
+                    unregister(container.getComponentId());
                 }
-                viewport.scrollRectToVisible(viewport.getBounds());
-            }  
-        });
-        try {
-            Thread.sleep(500);
+            }
+            for (ExternalizableContainer ec : list) {
+                register(ec); // the old one is replaced
+            }
+            for (BoardContainer container : containers.values()) {
+                changeLayer(container, layers.get(container.getComponentId()));
+            }
         }
-        catch (InterruptedException e) {
-            //TODO: correct
+        if (pointMode) {
+            setLayer(pointPanel, containers.size() + 1);
         }
-        viewport.scrollRectToVisible(viewport.getBounds());
+        digest.boardChanged();
+        scheduleShownUpdate();
+        resizeComponent(0, 0, eb.getComponentWidth(), eb.getComponentHeight());
+        repaint();
     }
-
+    
     @Override
     public void addContainer(BoardContainer bc) {
-        final ContainerPanel container = (ContainerPanel) bc;
-        int layer = container.getLayer();
+        int layer = bc.getLayer();
         if (layer == BoardContainer.TO_FRONT) {
             layer = containers.size() + 1;
-            container.setLayer(layer);
         }
         else {
-            for (ContainerPanel cp : containers) {
-                int cpLayer = cp.getLayer();
-                if (cpLayer >= layer) {
-                    ++ cpLayer;
-                    cp.setLayer(cpLayer);
-                    setLayer(cp, cpLayer);
+            for (BoardContainer container : containers.values()) {
+                if (container.getLayer() >= layer) {
+                    changeLayer(container, container.getLayer() + 1);
                 }
             }
         }
-        final int finalLayer = layer;
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                containers.add(container);
-                setLayer(container, finalLayer, CONTAINER_POSITION);
-                if (pointMode) {
-                    setLayer(pointPanel, containers.size() + 1);
-                }
-                add(container);
-                container.revalidate();
-            }
-        });
+        bc.setLayer(layer);
+        register(bc);
+        if (pointMode) {
+            setLayer(pointPanel, containers.size() + 1);
+        }
+        scheduleShownUpdate();
     }
     
     @Override
     public void deleteContainer(int i) {
-        ContainerPanel container = getContainerById(i);
-        remove(container);
+        BoardContainer container = unregister(i);
+        if (container == null) {
+            return;
+        }
         int layer = container.getLayer();
-        containers.remove(container);
-        for (ContainerPanel cp : containers) {
-            int cpLayer = cp.getLayer();
-            if (cpLayer > layer) {
-                -- cpLayer;
-                cp.setLayer(cpLayer);
-                setLayer(cp, cpLayer);
+        for (BoardContainer cp : containers.values()) {
+            if (cp.getLayer() > layer) {
+                changeLayer(cp, cp.getLayer() - 1);
             }
         }
         if (pointMode) {
@@ -343,9 +754,24 @@ public class BoardPanel extends JLayeredPane
     public ExternalizableBoard toExternalizable() {
         CopyOnWriteArrayList<ExternalizableContainer> eContainers = 
                 new CopyOnWriteArrayList<>();
-        for (BoardContainer container : containers) {
-            eContainers.add(container.toExternalizable());
+        synchronized (containers) {
+            for (BoardContainer container : containers.values()) {
+                // saved data of hidden containers is changed by the events, it is copied
+                eContainers.add(container instanceof ExternalizableContainer ?
+                        ((ExternalizableContainer) container).copy() :
+                        container.toExternalizable());
+            }
         }
+        return toExternalizable(eContainers);
+    }
+
+    /***
+     * Saves board info with the given containers
+     * @param eContainers saved containers
+     * @return saved board
+     */
+    private ExternalizableBoard toExternalizable(
+            CopyOnWriteArrayList<ExternalizableContainer> eContainers) {
         return new ExternalizableBoard(getComponentOwner(), getComponentStatus(),
         getComponentLeft(), getComponentTop(), getComponentWidth(),
         getComponentHeight(), getComponentMinimumWidth(), 
@@ -362,22 +788,15 @@ public class BoardPanel extends JLayeredPane
     public int generateId() {
         Random random = new Random();
         int id = random.nextInt(1000000);
-        for (ContainerPanel container : containers) {
-            if (container.getComponentId() == id) {
-                return generateId();
-            }
+        if (containers.containsKey(id)) {
+            return generateId();
         }
         return id;
    }
     
     @Override
     public BoardContainer findContainer(int i) {
-        for (ContainerPanel container : containers) {
-            if (container.getComponentId() == i) {
-                return container;
-            }
-        }
-        return null;
+        return containers.get(i);
     }
     
     @Override
@@ -386,12 +805,10 @@ public class BoardPanel extends JLayeredPane
         int newLayer;
         switch (i) {
             case BoardContainer.TO_BACKGROUND: {
-                for (ContainerPanel container : containers) {
+                for (BoardContainer container : containers.values()) {
                     int layer = container.getLayer();
                     if (layer < oldLayer) {
-                        ++ layer;
-                        container.setLayer(layer);
-                        setLayer(container, layer, CONTAINER_POSITION);
+                        changeLayer(container, layer + 1);
                     }
                 }
                 newLayer = BoardContainer.BACKGROUND_LAYER;
@@ -399,15 +816,13 @@ public class BoardPanel extends JLayeredPane
             }
             case BoardContainer.TO_FRONT: {
                 int max = 0;
-                for (ContainerPanel container : containers) {                 
+                for (BoardContainer container : containers.values()) {                 
                     int layer = container.getLayer();
                     if (layer > max) {
                         max = layer;
                     }
                     if (layer > oldLayer) {
-                        -- layer;
-                        container.setLayer(layer);
-                        setLayer(container, layer, CONTAINER_POSITION);
+                        changeLayer(container, layer - 1);
                     }
                 }
                 newLayer = max;
@@ -415,28 +830,22 @@ public class BoardPanel extends JLayeredPane
             }
             default: {
                 if (i > oldLayer) {
-                    for (ContainerPanel container : containers) {                 
+                    for (BoardContainer container : containers.values()) {                 
                         int layer = container.getLayer();
                         if (layer <= i && layer > oldLayer) {
-                            -- layer;
-                            container.setLayer(layer);
-                            setLayer(container, layer, CONTAINER_POSITION);
+                            changeLayer(container, layer - 1);
                         }
                     }
                 }
                 else {
                     if (i < oldLayer) {
-                        for (ContainerPanel container : containers) {                 
+                        for (BoardContainer container : containers.values()) {                 
                             int layer = container.getLayer();
                             if (layer >= i && layer < oldLayer) {
-                                ++ layer;
-                                container.setLayer(layer);
-                                setLayer(container, layer, CONTAINER_POSITION);
+                                changeLayer(container, layer + 1);
                             }
                         }
-                        ContainerPanel container = (ContainerPanel) bc;
-                        container.setLayer(i);
-                        setLayer(container, i, CONTAINER_POSITION);
+                        changeLayer(bc, i);
                         
                         //TODO wtf here
                     }
@@ -445,9 +854,7 @@ public class BoardPanel extends JLayeredPane
                 break;
             }
         }
-        ContainerPanel container = (ContainerPanel) bc;
-        container.setLayer(newLayer);
-        setLayer(container, newLayer, CONTAINER_POSITION);
+        changeLayer(bc, newLayer);
     }
 
     @Override
@@ -458,10 +865,18 @@ public class BoardPanel extends JLayeredPane
     @Override
     public void setGeneralContainerFont(FontModel fm) {       
         generalFont = fm;
-        for (ContainerPanel container : containers) {
+        digest.boardChanged();
+        thumbnails.changedAll();
+        for (BoardContainer container : containers.values()) {
             if (! (container.isBlocked() && ! container.getBlockOwner().
                     equals(commandFacade.getUsername()))) {
-                container.setFont(Parsing.createFont(fm));
+                digest.changed(container.getComponentId());
+                if (container instanceof ContainerPanel) {
+                    ((ContainerPanel) container).setFont(Parsing.createFont(fm));
+                }
+                else {
+                    container.setComponentFont(fm);
+                }
             }
         }
     }
@@ -474,8 +889,16 @@ public class BoardPanel extends JLayeredPane
     @Override
     public void setGeneralContainerOpaque(boolean bln) {
         generalOpaque = bln;
+        digest.boardChanged();
+        thumbnails.changedAll();
+        for (BoardContainer container : containers.values()) {
+            // the general color model can be shared with blocked containers too
+            if (! container.isBlocked() || container.getComponentBackground() == generalBackground) {
+                digest.changed(container.getComponentId());
+            }
+        }
         generalBackground.setOpaque(bln);
-        for (ContainerPanel container : containers) {
+        for (BoardContainer container : containers.values()) {
             if (! container.isBlocked()) {
                 container.setComponentOpaque(bln);
             }
@@ -491,7 +914,12 @@ public class BoardPanel extends JLayeredPane
     public void setGeneralContainerBackground(ColorModel cm) {
         cm.setOpaque(generalOpaque);
         generalBackground = cm;
-        for (ContainerPanel container : containers) {
+        digest.boardChanged();
+        thumbnails.changedAll();
+        for (BoardContainer container : containers.values()) {
+            if (! container.isBlocked() || container.getComponentBackground() == cm) {
+                digest.changed(container.getComponentId());
+            }
             if (! container.isBlocked()) {
                 container.setComponentBackground(cm);
             }
@@ -506,8 +934,11 @@ public class BoardPanel extends JLayeredPane
     @Override
     public void setGeneralContainerForeground(ColorModel cm) {
         generalForeground = cm;
-        for (ContainerPanel container : containers) {
+        digest.boardChanged();
+        thumbnails.changedAll();
+        for (BoardContainer container : containers.values()) {
             if (! container.isBlocked()) {
+                digest.changed(container.getComponentId());
                 container.setComponentForeground(cm);
             }
         }
@@ -538,19 +969,20 @@ public class BoardPanel extends JLayeredPane
         Dimension dimension = calculateShrunkBoard();
         i2 = Math.max(i2, dimension.width);
         i3 = Math.max(i3, dimension.height);
-        setPreferredSize(new Dimension(i2, i3));
+        boardSize.setSize(i2, i3);
+        setPreferredSize(new Dimension(toView(i2), toView(i3)));
         pointPanel.setBounds(0, 0, i2, i3);
         revalidate();
     }   
 
     @Override
     public int getComponentWidth() {
-        return getWidth();
+        return boardSize.width;
     }
 
     @Override
     public int getComponentHeight() {
-        return getHeight();
+        return boardSize.height;
     }
 
     @Override
@@ -676,6 +1108,7 @@ public class BoardPanel extends JLayeredPane
     @Override
     public void setAsynchronous(boolean bln) {
         asynchronous = bln;
+        digest.boardChanged();
     }
 
     @Override
@@ -717,6 +1150,17 @@ public class BoardPanel extends JLayeredPane
 
     @Override
     public void hear(BoardEvent event) {
+        synchronized (containers) { // hidden containers are not shown meanwhile
+            apply(event);
+            invalidate(event);
+        }
+    }
+    
+    /***
+     * Applies board event
+     * @param event board event
+     */
+    private void apply(BoardEvent event) {
         switch(event.getIndex()) {
             case CHANGE_SYNC_MODE_E: {
                 ChangeSyncModeEvent changeSyncModeEvent = 
@@ -744,8 +1188,7 @@ public class BoardPanel extends JLayeredPane
                 break;
             }
             case ADD_CONTAINER_E: {
-                addContainer(inflateContainer(((AddContainerEvent) event).
-                        getSerializableContainer()));
+                addContainer(((AddContainerEvent) event).getSerializableContainer());
                 break;
             }
             case DELETE_CONTAINER_E: {
@@ -767,6 +1210,9 @@ public class BoardPanel extends JLayeredPane
                 if (resizeEvent.isUnblock()) {
                     component.setBlocked(false, null);
                 }
+                if (component != this) {
+                    containerMoved((BoardContainer) component);
+                }
                 break;
             }
             case MOVE_E: {
@@ -776,6 +1222,7 @@ public class BoardPanel extends JLayeredPane
                 if (moveEvent.isUnblock()) {
                     container.setBlocked(false, null);
                 }
+                containerMoved(container);
                 break;
             }
             case CHANGE_NAME_E: {
@@ -882,12 +1329,39 @@ public class BoardPanel extends JLayeredPane
                 ((TextContainer) findContainer(changeTextEvent.getId())).setText(changeTextEvent.getText());
                 break;
             }
+            case EDIT_TEXT_E: {
+                EditTextEvent editTextEvent = (EditTextEvent) event;
+                BoardContainer container = findContainer(editTextEvent.getId());
+                if (container instanceof TextContainerPanel) {
+                    ((TextContainerPanel) container).editText(editTextEvent);
+                }
+                else { // hidden container has no local edits
+                    TextContainer textContainer = (TextContainer) container;
+                    try {
+                        textContainer.setText(editTextEvent.getOperation().
+                                apply(textContainer.getText()));
+                    }
+                    catch (IllegalArgumentException e) {
+                        // texts differ: the whole text comes with the next update
+                    }
+                }
+                break;
+            }
             case CHANGE_IMAGE_E: {
                 ChangeImageEvent changeImageEvent = (ChangeImageEvent) event;
                 ((ImageContainer) findContainer(changeImageEvent.getId()))
                         .setImage(changeImageEvent.getImage());
                 break;
             }
+            case PATCH_IMAGE_E: {
+                PatchImageEvent patchImageEvent = (PatchImageEvent) event;
+                ImageContainer imageContainer = (ImageContainer) findContainer(patchImageEvent.getId());
+                ImageModel image = imageContainer.getImage();
+                if (image != null) {
+                    imageContainer.setImage(patchImageEvent.getPatch().apply(image));
+                }
+                break;
+            }
             case CHANGE_FILE_E: {
                 ChangeFileEvent changeFileEvent = (ChangeFileEvent) event;
                 ((FileContainer) findContainer(changeFileEvent.getId()))
@@ -897,6 +1371,32 @@ public class BoardPanel extends JLayeredPane
         }
     }
 
+    /***
+     * Marks container as changed (by local edits that are not events yet)
+     * @param id container id
+     */
+    public void containerChanged(int id) {
+        digest.changed(id);
+        thumbnails.changed(id);
+    }
+
+    /***
+     * Marks the changed part of the board after the event
+     * @param event applied event
+     */
+    private void invalidate(BoardEvent event) {
+        if (event instanceof ComponentEvent) {
+            int id = ((ComponentEvent) event).getId();
+            if (id == InteractiveBoard.BOARD_ID) {
+                digest.boardChanged();
+            }
+            else if (! (event instanceof DeleteContainerEvent)) { // deleted one is already forgotten
+                digest.changed(id);
+                thumbnails.changed(id);
+            }
+        }
+    }
+
     @Override
     public void hear(MainClientEvent mce) {
     }
@@ -908,7 +1408,7 @@ public class BoardPanel extends JLayeredPane
     public Dimension calculateShrunkBoard() {
         int newWidth = MINIMUM_BOARD_WIDTH;
         int newHeight = MINIMUM_BOARD_HEIGHT;
-        for (ContainerPanel container : containers) {
+        for (BoardContainer container : containers.values()) {
             int right = container.getComponentLeft() + 
                     container.getComponentWidth() + BORDER_DELTA;
             if (right > newWidth) {
@@ -944,7 +1444,17 @@ public class BoardPanel extends JLayeredPane
 
     @Override
     public int hashCode() {
-        return toExternalizable().hashCode();
+        // only changed containers are saved and hashed again
+        return toExternalizable(new CopyOnWriteArrayList<ExternalizableContainer>()).
+                hashCode(digest.getContainersHash(this, containers.values()));
+    }
+
+    /***
+     * Returns board version (it is increased on every change)
+     * @return board version
+     */
+    public long getVersion() {
+        return digest.getVersion();
     }
 
     @Override
@@ -963,10 +1473,6 @@ public class BoardPanel extends JLayeredPane
         return commandFacade.getUsername();
     }
     
-    public BoardContainer getContainer(int i) {
-        return containers.get(i);
-    }
-    
     /***
      * Sets point mode enabled/disabled
      * @param pointMode enabled/disabled 
@@ -974,7 +1480,8 @@ public class BoardPanel extends JLayeredPane
     public void setPointMode(boolean pointMode) {
         this.pointMode = pointMode;
         if (pointMode) {
-            pointPanel.setBounds(0, 0, getWidth(), getHeight());
+            pointPanel.setBounds(0, 0, getComponentWidth(), getComponentHeight());
+            pointPanel.setVisible(zoomLevel == 0);
             setLayer(pointPanel, containers.size() + 1);
             add(pointPanel);
         }
@@ -986,28 +1493,21 @@ public class BoardPanel extends JLayeredPane
 
     @Override
     public void point(AnimationManager am, int i, int i1, Color color) {
-        // finding corresponding containers
-        List<ContainerPanel> corr = new ArrayList<>();
-        for (ContainerPanel container : containers) {
-            if (Geometry.hasPoint(container, i, i1)) {
-                corr.add(container);
-            }
-        }
-        if (! corr.isEmpty()) {
-            // finding container on the top
-            int maxLayer = corr.get(0).getLayer();
-            int index = 0;
-            for (int j = 0; j < corr.size(); ++ j) {
-                if (corr.get(j).getLayer() > maxLayer) {
-                    maxLayer = corr.get(j).getLayer();
-                    index = j;
-                }
+        // finding container on the top
+        BoardContainer top = null;
+        for (Integer id : spatialIndex.find(new Rectangle(i, i1, 1, 1))) {
+            BoardContainer container = containers.get(id);
+            if (container != null && (top == null || 
+                    container.getLayer() > top.getLayer())) {
+                top = container;
             }
-            ContainerPanel target = corr.get(index);
+        }
+        if (top instanceof ContainerPanel) {
+            ContainerPanel target = (ContainerPanel) top;
             target.point(am, i - target.getX(), i1 - target.getY(), color);
         }
         else {
-            // if no occurrences, point the board itself
+            // if no occurrences or the container is hidden, point the board itself
             animationManager.addAnimation(
                     new PointAnimation(this, i, i1, color));
         }
@@ -1019,8 +1519,10 @@ public class BoardPanel extends JLayeredPane
 
     public void setComplexPainting(boolean complexPainting) {
         this.complexPainting = complexPainting;
-        for (ContainerPanel container : containers) {
-            container.setComplexPainting(complexPainting);
+        for (BoardContainer container : containers.values()) {
+            if (container instanceof ContainerPanel) {
+                ((ContainerPanel) container).setComplexPainting(complexPainting);
+            }
         }
     }
 
@@ -1028,18 +1530,182 @@ public class BoardPanel extends JLayeredPane
         return animationManager;
     }
     
+    public int getZoomLevel() {
+        return zoomLevel;
+    }
+    
+    /***
+     * Zooms board keeping the center of the viewport
+     * @param level new zoom level (0 is full size)
+     */
+    public void setZoomLevel(int level) {
+        Rectangle view = viewport.getViewRect();
+        setZoomLevel(level, new Point((int) view.getCenterX(), (int) view.getCenterY()));
+    }
+    
+    /***
+     * Zooms board. Zoomed out board is painted by the cached container 
+     * thumbnails (of the mip level equal to the zoom level, so they are drawn 
+     * without scaling) and its containers can not be edited. 
+     * Called by the event dispatch thread
+     * @param level new zoom level (0 is full size)
+     * @param anchor point of the board panel that is kept at its place in the viewport
+     */
+    public void setZoomLevel(int level, Point anchor) {
+        level = Math.max(0, Math.min(MAXIMUM_ZOOM_LEVEL, level));
+        if (level == zoomLevel) {
+            return;
+        }
+        Point position = viewport.getViewPosition();
+        Point boardAnchor = toBoardPoint(anchor);
+        zoomLevel = level;
+        synchronized (containers) {
+            for (Integer id : shown) { // panels that are used stay until the zoom back
+                BoardContainer container = containers.get(id);
+                if (container instanceof ContainerPanel) {
+                    ((ContainerPanel) container).setVisible(level == 0);
+                }
+            }
+        }
+        pointPanel.setVisible(level == 0);
+        Dimension size = new Dimension(toView(boardSize.width), 
+                toView(boardSize.height));
+        setPreferredSize(size);
+        setSize(size); // the viewport is laid out later
+        Dimension extent = viewport.getExtentSize();
+        int x = toView(boardAnchor.x) - (anchor.x - position.x);
+        int y = toView(boardAnchor.y) - (anchor.y - position.y);
+        viewport.setViewPosition(new Point(
+                Math.max(0, Math.min(x, size.width - extent.width)),
+                Math.max(0, Math.min(y, size.height - extent.height))));
+        revalidate();
+        scheduleShownUpdate();
+        repaint();
+    }
+    
+    /***
+     * Converts point of the board panel to the point of the board (they differ 
+     * when the board is zoomed out)
+     * @param point point of the board panel
+     * @return point of the board
+     */
+    public Point toBoardPoint(Point point) {
+        return new Point(point.x << zoomLevel, point.y << zoomLevel);
+    }
+    
+    /***
+     * Converts board coordinate to the coordinate of the board panel
+     * @param value board coordinate
+     * @return panel coordinate
+     */
+    private int toView(int value) {
+        return value >> zoomLevel;
+    }
+    
     @Override
     protected void paintComponent(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
-        //g2d.scale(0.5, 0.5);
         super.paintComponent(g);
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
 			RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle clip = g2d.getClipBounds();
+        if (clip != null) {
+            if (zoomLevel == 0) {
+                paintHidden(g2d, clip);
+            }
+            else {
+                paintThumbnails(g2d, clip);
+            }
+        }
+        if (zoomLevel > 0) {
+            double scale = 1.0 / (1 << zoomLevel);
+            g2d.scale(scale, scale);
+        }
         for (Animation animation : animations) {
             animation.draw(g2d);
         }
     }
 
+    /***
+     * Paints outlines of the hidden containers (they are seen until their panels are shown)
+     * @param g2d graphics
+     * @param clip painted area
+     */
+    private void paintHidden(Graphics2D g2d, Rectangle clip) {
+        for (Integer id : spatialIndex.find(clip)) {
+            BoardContainer container = containers.get(id);
+            if (container instanceof ExternalizableContainer) {
+                paintPlaceholder(g2d, container);
+            }
+        }
+    }
+
+    /***
+     * Paints thumbnails of the containers of the zoomed out board (by layers).
+     * Only a batch of containers is rendered at once, the rest are painted 
+     * as outlines until the next painting
+     * @param g2d graphics
+     * @param clip painted area
+     */
+    private void paintThumbnails(Graphics2D g2d, Rectangle clip) {
+        Rectangle area = new Rectangle(clip.x << zoomLevel, clip.y << zoomLevel,
+                (clip.width + 1) << zoomLevel, (clip.height + 1) << zoomLevel);
+        boolean missing = false;
+        synchronized (containers) {
+            List<BoardContainer> found = new ArrayList<>();
+            for (Integer id : spatialIndex.find(area)) {
+                BoardContainer container = containers.get(id);
+                if (container != null) {
+                    found.add(container);
+                }
+            }
+            Collections.sort(found, new Comparator<BoardContainer>() {
+                @Override
+                public int compare(BoardContainer first, BoardContainer second) {
+                    return Integer.compare(first.getLayer(), second.getLayer());
+                }
+            });
+            int left = CONTAINER_BATCH_SIZE;
+            for (BoardContainer container : found) {
+                BufferedImage thumbnail = thumbnails.get(container, zoomLevel, false);
+                if (thumbnail == null && left > 0) {
+                    -- left;
+                    thumbnail = thumbnails.get(container, zoomLevel, true);
+                }
+                if (thumbnail == null) {
+                    paintPlaceholder(g2d, container);
+                    missing = true;
+                }
+                else {
+                    g2d.drawImage(thumbnail, toView(container.getComponentLeft()), 
+                            toView(container.getComponentTop()), null);
+                }
+            }
+        }
+        if (missing) {
+            repaint();
+        }
+    }
+
+    /***
+     * Paints outline of container
+     * @param g2d graphics
+     * @param container container
+     */
+    private void paintPlaceholder(Graphics2D g2d, BoardContainer container) {
+        int arc = toView(ContainerPanel.getArc());
+        int x = toView(container.getComponentLeft());
+        int y = toView(container.getComponentTop());
+        int width = toView(container.getComponentWidth());
+        int height = toView(container.getComponentHeight());
+        if (container.isComponentOpaque()) {
+            g2d.setColor(Parsing.createColor(container.getComponentBackground()));
+            g2d.fillRoundRect(x, y, width, height, arc, arc);
+        }
+        g2d.setColor(Parsing.createColor(container.getComponentForeground()));
+        g2d.drawRoundRect(x, y, width, height, arc, arc);
+    }
+
     @Override
     public void addAnimation(Animation animation) {
         animations.add(animation);
@@ -191,6 +191,33 @@ public class BoardPopupMenu extends JPopupMenu {
             }
         });
         this.add(changeStatusItem);
+        
+        // Zoom
+        addSeparator();
+        JMenuItem zoomInItem = new JMenuItem("Zoom in");
+        zoomInItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                board.setZoomLevel(board.getZoomLevel() - 1);
+            }
+        });
+        this.add(zoomInItem);
+        JMenuItem zoomOutItem = new JMenuItem("Zoom out");
+        zoomOutItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                board.setZoomLevel(board.getZoomLevel() + 1);
+            }
+        });
+        this.add(zoomOutItem);
+        JMenuItem overviewItem = new JMenuItem("Overview");
+        overviewItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                board.setZoomLevel(BoardPanel.MAXIMUM_ZOOM_LEVEL);
+            }
+        });
+        this.add(overviewItem);
     }
     
     /***
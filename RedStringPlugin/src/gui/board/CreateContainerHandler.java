@@ -60,7 +60,8 @@ public class CreateContainerHandler extends TransferHandler {
             return false;
         }
         
-        Point dropPoint = support.getDropLocation().getDropPoint();
+        Point dropPoint = board.toBoardPoint(
+                support.getDropLocation().getDropPoint());
 
         if (support.isDataFlavorSupported(ControlPanel.DNDCONTANER_FLAVOR)) {
             BoardContainer.ContainerType type;
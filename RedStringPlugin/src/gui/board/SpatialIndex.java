@@ -0,0 +1,231 @@
+package gui.board;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Represents a spatial index of board containers (quadtree of their bounds),
+ * so containers of an area are found without checking all containers of the board.
+ * A container is kept in the smallest node that holds its whole bounds
+ */
+class SpatialIndex {
+
+    /** Number of containers a node holds before it is split */
+    private static final int NODE_CAPACITY = 16;
+
+    /** Maximum depth of the tree */
+    private static final int MAXIMUM_DEPTH = 8;
+
+    /** Root node (containers out of its bounds are kept in it too) */
+    private final Node root;
+
+    /** Entries by container id */
+    private final Map<Integer, Entry> entries;
+
+    /***
+     * Constructor
+     * @param width width of the indexed area
+     * @param height height of the indexed area
+     */
+    SpatialIndex(int width, int height) {
+        root = new Node(new Rectangle(0, 0, width, height), 0);
+        entries = new HashMap<>();
+    }
+
+    /***
+     * Adds container or changes its bounds
+     * @param id container id
+     * @param bounds container bounds
+     */
+    synchronized void put(int id, Rectangle bounds) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            if (entry.bounds.equals(bounds)) {
+                return;
+            }
+            entry.node.entries.remove(entry);
+        }
+        entry = new Entry(id, new Rectangle(bounds));
+        entries.put(id, entry);
+        root.insert(entry);
+    }
+
+    /***
+     * Removes container
+     * @param id container id
+     */
+    synchronized void remove(int id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            entry.node.entries.remove(entry);
+        }
+    }
+
+    /***
+     * Removes all containers
+     */
+    synchronized void clear() {
+        entries.clear();
+        root.entries.clear();
+        root.children = null;
+    }
+
+    /***
+     * Defines if container is indexed
+     * @param id container id
+     * @return true if container is indexed
+     */
+    synchronized boolean contains(int id) {
+        return entries.containsKey(id);
+    }
+
+    /***
+     * Finds containers that intersect the area
+     * @param area area
+     * @return ids of the containers
+     */
+    synchronized List<Integer> find(Rectangle area) {
+        List<Integer> found = new ArrayList<>();
+        root.find(area, found);
+        return found;
+    }
+
+    /***
+     * Represents an indexed container
+     */
+    private static class Entry {
+
+        /** Container id */
+        private final int id;
+
+        /** Container bounds */
+        private final Rectangle bounds;
+
+        /** Node holding the entry */
+        private Node node;
+
+        /***
+         * Constructor
+         * @param id container id
+         * @param bounds container bounds
+         */
+        Entry(int id, Rectangle bounds) {
+            this.id = id;
+            this.bounds = bounds;
+        }
+    }
+
+    /***
+     * Represents a node of the tree (empty nodes are kept, the board area is limited)
+     */
+    private static class Node {
+
+        /** Node bounds */
+        private final Rectangle bounds;
+
+        /** Node depth */
+        private final int depth;
+
+        /** Entries held by the node itself */
+        private final List<Entry> entries;
+
+        /** Quarters of the node (null if the node is not split) */
+        private Node[] children;
+
+        /***
+         * Constructor
+         * @param bounds node bounds
+         * @param depth node depth
+         */
+        Node(Rectangle bounds, int depth) {
+            this.bounds = bounds;
+            this.depth = depth;
+            entries = new ArrayList<>();
+        }
+
+        /***
+         * Inserts entry into the smallest node holding its bounds
+         * @param entry entry
+         */
+        void insert(Entry entry) {
+            Node node = this;
+            Node child;
+            while ((child = node.childHolding(entry.bounds)) != null) {
+                node = child;
+            }
+            node.entries.add(entry);
+            entry.node = node;
+            if (node.children == null && node.entries.size() > NODE_CAPACITY &&
+                    node.depth < MAXIMUM_DEPTH) {
+                node.split();
+            }
+        }
+
+        /***
+         * Finds entries that intersect the area
+         * @param area area
+         * @param found list of found container ids
+         */
+        void find(Rectangle area, List<Integer> found) {
+            for (Entry entry : entries) {
+                if (entry.bounds.intersects(area)) {
+                    found.add(entry.id);
+                }
+            }
+            if (children != null) {
+                for (Node child : children) {
+                    if (child.bounds.intersects(area)) {
+                        child.find(area, found);
+                    }
+                }
+            }
+        }
+
+        /***
+         * Splits node into quarters and moves down the entries that fit into them
+         */
+        private void split() {
+            int halfWidth = bounds.width / 2;
+            int halfHeight = bounds.height / 2;
+            children = new Node[] {
+                new Node(new Rectangle(bounds.x, bounds.y, halfWidth, halfHeight), depth + 1),
+                new Node(new Rectangle(bounds.x + halfWidth, bounds.y,
+                        bounds.width - halfWidth, halfHeight), depth + 1),
+                new Node(new Rectangle(bounds.x, bounds.y + halfHeight,
+                        halfWidth, bounds.height - halfHeight), depth + 1),
+                new Node(new Rectangle(bounds.x + halfWidth, bounds.y + halfHeight,
+                        bounds.width - halfWidth, bounds.height - halfHeight), depth + 1)
+            };
+            List<Entry> held = new ArrayList<>(entries);
+            entries.clear();
+            for (Entry entry : held) {
+                Node child = childHolding(entry.bounds);
+                if (child == null) {
+                    entries.add(entry);
+                }
+                else {
+                    child.insert(entry);
+                }
+            }
+        }
+
+        /***
+         * Finds the quarter holding the whole rectangle
+         * @param rectangle rectangle
+         * @return quarter, null if the node is not split or no quarter holds the rectangle
+         */
+        private Node childHolding(Rectangle rectangle) {
+            if (children != null) {
+                for (Node child : children) {
+                    if (child.bounds.contains(rectangle)) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
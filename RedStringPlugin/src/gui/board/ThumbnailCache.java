@@ -0,0 +1,289 @@
+package gui.board;
+
+import gui.container.ContainerPanel;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import rslib.gui.container.BoardContainer;
+import rslib.gui.container.ExternalizableContainer;
+
+/***
+ * Represents a cache of container thumbnails for the zoomed out board.
+ * Every container has mip levels (level n is the container reduced 2^n times),
+ * a level is made by halving the nearest finer level, so the container is rendered
+ * only when it has no finer level yet. Levels are made again only when the content hash
+ * of the container changes (moving a container or changing its layer keeps them).
+ * The least recently used thumbnails are dropped when the cache gets too big
+ */
+class ThumbnailCache {
+
+    /** Maximum number of cached pixels (4 bytes each) */
+    private static final long MAXIMUM_PIXELS = 1 << 24;
+
+    /** Link to board */
+    private final BoardPanel board;
+
+    /** Thumbnails by container id (in access order) */
+    private final LinkedHashMap<Integer, Thumbnail> thumbnails;
+
+    /** Ids of containers that could be changed since their content hash was checked */
+    private final Set<Integer> changed;
+
+    /** Number of cached pixels */
+    private long pixels;
+
+    /***
+     * Constructor
+     * @param board link to board
+     */
+    ThumbnailCache(BoardPanel board) {
+        this.board = board;
+        thumbnails = new LinkedHashMap<>(16, 0.75f, true);
+        changed = Collections.newSetFromMap(
+                new ConcurrentHashMap<Integer, Boolean>()); // concurrency
+    }
+
+    /***
+     * Returns container thumbnail of the level (made if needed)
+     * @param container container
+     * @param level mip level (more than 0)
+     * @param render if the container may be rendered (otherwise only a finer level is halved)
+     * @return thumbnail, null if it is not ready and the container must be rendered
+     */
+    synchronized BufferedImage get(BoardContainer container, int level, boolean render) {
+        int id = container.getComponentId();
+        Thumbnail thumbnail = thumbnails.get(id);
+        boolean stale = changed.remove(id);
+        if (thumbnail != null && stale &&
+                thumbnail.hash != contentHash(container)) {
+            drop(id);
+            thumbnail = null;
+        }
+        if (thumbnail == null) {
+            thumbnail = new Thumbnail(contentHash(container), level);
+            thumbnails.put(id, thumbnail);
+        }
+        else if (level >= thumbnail.levels.length) {
+            thumbnail.extend(level);
+        }
+        BufferedImage image = thumbnail.levels[level];
+        if (image != null) {
+            return image;
+        }
+        int finer = level - 1;
+        while (finer > 0 && thumbnail.levels[finer] == null) {
+            -- finer;
+        }
+        if (finer == 0) {
+            if (! render) {
+                return null;
+            }
+            image = render(container);
+        }
+        else {
+            image = thumbnail.levels[finer];
+        }
+        for (int i = finer; i < level; ++ i) {
+            image = halve(image);
+        }
+        thumbnail.levels[level] = image;
+        pixels += (long) image.getWidth() * image.getHeight();
+        shrink(id);
+        return image;
+    }
+
+    /***
+     * Marks container as possibly changed (its content hash will be checked)
+     * @param id container id
+     */
+    void changed(int id) {
+        changed.add(id);
+    }
+
+    /***
+     * Marks all containers as possibly changed
+     */
+    synchronized void changedAll() {
+        changed.addAll(thumbnails.keySet());
+    }
+
+    /***
+     * Removes thumbnail of container
+     * @param id container id
+     */
+    synchronized void remove(int id) {
+        drop(id);
+        changed.remove(id);
+    }
+
+    /***
+     * Removes all thumbnails
+     */
+    synchronized void clear() {
+        thumbnails.clear();
+        changed.clear();
+        pixels = 0;
+    }
+
+    /***
+     * Removes thumbnail and forgets its pixels
+     * @param id container id
+     */
+    private void drop(int id) {
+        Thumbnail thumbnail = thumbnails.remove(id);
+        if (thumbnail != null) {
+            pixels -= thumbnail.getPixels();
+        }
+    }
+
+    /***
+     * Drops the least recently used thumbnails while the cache is too big
+     * @param kept id of the container whose thumbnail is kept
+     */
+    private void shrink(int kept) {
+        List<Integer> dropped = new ArrayList<>();
+        long left = pixels;
+        for (Map.Entry<Integer, Thumbnail> entry : thumbnails.entrySet()) { // the least recent first
+            if (left <= MAXIMUM_PIXELS) {
+                break;
+            }
+            if (entry.getKey() != kept) {
+                dropped.add(entry.getKey());
+                left -= entry.getValue().getPixels();
+            }
+        }
+        for (Integer id : dropped) {
+            drop(id);
+        }
+    }
+
+    /***
+     * Calculates hash of container content (position and layer are not included)
+     * @param container container
+     * @return content hash
+     */
+    private static int contentHash(BoardContainer container) {
+        ExternalizableContainer copy = container.toExternalizable().copy();
+        copy.moveComponent(0, 0);
+        copy.setLayer(0);
+        return copy.hashCode();
+    }
+
+    /***
+     * Renders container in full size (hidden container is rendered by a temporary panel)
+     * @param container container
+     * @return rendered container
+     */
+    private BufferedImage render(BoardContainer container) {
+        int width = Math.max(1, container.getComponentWidth());
+        int height = Math.max(1, container.getComponentHeight());
+        ContainerPanel panel;
+        if (container instanceof ContainerPanel) {
+            panel = (ContainerPanel) container;
+        }
+        else {
+            panel = (ContainerPanel) board.inflateContainer((ExternalizableContainer) container);
+            panel.setSize(width, height);
+            layout(panel);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            panel.printAll(g2d); // not through the double buffer of the board
+        }
+        finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    /***
+     * Lays out component and its children (the component is not on the board)
+     * @param component component
+     */
+    private static void layout(Component component) {
+        if (component instanceof Container) {
+            Container container = (Container) component;
+            container.doLayout();
+            for (Component child : container.getComponents()) {
+                layout(child);
+            }
+        }
+    }
+
+    /***
+     * Halves image (bilinear interpolation at half size averages 2x2 pixels)
+     * @param image image
+     * @return halved image
+     */
+    private static BufferedImage halve(BufferedImage image) {
+        int width = Math.max(1, image.getWidth() / 2);
+        int height = Math.max(1, image.getHeight() / 2);
+        BufferedImage half = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = half.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(image, 0, 0, width, height, null);
+        }
+        finally {
+            g2d.dispose();
+        }
+        return half;
+    }
+
+    /***
+     * Represents mip levels of a container
+     */
+    private static class Thumbnail {
+
+        /** Content hash of the container */
+        private final int hash;
+
+        /** Levels (null if a level is not made, level 0 is never kept) */
+        private BufferedImage[] levels;
+
+        /***
+         * Constructor
+         * @param hash content hash of the container
+         * @param level the coarsest needed level
+         */
+        Thumbnail(int hash, int level) {
+            this.hash = hash;
+            levels = new BufferedImage[level + 1];
+        }
+
+        /***
+         * Makes room for coarser levels
+         * @param level the coarsest needed level
+         */
+        void extend(int level) {
+            BufferedImage[] extended = new BufferedImage[level + 1];
+            System.arraycopy(levels, 0, extended, 0, levels.length);
+            levels = extended;
+        }
+
+        /***
+         * Returns number of pixels of the made levels
+         * @return number of pixels
+         */
+        long getPixels() {
+            long result = 0;
+            for (BufferedImage image : levels) {
+                if (image != null) {
+                    result += (long) image.getWidth() * image.getHeight();
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import rslib.listeners.DisconnectListener;
 import rslib.listeners.MainClientListener;
 import org.openide.windows.TopComponent;
 import org.openide.windows.WindowManager;
+import rslib.cs.protocol.events.setup.UpdateBoardEvent;
 import rslib.gui.board.ExternalizableBoard;
 
 /***
@@ -118,6 +119,7 @@ public class BoardFrame extends TopComponent implements
                 new CC().wrap().width(sizeConstr).height("500:500:500"));
         bmPanel = new BoardMessagePanel(width);
         userClient.addBoardMessageListener(bmPanel);
+        controlPanel.setBoardMessageListener(bmPanel);
         outerGeneralPanel.add(bmPanel);
         JScrollPane outerScroll = new JScrollPane(outerGeneralPanel);
         outerScroll.setBorder(null);
@@ -168,7 +170,8 @@ public class BoardFrame extends TopComponent implements
      * Closes board frame
      */
     public void closeBoardFrame() {
-        board.getAnimationManager().stop();
+        board.close();
+        controlPanel.close();
         userClient.removeBoardListener(board);
         userClient.removeMainClientListener(board);
         userClient.removeBoardMessageListener(bmPanel);
@@ -185,7 +188,7 @@ public class BoardFrame extends TopComponent implements
      * @param eb board
      */
     public void setBoard(ExternalizableBoard eb) {
-        board.getAnimationManager().stop();
+        board.close();
         outerBoardPanel.remove(board);
         userClient.removeBoardListener(board);
         userClient.removeMainClientListener(board);
@@ -197,4 +200,13 @@ public class BoardFrame extends TopComponent implements
         controlPanel.setBoard(board);
         outerBoardPanel.revalidate();
     }
+
+    /***
+     * Updates the board (only changed containers are replaced)
+     * @param ube update board event
+     */
+    public void updateBoard(UpdateBoardEvent ube) {
+        board.updateBoard(ube.getSerializableBoard(), ube.getSerializableContainers(),
+                ube.getLayers());
+    }
 }
@@ -0,0 +1,301 @@
+package gui.board_frame.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import rslib.gui.board.BoardFile;
+import rslib.gui.board.ExternalizableBoard;
+import rslib.listeners.BoardMessageListener;
+import rslib.listeners.ProgressListener;
+
+/***
+ * Represents a service that saves and opens board files on a worker thread,
+ * so the IDE is not frozen by big boards. Progress is shown in the board messages,
+ * the running operation can be cancelled. All methods are called by the event dispatch thread
+ */
+public class BoardFileService {
+
+    /** Progress is shown every this number of percents */
+    private static final int PROGRESS_STEP = 10;
+
+    /***
+     * Represents a listener of finished operations (called by the event dispatch thread)
+     */
+    public interface BoardFileListener {
+
+        /***
+         * Hears saved board
+         * @param file board file
+         */
+        public void hearSaved(File file);
+
+        /***
+         * Hears opened board
+         * @param file board file
+         * @param board board
+         */
+        public void hearOpened(File file, ExternalizableBoard board);
+    }
+
+    /** Worker thread */
+    private final ExecutorService worker;
+
+    /** Listener of finished operations */
+    private final BoardFileListener listener;
+
+    /** Listener of board messages (null if messages are not shown) */
+    private BoardMessageListener messageListener;
+
+    /** Running operation (null if nothing is running) */
+    private Operation operation;
+
+    /** Result of running operation */
+    private Future<?> future;
+
+    /***
+     * Constructor
+     * @param listener listener of finished operations
+     */
+    public BoardFileService(BoardFileListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("BoardFileService: listener is null!");
+        }
+        this.listener = listener;
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "board-file");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void setMessageListener(BoardMessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /***
+     * Defines if some operation is running
+     * @return true if board is being saved or opened
+     */
+    public boolean isWorking() {
+        return operation != null;
+    }
+
+    /***
+     * Returns name of running operation
+     * @return operation name, null if nothing is running
+     */
+    public String getOperationName() {
+        return operation == null ? null : operation.name;
+    }
+
+    /***
+     * Saves board (the board must not be changed while it is saved)
+     * @param board board
+     * @param file file
+     * @throws IllegalStateException if other operation is running
+     */
+    public void save(final ExternalizableBoard board, final File file)
+            throws IllegalStateException {
+        start(new Operation("Saving board " + file.getName(), "Error while saving board!") {
+            @Override
+            protected Runnable work(ProgressListener progress) throws IOException {
+                BoardFile.write(board, file, progress);
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.hearSaved(file);
+                    }
+                };
+            }
+        });
+    }
+
+    /***
+     * Opens board
+     * @param file file
+     * @throws IllegalStateException if other operation is running
+     */
+    public void open(final File file) throws IllegalStateException {
+        start(new Operation("Opening board " + file.getName(), "Error while opening board!") {
+            @Override
+            protected Runnable work(ProgressListener progress)
+                    throws IOException, ClassNotFoundException {
+                final ExternalizableBoard board = BoardFile.read(file, progress);
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.hearOpened(file, board);
+                    }
+                };
+            }
+        });
+    }
+
+    /***
+     * Cancels running operation (the saved file is not changed then)
+     */
+    public void cancel() {
+        if (operation != null) {
+            future.cancel(true);
+            showMessage(operation.name + ": cancelled");
+            operation = null;
+            future = null;
+        }
+    }
+
+    /***
+     * Stops worker thread (running operation is cancelled)
+     */
+    public void shutdown() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    /***
+     * Starts operation
+     * @param newOperation operation
+     * @throws IllegalStateException if other operation is running
+     */
+    private void start(Operation newOperation) throws IllegalStateException {
+        if (operation != null) {
+            throw new IllegalStateException(operation.name + " is not finished yet!");
+        }
+        operation = newOperation;
+        showMessage(newOperation.name + "...");
+        future = worker.submit(newOperation);
+    }
+
+    /***
+     * Shows board message
+     * @param message message
+     */
+    private void showMessage(String message) {
+        if (messageListener != null) {
+            messageListener.hearMessage(message);
+        }
+    }
+
+    /***
+     * Represents an operation with a board file: the work is done by the worker thread,
+     * the result is handled by the event dispatch thread if the operation was not cancelled
+     */
+    private abstract class Operation implements Runnable {
+
+        /** Operation name */
+        private final String name;
+
+        /** Message shown if operation failed */
+        private final String errorMessage;
+
+        /** Last shown percents */
+        private int shownPercents;
+
+        /***
+         * Constructor
+         * @param name operation name
+         * @param errorMessage message shown if operation failed
+         */
+        Operation(String name, String errorMessage) {
+            this.name = name;
+            this.errorMessage = errorMessage;
+        }
+
+        /***
+         * Does the work (called by the worker thread)
+         * @param progress progress listener
+         * @return action with the result (called by the event dispatch thread)
+         * @throws IOException if something went wrong
+         * @throws ClassNotFoundException if file is wrong
+         */
+        protected abstract Runnable work(ProgressListener progress)
+                throws IOException, ClassNotFoundException;
+
+        @Override
+        public void run() {
+            try {
+                final Runnable result = work(new ProgressListener() {
+                    @Override
+                    public void hearProgress(long done, long total) {
+                        showProgress(total == 0 ? 100 : (int) (done * 100 / total));
+                    }
+                });
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finish(": done")) {
+                            result.run();
+                        }
+                    }
+                });
+            }
+            catch (InterruptedIOException ex) {
+                // cancelled, the message is already shown
+            }
+            catch (IOException | ClassNotFoundException ex) {
+                fail(ex.getMessage());
+            }
+            catch (RuntimeException ex) { // wrong data of the file (wrong casts, lengths and so on)
+                fail(ex.toString());
+            }
+        }
+
+        /***
+         * Finishes failed operation and shows error (called by the worker thread)
+         * @param message failure message
+         */
+        private void fail(final String message) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (finish(": " + message)) {
+                        JOptionPane.showMessageDialog(null, errorMessage, "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            });
+        }
+
+        /***
+         * Shows progress every PROGRESS_STEP percents (called by the worker thread)
+         * @param percents done percents
+         */
+        private void showProgress(final int percents) {
+            if (percents - shownPercents < PROGRESS_STEP) {
+                return;
+            }
+            shownPercents = percents;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (operation == Operation.this) {
+                        showMessage(name + ": " + percents + "%");
+                    }
+                }
+            });
+        }
+
+        /***
+         * Finishes operation (called by the event dispatch thread)
+         * @param status status shown in board messages
+         * @return true if operation is finished, false if it was cancelled
+         */
+        private boolean finish(String status) {
+            if (operation != this) {
+                return false;
+            }
+            showMessage(name + status);
+            operation = null;
+            future = null;
+            return true;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import rslib.cs.protocol.events.board.board.ChangeSyncModeEvent;
 import rslib.cs.protocol.events.board.board.SendHashEvent;
 import rslib.commands.Command;
 import rslib.commands.UndoRedo;
+import rslib.gui.BasicComponent;
 
 /** Represents a panel that controls UndoRedo facility */
 public class CommandFacade {
@@ -149,6 +150,17 @@ public class CommandFacade {
         return true;
     }
     
+    /***
+     * Checks if the user can modify the component
+     * @param component component
+     * @return if the user has rights and the component is not blocked by another user
+     */
+    public boolean checkRights(BasicComponent component) {
+        return userClient.checkBoardRights(component.getComponentStatus(), 
+                component.getComponentOwner()) && (! component.isBlocked() || 
+                userClient.getUsername().equals(component.getBlockOwner()));
+    }
+    
     /***
      * Clear undo redo history 
      */
@@ -187,7 +199,7 @@ public class CommandFacade {
      * @param username point author
      */
     public void point(int hash, int x, int y, String username) {
-        userClient.addBoardEvent(new PointEvent(hash, x, y, username));
+        userClient.addEphemeralEvent(new PointEvent(hash, x, y, username));
     }
     
     /***
@@ -8,11 +8,6 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import javax.swing.JButton; 
 import javax.swing.JComponent;
@@ -31,6 +26,7 @@ import rslib.commands.board.SetBoardCommand;
 import rslib.commands.common.ResizeCommand;
 import rslib.gui.board.ExternalizableBoard;
 import rslib.gui.container.BoardContainer;
+import rslib.listeners.BoardMessageListener;
 import rslib.listeners.MainClientListener;
 
 /***
@@ -63,6 +59,9 @@ public class ControlPanel extends JPanel implements MainClientListener {
     /** Buttons except the point mode button */
     private ArrayList<JComponent> components;
     
+    /** Service that saves and opens boards in background */
+    private BoardFileService boardFileService;
+    
     static {
         try {
             DNDCONTANER_FLAVOR = new DataFlavor(DataFlavor.javaJVMLocalObjectMimeType 
@@ -93,6 +92,21 @@ public class ControlPanel extends JPanel implements MainClientListener {
         userClient.addMainClientListener(settingsFrame);
         userClient.addDisconnectListener(settingsFrame);
         components = new ArrayList<>();
+        boardFileService = new BoardFileService(
+                new BoardFileService.BoardFileListener() {
+            @Override
+            public void hearSaved(File file) {
+                JOptionPane.showMessageDialog(null, 
+                        "Board was saved successfully!", "Info", 
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+
+            @Override
+            public void hearOpened(File file, ExternalizableBoard newBoard) {
+                ControlPanel.this.commandFacade.doCommand(new SetBoardCommand(
+                        ControlPanel.this.board, newBoard), true);
+            }
+        });
         initComponents();
     }
     
@@ -131,6 +145,9 @@ public class ControlPanel extends JPanel implements MainClientListener {
         buttonOpen.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (askCancelBoardFile()) {
+                    return;
+                }
                 fileChooser.setSelectedFile(new File(""));
                 int result = fileChooser.showOpenDialog(null);
                 if (result == JFileChooser.APPROVE_OPTION) {
@@ -138,11 +155,7 @@ public class ControlPanel extends JPanel implements MainClientListener {
                     if (! file.getName().toLowerCase().endsWith(".brd")) {
                         file = new File(file.getAbsolutePath() + ".brd");
                     }
-                    ExternalizableBoard newBoard = readBoardFromFile(file);
-                    if (newBoard != null) {
-                        commandFacade.doCommand(new SetBoardCommand(board, 
-                                newBoard), true);
-                    }
+                    boardFileService.open(file);
                 }
                 fileChooser.setSelectedFile(null);
             }
@@ -158,6 +171,9 @@ public class ControlPanel extends JPanel implements MainClientListener {
         buttonSave.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (askCancelBoardFile()) {
+                    return;
+                }
                 fileChooser.setSelectedFile(new File(""));
                 int result = fileChooser.showSaveDialog(null);
                 if (result == JFileChooser.APPROVE_OPTION) {
@@ -165,11 +181,7 @@ public class ControlPanel extends JPanel implements MainClientListener {
                     if (! file.getName().toLowerCase().endsWith(".brd")) {
                         file = new File(file.getAbsolutePath() + ".brd");
                     }
-                    if (writeBoardToFile(file)) {
-                        JOptionPane.showMessageDialog(null, 
-                                "Board was saved successfully!", "Info", 
-                                JOptionPane.INFORMATION_MESSAGE);
-                    }
+                    boardFileService.save(board.toExternalizable(), file);
                 }
                 fileChooser.setSelectedFile(null);
             }
@@ -377,66 +389,35 @@ public class ControlPanel extends JPanel implements MainClientListener {
     }   
     
     /***
-     * Writes board to file
-     * @param file file
-     * @return if board was saved successfully
+     * Offers to cancel running board saving or opening
+     * @return true if some operation is running (cancelled or not), false otherwise
      */
-    private boolean writeBoardToFile(File file) {
-        ObjectOutputStream oos = null;
-        FileOutputStream fout;
-        boolean success = false;
-        try {
-            fout = new FileOutputStream(file, false);
-            oos = new ObjectOutputStream(fout);
-            oos.writeObject(board.toExternalizable());
-            success = true;
-        } 
-        catch (IOException ex) {
-            JOptionPane.showMessageDialog(null, "Error while saving board!", 
-                    "Error", JOptionPane.ERROR);
+    private boolean askCancelBoardFile() {
+        if (! boardFileService.isWorking()) {
+            return false;
         }
-        finally {
-            if (oos != null) {
-                try {
-                    oos.close();
-                }
-                catch (IOException ex1) {
-                    
-                }
-            } 
+        int answer = JOptionPane.showConfirmDialog(null, 
+                boardFileService.getOperationName() + " is not finished yet. Cancel it?", 
+                "Board file", JOptionPane.YES_NO_OPTION);
+        if (answer == JOptionPane.YES_OPTION) {
+            boardFileService.cancel();
         }
-        return success;
+        return true;
     }
-    
+
     /***
-     * Reads board from file
-     * @param file file
-     * @return board or null in case of error
+     * Sets listener that shows progress of board saving and opening
+     * @param listener board message listener
      */
-    private ExternalizableBoard readBoardFromFile(File file) {
-        ObjectInputStream ois = null;
-        FileInputStream fin;
-        ExternalizableBoard newBoard = null;
-        try {
-            fin = new FileInputStream(file);
-            ois = new ObjectInputStream(fin);
-            newBoard = (ExternalizableBoard) ois.readObject();
-        } 
-        catch (IOException | ClassNotFoundException ex) {
-            JOptionPane.showMessageDialog(null, "Error while opening board!", 
-                    "Error", JOptionPane.ERROR);
-        }
-        finally {
-            if (ois != null) {
-                try {
-                    ois.close();
-                }
-                catch (IOException ex1) {
-                    
-                }
-            } 
-        }
-        return newBoard;
+    public void setBoardMessageListener(BoardMessageListener listener) {
+        boardFileService.setMessageListener(listener);
+    }
+
+    /***
+     * Stops board saving or opening (when the board frame is closed)
+     */
+    public void close() {
+        boardFileService.shutdown();
     }
 
     public void setBoard(BoardPanel board) {
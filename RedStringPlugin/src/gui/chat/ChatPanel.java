@@ -31,6 +31,7 @@ import rslib.cs.protocol.events.main_client.ChangeLobbyNameEvent;
 import rslib.cs.protocol.events.setup.BoardRequest;
 import rslib.cs.protocol.events.setup.CloseBoardEvent;
 import rslib.cs.protocol.events.setup.SetBoardEvent;
+import rslib.cs.protocol.events.setup.UpdateBoardEvent;
 import rslib.cs.protocol.events.setup.SetupEvent;
 import rslib.gui.board.InteractiveBoard;
 import rslib.listeners.MainClientListener;
@@ -332,6 +333,19 @@ public class ChatPanel extends TopComponent implements DisconnectListener,
                 );
                 break;
             }
+            case UPDATE_BOARD_E: {
+                final UpdateBoardEvent ube = (UpdateBoardEvent) se;
+                WindowManager.getDefault().invokeWhenUIReady(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (boardFrame != null) {
+                            boardFrame.updateBoard(ube);
+                        }
+                    }
+                }
+                );
+                break;
+            }
             case DELETE_BOARD_E: {
                 JOptionPane.showMessageDialog(null, "Board was closed!");
                 WindowManager.getDefault().invokeWhenUIReady(new Runnable() {
@@ -11,10 +11,12 @@ import gui.parsing.Parsing;
 import gui.util.ColorScheme;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.KeyboardFocusManager;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -26,6 +28,7 @@ import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.ToolTipManager;
 import rslib.cs.common.Status;
 import rslib.gui.container.BoardContainer;
@@ -517,6 +520,74 @@ public abstract class ContainerPanel extends JPanel implements
     public final void setBounds(int x, int y, int width, int height) {
         super.setBounds(x, y, width, height); 
         revalidate();
+        board.containerMoved(this);
+    }
+    
+    /***
+     * Defines if the container can be replaced by its saved data when it is 
+     * scrolled out of view
+     * @return true if the container is not blocked, focused or animated
+     */
+    public boolean isDetachable() {
+        Component focusOwner = KeyboardFocusManager.
+                getCurrentKeyboardFocusManager().getFocusOwner();
+        return ! blocked && animations.isEmpty() && (focusOwner == null ||
+                ! SwingUtilities.isDescendingFrom(focusOwner, this));
+    }
+    
+    /***
+     * Binds the detached panel to another container of the same type, so panels
+     * scrolled out of view are reused for the containers scrolled into view
+     * (only the changed appearance is set, creating a panel costs much more)
+     * @param ec saved data
+     */
+    public void bind(ExternalizableContainer ec) {
+        if (ec.getType() != type) {
+            throw new IllegalArgumentException("ContainerPanel: "
+                    + "wrong container type!");
+        }
+        id = ec.getComponentId();
+        owner = ec.getComponentOwner();
+        status = ec.getComponentStatus();
+        layer = ec.getLayer();
+        minimumWidth = ec.getComponentMinimumWidth();
+        minimumHeight = ec.getComponentMinimumHeight();
+        maximumWidth = ec.getComponentMaximumWidth();
+        maximumHeight = ec.getComponentMaximumHeight();
+        if (complexPainting != board.isComplexPainting()) {
+            setComplexPainting(board.isComplexPainting());
+        }
+        if (! name.equals(ec.getComponentName())) {
+            setComponentName(ec.getComponentName());
+        }
+        if (! getComponentFont().equals(ec.getComponentFont())) {
+            setComponentFont(ec.getComponentFont());
+        }
+        if (! getComponentForeground().equals(ec.getComponentForeground())) {
+            setComponentForeground(ec.getComponentForeground());
+        }
+        if (opaque != ec.isComponentOpaque()) {
+            setComponentOpaque(ec.isComponentOpaque());
+        }
+        if (! getComponentBackground().equals(ec.getComponentBackground())) {
+            setComponentBackground(new ColorModel(
+                    ec.getComponentBackground().getRgba()));
+            setBackground(Parsing.createColor(ec.getComponentBackground()));
+        }
+        if (blocked || ec.isBlocked()) {
+            setBlocked(ec.isBlocked(), ec.getBlockOwner());
+        }
+        setBounds(ec.getComponentLeft(), ec.getComponentTop(),
+                ec.getComponentWidth(), ec.getComponentHeight());
+        bindContent(ec);
+    }
+    
+    /***
+     * Sets content of the container the panel is bound to
+     * @param ec saved data
+     */
+    protected void bindContent(ExternalizableContainer ec) {
+        setContent(ec);
     }
     
     @Override
@@ -6,14 +6,18 @@ import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.HashMap;
 import java.util.Map;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import rslib.commands.common.ChangeBlockCommand;
 import rslib.commands.common.MoveCommand;
 import rslib.commands.common.ResizeCommand;
+import rslib.cs.common.ConnectConfiguration;
 
 /***
  * Represents a listener that allows 
@@ -50,6 +54,12 @@ public class MoveResizeListener extends MouseAdapter {
     
     /** New container bounds */
     private Rectangle newBounds;
+    
+    /** Container bounds sent while dragging (null if nothing was sent) */
+    private Rectangle sentBounds;
+    
+    /** Timer of sending bounds while dragging (other users see the dragging) */
+    private final Timer streamTimer;
 
     /** Source cursor */
     private Cursor sourceCursor;
@@ -113,6 +123,13 @@ public class MoveResizeListener extends MouseAdapter {
         this.board = board;
         this.commandFacade = commandFacade;
         containerShadow = new ContainerShadow(container);
+        streamTimer = new Timer(1000 / ConnectConfiguration.DRAG_STREAM_RATE, 
+                new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                streamBounds();
+            }
+        });
         dragged = false;
         wasBlocked = false;
         fastChanging = false;
@@ -203,6 +220,8 @@ public class MoveResizeListener extends MouseAdapter {
             board.setLayer(containerShadow, container.getLayer(), BoardPanel.SHADOW_POSITION);
             board.add(containerShadow);
             dragged = true;
+            sentBounds = null;
+            streamTimer.start();
         }
         Point current  = e.getPoint();
         SwingUtilities.convertPointToScreen(current, container);
@@ -223,20 +242,23 @@ public class MoveResizeListener extends MouseAdapter {
        // Because of event speed
        boolean wasDragged = dragged;
        dragged = false;
+       streamTimer.stop();
        cancelProcessing();
        if (wasDragged && ! container.isBlocked()) {
            container.setBlocked(true, commandFacade.getUsername());
            fastChanging = true;
        }
-       if (! oldBounds.equals(newBounds)) {
+       if (! oldBounds.equals(newBounds) || sentBounds != null) {
             if (moving) {
                  moving = false;
                  commandFacade.doCommand(new MoveCommand(board, container, 
-                 newBounds.x, newBounds.y, ! wasBlocked), true);
+                 oldBounds.x, oldBounds.y, newBounds.x, newBounds.y, 
+                 ! wasBlocked), true);
             }
              else {
                  resizing = false;
                  commandFacade.doCommand(new ResizeCommand(board, container, 
+                 oldBounds.x, oldBounds.y, oldBounds.width, oldBounds.height,
                  newBounds.x, newBounds.y, newBounds.width, newBounds.height,
                  ! wasBlocked), true);
                  if (fastChanging && ! wasBlocked) {
@@ -255,12 +277,34 @@ public class MoveResizeListener extends MouseAdapter {
        }
        oldBounds = null;
        newBounds = null;
+       sentBounds = null;
        pressed = null;
        sourceCursor = null;
        wasBlocked = false;
        fastChanging = false;
     }
     
+    /***
+     * Sends current bounds while dragging (if they were changed since the last sending),
+     * the final ones are sent on release by an undoable command
+     */
+    private void streamBounds() {
+        if (! dragged || newBounds == null || newBounds.equals(sentBounds == null ? 
+                oldBounds : sentBounds)) {
+            return;
+        }
+        sentBounds = new Rectangle(newBounds);
+        if (moving) {
+            commandFacade.doCommand(new MoveCommand(board, container, 
+                    sentBounds.x, sentBounds.y, false), false);
+        }
+        else {
+            commandFacade.doCommand(new ResizeCommand(board, container, 
+                    sentBounds.x, sentBounds.y, sentBounds.width, 
+                    sentBounds.height, false), false);
+        }
+    }
+    
     /***
      * Moves the container to current point
      * @param current current point
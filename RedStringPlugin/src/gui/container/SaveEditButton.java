@@ -10,6 +10,7 @@ import java.awt.geom.GeneralPath;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import javax.swing.JOptionPane;
 import rslib.commands.common.ChangeBlockCommand;
 
 /***
@@ -49,8 +50,19 @@ public abstract class SaveEditButton extends ContainerIconButton {
             @Override
             public void actionPerformed(ActionEvent e) {
                 if (state) {
-                    if (commandFacade.doCommand(
-                            new ChangeBlockCommand(board, container, true), false)) {
+                    boolean allowed;
+                    if (isBlocking()) {
+                        allowed = commandFacade.doCommand(
+                            new ChangeBlockCommand(board, container, true), false);
+                    }
+                    else {
+                        allowed = commandFacade.checkRights(container);
+                        if (! allowed) {
+                            JOptionPane.showMessageDialog(board, 
+                                    "You can not edit this container!");
+                        }
+                    }
+                    if (allowed) {
                         state = false;
                         editActions();
                         createIcon(container.getForeground(), container.isComponentOpaque());
@@ -60,8 +72,10 @@ public abstract class SaveEditButton extends ContainerIconButton {
                     state = true;
                     saveActions();
                     createIcon(container.getForeground(), container.isComponentOpaque());
-                    commandFacade.doCommand(
-                            new ChangeBlockCommand(board, container, false), false);
+                    if (isBlocking()) {
+                        commandFacade.doCommand(
+                                new ChangeBlockCommand(board, container, false), false);
+                    }
                 }
             }
         });
@@ -69,6 +83,22 @@ public abstract class SaveEditButton extends ContainerIconButton {
         createIcon(container.getForeground(), container.isComponentOpaque());
     }
     
+    /***
+     * Defines if the container is edited now
+     * @return true if the button saves the container
+     */
+    public boolean isEditing() {
+        return ! state;
+    }
+    
+    /***
+     * Defines if the container is blocked while it is edited
+     * @return true if other users can not edit the container at the same time
+     */
+    protected boolean isBlocking() {
+        return true;
+    }
+    
     /***
      * Does edit actions
      */
@@ -28,8 +28,8 @@ public class DownloadButton extends ContainerIconButton {
     /** Link to file panel */
     private final FilePanel filePanel;
     
-    /** File chooser */
-    private final JFileChooser fc;
+    /** File chooser (created by the first download, it is costly to create) */
+    private JFileChooser fc;
     
     /** Icon paths */
     private final List<GeneralPath> downloadIcon;
@@ -48,7 +48,6 @@ public class DownloadButton extends ContainerIconButton {
         }
         this.filePanel = filePanel;
         downloadIcon = new ArrayList<>();
-        fc = new JFileChooser();
         initComponents();
     }
     
@@ -67,6 +66,9 @@ public class DownloadButton extends ContainerIconButton {
                 }
                 if (commandFacade.doCommand(
                             new ChangeBlockCommand(board, container, true), false)) {
+                    if (fc == null) {
+                        fc = new JFileChooser();
+                    }
                     int value = fc.showSaveDialog(container);
                     if (value != JFileChooser.APPROVE_OPTION) {
                         commandFacade.doCommand(
@@ -30,6 +30,9 @@ public class FileIconLabel extends AnimatableLabel {
     /** Icon paths */
     private List<GeneralPath> fileIcon;
     
+    /** Color of the icon (null if the icon is empty) */
+    private Color iconColor;
+    
     /***
      * Constructor
      * @param panel link to panel 
@@ -60,8 +63,15 @@ public class FileIconLabel extends AnimatableLabel {
      * @param color icon color 
      */
     public void createIcon(Color color) {
-       BufferedImage ic = createTransparentIcon();
-       if (color == null) {
+        if (color != null && panel.getFile() == null) {
+            color = null; // nothing is drawn
+        }
+        if (icon != null && (color == null ? iconColor == null : color.equals(iconColor))) {
+            return; // the same icon (panels are rebound when they are reused)
+        }
+        iconColor = color;
+        BufferedImage ic = createTransparentIcon();
+        if (color == null) {
             icon = ic;
             return;
         }
@@ -69,13 +79,12 @@ public class FileIconLabel extends AnimatableLabel {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                     RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setColor(color);
-        if (panel.getFile() != null) { 
-            for (GeneralPath path : fileIcon) {
-                g2d.fill(path);
-                g2d.draw(path);
-            }
-        }     
-        icon = ic; 
+        for (GeneralPath path : fileIcon) {
+            g2d.fill(path);
+            g2d.draw(path);
+        }
+        g2d.dispose();
+        icon = ic;
     }
     
     /***
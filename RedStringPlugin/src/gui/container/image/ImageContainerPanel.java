@@ -41,6 +41,12 @@ public class ImageContainerPanel extends ContainerPanel
     /** Edit save button */
     private ImageSaveEditButton saveEditButton;
     
+    /** Image model of the shown image (null if it must be converted again) */
+    private ImageModel imageModel;
+    
+    /** Pixels of the shown image the model was made of */
+    private BufferedImage imageModelSource;
+    
     /***
      * Constructor
      * @param type container type
@@ -88,6 +94,7 @@ public class ImageContainerPanel extends ContainerPanel
                 Parsing.createImage(eic.getImage()));
         slider = new ImageScaleSlider(this, paintPanel);
         initComponents();
+        cacheImage(eic.getImage());
     }
     
     /***
@@ -180,6 +187,7 @@ public class ImageContainerPanel extends ContainerPanel
     public void setImage(ImageModel im) {
         paintPanel.setImage(Parsing.createImage(im));
         setSliderScale(paintPanel.getScale());
+        cacheImage(im);
     }
     
     //TODO: remove
@@ -189,12 +197,54 @@ public class ImageContainerPanel extends ContainerPanel
 
     @Override
     public ImageModel getImage() {
-        return Parsing.convertToImageModel(paintPanel.getImage());
+        BufferedImageModel image = paintPanel.getImage();
+        if (saveEditButton == null || saveEditButton.isEditing()) { // pixels are drawn in place
+            return Parsing.convertToImageModel(image);
+        }
+        if (! isCached(image)) {
+            imageModel = Parsing.convertToImageModel(image);
+            imageModelSource = image != null ? image.getImage() : null;
+        }
+        return imageModel;
+    }
+    
+    /***
+     * Remembers model of the shown image, so its pixels are not converted
+     * and hashed again
+     * @param im image model (null if there is no image)
+     */
+    private void cacheImage(ImageModel im) {
+        BufferedImageModel image = paintPanel.getImage();
+        imageModel = im;
+        imageModelSource = image != null ? image.getImage() : null;
+    }
+    
+    /***
+     * Checks if the cached image model is the model of the shown image
+     * @param image shown image
+     * @return true if the cached model can be used, false otherwise
+     */
+    private boolean isCached(BufferedImageModel image) {
+        if (image == null || imageModel == null) {
+            return image == null && imageModel == null;
+        }
+        return image.getImage() == imageModelSource && image.getScale() == imageModel.getScale() &&
+                image.gethOffset() == imageModel.gethOffset() &&
+                image.getvOffset() == imageModel.getvOffset();
+    }
+    
+    /***
+     * Forgets the cached image model (pixels of the shown image are going to be drawn)
+     */
+    void imageChanged() {
+        imageModel = null;
+        imageModelSource = null;
     }
    
     @Override
     public void clearContainer() {
         paintPanel.setImage(null);
+        imageChanged();
     }
 
     @Override
@@ -202,6 +252,11 @@ public class ImageContainerPanel extends ContainerPanel
         setImage(((ExternalizableImageContainer) ec).getImage());
     }
     
+    @Override
+    public boolean isDetachable() {
+        return super.isDetachable() && ! saveEditButton.isEditing();
+    }
+    
     @Override
     public ExternalizableContainer toExternalizable() {
         return new ExternalizableImageContainer(getComponentOwner(), 
@@ -5,6 +5,8 @@ import gui.container.ContainerPanel;
 import gui.container.SaveEditButton;
 import gui.parsing.Parsing;
 import rslib.commands.container.image.ChangeImageCommand;
+import rslib.commands.container.image.PatchImageCommand;
+import rslib.gui.container.image.ImageModel;
 
 /***
  * Represents an image save edit button
@@ -19,6 +21,9 @@ public class ImageSaveEditButton extends SaveEditButton {
     
     /** Old image */
     private BufferedImageModel oldImage;
+    
+    /** Old image pixels (the old image itself is drawn on) */
+    private ImageModel oldModel;
 
     /***
      * Constructor
@@ -48,7 +53,9 @@ public class ImageSaveEditButton extends SaveEditButton {
     protected void editActions() {
         super.editActions();
         BufferedImageModel original = paintPanel.getImage();
+        ((ImageContainerPanel) container).imageChanged();
         oldImage = original;
+        oldModel = Parsing.convertToImageModel(original);
         /*if (original == null) {
             oldImage = original;
         }
@@ -73,9 +80,17 @@ public class ImageSaveEditButton extends SaveEditButton {
         if (! (newImage == null && oldImage == null) 
             || (newImage != null && ! newImage.equals(oldImage))) { 
             paintPanel.setImage(oldImage);
-            commandFacade.doCommand(new ChangeImageCommand(board, 
-                    (ImageContainerPanel)container, 
-                    Parsing.convertToImageModel(newImage)), true);
+            ImageModel newModel = Parsing.convertToImageModel(newImage);
+            if (isPatch(oldModel, newModel)) {
+                // only drawn pixels are sent
+                commandFacade.doCommand(new PatchImageCommand(board, 
+                        (ImageContainerPanel)container, oldModel, newModel), 
+                        true);
+            }
+            else {
+                commandFacade.doCommand(new ChangeImageCommand(board, 
+                        (ImageContainerPanel)container, newModel), true);
+            }
         }
         
         paintPanel.setPaintMouseListener(false);
@@ -83,5 +98,22 @@ public class ImageSaveEditButton extends SaveEditButton {
         paintPanel.setMouseScrollListener(true);
         slider.changeAppearance(false);
         oldImage = null;
+        oldModel = null;
     } 
+    
+    /***
+     * Defines if new image differs from the old one only in pixels
+     * @param oldModel old image
+     * @param newModel new image
+     * @return true if image can be patched, false otherwise
+     */
+    private boolean isPatch(ImageModel oldModel, ImageModel newModel) {
+        return oldModel != null && newModel != null 
+                && oldModel.getWidth() == newModel.getWidth()
+                && oldModel.getHeight() == newModel.getHeight()
+                && oldModel.getScale() == newModel.getScale()
+                && oldModel.gethOffset() == newModel.gethOffset()
+                && oldModel.getvOffset() == newModel.getvOffset()
+                && ! oldModel.equals(newModel);
+    }
 }
\ No newline at end of file
@@ -24,10 +24,19 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import javax.swing.Box;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import rslib.commands.container.text.ChangeTextCommand;
+import rslib.commands.container.text.EditTextCommand;
+import rslib.cs.protocol.events.board.container.text.EditTextEvent;
 import rslib.gui.container.ExternalizableContainer;
 import rslib.gui.container.text.ExternalizableTextContainer;
 import rslib.gui.container.text.TextContainer;
+import rslib.gui.container.text.TextOperation;
+import rslib.gui.container.text.TextSynchronizer;
 import rslib.gui.style.ColorModel;
 import rslib.gui.style.FontModel;
 
@@ -45,6 +54,12 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
     /** Edit save button */
     private TextSaveEditButton saveEditButton;
     
+    /** Synchronizer of text edits (used in event dispatch thread) */
+    private TextSynchronizer synchronizer;
+    
+    /** If the text area is changed by the board, not by the user */
+    private boolean applying;
+    
     /***
      * Constructor
      * @param type container type
@@ -77,6 +92,7 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
         super(type, owner, id, board, origin);
         textArea = new ContainerTextArea();
         initComponents();
+        initSynchronizer(0);
     }
     
     /***
@@ -90,6 +106,7 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
         textArea = new ContainerTextArea();
         textArea.setText(etc.getText());
         initComponents();
+        initSynchronizer(etc.getTextRevision());
     }
     
     /***
@@ -120,6 +137,145 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
         initFeatures();
     }
     
+    /***
+     * Initializes text edit synchronization
+     * @param revision text revision
+     */
+    private void initSynchronizer(int revision) {
+        synchronizer = new TextSynchronizer(revision) {
+            @Override
+            protected void send(int revision, TextOperation operation) {
+                board.getCommandFacade().doCommand(new EditTextCommand(board,
+                        TextContainerPanel.this, revision, operation), false);
+            }
+
+            @Override
+            protected void apply(TextOperation operation) {
+                applyOperation(operation);
+            }
+        };
+        textArea.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                if (applying || ! textArea.isEditable()) {
+                    return;
+                }
+                int length = e.getDocument().getLength();
+                try {
+                    String text = e.getDocument().getText(e.getOffset(), e.getLength());
+                    localEdit(TextOperation.insert(length - e.getLength(), 
+                            e.getOffset(), text));
+                }
+                catch (BadLocationException ex) {
+                    // ???
+                }
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                if (applying || ! textArea.isEditable()) {
+                    return;
+                }
+                int length = e.getDocument().getLength();
+                localEdit(TextOperation.delete(length + e.getLength(), 
+                        e.getOffset(), e.getLength()));
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+    
+    /***
+     * Handles text edit of the user
+     * @param operation edit operation
+     */
+    private void localEdit(TextOperation operation) {
+        synchronizer.applyLocal(operation);
+        board.containerChanged(getComponentId());
+    }
+    
+    /***
+     * Applies text edit of another user to the text area (caret stays in its place)
+     * @param operation edit operation
+     */
+    private void applyOperation(TextOperation operation) {
+        Document document = textArea.getDocument();
+        applying = true;
+        try {
+            int position = 0;
+            for (Object component : operation.getComponents()) {
+                if (component instanceof String) {
+                    String text = (String) component;
+                    document.insertString(position, text, null);
+                    position += text.length();
+                }
+                else {
+                    int count = (Integer) component;
+                    if (count > 0) {
+                        position += count;
+                    }
+                    else {
+                        document.remove(position, - count);
+                    }
+                }
+            }
+        }
+        catch (BadLocationException e) {
+            // texts differ: take the whole text from the next update
+            board.containerChanged(getComponentId());
+        }
+        finally {
+            applying = false;
+        }
+    }
+    
+    /***
+     * Handles edit text event
+     * @param event edit text event
+     */
+    public void editText(final EditTextEvent event) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (event.getUsername().equals(board.getUsername())) {
+                    synchronizer.acknowledge();
+                }
+                else {
+                    synchronizer.applyServer(event.getOperation());
+                }
+                board.containerChanged(getComponentId());
+            }
+        });
+    }
+    
+    /***
+     * Replaces the whole text (local edits that are not acknowledged are dropped)
+     * @param text new text, null to append
+     * @param append text to append
+     */
+    private void replaceText(final String text, final String append) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                applying = true;
+                try {
+                    if (text != null) {
+                        textArea.setText(text);
+                    }
+                    else {
+                        textArea.append(append);
+                    }
+                }
+                finally {
+                    applying = false;
+                }
+                synchronizer.reset(synchronizer.getRevision() + 1);
+            }
+        });
+    }
+    
     @Override
     public int getFreeHeight() {
         return super.getFreeHeight() - saveEditButton.getHeight() 
@@ -213,12 +369,12 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
     
     @Override
     public void setText(String string) {
-        textArea.setText(string);
+        replaceText(string, null);
     }
 
     @Override
     public void appendText(String string) {
-        textArea.append(string);
+        replaceText(null, string);
     }
 
     @Override
@@ -228,12 +384,38 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
 
     @Override
     public void clearContainer() {
-        textArea.setText("");
+        replaceText("", null);
     }
 
     @Override
     public void setContent(ExternalizableContainer ec) {
-        textArea.setText(((ExternalizableTextContainer) ec).getText());
+        replaceText(((ExternalizableTextContainer) ec).getText(), null);
+    }
+    
+    @Override
+    protected void bindContent(ExternalizableContainer ec) {
+        ExternalizableTextContainer etc = (ExternalizableTextContainer) ec;
+        if (! textArea.getText().equals(etc.getText())) {
+            applying = true;
+            try {
+                textArea.setText(etc.getText());
+            }
+            finally {
+                applying = false;
+            }
+        }
+        synchronizer.reset(etc.getTextRevision());
+    }
+    
+    @Override
+    public boolean isDetachable() {
+        return super.isDetachable() && ! saveEditButton.isEditing() && 
+                ! synchronizer.isWaiting();
+    }
+    
+    @Override
+    public int getTextRevision() {
+        return synchronizer.getRevision();
     }
     
     @Override
@@ -246,7 +428,8 @@ public class TextContainerPanel extends ContainerPanel implements TextContainer
                 getComponentName(), getComponentId(),
                 getComponentFont(), isComponentOpaque(), 
                 getComponentForeground(), getComponentBackground(),
-                getLayer(), getType(), isBlocked(), getBlockOwner(), getText());
+                getLayer(), getType(), isBlocked(), getBlockOwner(), getText(),
+                getTextRevision());
     }   
     
     @Override
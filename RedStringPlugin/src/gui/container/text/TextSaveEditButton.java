@@ -7,7 +7,8 @@ import javax.swing.JTextArea;
 import rslib.commands.container.text.ChangeTextCommand;
 
 /***
- * Represents a text save edit button
+ * Represents a text save edit button (text is edited without blocking,
+ * every change is sent at once, the whole edit is undone at once)
  */
 public class TextSaveEditButton extends SaveEditButton {
     
@@ -34,6 +35,11 @@ public class TextSaveEditButton extends SaveEditButton {
         oldText = "";
     }
 
+    @Override
+    protected boolean isBlocking() {
+        return false;
+    }
+
     @Override
     protected void editActions() {
         super.editActions();
@@ -44,13 +50,12 @@ public class TextSaveEditButton extends SaveEditButton {
     @Override
     protected void saveActions() {
         super.saveActions();
+        textArea.setEditable(false);
         String newText = textArea.getText();
         if (! newText.equals(oldText)) { 
-            textArea.setText(oldText);
             commandFacade.doCommand(new ChangeTextCommand(board, 
-                    (TextContainerPanel)container, newText), true);
+                    (TextContainerPanel)container, oldText, newText), true);
         }
-        textArea.setEditable(false);
         oldText = "";
     } 
 }